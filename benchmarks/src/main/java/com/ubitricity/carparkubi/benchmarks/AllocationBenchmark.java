@@ -0,0 +1,101 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded latency of the allocation engine of one carpark. Half of the charging points are connected, every
+ * plug/unplug cycle redistributes the charge twice.
+ * <p>
+ * Run with <code>-prof gc</code> to see the allocation rate of the hot path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int chargingPoints;
+
+    private CarparkUbi carpark;
+    private String[] disconnected;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createCarpark() {
+        carpark = halfConnectedCarpark("benchmark", chargingPoints);
+        disconnected = disconnectedIds(chargingPoints, 0, 1);
+    }
+
+    @Benchmark
+    public ChargingPoint connectDisconnect() {
+        String chargingPointId = disconnected[next];
+        next = (next + 1) % disconnected.length;
+        carpark.connect(chargingPointId);
+        return carpark.disconnect(chargingPointId);
+    }
+
+    @Benchmark
+    public ChargingPoint connectAlreadyConnected() {
+        return carpark.connect("CP1");
+    }
+
+    /**
+     * The report is a view over the snapshot, every point is read as a serializer would do
+     */
+    @Benchmark
+    public void describe(Blackhole blackhole) {
+        List<ChargingPoint> report = carpark.describe();
+        for (int i = 0; i < report.size(); i++) {
+            blackhole.consume(report.get(i));
+        }
+    }
+
+    /**
+     * Free points and spare current from the counters of the snapshot, whatever the size of the carpark
+     */
+    @Benchmark
+    public CarparkAvailability availability() {
+        return carpark.availability();
+    }
+
+    /**
+     * @param name           Name of the carpark
+     * @param chargingPoints Number of charging points of the carpark
+     * @return Carpark with the odd charging points connected and power to fast charge half of them
+     */
+    static CarparkUbi halfConnectedCarpark(String name, int chargingPoints) {
+        CarparkUbi carpark = new CarparkUbi(name, chargingPoints, chargingPoints * 15, EventJournal.NONE);
+        for (int n = 1; n <= chargingPoints; n += 2) {
+            carpark.connect("CP" + n);
+        }
+        return carpark;
+    }
+
+    /**
+     * Splits the disconnected charging points of {@link #halfConnectedCarpark(String, int)} among several threads
+     *
+     * @param chargingPoints Number of charging points of the carpark
+     * @param thread         Index of the thread
+     * @param threads        Number of threads sharing the carpark
+     * @return Identifiers of the disconnected charging points owned by the thread
+     */
+    static String[] disconnectedIds(int chargingPoints, int thread, int threads) {
+        int owned = Math.max(1, chargingPoints / 2 / threads);
+        String[] ids = new String[owned];
+        for (int i = 0; i < owned; i++) {
+            ids[i] = "CP" + (2 + 2 * ((thread * owned + i) % (chargingPoints / 2)));
+        }
+        return ids;
+    }
+}
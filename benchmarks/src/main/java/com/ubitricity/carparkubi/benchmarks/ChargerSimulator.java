@@ -0,0 +1,273 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.CarparkUbiApplication;
+import com.ubitricity.carparkubi.ingestion.EventFrames;
+import com.ubitricity.carparkubi.ingestion.GatewayServer;
+import com.ubitricity.carparkubi.services.EventBatch;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates chargers connected to the TCP gateway.
+ * <p>
+ * Every simulated connection owns a share of the charging points and sends single event frames on them, at a constant
+ * arrival rate over all the connections. Like {@link LoadGenerator} the latency is measured from the intended send
+ * time to the acknowledgement. The setpoints pushed back by the gateway are counted. One thread sends and one thread
+ * reads all the connections, so thousands of them can be simulated.
+ * <p>
+ * Without <code>--port</code> the application is started in-process with the gateway on a random port. Options:
+ * <pre>
+ * --host=localhost              gateway under test
+ * --port=9090                   port of the gateway, in-process when missing
+ * --carpark=ubi                 carpark receiving the events
+ * --charging-points=10000       charging points of the carpark
+ * --connections=1000            simulated charger connections
+ * --rate=10000                  events per second over all the connections
+ * --warmup=10s                  traffic sent before recording
+ * --duration=30s                recorded traffic
+ * </pre>
+ */
+public final class ChargerSimulator {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Options options;
+    private final Connection[] connections;
+    private final Selector selector;
+    private final AtomicLong setpoints = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private volatile Recorder recorder = new Recorder(3);
+    private volatile boolean running = true;
+
+    private ChargerSimulator(Options options, InetSocketAddress address) throws IOException {
+        this.options = options;
+        this.selector = Selector.open();
+        this.connections = new Connection[options.connections];
+        for (int i = 0; i < connections.length; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            connections[i] = new Connection(i, channel);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext application = null;
+        InetSocketAddress address;
+        if (options.port == 0) {
+            application = SpringApplication.run(CarparkUbiApplication.class, "--server.port=0",
+                    "--logging.level.root=WARN",
+                    "--carparks.gateway.enabled=true",
+                    "--carparks.gateway.port=0",
+                    "--carparks.sites." + options.carpark + ".charging-points=" + options.chargingPoints,
+                    "--carparks.sites." + options.carpark + ".total-power=" + options.chargingPoints * 15);
+            address = new InetSocketAddress("localhost", application.getBean(GatewayServer.class).getPort());
+        } else {
+            address = new InetSocketAddress(options.host, options.port);
+        }
+        try {
+            new ChargerSimulator(options, address).run();
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        System.out.printf("Sending %d events/s over %d connections, warmup %s, duration %s%n", options.rate,
+                connections.length, options.warmup, options.duration);
+        for (Connection connection : connections) {
+            connection.channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+        Thread reader = new Thread(this::read, "simulator-reader");
+        reader.start();
+        drive(options.warmup);
+        recorder = new Recorder(3);
+        long setpointsBefore = setpoints.get();
+        long start = System.nanoTime();
+        drive(options.duration);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(1000);
+        running = false;
+        selector.wakeup();
+        reader.join();
+        Histogram histogram = recorder.getIntervalHistogram();
+        System.out.printf("%nEvents: %d acknowledged, %.0f events/s, %d setpoint messages, %d connections closed%n",
+                histogram.getTotalCount(), histogram.getTotalCount() / elapsed, setpoints.get() - setpointsBefore,
+                closed.get());
+        if (histogram.getTotalCount() > 0) {
+            System.out.printf("  p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                    histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                    histogram.getValueAtPercentile(90) / MICROS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                    histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                    histogram.getMaxValue() / MICROS_PER_MILLI);
+        }
+        for (Connection connection : connections) {
+            connection.channel.close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Sends the events at their intended times on random connections
+     */
+    private void drive(Duration duration) throws IOException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long end = System.nanoTime() + duration.toNanos();
+        EventBatch batch = new EventBatch();
+        for (long intended = System.nanoTime(); intended < end; intended += interval) {
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Connection connection = connections[random.nextInt(connections.length)];
+            int owned = (options.chargingPoints - connection.id + connections.length - 1) / connections.length;
+            batch.clear();
+            batch.add(connection.id + random.nextInt(owned) * connections.length, random.nextBoolean(),
+                    ++connection.sequence);
+            connection.send(EventFrames.encode(options.carpark, batch), intended);
+        }
+    }
+
+    /**
+     * Reads the acknowledgements and the setpoints of all the connections
+     */
+    private void read() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        while (running) {
+            try {
+                selector.select(key -> {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (connection.channel.read(connection.input) < 0) {
+                            closed.incrementAndGet();
+                            key.cancel();
+                            return;
+                        }
+                    } catch (IOException e) {
+                        closed.incrementAndGet();
+                        key.cancel();
+                        return;
+                    }
+                    connection.input.flip();
+                    while (connection.input.remaining() >= Integer.BYTES
+                            && connection.input.remaining() >= Integer.BYTES + connection.input.getInt(connection.input.position())) {
+                        int length = connection.input.getInt();
+                        int end = connection.input.position() + length;
+                        if (connection.input.getShort(connection.input.position()) == EventFrames.SETPOINTS_MAGIC) {
+                            setpoints.incrementAndGet();
+                        } else {
+                            Long intended = connection.intended.poll();
+                            if (intended != null) {
+                                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+                            }
+                        }
+                        connection.input.position(end);
+                    }
+                    connection.input.compact();
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Simulated charger, owning the charging points whose index modulo the number of connections is its id
+     */
+    private static final class Connection {
+        private final int id;
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(256 * 1024);
+        private final ByteBuffer output = ByteBuffer.allocate(64 * 1024);
+        private final Queue<Long> intended = new ConcurrentLinkedQueue<>();
+        private int sequence;
+
+        private Connection(int id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        private void send(byte[] frame, long intendedTime) throws IOException {
+            intended.add(intendedTime);
+            output.clear();
+            output.putInt(frame.length).put(frame).flip();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+    }
+
+    private static final class Options {
+        private String host = "localhost";
+        private int port;
+        private String carpark = "ubi";
+        private int chargingPoints = 10_000;
+        private int connections = 1000;
+        private int rate = 10_000;
+        private Duration warmup = Duration.ofSeconds(10);
+        private Duration duration = Duration.ofSeconds(30);
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --option=value but got " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            Options options = new Options();
+            options.host = values.getOrDefault("host", options.host);
+            values.remove("host");
+            options.carpark = values.getOrDefault("carpark", options.carpark);
+            values.remove("carpark");
+            if (values.containsKey("port")) {
+                options.port = Integer.parseInt(values.remove("port"));
+            }
+            if (values.containsKey("charging-points")) {
+                options.chargingPoints = Integer.parseInt(values.remove("charging-points"));
+            }
+            if (values.containsKey("connections")) {
+                options.connections = Integer.parseInt(values.remove("connections"));
+            }
+            if (values.containsKey("rate")) {
+                options.rate = Integer.parseInt(values.remove("rate"));
+            }
+            if (values.containsKey("warmup")) {
+                options.warmup = LoadGenerator.duration(values.remove("warmup"));
+            }
+            if (values.containsKey("duration")) {
+                options.duration = LoadGenerator.duration(values.remove("duration"));
+            }
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            if (options.rate <= 0 || options.connections <= 0 || options.chargingPoints < options.connections) {
+                throw new IllegalArgumentException("The rate and the connections must be positive, with at least one "
+                        + "charging point per connection");
+            }
+            return options;
+        }
+    }
+}
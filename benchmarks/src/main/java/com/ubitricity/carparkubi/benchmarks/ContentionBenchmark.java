@@ -0,0 +1,76 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one carpark shared by several threads, all of them contending for the carpark lock. The readers of
+ * the report run in the same group to show they don't slow down the writers.
+ * <p>
+ * The number of writer threads is set with <code>-t</code>, e.g. <code>-t 8</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedCarpark {
+        @Param({"10", "100", "1000", "10000"})
+        public int chargingPoints;
+
+        CarparkUbi carpark;
+
+        @Setup(Level.Trial)
+        public void createCarpark() {
+            carpark = AllocationBenchmark.halfConnectedCarpark("benchmark", chargingPoints);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        String[] disconnected;
+        int next;
+
+        @Setup(Level.Trial)
+        public void assignChargingPoints(SharedCarpark shared, ThreadParams threadParams) {
+            disconnected = AllocationBenchmark.disconnectedIds(shared.chargingPoints, threadParams.getThreadIndex(),
+                    threadParams.getThreadCount());
+        }
+
+        String nextChargingPoint() {
+            String chargingPointId = disconnected[next];
+            next = (next + 1) % disconnected.length;
+            return chargingPointId;
+        }
+    }
+
+    @Benchmark
+    public ChargingPoint connectDisconnect(SharedCarpark shared, Writer writer) {
+        String chargingPointId = writer.nextChargingPoint();
+        shared.carpark.connect(chargingPointId);
+        return shared.carpark.disconnect(chargingPointId);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public ChargingPoint writer(SharedCarpark shared, Writer writer) {
+        return connectDisconnect(shared, writer);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public CarparkSnapshot reader(SharedCarpark shared) {
+        return shared.carpark.snapshot();
+    }
+}
@@ -0,0 +1,72 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notifications of several request threads on one carpark, applied holding the carpark monitor or handed to the
+ * single writer of the carpark. Each thread waits for the result of its notification like a request thread does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ExecutionModeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedCarpark {
+        @Param({"MONITOR", "ACTOR"})
+        public CarparksProperties.ExecutionMode mode;
+
+        @Param({"100", "10000"})
+        public int chargingPoints;
+
+        CarparkUbi carpark;
+        CarparkDispatcher dispatcher;
+
+        @Setup(Level.Trial)
+        public void createCarpark() {
+            carpark = AllocationBenchmark.halfConnectedCarpark("benchmark", chargingPoints);
+            CarparksProperties properties = new CarparksProperties();
+            properties.getExecution().setMode(mode);
+            dispatcher = new CarparkDispatcher(properties);
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            dispatcher.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestThread {
+        String[] disconnected;
+        int next;
+        boolean connect = true;
+
+        @Setup(Level.Trial)
+        public void assignChargingPoints(SharedCarpark shared, ThreadParams threadParams) {
+            disconnected = AllocationBenchmark.disconnectedIds(shared.chargingPoints, threadParams.getThreadIndex(),
+                    threadParams.getThreadCount());
+        }
+    }
+
+    @Benchmark
+    public ChargingPoint update(SharedCarpark shared, RequestThread thread) {
+        String chargingPointId = thread.disconnected[thread.next];
+        ChargingPoint chargingPoint = shared.dispatcher.update(shared.carpark, chargingPointId, thread.connect);
+        if (!thread.connect) {
+            thread.next = (thread.next + 1) % thread.disconnected.length;
+        }
+        thread.connect = !thread.connect;
+        return chargingPoint;
+    }
+}
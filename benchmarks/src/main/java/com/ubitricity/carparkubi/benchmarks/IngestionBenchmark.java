@@ -0,0 +1,87 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.ubitricity.carparkubi.controllers.ChargingPointDTO;
+import com.ubitricity.carparkubi.ingestion.EventFrames;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventBatch;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of turning a batch of notifications received from a gateway into a carpark change: the JSON body of the
+ * <code>PATCH</code> endpoint against the binary frame of the events endpoint. Every invocation alternates between
+ * connecting and disconnecting the same charging points, so every event changes the carpark.
+ * <p>
+ * Run with <code>-prof gc</code> to compare the bytes allocated per batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IngestionBenchmark {
+    private static final int CHARGING_POINTS = 1000;
+
+    @Param({"1", "256"})
+    public int events;
+
+    private final ObjectReader reader = new ObjectMapper().readerFor(new TypeReference<List<ChargingPointDTO>>() {
+    });
+    private final EventBatch batch = new EventBatch();
+    private CarparkUbi carpark;
+    private byte[][] jsonBodies;
+    private byte[][] frames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createBatches() {
+        carpark = new CarparkUbi("benchmark", CHARGING_POINTS, CHARGING_POINTS * 15, EventJournal.NONE);
+        jsonBodies = new byte[][]{json(true), json(false)};
+        frames = new byte[][]{frame(true), frame(false)};
+    }
+
+    @Benchmark
+    public BatchResult json() throws IOException {
+        List<ChargingPointDTO> chargingPoints = reader.readValue(jsonBodies[next ^= 1]);
+        return carpark.apply(chargingPoints.stream()
+                .map(cp -> new ChargingPointEvent(cp.getId(), cp.getConnected()))
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public CarparkSnapshot binary() {
+        batch.clear();
+        EventFrames.decode(ByteBuffer.wrap(frames[next ^= 1]), batch);
+        return carpark.apply(batch);
+    }
+
+    private byte[] json(boolean connected) {
+        return IntStream.rangeClosed(1, events)
+                .mapToObj(n -> "{\"id\":\"CP" + n + "\",\"connected\":" + connected + "}")
+                .collect(Collectors.joining(",", "[", "]"))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] frame(boolean connected) {
+        EventBatch events = new EventBatch();
+        for (int i = 0; i < this.events; i++) {
+            events.add(i, connected, i);
+        }
+        return EventFrames.encode("benchmark", events);
+    }
+}
@@ -0,0 +1,280 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.CarparkUbiApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator for the carpark REST API.
+ * <p>
+ * Requests are issued at a constant arrival rate, each one at its own intended start time whatever the state of the
+ * previous ones. The latency is measured from the intended start time, so a stalled server shows up in the
+ * percentiles instead of silently lowering the request rate (coordinated omission). The mix is made of
+ * <code>PUT .../chargingPoints/{id}</code> notifications on random charging points and <code>GET .../chargingPoints</code>
+ * reports.
+ * <p>
+ * Without <code>--url</code> the application is started in-process on a random port. Options:
+ * <pre>
+ * --url=http://localhost:8080   server under test, in-process when missing
+ * --carpark=ubi                 carpark receiving the traffic
+ * --charging-points=10          charging points of the carpark
+ * --rate=1000                   requests per second
+ * --get-ratio=0.1               share of report requests in the mix
+ * --warmup=10s                  traffic sent before recording
+ * --duration=30s                recorded traffic
+ * --timeout=10s                 timeout of a single request
+ * --histogram-log=results       directory where the histograms are written as HdrHistogram logs
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Options options;
+    private final URI baseUri;
+    private final HttpClient client;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private LoadGenerator(Options options, URI baseUri) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(options.timeout)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext application = null;
+        URI baseUri;
+        if (options.url == null) {
+            application = SpringApplication.run(CarparkUbiApplication.class, "--server.port=0",
+                    "--logging.level.root=WARN",
+                    "--carparks.sites." + options.carpark + ".charging-points=" + options.chargingPoints,
+                    "--carparks.sites." + options.carpark + ".total-power=" + options.chargingPoints * 15);
+            int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+            baseUri = URI.create("http://localhost:" + port);
+        } else {
+            baseUri = URI.create(options.url);
+        }
+        try {
+            new LoadGenerator(options, baseUri).run();
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private void run() throws FileNotFoundException, InterruptedException {
+        System.out.printf("Sending %d req/s to %s (%.0f%% reports), warmup %s, duration %s%n", options.rate, baseUri,
+                options.getRatio * 100, options.warmup, options.duration);
+        drive(options.warmup, new Phase());
+        Phase phase = new Phase();
+        long start = System.nanoTime();
+        drive(options.duration, phase);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        report("PUT chargingPoints/{id}", phase.updates, elapsed);
+        report("GET chargingPoints", phase.reports, elapsed);
+        if (options.histogramLog != null) {
+            write(phase.updates, "put");
+            write(phase.reports, "get");
+        }
+    }
+
+    /**
+     * Sends the requests at their intended start times and waits for the responses still in flight
+     *
+     * @param duration Time during which requests are started
+     * @param phase    Recorders of the latencies
+     */
+    private void drive(Duration duration, Phase phase) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long intended = start; intended < end; intended += interval) {
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean report = ThreadLocalRandom.current().nextDouble() < options.getRatio;
+            send(report ? reportRequest() : updateRequest(), intended, report ? phase.reports : phase.updates);
+        }
+        long deadline = System.nanoTime() + options.timeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void send(HttpRequest request, long intended, Results results) {
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+                    if (error != null || response.statusCode() >= 400) {
+                        results.errors.incrementAndGet();
+                    } else {
+                        results.recorder.recordValue(latency);
+                    }
+                    inFlight.decrementAndGet();
+                });
+    }
+
+    private HttpRequest updateRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String chargingPointId = "CP" + (1 + random.nextInt(options.chargingPoints));
+        return HttpRequest.newBuilder(baseUri.resolve("/carparks/" + options.carpark + "/chargingPoints/" + chargingPointId))
+                .timeout(options.timeout)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": " + random.nextBoolean() + "}"))
+                .build();
+    }
+
+    private HttpRequest reportRequest() {
+        return HttpRequest.newBuilder(baseUri.resolve("/carparks/" + options.carpark + "/chargingPoints"))
+                .timeout(options.timeout)
+                .GET()
+                .build();
+    }
+
+    private void report(String name, Results results, double elapsed) {
+        Histogram histogram = results.histogram();
+        long count = histogram.getTotalCount();
+        System.out.printf("%n%s: %d ok, %d errors, %.0f req/s%n", name, count, results.errors.get(), count / elapsed);
+        if (count == 0) {
+            return;
+        }
+        System.out.printf("  p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(90) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                histogram.getMaxValue() / MICROS_PER_MILLI);
+        histogram.outputPercentileDistribution(System.out, 5, MICROS_PER_MILLI);
+    }
+
+    /**
+     * Writes the histogram as an HdrHistogram log, logs of different builds can be compared with the HdrHistogram
+     * tools, e.g. the online plotter
+     */
+    private void write(Results results, String name) throws FileNotFoundException {
+        try {
+            Files.createDirectories(options.histogramLog);
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Can't create " + options.histogramLog, e);
+        }
+        Path file = options.histogramLog.resolve(name + ".hlog");
+        try (PrintStream out = new PrintStream(file.toFile())) {
+            HistogramLogWriter writer = new HistogramLogWriter(out);
+            writer.outputComment("Latency in microseconds of " + name + " requests at " + options.rate + " req/s");
+            writer.outputLogFormatVersion();
+            writer.outputLegend();
+            writer.outputIntervalHistogram(results.histogram());
+        }
+        System.out.println("Histogram written to " + file);
+    }
+
+    /**
+     * @param value Duration in seconds, e.g. <code>30s</code>, or in ISO-8601 format
+     */
+    static Duration duration(String value) {
+        if (value.endsWith("s") && !value.startsWith("P")) {
+            return Duration.ofMillis((long) (Double.parseDouble(value.substring(0, value.length() - 1)) * 1000));
+        }
+        return Duration.parse(value);
+    }
+
+    /**
+     * Latencies recorded for one type of request. The histogram is taken once, after the traffic is over.
+     */
+    private static final class Results {
+        private final Recorder recorder = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+        private Histogram histogram;
+
+        Histogram histogram() {
+            if (histogram == null) {
+                histogram = recorder.getIntervalHistogram();
+            }
+            return histogram;
+        }
+    }
+
+    private static final class Phase {
+        private final Results updates = new Results();
+        private final Results reports = new Results();
+    }
+
+    private static final class Options {
+        private String url;
+        private String carpark = "ubi";
+        private int chargingPoints = 10;
+        private int rate = 1000;
+        private double getRatio = 0.1;
+        private Duration warmup = Duration.ofSeconds(10);
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration timeout = Duration.ofSeconds(10);
+        private Path histogramLog;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --option=value but got " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            Options options = new Options();
+            options.url = values.remove("url");
+            options.carpark = values.getOrDefault("carpark", options.carpark);
+            values.remove("carpark");
+            if (values.containsKey("charging-points")) {
+                options.chargingPoints = Integer.parseInt(values.remove("charging-points"));
+            }
+            if (values.containsKey("rate")) {
+                options.rate = Integer.parseInt(values.remove("rate"));
+            }
+            if (values.containsKey("get-ratio")) {
+                options.getRatio = Double.parseDouble(values.remove("get-ratio"));
+            }
+            if (values.containsKey("warmup")) {
+                options.warmup = duration(values.remove("warmup"));
+            }
+            if (values.containsKey("duration")) {
+                options.duration = duration(values.remove("duration"));
+            }
+            if (values.containsKey("timeout")) {
+                options.timeout = duration(values.remove("timeout"));
+            }
+            if (values.containsKey("histogram-log")) {
+                options.histogramLog = Path.of(values.remove("histogram-log"));
+            }
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            if (options.rate <= 0 || options.chargingPoints <= 0) {
+                throw new IllegalArgumentException("The rate and the charging points must be positive");
+            }
+            return options;
+        }
+    }
+}
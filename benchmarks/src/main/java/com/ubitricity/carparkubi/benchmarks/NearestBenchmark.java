@@ -0,0 +1,75 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.NearbyCarpark;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventJournal;
+import com.ubitricity.carparkubi.services.SpatialIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the nearest carpark queries over carparks spread on a 50 x 40 km area. A third of the carparks is full
+ * and a third can't fast charge one more vehicle, the queries are spread on the same area. With
+ * <code>allFull</code> no carpark has a free charging point, so no query finds its k carparks and each one goes
+ * through the whole area.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NearestBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "10000"})
+    public int carparks;
+
+    @Param({"false", "true"})
+    public boolean fastCharge;
+
+    @Param({"false", "true"})
+    public boolean allFull;
+
+    private SpatialIndex spatialIndex;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createIndex() {
+        Random random = new Random(42);
+        CarparksProperties properties = new CarparksProperties();
+        for (int n = 0; n < carparks; n++) {
+            CarparksProperties.Site site = new CarparksProperties.Site();
+            site.setLatitude(52.3 + random.nextDouble() * 0.36);
+            site.setLongitude(13.1 + random.nextDouble() * 0.6);
+            properties.getSites().put("carpark" + n, site);
+        }
+        CarparkRegistry carparkRegistry = new CarparkRegistry(properties, EventJournal.NONE);
+        for (int n = 0; n < carparks; n++) {
+            int connected = allFull || n % 3 == 0 ? 10 : n % 3 == 1 ? 8 : 2;
+            for (int cp = 1; cp <= connected; cp++) {
+                carparkRegistry.find("carpark" + n).connect("CP" + cp);
+            }
+        }
+        spatialIndex = new SpatialIndex(properties, carparkRegistry);
+        latitudes = new double[QUERIES];
+        longitudes = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            latitudes[i] = 52.3 + random.nextDouble() * 0.36;
+            longitudes[i] = 13.1 + random.nextDouble() * 0.6;
+        }
+    }
+
+    @Benchmark
+    public List<NearbyCarpark> nearest() {
+        int query = next;
+        next = (next + 1) & (QUERIES - 1);
+        return spatialIndex.nearest(latitudes[query], longitudes[query], 5, fastCharge, Double.POSITIVE_INFINITY);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.AllocationLimits;
+import com.ubitricity.carparkubi.services.AllocationPolicies;
+import com.ubitricity.carparkubi.services.CarparkMetrics;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded latency of every allocation policy, set up like {@link AllocationBenchmark}: half of the charging
+ * points are connected and every plug/unplug cycle redistributes the charge twice. One charging point in ten is in a
+ * higher tier and allowed a larger current, the tiers only matter to <code>PRIORITY_TIERS</code>.
+ * <p>
+ * The proportional share moves the current of every connected point whenever its level changes, so its cost grows
+ * with the connected points through the snapshot and the history rather than through the policy itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PolicyBenchmark {
+
+    @Param({"NEWEST_FIRST", "PRIORITY_TIERS", "PROPORTIONAL_SHARE"})
+    public AllocationPolicies policy;
+
+    @Param({"10", "1000", "10000"})
+    public int chargingPoints;
+
+    private CarparkUbi carpark;
+    private String[] disconnected;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createCarpark() {
+        int[] minCurrents = new int[chargingPoints];
+        int[] maxCurrents = new int[chargingPoints];
+        int[] tiers = new int[chargingPoints];
+        Arrays.fill(minCurrents, 10);
+        Arrays.fill(maxCurrents, 20);
+        for (int i = 0; i < chargingPoints; i += 10) {
+            maxCurrents[i] = 32;
+            tiers[i] = 1;
+        }
+        carpark = new CarparkUbi("benchmark", chargingPoints * 15,
+                new AllocationLimits(10, 20, minCurrents, maxCurrents, tiers), policy, EventJournal.NONE,
+                CarparkMetrics.NONE, CarparkUbi.HISTORY_CAPACITY);
+        for (int n = 1; n <= chargingPoints; n += 2) {
+            carpark.connect("CP" + n);
+        }
+        disconnected = AllocationBenchmark.disconnectedIds(chargingPoints, 0, 1);
+    }
+
+    @Benchmark
+    public ChargingPoint connectDisconnect() {
+        String chargingPointId = disconnected[next];
+        next = (next + 1) % disconnected.length;
+        carpark.connect(chargingPointId);
+        return carpark.disconnect(chargingPointId);
+    }
+}
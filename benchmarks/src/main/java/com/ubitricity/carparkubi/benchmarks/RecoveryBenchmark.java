@@ -0,0 +1,95 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.persistence.EventLog;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Restart time of the application for a growing history of charging sessions. With a checkpoint the time only
+ * depends on the current state of the carparks, without it every event since day one is replayed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    private static final int CARPARKS = 100;
+    private static final int CHARGING_POINTS = 100;
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int sessions;
+
+    @Param({"true", "false"})
+    public boolean checkpointed;
+
+    private Path directory;
+    private CarparksProperties properties;
+
+    @Setup(Level.Trial)
+    public void writeHistory() throws IOException {
+        directory = Files.createTempDirectory("recovery-benchmark");
+        properties = new CarparksProperties();
+        IntStream.range(0, CARPARKS).forEach(n -> {
+            CarparksProperties.Site site = new CarparksProperties.Site();
+            site.setChargingPoints(CHARGING_POINTS);
+            site.setTotalPower(CHARGING_POINTS * 15);
+            properties.getSites().put("carpark" + n, site);
+        });
+        EventLog eventLog = open();
+        CarparkRegistry registry = new CarparkRegistry(properties, eventLog);
+        List<CarparkUbi> carparks = List.copyOf(registry.carparks());
+        Random random = new Random(42);
+        for (int session = 0; session < sessions; session++) {
+            CarparkUbi carpark = carparks.get(random.nextInt(CARPARKS));
+            String chargingPointId = "CP" + (1 + random.nextInt(CHARGING_POINTS));
+            carpark.connect(chargingPointId);
+            if (random.nextInt(10) > 0) {
+                carpark.disconnect(chargingPointId);
+            }
+        }
+        if (checkpointed) {
+            eventLog.checkpoint(registry::checkpoints);
+        }
+        eventLog.close();
+    }
+
+    @Benchmark
+    public CarparkRegistry recover() throws IOException {
+        EventLog eventLog = open();
+        try {
+            return new CarparkRegistry(properties, eventLog);
+        } finally {
+            eventLog.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private EventLog open() throws IOException {
+        return new EventLog(directory, SEGMENT_SIZE, CarparksProperties.Durability.ASYNC, Duration.ofMillis(10));
+    }
+}
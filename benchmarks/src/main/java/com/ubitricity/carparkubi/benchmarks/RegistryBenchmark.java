@@ -0,0 +1,56 @@
+package com.ubitricity.carparkubi.benchmarks;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput of the notifications spread uniformly across many carparks, every call goes through the registry lookup.
+ * With enough carparks the threads rarely meet on the same lock and the throughput scales with the cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int chargingPoints;
+
+    @Param({"1", "64"})
+    public int carparks;
+
+    private CarparkRegistry registry;
+    private String[] carparkNames;
+
+    @Setup(Level.Trial)
+    public void createCarparks() {
+        CarparksProperties properties = new CarparksProperties();
+        carparkNames = IntStream.range(0, carparks).mapToObj(n -> "carpark" + n).toArray(String[]::new);
+        for (String name : carparkNames) {
+            CarparksProperties.Site site = new CarparksProperties.Site();
+            site.setChargingPoints(chargingPoints);
+            site.setTotalPower(chargingPoints * 15);
+            properties.getSites().put(name, site);
+        }
+        registry = new CarparkRegistry(properties, EventJournal.NONE);
+    }
+
+    @Benchmark
+    public ChargingPoint connectDisconnect() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String carparkName = carparkNames[random.nextInt(carparks)];
+        String chargingPointId = "CP" + (1 + random.nextInt(chargingPoints));
+        registry.find(carparkName).connect(chargingPointId);
+        return registry.find(carparkName).disconnect(chargingPointId);
+    }
+}
@@ -0,0 +1,39 @@
+package com.ubitricity.carparkubi.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "carparks.cluster.enabled", havingValue = "true")
+public class ClusterConfiguration {
+
+    @Bean
+    public ClusterMembership clusterMembership(CarparksProperties properties) {
+        return new ClusterMembership(properties.getCluster());
+    }
+
+    /**
+     * @return Hand-over of the carparks changing owner, listening to the members of the cluster
+     */
+    @Bean
+    public ClusterHandoff clusterHandoff(ClusterMembership membership, CarparksProperties properties,
+                                         CarparkRegistry carparkRegistry, ObjectMapper objectMapper) {
+        ClusterHandoff handoff = new ClusterHandoff(membership, carparkRegistry, objectMapper,
+                properties.getCluster().getForwardTimeout());
+        membership.addListener(handoff);
+        return handoff;
+    }
+
+    /**
+     * @return Filter forwarding the requests of the carparks owned by other nodes, registered for all the requests
+     */
+    @Bean
+    public ClusterForwardingFilter clusterForwardingFilter(ClusterMembership membership, ClusterHandoff handoff,
+                                                           CarparksProperties properties) {
+        return new ClusterForwardingFilter(membership, handoff, properties.getCluster().getForwardTimeout());
+    }
+}
@@ -0,0 +1,210 @@
+package com.ubitricity.carparkubi.cluster;
+
+import com.ubitricity.carparkubi.controllers.CarparksController;
+import com.ubitricity.carparkubi.ingestion.EventFrames;
+import com.ubitricity.carparkubi.ingestion.MalformedFrameException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Forwards the requests addressed to a carpark owned by another node of the cluster to its owner and streams the
+ * answer back, so clients can call any node. The carpark is taken from the path, or from the header of the frame for
+ * the binary events. Forwarded requests carry the {@value #FORWARDED_HEADER} header and are always served by the node
+ * receiving them, so nodes with different views of the members never bounce a request between each other. The writes
+ * of a carpark whose state is moving between nodes, forwarded or not, wait for the end of its transfer and are applied
+ * within the gate of the carpark (see {@link ClusterHandoff}).
+ */
+@Slf4j
+public class ClusterForwardingFilter extends OncePerRequestFilter {
+    public static final String FORWARDED_HEADER = "Carpark-Forwarded-By";
+    private static final String PREFIX = "/" + CarparksController.CARPARKS + "/";
+    private static final String EVENTS = PREFIX + "events";
+    private static final List<String> REQUEST_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT,
+            HttpHeaders.IF_NONE_MATCH);
+    private static final List<String> RESPONSE_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG,
+            HttpHeaders.CACHE_CONTROL, CarparksController.VERSION_HEADER);
+
+    private final ClusterMembership membership;
+    private final ClusterHandoff handoff;
+    private final HttpClient client;
+    private final Duration timeout;
+
+    /**
+     * @param membership Members of the cluster
+     * @param handoff    Transfers of the carparks changing owner
+     * @param timeout    Time to wait for the owner to answer
+     */
+    public ClusterForwardingFilter(ClusterMembership membership, ClusterHandoff handoff, Duration timeout) {
+        this.membership = membership;
+        this.handoff = handoff;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !path(request).startsWith(PREFIX)
+                || request.getHeader(FORWARDED_HEADER) != null && !isWrite(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = path(request);
+        byte[] body = null;
+        String carparkName;
+        if (path.equals(EVENTS)) {
+            body = request.getInputStream().readAllBytes();
+            request = new BufferedRequest(request, body);
+            try {
+                carparkName = EventFrames.carparkName(ByteBuffer.wrap(body));
+            } catch (MalformedFrameException e) {
+                carparkName = null;
+            }
+        } else {
+            int end = path.indexOf('/', PREFIX.length());
+            carparkName = path.substring(PREFIX.length(), end < 0 ? path.length() : end);
+        }
+        Lock gate = null;
+        if (carparkName != null && isWrite(request)) {
+            try {
+                gate = handoff.enterWrite(carparkName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Carpark changing owner");
+                return;
+            }
+        }
+        try {
+            if (carparkName == null || request.getHeader(FORWARDED_HEADER) != null || membership.isLocal(carparkName)) {
+                chain.doFilter(request, response);
+                return;
+            }
+        } finally {
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        forward(membership.owner(carparkName), request, body != null ? body : request.getInputStream().readAllBytes(),
+                response);
+    }
+
+    private void forward(ClusterMember owner, HttpServletRequest request, byte[] body, HttpServletResponse response)
+            throws IOException {
+        String query = request.getQueryString();
+        HttpRequest.Builder forwarded = HttpRequest.newBuilder(owner.getUri().resolve(URI.create(
+                        request.getRequestURI() + (query != null ? "?" + query : ""))))
+                .timeout(timeout)
+                .header(FORWARDED_HEADER, membership.getNodeId())
+                .method(request.getMethod(), body.length > 0
+                        ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        REQUEST_HEADERS.forEach(name -> {
+            String value = request.getHeader(name);
+            if (value != null) {
+                forwarded.header(name, value);
+            }
+        });
+        HttpResponse<InputStream> answer;
+        try {
+            answer = client.send(forwarded.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            log.warn("Owner {} of {} unreachable: {}", owner.getId(), request.getRequestURI(), e.toString());
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Owner of the carpark unreachable");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Forwarding interrupted");
+            return;
+        }
+        response.setStatus(answer.statusCode());
+        RESPONSE_HEADERS.forEach(name -> answer.headers().firstValue(name)
+                .ifPresent(value -> response.setHeader(name, value)));
+        try (InputStream in = answer.body()) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+                // Streams of events must reach the client as they come
+                out.flush();
+            }
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod());
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * Request whose body was already read to find its carpark
+     */
+    private static final class BufferedRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private BufferedRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+    }
+}
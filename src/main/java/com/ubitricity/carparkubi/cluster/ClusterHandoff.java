@@ -0,0 +1,220 @@
+package com.ubitricity.carparkubi.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.controllers.CheckpointDTO;
+import com.ubitricity.carparkubi.controllers.ClusterController;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the state of the carparks this node stops owning to their new owner when the members of the cluster change.
+ * The checkpoint of each carpark is sent right after the new members are read and the new owner replaces its own
+ * state by it whatever its version, the previous owner being the last one that served the carpark.
+ * <p>
+ * A carpark is in transfer until its state reached the new owner, and the {@link ClusterForwardingFilter} holds its
+ * writes meanwhile so none of them is applied to a state the checkpoint then overwrites: the previous owner holds them
+ * until the new owner answered, the new owner until it received the checkpoint. A new owner whose previous owner is
+ * gone never gets one, it serves the writes from its own state once the timeout elapsed. A checkpoint received
+ * before this node read the new members completes the transfer in advance.
+ * <p>
+ * A write that went past the filter before the transfer started may still be running when the checkpoint is taken.
+ * Every carpark has a gate for that: the writes applied locally hold it shared and the hand-over takes it exclusively
+ * around the checkpoint, so a write is either in the checkpoint or sees the transfer once it holds the gate and goes
+ * back to wait for it.
+ */
+@Slf4j
+public class ClusterHandoff implements ClusterMembership.Listener {
+    private final ClusterMembership membership;
+    private final CarparkRegistry carparkRegistry;
+    private final ObjectMapper objectMapper;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final ConcurrentMap<String, CompletableFuture<Void>> transfers = new ConcurrentHashMap<>();
+    private final Set<String> receivedInAdvance = ConcurrentHashMap.newKeySet();
+    private final Map<String, ReadWriteLock> gates;
+
+    /**
+     * @param membership      Members of the cluster
+     * @param carparkRegistry Carparks hosted by this node
+     * @param objectMapper    JSON configuration of the API
+     * @param timeout         Time to wait for the new owner to answer, and for the previous owner to send the state
+     */
+    public ClusterHandoff(ClusterMembership membership, CarparkRegistry carparkRegistry, ObjectMapper objectMapper,
+                          Duration timeout) {
+        this.membership = membership;
+        this.carparkRegistry = carparkRegistry;
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.gates = carparkRegistry.carparks().stream()
+                .collect(Collectors.toUnmodifiableMap(CarparkUbi::getName, carpark -> new ReentrantReadWriteLock()));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Starts the transfers of the carparks changing owner, before any request is routed with the new members
+     */
+    @Override
+    public void beforeChange(HashRing previous, HashRing next) {
+        for (CarparkUbi carpark : carparkRegistry.carparks()) {
+            ClusterMember previousOwner = previous.owner(carpark.getName());
+            ClusterMember owner = next.owner(carpark.getName());
+            if (previousOwner == null || owner == null || previousOwner.getId().equals(owner.getId())) {
+                continue;
+            }
+            if (previousOwner.getId().equals(membership.getNodeId())) {
+                startTransfer(carpark.getName());
+            } else if (owner.getId().equals(membership.getNodeId()) && !receivedInAdvance.remove(carpark.getName())) {
+                CompletableFuture<Void> transfer = startTransfer(carpark.getName());
+                CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                    if (transfer.complete(null)) {
+                        log.warn("No state of carpark {} received from {}, serving it from the local state",
+                                carpark.getName(), previousOwner.getId());
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void onChange(HashRing previous, HashRing current) {
+        for (CarparkUbi carpark : carparkRegistry.carparks()) {
+            ClusterMember previousOwner = previous.owner(carpark.getName());
+            ClusterMember owner = current.owner(carpark.getName());
+            if (previousOwner != null && previousOwner.getId().equals(membership.getNodeId())
+                    && owner != null && !owner.getId().equals(membership.getNodeId())) {
+                CompletableFuture<Void> transfer = transfers.getOrDefault(carpark.getName(), new CompletableFuture<>());
+                try {
+                    handOver(carpark, owner, transfer);
+                } catch (RuntimeException e) {
+                    transfer.complete(null);
+                    log.error("Can't hand carpark {} over to {}", carpark.getName(), owner.getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until the carpark is no longer in transfer, at most until the transfer times out
+     *
+     * @param carparkName Name of a carpark about to be written
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitTransfer(String carparkName) throws InterruptedException {
+        CompletableFuture<Void> transfer = transfers.get(carparkName);
+        if (transfer == null) {
+            return;
+        }
+        try {
+            transfer.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Waits for the end of the transfer of the carpark and enters its gate, to be released once the write is applied
+     *
+     * @param carparkName Name of a carpark about to be written
+     * @return Entered gate, <code>null</code> if the carpark is not hosted by this node
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Lock enterWrite(String carparkName) throws InterruptedException {
+        ReadWriteLock gate = gates.get(carparkName);
+        while (true) {
+            awaitTransfer(carparkName);
+            if (gate == null) {
+                return null;
+            }
+            gate.readLock().lockInterruptibly();
+            CompletableFuture<Void> transfer = transfers.get(carparkName);
+            if (transfer == null || transfer.isDone()) {
+                return gate.readLock();
+            }
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the state of a carpark was received from its previous owner and applied, which completes its
+     * transfer to this node
+     *
+     * @param carparkName Name of the carpark
+     */
+    public void received(String carparkName) {
+        CompletableFuture<Void> transfer = transfers.get(carparkName);
+        if (transfer != null) {
+            transfer.complete(null);
+        } else if (!membership.isLocal(carparkName)) {
+            receivedInAdvance.add(carparkName);
+        }
+    }
+
+    private CompletableFuture<Void> startTransfer(String carparkName) {
+        CompletableFuture<Void> transfer = new CompletableFuture<>();
+        transfers.put(carparkName, transfer);
+        transfer.whenComplete((result, error) -> transfers.remove(carparkName, transfer));
+        return transfer;
+    }
+
+    private void handOver(CarparkUbi carpark, ClusterMember owner, CompletableFuture<Void> transfer) {
+        CarparkCheckpoint checkpoint;
+        Lock gate = gates.get(carpark.getName()).writeLock();
+        gate.lock();
+        try {
+            checkpoint = carpark.checkpoint();
+        } finally {
+            gate.unlock();
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new CheckpointDTO(checkpoint));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        URI uri = owner.getUri().resolve("/" + ClusterController.CLUSTER
+                + ClusterController.CHECKPOINT.replace("{carparkName}", carpark.getName()));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.warn("Can't hand carpark {} over to {}: {}", carpark.getName(), owner.getId(),
+                                error.toString());
+                    } else if (response.statusCode() / 100 != 2) {
+                        log.warn("Carpark {} rejected by {} with status {}", carpark.getName(), owner.getId(),
+                                response.statusCode());
+                    } else {
+                        log.info("Carpark {} handed over to {}", carpark.getName(), owner.getId());
+                    }
+                    transfer.complete(null);
+                });
+    }
+}
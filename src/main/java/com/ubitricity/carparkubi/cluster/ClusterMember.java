@@ -0,0 +1,14 @@
+package com.ubitricity.carparkubi.cluster;
+
+import lombok.Value;
+
+import java.net.URI;
+
+/**
+ * Node of the cluster and the base URI its API is served on.
+ */
+@Value
+public class ClusterMember {
+    String id;
+    URI uri;
+}
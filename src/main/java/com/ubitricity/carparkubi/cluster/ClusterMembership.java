@@ -0,0 +1,147 @@
+package com.ubitricity.carparkubi.cluster;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Static membership of the cluster, read from a properties file listing every node as
+ * <code>node-id=http://host:port</code>. The file is read again every <code>carparks.cluster.refresh-interval</code>,
+ * editing it on all the nodes adds or removes members and moves the ownership of the carparks accordingly.
+ */
+@Slf4j
+public class ClusterMembership {
+    private final String nodeId;
+    private final Path membersFile;
+    private final int virtualNodes;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile HashRing ring;
+
+    /**
+     * @param properties Configuration of the cluster
+     * @throws IllegalStateException if the members file can't be read
+     */
+    public ClusterMembership(CarparksProperties.Cluster properties) {
+        if (properties.getNodeId() == null) {
+            throw new IllegalStateException("carparks.cluster.node-id is required in cluster mode");
+        }
+        this.nodeId = properties.getNodeId();
+        this.membersFile = properties.getMembersFile();
+        this.virtualNodes = properties.getVirtualNodes();
+        try {
+            ring = load();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Can't read the cluster members from " + membersFile, e);
+        }
+        log.info("Node {} joined the cluster {}", nodeId, ring.getMembers());
+    }
+
+    /**
+     * Reads the members file again and notifies the listeners if the members changed. A file that can't be read is
+     * ignored and the current members are kept.
+     */
+    @Scheduled(initialDelayString = "${carparks.cluster.refresh-interval:PT5S}",
+            fixedDelayString = "${carparks.cluster.refresh-interval:PT5S}")
+    public void refresh() {
+        HashRing next;
+        try {
+            next = load();
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Keeping the current cluster members, can't read {}: {}", membersFile, e.toString());
+            return;
+        }
+        HashRing previous;
+        synchronized (this) {
+            previous = ring;
+            if (previous.equals(next)) {
+                return;
+            }
+            listeners.forEach(listener -> listener.beforeChange(previous, next));
+            ring = next;
+        }
+        log.info("Cluster members changed from {} to {}", previous.getMembers(), next.getMembers());
+        listeners.forEach(listener -> listener.onChange(previous, next));
+    }
+
+    /**
+     * @param carparkName Name of a carpark
+     * @return Member owning the carpark
+     */
+    public ClusterMember owner(String carparkName) {
+        ClusterMember owner = ring.owner(carparkName);
+        return owner != null ? owner : new ClusterMember(nodeId, null);
+    }
+
+    /**
+     * @param carparkName Name of a carpark
+     * @return <code>true</code> if this node owns the carpark, always the case when the members file is empty
+     */
+    public boolean isLocal(String carparkName) {
+        return owner(carparkName).getId().equals(nodeId);
+    }
+
+    /**
+     * @return Identifier of this node
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return Current members of the cluster
+     */
+    public HashRing ring() {
+        return ring;
+    }
+
+    /**
+     * @param listener Listener notified every time the members of the cluster change
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private HashRing load() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(membersFile)) {
+            properties.load(reader);
+        }
+        List<ClusterMember> members = new ArrayList<>();
+        properties.stringPropertyNames()
+                .forEach(id -> members.add(new ClusterMember(id, URI.create(properties.getProperty(id).trim()))));
+        if (!members.isEmpty() && members.stream().noneMatch(member -> member.getId().equals(nodeId))) {
+            log.warn("Node {} is not listed in {}, it won't own any carpark", nodeId, membersFile);
+        }
+        return new HashRing(members, virtualNodes);
+    }
+
+    /**
+     * Listener of the changes of the cluster members
+     */
+    public interface Listener {
+        /**
+         * Called before the new members are used to route any request, must not block
+         *
+         * @param previous Members before the change
+         * @param next     Members after the change
+         */
+        default void beforeChange(HashRing previous, HashRing next) {
+        }
+
+        /**
+         * @param previous Members before the change
+         * @param current  Members after the change
+         */
+        void onChange(HashRing previous, HashRing current);
+    }
+}
@@ -0,0 +1,104 @@
+package com.ubitricity.carparkubi.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Consistent hashing of the carpark names over the members of the cluster.
+ * <p>
+ * Every member is placed at several positions of a 64 bits ring and a carpark belongs to the first member found
+ * clockwise from the hash of its name. Adding or removing a member only moves the carparks between it and its
+ * neighbours, about one carpark in <i>n</i>, instead of reshuffling all of them like a modulo would. The positions are
+ * kept in sorted primitive arrays and looked up by binary search. A ring is immutable.
+ */
+public final class HashRing {
+    private final List<ClusterMember> members;
+    private final long[] positions;
+    private final int[] owners;
+
+    /**
+     * @param members      Members of the cluster, their identifiers must be unique
+     * @param virtualNodes Positions of every member on the ring
+     */
+    public HashRing(Collection<ClusterMember> members, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("A member needs at least one position on the ring");
+        }
+        this.members = members.stream()
+                .sorted(Comparator.comparing(ClusterMember::getId))
+                .collect(Collectors.toUnmodifiableList());
+        long[] keys = new long[this.members.size() * virtualNodes];
+        for (int member = 0; member < this.members.size(); member++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                keys[member * virtualNodes + node] = hash(this.members.get(member).getId() + "#" + node);
+            }
+        }
+        Integer[] order = new Integer[keys.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> keys[i]).thenComparing(i -> i));
+        positions = new long[keys.length];
+        owners = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            positions[i] = keys[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * @param carparkName Name of a carpark
+     * @return Member owning the carpark, <code>null</code> if the ring is empty
+     */
+    public ClusterMember owner(String carparkName) {
+        if (positions.length == 0) {
+            return null;
+        }
+        int position = Arrays.binarySearch(positions, hash(carparkName));
+        if (position < 0) {
+            position = -position - 1;
+        }
+        return members.get(owners[position == positions.length ? 0 : position]);
+    }
+
+    /**
+     * @return Members of the cluster sorted by identifier
+     */
+    public List<ClusterMember> getMembers() {
+        return members;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes followed by the finalizer of MurmurHash3, which spreads the close hashes of similar
+     * names like <code>node#1</code> and <code>node#2</code> over the whole ring
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof HashRing && members.equals(((HashRing) o).members)
+                && positions.length == ((HashRing) o).positions.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return members.hashCode();
+    }
+}
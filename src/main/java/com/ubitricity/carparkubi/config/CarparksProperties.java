@@ -0,0 +1,272 @@
+package com.ubitricity.carparkubi.config;
+
+import com.ubitricity.carparkubi.services.AllocationPolicies;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuration of the carparks hosted by the application, keyed by carpark name.
+ * <pre>
+ * carparks.sites.ubi.charging-points=10
+ * carparks.sites.ubi.total-power=100
+ * carparks.sites.depot.policy=PRIORITY_TIERS
+ * carparks.sites.depot.points.CP1.tier=1
+ * carparks.sites.depot.points.CP1.max-current=32
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "carparks")
+public class CarparksProperties {
+    private Map<String, Site> sites = new LinkedHashMap<>();
+    private Log log = new Log();
+    private Stream stream = new Stream();
+    private Execution execution = new Execution();
+    private Reactive reactive = new Reactive();
+    private Gateway gateway = new Gateway();
+    private Cluster cluster = new Cluster();
+    private Replication replication = new Replication();
+    private History history = new History();
+    private Spatial spatial = new Spatial();
+
+    @Data
+    public static class Site {
+        private int chargingPoints = CarparkUbi.NUM_CHARGE_POINTS;
+        private int totalPower = CarparkUbi.TOTAL_POWER;
+        /**
+         * Location of the carpark in degrees, carparks without location are not found by the nearest carpark queries
+         */
+        private Double latitude;
+        private Double longitude;
+        /**
+         * Allocation of the current among the connected charging points
+         */
+        private AllocationPolicies policy = AllocationPolicies.NEWEST_FIRST;
+        /**
+         * Current every connected charging point gets at least, the total power divided by the charging points by
+         * default
+         */
+        private Integer minCurrent;
+        /**
+         * Current a charging point gets at most, twice the minimum current by default
+         */
+        private Integer maxCurrent;
+        /**
+         * Limits and priority tier of specific charging points, keyed by identifier
+         */
+        private Map<String, Point> points = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Point {
+        /**
+         * Minimum current of the charging point, the one of the carpark by default
+         */
+        private Integer minCurrent;
+        /**
+         * Maximum current of the charging point, the one of the carpark by default
+         */
+        private Integer maxCurrent;
+        /**
+         * Higher tiers are topped up first by the <code>PRIORITY_TIERS</code> policy
+         */
+        private int tier;
+    }
+
+    @Data
+    public static class Log {
+        /**
+         * Whether state changes are written to the event log and replayed on startup
+         */
+        private boolean enabled = false;
+        private Path directory = Path.of("data", "log");
+        /**
+         * <code>ASYNC</code> acknowledges changes before they are persisted, <code>SYNC</code> waits for the group
+         * commit covering the change
+         */
+        private Durability durability = Durability.ASYNC;
+        private int segmentSize = 64 * 1024 * 1024;
+        /**
+         * Maximum time between two flushes of the log to disk
+         */
+        private Duration flushInterval = Duration.ofMillis(10);
+        /**
+         * Time between two checkpoints of the carparks, the event log is compacted after every checkpoint
+         */
+        private Duration checkpointInterval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Stream {
+        /**
+         * Threads delivering the allocation changes to the subscribers of all the carparks, spare ones are started
+         * while deliveries are blocked on slow clients
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+        /**
+         * Changes buffered per subscriber, a subscriber falling further behind receives a full snapshot instead and is
+         * disconnected if it falls behind again before its pending delivery completed
+         */
+        private int bufferSize = 64;
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Execution {
+        /**
+         * <code>MONITOR</code> applies every notification on the request thread holding the carpark lock,
+         * <code>ACTOR</code> hands them to a single writer per carpark that applies them in batches
+         */
+        private ExecutionMode mode = ExecutionMode.MONITOR;
+        /**
+         * Threads running the writers of all the carparks in <code>ACTOR</code> mode
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+        /**
+         * Pending notifications per carpark, must be a power of two. Notifications beyond it are rejected
+         */
+        private int ringSize = 4096;
+        /**
+         * Maximum number of notifications applied with one redistribution
+         */
+        private int batchSize = 256;
+        /**
+         * Largest list of events accepted by one <code>PATCH</code> request, the carpark lock is held while the whole
+         * list is applied
+         */
+        private int maxRequestEvents = 1024;
+    }
+
+    @Data
+    public static class Reactive {
+        /**
+         * Whether the API is also served by non-blocking handlers on a Netty server
+         */
+        private boolean enabled = false;
+        private int port = 8081;
+    }
+
+    @Data
+    public static class Gateway {
+        /**
+         * Whether the chargers can send their events over the TCP gateway, never on a follower
+         */
+        private boolean enabled = false;
+        private int port = 9090;
+        /**
+         * Event loops sharing the charger connections, each one runs on its own thread with its own selector
+         */
+        private int threads = 1;
+        /**
+         * Largest frame accepted, a charger sending a longer one is disconnected
+         */
+        private int maxFrameLength = 64 * 1024;
+        /**
+         * Direct buffers kept by every event loop for reuse
+         */
+        private int pooledBuffers = 64;
+        /**
+         * Messages waiting to be written to a charger before it is considered too slow and disconnected
+         */
+        private int maxPendingMessages = 1024;
+    }
+
+    @Data
+    public static class Cluster {
+        /**
+         * Whether the carparks are partitioned across the nodes listed in the members file
+         */
+        private boolean enabled = false;
+        /**
+         * Identifier of this node in the members file
+         */
+        private String nodeId;
+        /**
+         * Properties file listing the nodes of the cluster as <code>node-id=http://host:port</code>
+         */
+        private Path membersFile = Path.of("cluster.properties");
+        /**
+         * Positions of every node on the hash ring, more positions spread the carparks more evenly
+         */
+        private int virtualNodes = 128;
+        /**
+         * Time between two reads of the members file
+         */
+        private Duration refreshInterval = Duration.ofSeconds(5);
+        /**
+         * Time to wait for the owner of a carpark to answer a forwarded request
+         */
+        private Duration forwardTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Replication {
+        /**
+         * <code>PRIMARY</code> streams the changes of its carparks to the followers, <code>FOLLOWER</code> applies the
+         * changes of the primary and only serves reads
+         */
+        private ReplicationRole role = ReplicationRole.NONE;
+        /**
+         * Base URI of the primary, required by the followers
+         */
+        private URI primaryUri;
+        /**
+         * Changes kept in memory by the primary, a follower further behind receives the checkpoints of the carparks
+         */
+        private int retainedRecords = 100_000;
+        /**
+         * Largest number of changes sent to a follower in one response
+         */
+        private int batchSize = 1000;
+        /**
+         * Time the primary holds the request of a follower waiting for new changes
+         */
+        private Duration pollTimeout = Duration.ofSeconds(10);
+        /**
+         * Time a report asking for a minimum version waits for the carpark to reach it
+         */
+        private Duration readTimeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class History {
+        /**
+         * Allocation changes kept off-heap per charging point for the history and energy queries
+         */
+        private int capacity = CarparkUbi.HISTORY_CAPACITY;
+    }
+
+    @Data
+    public static class Spatial {
+        /**
+         * Side of the cells of the grid indexing the carparks by location, in degrees
+         */
+        private double cellSize = 0.01;
+        /**
+         * Largest number of carparks returned by a nearest carpark query
+         */
+        private int maxResults = 50;
+    }
+
+    public enum ExecutionMode {
+        MONITOR,
+        ACTOR
+    }
+
+    public enum ReplicationRole {
+        NONE,
+        PRIMARY,
+        FOLLOWER
+    }
+
+    public enum Durability {
+        ASYNC,
+        SYNC
+    }
+}
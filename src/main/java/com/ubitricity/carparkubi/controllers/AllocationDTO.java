@@ -0,0 +1,23 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AllocationDTO {
+    long version;
+    List<ChargingPointDTO> chargingPoints;
+
+    public static AllocationDTO of(long version, List<ChargingPoint> chargingPoints) {
+        return new AllocationDTO(version, chargingPoints.stream()
+                .map(ChargingPointDTO::new)
+                .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,20 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.AllocationSample;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AllocationSampleDTO {
+    long timestamp;
+    int current;
+    boolean connected;
+    double ampHours;
+
+    public AllocationSampleDTO(AllocationSample sample) {
+        this(sample.getTimestamp(), sample.getCurrent(), sample.isConnected(), sample.getAmpHours());
+    }
+}
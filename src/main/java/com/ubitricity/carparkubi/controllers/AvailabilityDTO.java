@@ -0,0 +1,23 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityDTO {
+    long version;
+    int free;
+    int fast;
+    int slow;
+    long spareCurrent;
+    boolean fastChargeAvailable;
+
+    public AvailabilityDTO(CarparkAvailability availability) {
+        this(availability.getVersion(), availability.getFree(), availability.getFast(), availability.getSlow(),
+                availability.getSpareCurrent(), availability.isFastChargeAvailable());
+    }
+}
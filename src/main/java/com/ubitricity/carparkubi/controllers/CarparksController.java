@@ -1,52 +1,212 @@
 package com.ubitricity.carparkubi.controllers;
 
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.AllocationFeed;
+import com.ubitricity.carparkubi.services.AllocationStreams;
+import com.ubitricity.carparkubi.services.CarparkBusyException;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
 import com.ubitricity.carparkubi.services.CarparkUbi;
 import com.ubitricity.carparkubi.services.ChargingPointNotFoundException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RestController
 @RequestMapping(CarparksController.CARPARKS)
 public class CarparksController {
     public static final String CARPARKS = "carparks";
+    public static final String VERSION_HEADER = "Carpark-Version";
     private static final String CHARGING_POINTS = "chargingPoints";
 
-    private final CarparkUbi carparkUbi;
+    private final CarparkRegistry carparkRegistry;
+    private final CarparkDispatcher carparkDispatcher;
+    private final AllocationStreams allocationStreams;
+    private final ReportCache reportCache;
+    private final CarparksProperties properties;
 
-    public CarparksController(CarparkUbi carparkUbi) {
-        this.carparkUbi = carparkUbi;
+    public CarparksController(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher,
+                              AllocationStreams allocationStreams, ReportCache reportCache,
+                              CarparksProperties properties) {
+        this.carparkRegistry = carparkRegistry;
+        this.carparkDispatcher = carparkDispatcher;
+        this.allocationStreams = allocationStreams;
+        this.reportCache = reportCache;
+        this.properties = properties;
     }
 
     @PutMapping(path = "/{carparkName}/" + CHARGING_POINTS + "/{chargingPointId}")
     public ChargingPointDTO updateChargingPoint(@PathVariable String carparkName,
                                                 @PathVariable String chargingPointId,
                                                 @RequestBody ChargingPointDTO chargingPoint) {
-        if (CarparkUbi.NAME.equals(carparkName)) {
-            try {
-                if (chargingPoint.getConnected()) {
-                    return new ChargingPointDTO(carparkUbi.connect(chargingPointId));
-                }
-                return new ChargingPointDTO(carparkUbi.disconnect(chargingPointId));
-            } catch (ChargingPointNotFoundException e) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Charging point not found", null);
-            }
+        CarparkUbi carpark = findCarpark(carparkName);
+        if (chargingPoint.getConnected() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing connected value", null);
+        }
+        try {
+            return new ChargingPointDTO(carparkDispatcher.update(carpark, chargingPointId,
+                    chargingPoint.getConnected(), chargingPoint.sequenceOrNone()));
+        } catch (ChargingPointNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Charging point not found", null);
+        } catch (CarparkBusyException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Carpark busy", null);
         }
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Carpark not found", null);
     }
 
+    @PatchMapping(path = "/{carparkName}/" + CHARGING_POINTS)
+    public ChargingPointsBatchDTO updateChargingPoints(@PathVariable String carparkName,
+                                                       @RequestBody List<ChargingPointDTO> chargingPoints) {
+        CarparkUbi carpark = findCarpark(carparkName);
+        if (!isValidBatch(chargingPoints, properties.getExecution().getMaxRequestEvents())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid batch", null);
+        }
+        BatchResult result;
+        try {
+            result = carparkDispatcher.apply(carpark, chargingPoints.stream()
+                    .map(ChargingPointDTO::toEvent)
+                    .collect(Collectors.toList()));
+        } catch (CarparkBusyException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Carpark busy", null);
+        }
+        return new ChargingPointsBatchDTO(result.getSnapshot().getVersion(),
+                IntStream.range(0, chargingPoints.size())
+                        .mapToObj(i -> new EventResultDTO(chargingPoints.get(i).getId(), result.getOutcomes().get(i)))
+                        .collect(Collectors.toList()),
+                result.getSnapshot().getChargingPoints()
+                        .stream()
+                        .map(ChargingPointDTO::new)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * The full report is written from the bytes cached for the current snapshot of the carpark. A client reading its
+     * own writes from a follower sends the version returned by the primary, the follower waits a moment for it. A
+     * <code>since</code> token of another epoch gets the full report as changes.
+     */
     @GetMapping(path = "/{carparkName}/" + CHARGING_POINTS)
-    public List<ChargingPointDTO> getChargingPointsReport(@PathVariable String carparkName) {
-        if (carparkName.equals(CarparkUbi.NAME)) {
-            return carparkUbi.describe()
-                    .stream()
-                    .map(ChargingPointDTO::new)
-                    .collect(Collectors.toList());
-        }
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Carpark not found", null);
+    public ResponseEntity<byte[]> getChargingPointsReport(@PathVariable String carparkName,
+                                                          @RequestParam(required = false) String since,
+                                                          @RequestParam(required = false) Long minVersion,
+                                                          WebRequest request) {
+        CarparkUbi carpark = findCarpark(carparkName);
+        CarparkSnapshot snapshot = minVersion == null ? carpark.snapshot() : awaitVersion(carpark, minVersion);
+        String eTag = ReportVersions.eTagOf(snapshot);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        byte[] report;
+        try {
+            report = since == null
+                    ? reportCache.report(carpark, snapshot)
+                    : reportCache.serialize(ReportVersions.changedSince(snapshot, since));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version", null);
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .header(VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(report);
+    }
+
+    /**
+     * Free charging points and spare current, answered from the counters of the carpark
+     */
+    @GetMapping(path = "/{carparkName}/availability")
+    public AvailabilityDTO getAvailability(@PathVariable String carparkName) {
+        return new AvailabilityDTO(findCarpark(carparkName).availability());
+    }
+
+    /**
+     * Allocation changes of a charging point answered from the history kept by the carpark, which only covers the
+     * latest changes
+     */
+    @GetMapping(path = "/{carparkName}/" + CHARGING_POINTS + "/{chargingPointId}/history")
+    public List<AllocationSampleDTO> getChargingPointHistory(@PathVariable String carparkName,
+                                                            @PathVariable String chargingPointId,
+                                                            @RequestParam(defaultValue = "0") long from,
+                                                            @RequestParam(required = false) Long to) {
+        CarparkUbi carpark = findCarpark(carparkName);
+        return carpark.history()
+                .samples(findChargingPoint(carpark, chargingPointId), from, to == null ? Long.MAX_VALUE : to)
+                .stream()
+                .map(AllocationSampleDTO::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Charge delivered by a charging point, up to now by default
+     */
+    @GetMapping(path = "/{carparkName}/" + CHARGING_POINTS + "/{chargingPointId}/energy")
+    public EnergyDTO getChargingPointEnergy(@PathVariable String carparkName,
+                                            @PathVariable String chargingPointId,
+                                            @RequestParam(defaultValue = "0") long from,
+                                            @RequestParam(required = false) Long to) {
+        CarparkUbi carpark = findCarpark(carparkName);
+        return new EnergyDTO(chargingPointId, carpark.history().energy(findChargingPoint(carpark, chargingPointId),
+                from, to == null ? System.currentTimeMillis() : to));
+    }
+
+    @GetMapping(path = "/{carparkName}/" + CHARGING_POINTS, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChargingPoints(@PathVariable String carparkName) {
+        CarparkUbi carpark = findCarpark(carparkName);
+        SseEmitter emitter = new SseEmitter(properties.getStream().getTimeout().toMillis());
+        AllocationFeed.Subscription subscription = allocationStreams.subscribe(carpark, new SseAllocationSubscriber(emitter));
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+
+    private CarparkSnapshot awaitVersion(CarparkUbi carpark, long minVersion) {
+        try {
+            CarparkSnapshot snapshot = carpark.awaitVersion(minVersion, properties.getReplication().getReadTimeout());
+            if (snapshot.getVersion() < minVersion) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Version not replicated yet", null);
+            }
+            return snapshot;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted", e);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the batch holds between one and the given number of events, each one with an
+     * identifier and a <code>connected</code> value
+     */
+    static boolean isValidBatch(List<ChargingPointDTO> chargingPoints, int maxEvents) {
+        return !chargingPoints.isEmpty() && chargingPoints.size() <= maxEvents
+                && chargingPoints.stream().allMatch(cp -> cp != null && cp.getId() != null && !cp.getId().isBlank()
+                && cp.getConnected() != null);
+    }
+
+    private static int findChargingPoint(CarparkUbi carpark, String chargingPointId) {
+        try {
+            return carpark.indexOf(chargingPointId);
+        } catch (ChargingPointNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Charging point not found", null);
+        }
+    }
+
+    private CarparkUbi findCarpark(String carparkName) {
+        try {
+            return carparkRegistry.find(carparkName);
+        } catch (CarparkNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Carpark not found", null);
+        }
     }
 
 }
@@ -0,0 +1,224 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.services.AllocationFeed;
+import com.ubitricity.carparkubi.services.AllocationStreams;
+import com.ubitricity.carparkubi.services.AllocationSubscriber;
+import com.ubitricity.carparkubi.services.CarparkBusyException;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.ChargingPointNotFoundException;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PATCH;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
+import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Non-blocking handlers of the same API served by {@link CarparksController}.
+ * <p>
+ * Reports and streams never block, they read the published snapshots. Notifications are completed by the future of
+ * the carpark writer in <code>ACTOR</code> mode, in <code>MONITOR</code> mode and for batches the carpark lock is
+ * taken on the bounded elastic scheduler so the event loop never waits for it.
+ */
+public class CarparksHandler {
+    private static final String CHARGING_POINTS = "/" + CarparksController.CARPARKS + "/{carparkName}/chargingPoints";
+    private static final ParameterizedTypeReference<ServerSentEvent<AllocationDTO>> EVENT_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private final CarparkRegistry carparkRegistry;
+    private final CarparkDispatcher carparkDispatcher;
+    private final AllocationStreams allocationStreams;
+    private final ReportCache reportCache;
+    private final int streamBufferSize;
+    private final int maxRequestEvents;
+
+    public CarparksHandler(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher,
+                           AllocationStreams allocationStreams, ReportCache reportCache, int streamBufferSize,
+                           int maxRequestEvents) {
+        this.carparkRegistry = carparkRegistry;
+        this.carparkDispatcher = carparkDispatcher;
+        this.allocationStreams = allocationStreams;
+        this.reportCache = reportCache;
+        this.streamBufferSize = streamBufferSize;
+        this.maxRequestEvents = maxRequestEvents;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return route(PUT(CHARGING_POINTS + "/{chargingPointId}"), this::updateChargingPoint)
+                .andRoute(PATCH(CHARGING_POINTS), this::updateChargingPoints)
+                .andRoute(GET(CHARGING_POINTS).and(accept(MediaType.APPLICATION_JSON)), this::getChargingPointsReport)
+                .andRoute(GET(CHARGING_POINTS).and(accept(MediaType.TEXT_EVENT_STREAM)), this::streamChargingPoints);
+    }
+
+    /**
+     * Routes of a follower, whose carparks only change by replication: the notifications are rejected like the
+     * servlet endpoint does
+     */
+    public RouterFunction<ServerResponse> readOnlyRoutes() {
+        return routes().filter((request, next) -> HttpMethod.GET.equals(request.method())
+                || HttpMethod.HEAD.equals(request.method()) || HttpMethod.OPTIONS.equals(request.method())
+                ? next.handle(request)
+                : ServerResponse.status(HttpStatus.METHOD_NOT_ALLOWED)
+                .header(HttpHeaders.ALLOW, "GET, HEAD, OPTIONS")
+                .build());
+    }
+
+    /**
+     * A missing body or <code>connected</code> value is rejected like the servlet endpoint does
+     */
+    Mono<ServerResponse> updateChargingPoint(ServerRequest request) {
+        String chargingPointId = request.pathVariable("chargingPointId");
+        return Mono.fromCallable(() -> findCarpark(request))
+                .zipWith(request.bodyToMono(ChargingPointDTO.class).filter(cp -> cp.getConnected() != null))
+                .flatMap(tuple -> update(tuple.getT1(), chargingPointId, tuple.getT2().getConnected(),
+                        tuple.getT2().sequenceOrNone()))
+                .flatMap(chargingPoint -> ServerResponse.ok().bodyValue(new ChargingPointDTO(chargingPoint)))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.BAD_REQUEST).build()))
+                .onErrorResume(CarparkNotFoundException.class, e -> ServerResponse.status(HttpStatus.NOT_FOUND).build())
+                .onErrorResume(ChargingPointNotFoundException.class, e -> ServerResponse.status(HttpStatus.NOT_FOUND).build())
+                .onErrorResume(CarparkBusyException.class, e -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+    Mono<ServerResponse> updateChargingPoints(ServerRequest request) {
+        return Mono.fromCallable(() -> findCarpark(request))
+                .zipWith(request.bodyToFlux(ChargingPointDTO.class).collectList())
+                .flatMap(tuple -> {
+                    List<ChargingPointDTO> chargingPoints = tuple.getT2();
+                    if (!CarparksController.isValidBatch(chargingPoints, maxRequestEvents)) {
+                        return ServerResponse.status(HttpStatus.BAD_REQUEST).build();
+                    }
+                    List<ChargingPointEvent> events = chargingPoints.stream()
+                            .map(ChargingPointDTO::toEvent)
+                            .collect(Collectors.toList());
+                    return apply(tuple.getT1(), events)
+                            .flatMap(result -> ServerResponse.ok().bodyValue(toBatchDTO(chargingPoints, result)));
+                })
+                .onErrorResume(CarparkNotFoundException.class, e -> ServerResponse.status(HttpStatus.NOT_FOUND).build())
+                .onErrorResume(CarparkBusyException.class, e -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+    Mono<ServerResponse> getChargingPointsReport(ServerRequest request) {
+        CarparkUbi carpark;
+        try {
+            carpark = findCarpark(request);
+        } catch (CarparkNotFoundException e) {
+            return ServerResponse.status(HttpStatus.NOT_FOUND).build();
+        }
+        CarparkSnapshot snapshot = carpark.snapshot();
+        String eTag = ReportVersions.eTagOf(snapshot);
+        return request.checkNotModified(eTag)
+                .switchIfEmpty(Mono.defer(() -> {
+                    byte[] report = request.queryParam("since")
+                            .map(since -> reportCache.serialize(ReportVersions.changedSince(snapshot, since)))
+                            .orElseGet(() -> reportCache.report(carpark, snapshot));
+                    return ServerResponse.ok()
+                            .eTag(eTag)
+                            .header(CarparksController.VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(report);
+                }))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.status(HttpStatus.BAD_REQUEST).build());
+    }
+
+    /**
+     * Bridges the allocation feed of the carpark to the response. A client not reading its events fast enough
+     * overflows the buffer and gets disconnected, it receives a fresh snapshot when it reconnects.
+     */
+    Mono<ServerResponse> streamChargingPoints(ServerRequest request) {
+        CarparkUbi carpark;
+        try {
+            carpark = findCarpark(request);
+        } catch (CarparkNotFoundException e) {
+            return ServerResponse.status(HttpStatus.NOT_FOUND).build();
+        }
+        Flux<ServerSentEvent<AllocationDTO>> events = Flux.<ServerSentEvent<AllocationDTO>>create(sink -> {
+            AllocationFeed.Subscription subscription = allocationStreams.subscribe(carpark, new AllocationSubscriber() {
+                @Override
+                public void onSnapshot(CarparkSnapshot snapshot) {
+                    sink.next(event(SseAllocationSubscriber.SNAPSHOT_EVENT, ReportVersions.tokenOf(snapshot),
+                            AllocationDTO.of(snapshot.getVersion(), snapshot.getChargingPoints())));
+                }
+
+                @Override
+                public void onDelta(AllocationDelta delta) {
+                    sink.next(event(SseAllocationSubscriber.DELTA_EVENT,
+                            ReportVersions.tokenOf(delta.getEpoch(), delta.getVersion()),
+                            AllocationDTO.of(delta.getVersion(), delta.getChargingPoints())));
+                }
+
+                @Override
+                public void onDisconnect() {
+                    sink.complete();
+                }
+            });
+            sink.onDispose(subscription::cancel);
+        }).onBackpressureBuffer(streamBufferSize, BufferOverflowStrategy.ERROR);
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(events, EVENT_TYPE);
+    }
+
+    private Mono<ChargingPoint> update(CarparkUbi carpark, String chargingPointId, boolean connected, int sequence) {
+        if (carparkDispatcher.isAsynchronous()) {
+            return Mono.fromFuture(() -> carparkDispatcher.submit(carpark, chargingPointId, connected, sequence));
+        }
+        return Mono.fromCallable(() -> carparkDispatcher.update(carpark, chargingPointId, connected, sequence))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<BatchResult> apply(CarparkUbi carpark, List<ChargingPointEvent> events) {
+        if (carparkDispatcher.isAsynchronous()) {
+            return Mono.fromFuture(() -> carparkDispatcher.submit(carpark, events));
+        }
+        return Mono.fromCallable(() -> carparkDispatcher.apply(carpark, events))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private CarparkUbi findCarpark(ServerRequest request) {
+        return carparkRegistry.find(request.pathVariable("carparkName"));
+    }
+
+    private static ServerSentEvent<AllocationDTO> event(String name, String id, AllocationDTO allocation) {
+        return ServerSentEvent.builder(allocation)
+                .id(id)
+                .event(name)
+                .build();
+    }
+
+    private static ChargingPointsBatchDTO toBatchDTO(List<ChargingPointDTO> chargingPoints, BatchResult result) {
+        return new ChargingPointsBatchDTO(result.getSnapshot().getVersion(),
+                IntStream.range(0, chargingPoints.size())
+                        .mapToObj(i -> new EventResultDTO(chargingPoints.get(i).getId(), result.getOutcomes().get(i)))
+                        .collect(Collectors.toList()),
+                result.getSnapshot().getChargingPoints()
+                        .stream()
+                        .map(ChargingPointDTO::new)
+                        .collect(Collectors.toList()));
+    }
+}
@@ -1,6 +1,9 @@
 package com.ubitricity.carparkubi.controllers;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.services.EventBatch;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,8 +15,27 @@ public class ChargingPointDTO {
     String id;
     Integer current;
     Boolean connected;
+    /**
+     * Optional sequence of a notification, increasing per charging point
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Integer sequence;
 
     public ChargingPointDTO(ChargingPoint chargingPoint) {
-        this(chargingPoint.getIdentifier(), chargingPoint.getCurrent(), chargingPoint.getConnected());
+        this(chargingPoint.getIdentifier(), chargingPoint.getCurrent(), chargingPoint.getConnected(), null);
+    }
+
+    /**
+     * @return Sequence of the notification, {@link EventBatch#NO_SEQUENCE} if not numbered
+     */
+    int sequenceOrNone() {
+        return sequence == null ? EventBatch.NO_SEQUENCE : sequence;
+    }
+
+    /**
+     * @return Notification of the charging point, the <code>connected</code> value must be set
+     */
+    ChargingPointEvent toEvent() {
+        return new ChargingPointEvent(id, connected, sequenceOrNone());
     }
 }
@@ -0,0 +1,16 @@
+package com.ubitricity.carparkubi.controllers;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChargingPointsBatchDTO {
+    long version;
+    List<EventResultDTO> results;
+    List<ChargingPointDTO> chargingPoints;
+}
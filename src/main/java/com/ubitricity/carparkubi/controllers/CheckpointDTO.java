@@ -0,0 +1,21 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CheckpointDTO {
+    String carparkName;
+    long version;
+    List<String> connectedChargingPoints;
+
+    public CheckpointDTO(CarparkCheckpoint checkpoint) {
+        this(checkpoint.getCarparkName(), checkpoint.getVersion(), checkpoint.getConnectedChargingPoints());
+    }
+}
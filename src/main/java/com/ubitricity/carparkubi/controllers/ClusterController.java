@@ -0,0 +1,57 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.cluster.ClusterHandoff;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Endpoints the nodes of a cluster call on each other, not meant for the clients of the carparks.
+ */
+@RestController
+@RequestMapping(ClusterController.CLUSTER)
+@ConditionalOnProperty(name = "carparks.cluster.enabled", havingValue = "true")
+public class ClusterController {
+    public static final String CLUSTER = "cluster";
+    public static final String CHECKPOINT = "/carparks/{carparkName}/checkpoint";
+
+    private final CarparkRegistry carparkRegistry;
+    private final ClusterHandoff handoff;
+
+    public ClusterController(CarparkRegistry carparkRegistry, ClusterHandoff handoff) {
+        this.carparkRegistry = carparkRegistry;
+        this.handoff = handoff;
+    }
+
+    /**
+     * Takes over the state of a carpark from its previous owner, whatever the version of the carpark on this node, and
+     * releases the writes held until then
+     *
+     * @param carparkName Name of the carpark
+     * @param checkpoint  State of the carpark on its previous owner
+     * @return <code>204</code> once the state is adopted
+     */
+    @PutMapping(path = CHECKPOINT)
+    public ResponseEntity<Void> handOver(@PathVariable String carparkName, @RequestBody CheckpointDTO checkpoint) {
+        CarparkUbi carpark;
+        try {
+            carpark = carparkRegistry.find(carparkName);
+        } catch (CarparkNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Carpark not found", null);
+        }
+        carpark.takeOver(new CarparkCheckpoint(carparkName, checkpoint.getVersion(),
+                checkpoint.getConnectedChargingPoints()));
+        handoff.received(carparkName);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,25 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.EnergyReport;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EnergyDTO {
+    String id;
+    long from;
+    long to;
+    double ampHours;
+    double totalAmpHours;
+    boolean connected;
+    long sessionStart;
+    double sessionAmpHours;
+
+    public EnergyDTO(String id, EnergyReport report) {
+        this(id, report.getFrom(), report.getTo(), report.getAmpHours(), report.getTotalAmpHours(),
+                report.isConnected(), report.getSessionStart(), report.getSessionAmpHours());
+    }
+}
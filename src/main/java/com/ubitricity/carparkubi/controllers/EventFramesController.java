@@ -0,0 +1,71 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.ingestion.EventFrames;
+import com.ubitricity.carparkubi.ingestion.MalformedFrameException;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.services.CarparkBusyException;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventBatch;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ingestion of binary event frames sent by the charge point gateways, see {@link EventFrames} for the format.
+ */
+@RestController
+@RequestMapping(CarparksController.CARPARKS)
+public class EventFramesController {
+    private static final ThreadLocal<EventBatch> BATCHES = ThreadLocal.withInitial(EventBatch::new);
+
+    private final CarparkRegistry carparkRegistry;
+    private final CarparkDispatcher carparkDispatcher;
+
+    public EventFramesController(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher) {
+        this.carparkRegistry = carparkRegistry;
+        this.carparkDispatcher = carparkDispatcher;
+    }
+
+    /**
+     * Applies all the events of the frame to its carpark as a single batch
+     *
+     * @param frame Single event frame
+     * @return Acknowledgement with the outcome of every event
+     */
+    @PostMapping(path = "/events", consumes = EventFrames.MEDIA_TYPE, produces = EventFrames.MEDIA_TYPE)
+    public byte[] ingestEvents(@RequestBody byte[] frame) {
+        EventBatch batch = BATCHES.get();
+        batch.clear();
+        String carparkName;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            carparkName = EventFrames.decode(buffer, batch);
+            if (buffer.hasRemaining()) {
+                throw new MalformedFrameException("Unexpected bytes after the frame");
+            }
+        } catch (MalformedFrameException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), null);
+        }
+        CarparkUbi carpark;
+        try {
+            carpark = carparkRegistry.find(carparkName);
+        } catch (CarparkNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Carpark not found", null);
+        }
+        CarparkSnapshot snapshot;
+        try {
+            snapshot = carparkDispatcher.apply(carpark, batch);
+        } catch (CarparkBusyException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Carpark busy", null);
+        }
+        return EventFrames.acknowledge(snapshot.getVersion(), batch);
+    }
+}
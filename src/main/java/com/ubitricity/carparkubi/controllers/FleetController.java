@@ -0,0 +1,100 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.model.CarparkSummary;
+import com.ubitricity.carparkubi.model.FleetSummary;
+import com.ubitricity.carparkubi.model.FleetTotals;
+import com.ubitricity.carparkubi.services.FleetReport;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Occupancy and load of all the carparks hosted by this node.
+ */
+@RestController
+@RequestMapping(FleetController.FLEET)
+public class FleetController {
+    public static final String FLEET = "fleet";
+    static final int MAX_LIMIT = 1000;
+
+    private final FleetReport fleetReport;
+    private final JsonFactory jsonFactory;
+
+    public FleetController(FleetReport fleetReport, ObjectMapper objectMapper) {
+        this.fleetReport = fleetReport;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * The page is written with a streaming generator straight from the summaries, the totals cover every matching
+     * carpark and not only the page.
+     *
+     * @param prefix  Start of the names of the carparks to be listed
+     * @param minFree Minimum number of free charging points of the carparks to be listed
+     * @param cursor  <code>next</code> of the previous page
+     * @param limit   Maximum number of carparks listed
+     */
+    @GetMapping
+    public void getFleetReport(@RequestParam(defaultValue = "") String prefix,
+                               @RequestParam(defaultValue = "0") int minFree,
+                               @RequestParam(required = false) String cursor,
+                               @RequestParam(defaultValue = "100") int limit,
+                               HttpServletResponse response) throws IOException {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The limit must be between 1 and " + MAX_LIMIT, null);
+        }
+        FleetSummary summary = fleetReport.summarize(prefix, minFree);
+        int from = summary.indexAfter(cursor);
+        int to = Math.min(from + limit, summary.getCarparks().size());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            writeTotals(generator, summary.getTotals());
+            generator.writeArrayFieldStart("carparks");
+            for (int i = from; i < to; i++) {
+                writeCarpark(generator, summary.getCarparks().get(i));
+            }
+            generator.writeEndArray();
+            if (to < summary.getCarparks().size()) {
+                generator.writeStringField("next", summary.getCarparks().get(to - 1).getName());
+            } else {
+                generator.writeNullField("next");
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeTotals(JsonGenerator generator, FleetTotals totals) throws IOException {
+        generator.writeObjectFieldStart("totals");
+        generator.writeNumberField("carparks", totals.getCarparks());
+        generator.writeNumberField("chargingPoints", totals.getChargingPoints());
+        generator.writeNumberField("free", totals.getFree());
+        generator.writeNumberField("occupied", totals.getOccupied());
+        generator.writeNumberField("fast", totals.getFast());
+        generator.writeNumberField("slow", totals.getSlow());
+        generator.writeNumberField("current", totals.getCurrent());
+        generator.writeEndObject();
+    }
+
+    private static void writeCarpark(JsonGenerator generator, CarparkSummary carpark) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", carpark.getName());
+        generator.writeNumberField("chargingPoints", carpark.getChargingPoints());
+        generator.writeNumberField("free", carpark.getFree());
+        generator.writeNumberField("occupied", carpark.getOccupied());
+        generator.writeNumberField("fast", carpark.getFast());
+        generator.writeNumberField("slow", carpark.getSlow());
+        generator.writeNumberField("current", carpark.getCurrent());
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,22 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.NearbyCarpark;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearbyCarparkDTO {
+    String name;
+    double latitude;
+    double longitude;
+    long distance;
+    AvailabilityDTO availability;
+
+    public NearbyCarparkDTO(NearbyCarpark carpark) {
+        this(carpark.getName(), carpark.getLatitude(), carpark.getLongitude(), Math.round(carpark.getDistance()),
+                new AvailabilityDTO(carpark.getAvailability()));
+    }
+}
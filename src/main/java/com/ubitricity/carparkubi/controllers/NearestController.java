@@ -0,0 +1,44 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.services.SpatialIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Nearest carparks where a vehicle can be connected, among the carparks hosted by this node.
+ */
+@RestController
+@RequestMapping(NearestController.NEAREST)
+public class NearestController {
+    public static final String NEAREST = "nearest";
+
+    private final SpatialIndex spatialIndex;
+
+    public NearestController(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    @GetMapping
+    public List<NearbyCarparkDTO> getNearestCarparks(@RequestParam double latitude,
+                                                     @RequestParam double longitude,
+                                                     @RequestParam(defaultValue = "5") int k,
+                                                     @RequestParam(defaultValue = "false") boolean fastCharge,
+                                                     @RequestParam(required = false) Double maxDistance) {
+        try {
+            return spatialIndex.nearest(latitude, longitude, k, fastCharge,
+                            maxDistance == null ? Double.POSITIVE_INFINITY : maxDistance)
+                    .stream()
+                    .map(NearbyCarparkDTO::new)
+                    .collect(Collectors.toList());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), null);
+        }
+    }
+}
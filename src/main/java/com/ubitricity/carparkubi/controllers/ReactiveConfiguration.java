@@ -0,0 +1,46 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.AllocationStreams;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+@Configuration
+@ConditionalOnProperty(name = "carparks.reactive.enabled", havingValue = "true")
+public class ReactiveConfiguration {
+
+    @Bean
+    public CarparksHandler carparksHandler(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher,
+                                           AllocationStreams allocationStreams, ReportCache reportCache,
+                                           CarparksProperties properties) {
+        return new CarparksHandler(carparkRegistry, carparkDispatcher, allocationStreams, reportCache,
+                properties.getStream().getBufferSize(), properties.getExecution().getMaxRequestEvents());
+    }
+
+    /**
+     * @return Netty server on <code>carparks.reactive.port</code> sharing the JSON configuration of the servlet stack,
+     * read-only on a follower
+     */
+    @Bean
+    public ReactiveServer reactiveServer(CarparksHandler carparksHandler, CarparksProperties properties,
+                                         ObjectMapper objectMapper) {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        boolean follower = properties.getReplication().getRole() == CarparksProperties.ReplicationRole.FOLLOWER;
+        return new ReactiveServer(RouterFunctions.toHttpHandler(
+                follower ? carparksHandler.readOnlyRoutes() : carparksHandler.routes(), strategies),
+                properties.getReactive().getPort());
+    }
+}
@@ -0,0 +1,55 @@
+package com.ubitricity.carparkubi.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Netty server running the non-blocking handlers next to the servlet container. Its lifecycle follows the
+ * application context.
+ */
+@Slf4j
+public class ReactiveServer implements SmartLifecycle {
+    private final HttpHandler httpHandler;
+    private final int port;
+    private volatile DisposableServer server;
+
+    /**
+     * @param httpHandler Handler of all the requests
+     * @param port        Port to listen on, <code>0</code> for a random one
+     */
+    public ReactiveServer(HttpHandler httpHandler, int port) {
+        this.httpHandler = httpHandler;
+        this.port = port;
+    }
+
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("Reactive server started on port {}", server.port());
+    }
+
+    @Override
+    public void stop() {
+        server.disposeNow();
+        server = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * @return Port the server listens on
+     */
+    public int getPort() {
+        return server.port();
+    }
+}
@@ -0,0 +1,29 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.replication.ReplicaFollower;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Replication status of a follower.
+ */
+@RestController
+@RequestMapping(ReplicationController.REPLICATION)
+@ConditionalOnProperty(name = "carparks.replication.role", havingValue = "FOLLOWER")
+public class ReplicaController {
+    private final ReplicaFollower follower;
+
+    public ReplicaController(ReplicaFollower follower) {
+        this.follower = follower;
+    }
+
+    /**
+     * @return Sequence applied by this follower and its lag behind the primary
+     */
+    @GetMapping(path = "/status")
+    public ReplicationStatusDTO status() {
+        return follower.status();
+    }
+}
@@ -0,0 +1,27 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.replication.ReplicatedRecord;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReplicatedRecordDTO {
+    long sequence;
+    long timestamp;
+    String carparkName;
+    long version;
+    List<ChargingPointDTO> events;
+
+    public ReplicatedRecordDTO(ReplicatedRecord replicated) {
+        this(replicated.getSequence(), replicated.getTimestamp(), replicated.getRecord().getCarparkName(),
+                replicated.getRecord().getVersion(), replicated.getRecord().getEvents().stream()
+                        .map(event -> new ChargingPointDTO(event.getIdentifier(), null, event.isConnected(), null))
+                        .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,17 @@
+package com.ubitricity.carparkubi.controllers;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReplicationBatchDTO {
+    long epoch;
+    long sequence;
+    List<CheckpointDTO> checkpoints;
+    List<ReplicatedRecordDTO> records;
+}
@@ -0,0 +1,70 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.replication.ReplicatedRecord;
+import com.ubitricity.carparkubi.replication.ReplicationLog;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Changes of the carparks of the primary, read by the followers.
+ */
+@RestController
+@RequestMapping(ReplicationController.REPLICATION)
+@ConditionalOnProperty(name = "carparks.replication.role", havingValue = "PRIMARY")
+public class ReplicationController {
+    public static final String REPLICATION = "replication";
+    public static final String RECORDS = "/records";
+
+    private final ReplicationLog replicationLog;
+    private final CarparkRegistry carparkRegistry;
+    private final CarparksProperties.Replication properties;
+
+    public ReplicationController(ReplicationLog replicationLog, CarparkRegistry carparkRegistry,
+                                 CarparksProperties properties) {
+        this.replicationLog = replicationLog;
+        this.carparkRegistry = carparkRegistry;
+        this.properties = properties.getReplication();
+    }
+
+    /**
+     * Long poll of the changes following the last one applied by a follower. A follower of another run of the
+     * primary, or too far behind, receives the checkpoints of all the carparks and the sequence they cover instead.
+     *
+     * @param epoch Run of the primary the follower is following, <code>0</code> for a new follower
+     * @param after Sequence of the last change applied by the follower
+     * @return Following changes, or checkpoints to start over from
+     */
+    @GetMapping(path = RECORDS)
+    public ReplicationBatchDTO records(@RequestParam(defaultValue = "0") long epoch,
+                                       @RequestParam(defaultValue = "0") long after) {
+        List<ReplicatedRecord> records = null;
+        if (epoch == replicationLog.epoch()) {
+            try {
+                records = replicationLog.read(after, properties.getBatchSize(), properties.getPollTimeout().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted", e);
+            }
+        }
+        if (records == null) {
+            // The head is read first, the checkpoints taken after it cover at least all the changes up to it
+            long head = replicationLog.head();
+            return new ReplicationBatchDTO(replicationLog.epoch(), head, carparkRegistry.checkpoints().stream()
+                    .map(CheckpointDTO::new)
+                    .collect(Collectors.toList()), List.of());
+        }
+        long sequence = records.isEmpty() ? after : records.get(records.size() - 1).getSequence();
+        return new ReplicationBatchDTO(replicationLog.epoch(), Math.max(sequence, replicationLog.head()), null,
+                records.stream().map(ReplicatedRecordDTO::new).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,17 @@
+package com.ubitricity.carparkubi.controllers;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReplicationStatusDTO {
+    String primary;
+    boolean connected;
+    long appliedSequence;
+    long primarySequence;
+    long lagRecords;
+    long lagMillis;
+}
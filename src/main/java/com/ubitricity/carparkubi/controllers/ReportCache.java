@@ -0,0 +1,73 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Serialized reports of the carparks.
+ * <p>
+ * The JSON report of a carpark is built from its published snapshot by the first request reading it and reused by
+ * every following request until the carpark changes, so polling an idle carpark never goes through Jackson. A report
+ * is bound to the snapshot instance it was built from, a new snapshot always invalidates it.
+ */
+@Component
+public class ReportCache {
+    private final ObjectWriter writer;
+    private final Map<CarparkUbi, Report> reports = new ConcurrentHashMap<>();
+
+    public ReportCache(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(new TypeReference<List<ChargingPointDTO>>() {
+        });
+    }
+
+    /**
+     * Concurrent readers of a new snapshot may build its report more than once, they all get the same content.
+     *
+     * @param carpark  Carpark of the report
+     * @param snapshot Snapshot of the carpark to be reported
+     * @return JSON report of all the charging points in the snapshot. The array is shared and must not be modified
+     */
+    public byte[] report(CarparkUbi carpark, CarparkSnapshot snapshot) {
+        Report report = reports.get(carpark);
+        if (report == null || report.snapshot != snapshot) {
+            report = new Report(snapshot, serialize(snapshot.getChargingPoints()));
+            reports.put(carpark, report);
+        }
+        return report.json;
+    }
+
+    /**
+     * @param chargingPoints Charging points to be reported
+     * @return JSON report of the charging points, built on every call
+     */
+    public byte[] serialize(List<ChargingPoint> chargingPoints) {
+        try {
+            return writer.writeValueAsBytes(chargingPoints.stream()
+                    .map(ChargingPointDTO::new)
+                    .collect(Collectors.toList()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can't serialize the report", e);
+        }
+    }
+
+    private static final class Report {
+        private final CarparkSnapshot snapshot;
+        private final byte[] json;
+
+        private Report(CarparkSnapshot snapshot, byte[] json) {
+            this.snapshot = snapshot;
+            this.json = json;
+        }
+    }
+}
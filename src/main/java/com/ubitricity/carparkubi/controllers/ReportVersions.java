@@ -0,0 +1,59 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+
+import java.util.List;
+
+/**
+ * Validators of the report of a carpark, shared by the servlet and the reactive endpoints.
+ * <p>
+ * A version alone does not identify a state of the carpark: it starts over when the node restarts or when a follower
+ * starts over from a restarted primary. The epoch of the snapshot is paired with it, formatted as
+ * <code>&lt;epoch&gt;-&lt;version&gt;</code> with the epoch in hexadecimal, both in the <code>ETag</code> and in the
+ * <code>since</code> parameter of the delta reports.
+ */
+final class ReportVersions {
+
+    private ReportVersions() {
+    }
+
+    /**
+     * The epoch and the version identify the state of the carpark, so they are a strong validator of the report
+     */
+    static String eTagOf(CarparkSnapshot snapshot) {
+        return "\"" + tokenOf(snapshot) + "\"";
+    }
+
+    /**
+     * @return Value a client sends as <code>since</code> to get the changes made after the snapshot
+     */
+    static String tokenOf(CarparkSnapshot snapshot) {
+        return tokenOf(snapshot.getEpoch(), snapshot.getVersion());
+    }
+
+    /**
+     * @return Token of the given version of the carpark, also the id of its allocation events
+     */
+    static String tokenOf(long epoch, long version) {
+        return Long.toHexString(epoch) + "-" + version;
+    }
+
+    /**
+     * @param snapshot Current snapshot of the carpark
+     * @param since    Token of the snapshot held by the client, quoted or not
+     * @return Charging points changed since the token, all of them if the token belongs to another epoch
+     * @throws IllegalArgumentException If the token is malformed
+     */
+    static List<ChargingPoint> changedSince(CarparkSnapshot snapshot, String since) {
+        String token = since.length() > 1 && since.startsWith("\"") && since.endsWith("\"")
+                ? since.substring(1, since.length() - 1) : since;
+        int separator = token.indexOf('-');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid version " + since);
+        }
+        long epoch = Long.parseUnsignedLong(token.substring(0, separator), 16);
+        long version = Long.parseLong(token.substring(separator + 1));
+        return snapshot.changedSince(epoch == snapshot.getEpoch() ? version : Long.MAX_VALUE);
+    }
+}
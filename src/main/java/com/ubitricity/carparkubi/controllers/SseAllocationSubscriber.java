@@ -0,0 +1,54 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.services.AllocationSubscriber;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Sends the allocation changes of a carpark as Server-Sent Events. The full state is sent as a <code>snapshot</code>
+ * event and the changes as <code>delta</code> events, the id of every event is the epoch and the version of the carpark
+ * in the format of {@link ReportVersions#tokenOf(long, long)}.
+ */
+class SseAllocationSubscriber implements AllocationSubscriber {
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String DELTA_EVENT = "delta";
+
+    private final SseEmitter emitter;
+
+    SseAllocationSubscriber(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void onSnapshot(CarparkSnapshot snapshot) {
+        send(SNAPSHOT_EVENT, ReportVersions.tokenOf(snapshot),
+                AllocationDTO.of(snapshot.getVersion(), snapshot.getChargingPoints()));
+    }
+
+    @Override
+    public void onDelta(AllocationDelta delta) {
+        send(DELTA_EVENT, ReportVersions.tokenOf(delta.getEpoch(), delta.getVersion()),
+                AllocationDTO.of(delta.getVersion(), delta.getChargingPoints()));
+    }
+
+    @Override
+    public void onDisconnect() {
+        emitter.complete();
+    }
+
+    private void send(String name, String id, AllocationDTO allocation) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(id)
+                    .name(name)
+                    .data(allocation, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
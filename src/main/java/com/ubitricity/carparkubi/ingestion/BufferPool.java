@@ -0,0 +1,48 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct buffers of the same size owned by a single event loop, so it needs no synchronization. Connections
+ * only hold a buffer while they have a partial frame to read or bytes to write, an idle connection holds none.
+ */
+final class BufferPool {
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final int bufferSize;
+    private final int capacity;
+
+    /**
+     * @param bufferSize Size of every buffer
+     * @param capacity   Buffers kept for reuse, the ones released above it are left to the garbage collector
+     */
+    BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Cleared buffer, allocated if the pool is empty
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * @param buffer Buffer previously acquired from this pool, not used by the caller anymore
+     */
+    void release(ByteBuffer buffer) {
+        if (buffers.size() < capacity) {
+            buffer.clear();
+            buffers.push(buffer);
+        }
+    }
+
+    /**
+     * @return Number of buffers available for reuse
+     */
+    int available() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,172 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.EventBatch;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact binary format of the charger notifications. All numbers are big endian.
+ * <pre>
+ * frame          := magic:u16 version:u8 carpark-length:u8 carpark:utf8 count:u16 event[count]
+ * event          := sequence:u32 charging-point:u32 type:u8        (type 1 connected, 0 disconnected, sequence 0 none)
+ * acknowledgement := magic:u16 version:u8 carpark-version:i64 count:u16 outcome[count]
+ * outcome        := u8                                            (ordinal of EventOutcome)
+ * setpoints      := setpoints-magic:u16 version:u8 carpark-length:u8 carpark:utf8 carpark-version:i64 count:u16
+ *                   setpoint[count]
+ * setpoint       := charging-point:u32 current:i32 connected:u8
+ * </pre>
+ * The charging point is its index in the carpark, <code>CP1</code> being 0. An event takes 9 bytes instead of the
+ * JSON body and HTTP request of a single notification, and a frame carries up to 65535 of them. Decoding fills an
+ * {@link EventBatch}, so no object is created per event.
+ */
+public final class EventFrames {
+    public static final String MEDIA_TYPE = "application/vnd.ubitricity.events";
+    public static final short MAGIC = 0x4350;
+    public static final short SETPOINTS_MAGIC = 0x5350;
+    public static final byte VERSION = 1;
+    public static final int EVENT_LENGTH = 9;
+    public static final int SETPOINT_LENGTH = 9;
+    public static final int MAX_EVENTS = 0xFFFF;
+    private static final int MAX_CARPARK_LENGTH = 0xFF;
+    private static final int ACKNOWLEDGEMENT_HEADER_LENGTH = 2 + 1 + 8 + 2;
+
+    private EventFrames() {
+    }
+
+    /**
+     * Decodes a frame, the events are added to the batch after the ones it already holds
+     *
+     * @param frame Buffer positioned at the start of the frame, positioned right after it once decoded
+     * @param batch Batch receiving the events of the frame
+     * @return Name of the carpark the events are addressed to
+     */
+    public static String decode(ByteBuffer frame, EventBatch batch) {
+        try {
+            if (frame.getShort() != MAGIC) {
+                throw new MalformedFrameException("Unknown frame type");
+            }
+            if (frame.get() != VERSION) {
+                throw new MalformedFrameException("Unsupported frame version");
+            }
+            byte[] carpark = new byte[Byte.toUnsignedInt(frame.get())];
+            frame.get(carpark);
+            int count = Short.toUnsignedInt(frame.getShort());
+            if (frame.remaining() < count * EVENT_LENGTH) {
+                throw new MalformedFrameException("Frame truncated");
+            }
+            for (int i = 0; i < count; i++) {
+                int sequence = frame.getInt();
+                int index = frame.getInt();
+                byte type = frame.get();
+                if (type != 0 && type != 1) {
+                    throw new MalformedFrameException("Unknown event type " + type);
+                }
+                batch.add(index, type == 1, sequence);
+            }
+            return new String(carpark, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException e) {
+            throw new MalformedFrameException("Frame truncated");
+        }
+    }
+
+    /**
+     * Reads the carpark a frame is addressed to without decoding its events
+     *
+     * @param frame Buffer positioned at the start of the frame, its position is not changed
+     * @return Name of the carpark the events are addressed to
+     */
+    public static String carparkName(ByteBuffer frame) {
+        int start = frame.position();
+        if (frame.remaining() < 4 || frame.getShort(start) != MAGIC || frame.get(start + 2) != VERSION) {
+            throw new MalformedFrameException("Unknown frame type");
+        }
+        int length = Byte.toUnsignedInt(frame.get(start + 3));
+        if (frame.remaining() < 4 + length) {
+            throw new MalformedFrameException("Frame truncated");
+        }
+        byte[] carpark = new byte[length];
+        frame.get(start + 4, carpark);
+        return new String(carpark, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param carpark Name of the carpark
+     * @param batch   Events of the frame, at most {@link #MAX_EVENTS}
+     * @return Encoded frame
+     */
+    public static byte[] encode(String carpark, EventBatch batch) {
+        byte[] name = carpark.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_CARPARK_LENGTH || batch.size() > MAX_EVENTS) {
+            throw new IllegalArgumentException("Carpark name or batch too large for a frame");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 1 + name.length + 2 + batch.size() * EVENT_LENGTH)
+                .putShort(MAGIC)
+                .put(VERSION)
+                .put((byte) name.length)
+                .put(name)
+                .putShort((short) batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            frame.putInt(batch.sequence(i))
+                    .putInt(batch.index(i))
+                    .put((byte) (batch.isConnected(i) ? 1 : 0));
+        }
+        return frame.array();
+    }
+
+    /**
+     * @param version Version of the carpark after the events were applied
+     * @param batch   Applied events, with their outcomes
+     * @return Encoded acknowledgement of the events
+     */
+    public static byte[] acknowledge(long version, EventBatch batch) {
+        ByteBuffer acknowledgement = ByteBuffer.allocate(ACKNOWLEDGEMENT_HEADER_LENGTH + batch.size())
+                .putShort(MAGIC)
+                .put(VERSION)
+                .putLong(version)
+                .putShort((short) batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            acknowledgement.put((byte) batch.outcome(i).ordinal());
+        }
+        return acknowledgement.array();
+    }
+
+    /**
+     * @param carpark        Name of the carpark
+     * @param version        Version of the carpark the setpoints belong to
+     * @param chargingPoints Changed charging points, at most {@link #MAX_EVENTS}
+     * @param indices        Index of every changed charging point, same order
+     * @return Encoded setpoints of the charging points
+     */
+    public static byte[] setpoints(String carpark, long version, List<ChargingPoint> chargingPoints, int[] indices) {
+        byte[] name = carpark.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_CARPARK_LENGTH || chargingPoints.size() > MAX_EVENTS) {
+            throw new IllegalArgumentException("Carpark name or setpoints too large for a frame");
+        }
+        ByteBuffer setpoints = ByteBuffer.allocate(setpointsLength(name.length, chargingPoints.size()))
+                .putShort(SETPOINTS_MAGIC)
+                .put(VERSION)
+                .put((byte) name.length)
+                .put(name)
+                .putLong(version)
+                .putShort((short) chargingPoints.size());
+        for (int i = 0; i < chargingPoints.size(); i++) {
+            setpoints.putInt(indices[i])
+                    .putInt(chargingPoints.get(i).getCurrent())
+                    .put((byte) (chargingPoints.get(i).getConnected() ? 1 : 0));
+        }
+        return setpoints.array();
+    }
+
+    /**
+     * @param carparkLength Length of the carpark name in bytes
+     * @param count         Number of setpoints
+     * @return Length of the encoded setpoints
+     */
+    public static int setpointsLength(int carparkLength, int count) {
+        return 2 + 1 + 1 + carparkLength + 8 + 2 + count * SETPOINT_LENGTH;
+    }
+}
@@ -0,0 +1,40 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The gateway is not started on a follower, its carparks only change by replication and the chargers connect to the
+ * primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "carparks.gateway.enabled", havingValue = "true")
+@Conditional(GatewayConfiguration.NotFollower.class)
+public class GatewayConfiguration {
+
+    /**
+     * @return TCP gateway of the chargers on <code>carparks.gateway.port</code>
+     */
+    @Bean
+    public GatewayServer gatewayServer(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher,
+                                       CarparksProperties properties) {
+        return new GatewayServer(carparkRegistry, carparkDispatcher, properties.getGateway());
+    }
+
+    static class NotFollower extends NoneNestedConditions {
+
+        NotFollower() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(name = "carparks.replication.role", havingValue = "FOLLOWER")
+        static class Follower {
+        }
+    }
+}
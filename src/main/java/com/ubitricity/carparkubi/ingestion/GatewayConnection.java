@@ -0,0 +1,79 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Socket of a charger, or of a gateway multiplexing several chargers, attached to one event loop.
+ * <p>
+ * Only {@link #send(byte[])} may be called from other threads, everything else belongs to the event loop.
+ */
+final class GatewayConnection {
+    final SocketChannel channel;
+    final GatewayServer.EventLoop loop;
+    SelectionKey key;
+    ByteBuffer readBuffer;
+    ByteBuffer writeBuffer;
+    final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+    final AtomicInteger pendingMessages = new AtomicInteger();
+    final AtomicBoolean flushRequested = new AtomicBoolean();
+    final Map<SetpointRouter, BitSet> ownedChargingPoints = new IdentityHashMap<>();
+    volatile boolean closed;
+    volatile boolean tooSlow;
+
+    GatewayConnection(SocketChannel channel, GatewayServer.EventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    /**
+     * Queues a message to be written by the event loop. A connection with too many messages waiting is closed, the
+     * charger gets the current setpoints again with the acknowledgement of its next events after reconnecting.
+     *
+     * @param message Message without its length prefix
+     */
+    void send(byte[] message) {
+        if (closed) {
+            return;
+        }
+        if (pendingMessages.incrementAndGet() > loop.maxPendingMessages()) {
+            pendingMessages.decrementAndGet();
+            tooSlow = true;
+        } else {
+            outbound.add(message);
+        }
+        if (flushRequested.compareAndSet(false, true)) {
+            loop.requestFlush(this);
+        }
+    }
+
+    /**
+     * Records the charging point as belonging to this connection. Must be called from the event loop.
+     *
+     * @param router Router of the carpark
+     * @param index  Index of the charging point
+     */
+    void own(SetpointRouter router, int index) {
+        if (router.own(index, this)) {
+            ownedChargingPoints.computeIfAbsent(router, r -> new BitSet()).set(index);
+        }
+    }
+
+    /**
+     * Releases the charging points of this connection. Must be called from the event loop once the connection is
+     * closed.
+     */
+    void releaseChargingPoints() {
+        ownedChargingPoints.forEach((router, indices) ->
+                indices.stream().forEach(index -> router.release(index, this)));
+        ownedChargingPoints.clear();
+    }
+}
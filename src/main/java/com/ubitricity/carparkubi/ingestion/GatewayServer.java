@@ -0,0 +1,400 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.services.CarparkBusyException;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP gateway of the chargers, served by selector based event loops next to the servlet container.
+ * <p>
+ * Chargers keep their socket open and exchange messages prefixed by their length as a 4 bytes big endian integer.
+ * A charger sends event frames, every frame is applied to its carpark as one batch and acknowledged, and receives the
+ * setpoints of its charging points every time the allocation of the carpark changes them (see {@link EventFrames}).
+ * Each event loop owns its connections, a pool of direct buffers and a reusable {@link EventBatch}, so reading and
+ * applying a frame creates no object per event. In <code>MONITOR</code> mode the carpark lock is taken by the event
+ * loop itself, in <code>ACTOR</code> mode the loop hands the frame to the writer of the carpark and waits for it. With
+ * <code>SYNC</code> durability the loop also waits for the group commit of the log.
+ */
+@Slf4j
+public class GatewayServer implements SmartLifecycle {
+    private static final int LENGTH_PREFIX = Integer.BYTES;
+
+    private final CarparkRegistry carparkRegistry;
+    private final CarparkDispatcher carparkDispatcher;
+    private final CarparksProperties.Gateway properties;
+    private final Map<String, SetpointRouter> routers = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile ServerSocketChannel serverChannel;
+    private EventLoop[] loops;
+    private Thread acceptor;
+
+    /**
+     * @param carparkRegistry   Carparks receiving the events
+     * @param carparkDispatcher Applies the frames according to the execution mode
+     * @param properties        Configuration of the gateway
+     */
+    public GatewayServer(CarparkRegistry carparkRegistry, CarparkDispatcher carparkDispatcher,
+                         CarparksProperties.Gateway properties) {
+        this.carparkRegistry = carparkRegistry;
+        this.carparkDispatcher = carparkDispatcher;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        try {
+            loops = new EventLoop[properties.getThreads()];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+                loops[i].start();
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(properties.getPort()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't start the gateway on port " + properties.getPort(), e);
+        }
+        acceptor = new Thread(this::accept, "gateway-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Gateway started on port {}", getPort());
+    }
+
+    @Override
+    public void stop() {
+        try {
+            serverChannel.close();
+            acceptor.join();
+            for (EventLoop loop : loops) {
+                loop.shutdown();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing the gateway", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverChannel = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    /**
+     * @return Port the gateway listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return Connections currently open
+     */
+    public int connections() {
+        int connections = 0;
+        for (EventLoop loop : loops) {
+            connections += loop.connections.get();
+        }
+        return connections;
+    }
+
+    private void accept() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].register(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Error accepting a charger connection", e);
+            }
+        }
+    }
+
+    private SetpointRouter router(String carparkName) {
+        return routers.computeIfAbsent(carparkName, name -> {
+            SetpointRouter router = new SetpointRouter(carparkRegistry.find(name), maxSetpoints(name));
+            router.carpark().addListener(router);
+            return router;
+        });
+    }
+
+    /**
+     * Setpoints of a carpark are split in messages fitting in the buffers
+     */
+    private int maxSetpoints(String carparkName) {
+        int header = EventFrames.setpointsLength(carparkName.length() * 3, 0);
+        return Math.max(1, Math.min(EventFrames.MAX_EVENTS,
+                (properties.getMaxFrameLength() - header) / EventFrames.SETPOINT_LENGTH));
+    }
+
+    /**
+     * Thread multiplexing a share of the connections with its own selector
+     */
+    final class EventLoop implements Runnable {
+        private final Thread thread;
+        private final Selector selector;
+        private final BufferPool bufferPool;
+        private final EventBatch batch = new EventBatch();
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final Queue<GatewayConnection> flushRequests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile boolean running = true;
+
+        private EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            bufferPool = new BufferPool(LENGTH_PREFIX + properties.getMaxFrameLength(), properties.getPooledBuffers());
+            thread = new Thread(this, "gateway-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void shutdown() throws IOException, InterruptedException {
+            running = false;
+            selector.wakeup();
+            thread.join();
+            for (SelectionKey key : selector.keys()) {
+                close((GatewayConnection) key.attachment());
+            }
+            selector.close();
+        }
+
+        int maxPendingMessages() {
+            return properties.getMaxPendingMessages();
+        }
+
+        private void register(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        void requestFlush(GatewayConnection connection) {
+            flushRequests.add(connection);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(this::process);
+                    registerAccepted();
+                    flushRequested();
+                } catch (IOException e) {
+                    log.error("Gateway event loop failure", e);
+                }
+            }
+        }
+
+        private void registerAccepted() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                GatewayConnection connection = new GatewayConnection(channel, this);
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.incrementAndGet();
+                } catch (ClosedChannelException e) {
+                    log.debug("Charger disconnected before being registered");
+                }
+            }
+        }
+
+        private void flushRequested() {
+            GatewayConnection connection;
+            while ((connection = flushRequests.poll()) != null) {
+                connection.flushRequested.set(false);
+                if (connection.tooSlow) {
+                    log.warn("Closing charger connection {} not reading its messages", remoteAddress(connection));
+                    close(connection);
+                } else if (!connection.closed) {
+                    flush(connection);
+                }
+            }
+        }
+
+        private void process(SelectionKey key) {
+            GatewayConnection connection = (GatewayConnection) key.attachment();
+            if (key.isValid() && key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(connection);
+            }
+        }
+
+        /**
+         * Reads what the charger sent and handles every complete frame. A partial frame keeps its buffer until the
+         * rest arrives.
+         */
+        private void read(GatewayConnection connection) {
+            ByteBuffer buffer = connection.readBuffer != null ? connection.readBuffer : bufferPool.acquire();
+            connection.readBuffer = buffer;
+            try {
+                if (connection.channel.read(buffer) < 0) {
+                    close(connection);
+                    return;
+                }
+            } catch (IOException e) {
+                close(connection);
+                return;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= LENGTH_PREFIX) {
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || length > properties.getMaxFrameLength()) {
+                    log.warn("Closing charger connection {} sending a frame of {} bytes", remoteAddress(connection), length);
+                    close(connection);
+                    return;
+                }
+                if (buffer.remaining() < LENGTH_PREFIX + length) {
+                    break;
+                }
+                int limit = buffer.limit();
+                int end = buffer.position() + LENGTH_PREFIX + length;
+                buffer.position(buffer.position() + LENGTH_PREFIX).limit(end);
+                boolean handled = handle(connection, buffer);
+                buffer.limit(limit).position(end);
+                if (!handled) {
+                    close(connection);
+                    return;
+                }
+            }
+            buffer.compact();
+            if (buffer.position() == 0) {
+                connection.readBuffer = null;
+                bufferPool.release(buffer);
+            }
+        }
+
+        /**
+         * Applies the events of a frame to their carpark and acknowledges them
+         *
+         * @return <code>false</code> if the connection must be closed
+         */
+        private boolean handle(GatewayConnection connection, ByteBuffer frame) {
+            batch.clear();
+            SetpointRouter router;
+            try {
+                String carparkName = EventFrames.decode(frame, batch);
+                if (frame.hasRemaining()) {
+                    throw new MalformedFrameException("Unexpected bytes after the frame");
+                }
+                router = router(carparkName);
+            } catch (RuntimeException e) {
+                log.warn("Closing charger connection {}: {}", remoteAddress(connection), e.toString());
+                return false;
+            }
+            for (int event = 0; event < batch.size(); event++) {
+                if (router.contains(batch.index(event))) {
+                    connection.own(router, batch.index(event));
+                }
+            }
+            CarparkSnapshot snapshot;
+            try {
+                snapshot = carparkDispatcher.apply(router.carpark(), batch);
+            } catch (CarparkBusyException e) {
+                log.warn("Closing charger connection {}: carpark {} busy", remoteAddress(connection),
+                        router.carpark().getName());
+                return false;
+            }
+            connection.send(EventFrames.acknowledge(snapshot.getVersion(), batch));
+            return true;
+        }
+
+        /**
+         * Writes the queued messages through a pooled buffer. What the socket doesn't take now is written when it
+         * becomes writable again.
+         */
+        private void flush(GatewayConnection connection) {
+            ByteBuffer buffer = connection.writeBuffer != null ? connection.writeBuffer : bufferPool.acquire();
+            try {
+                while (true) {
+                    byte[] message;
+                    while ((message = connection.outbound.peek()) != null
+                            && buffer.remaining() >= LENGTH_PREFIX + message.length) {
+                        connection.outbound.poll();
+                        connection.pendingMessages.decrementAndGet();
+                        buffer.putInt(message.length).put(message);
+                    }
+                    buffer.flip();
+                    connection.channel.write(buffer);
+                    boolean written = !buffer.hasRemaining();
+                    buffer.compact();
+                    if (!written) {
+                        connection.writeBuffer = buffer;
+                        connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    if (connection.outbound.isEmpty()) {
+                        connection.writeBuffer = null;
+                        bufferPool.release(buffer);
+                        connection.key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                connection.writeBuffer = buffer;
+                close(connection);
+            }
+        }
+
+        private void close(GatewayConnection connection) {
+            if (connection.closed) {
+                return;
+            }
+            connection.closed = true;
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing charger connection", e);
+            }
+            connection.releaseChargingPoints();
+            if (connection.readBuffer != null) {
+                bufferPool.release(connection.readBuffer);
+                connection.readBuffer = null;
+            }
+            if (connection.writeBuffer != null) {
+                bufferPool.release(connection.writeBuffer);
+                connection.writeBuffer = null;
+            }
+            connection.outbound.clear();
+            connections.decrementAndGet();
+        }
+
+        private Object remoteAddress(GatewayConnection connection) {
+            try {
+                return connection.channel.getRemoteAddress();
+            } catch (IOException e) {
+                return "unknown";
+            }
+        }
+    }
+}
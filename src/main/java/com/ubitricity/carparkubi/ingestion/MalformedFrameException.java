@@ -0,0 +1,10 @@
+package com.ubitricity.carparkubi.ingestion;
+
+/**
+ * The bytes received don't form a valid event frame
+ */
+public class MalformedFrameException extends RuntimeException {
+    public MalformedFrameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,86 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.services.CarparkListener;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pushes the new setpoints of a carpark to the gateway connections of its charging points. A charging point belongs
+ * to the connection that sent its last event.
+ */
+final class SetpointRouter implements CarparkListener {
+    private final CarparkUbi carpark;
+    private final AtomicReferenceArray<GatewayConnection> owners;
+    private final int maxSetpoints;
+
+    /**
+     * @param carpark      Carpark whose changes are routed
+     * @param maxSetpoints Largest number of setpoints sent in a single message
+     */
+    SetpointRouter(CarparkUbi carpark, int maxSetpoints) {
+        this.carpark = carpark;
+        this.owners = new AtomicReferenceArray<>(carpark.snapshot().size());
+        this.maxSetpoints = maxSetpoints;
+    }
+
+    /**
+     * @return Carpark whose changes are routed
+     */
+    CarparkUbi carpark() {
+        return carpark;
+    }
+
+    /**
+     * @param index Index of a charging point
+     * @return <code>true</code> if the index belongs to the carpark
+     */
+    boolean contains(int index) {
+        return index >= 0 && index < owners.length();
+    }
+
+    /**
+     * @param index      Index of a charging point of the carpark
+     * @param connection Connection receiving the setpoints of the charging point from now on
+     * @return <code>true</code> if the charging point belonged to another connection
+     */
+    boolean own(int index, GatewayConnection connection) {
+        if (owners.get(index) == connection) {
+            return false;
+        }
+        owners.set(index, connection);
+        return true;
+    }
+
+    /**
+     * @param index      Index of a charging point of the carpark
+     * @param connection Closed connection, the charging point is released only if it still belongs to it
+     */
+    void release(int index, GatewayConnection connection) {
+        owners.compareAndSet(index, connection, null);
+    }
+
+    @Override
+    public void onChange(AllocationDelta delta) {
+        Map<GatewayConnection, List<ChargingPoint>> setpoints = new IdentityHashMap<>();
+        for (ChargingPoint chargingPoint : delta.getChargingPoints()) {
+            GatewayConnection owner = owners.get(carpark.indexOf(chargingPoint.getIdentifier()));
+            if (owner != null) {
+                setpoints.computeIfAbsent(owner, connection -> new ArrayList<>()).add(chargingPoint);
+            }
+        }
+        setpoints.forEach((connection, chargingPoints) -> {
+            for (int from = 0; from < chargingPoints.size(); from += maxSetpoints) {
+                List<ChargingPoint> chunk = chargingPoints.subList(from, Math.min(chargingPoints.size(), from + maxSetpoints));
+                int[] indices = chunk.stream().mapToInt(cp -> carpark.indexOf(cp.getIdentifier())).toArray();
+                connection.send(EventFrames.setpoints(carpark.getName(), delta.getVersion(), chunk, indices));
+            }
+        });
+    }
+}
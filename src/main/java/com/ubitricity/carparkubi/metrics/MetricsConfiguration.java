@@ -0,0 +1,19 @@
+package com.ubitricity.carparkubi.metrics;
+
+import com.ubitricity.carparkubi.services.CarparkMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * @param meterRegistry Registry exposed by the actuator, e.g. under <code>/actuator/prometheus</code>
+     * @return Factory of the instrumentation of every carpark
+     */
+    @Bean
+    public CarparkMetrics.Factory carparkMetricsFactory(MeterRegistry meterRegistry) {
+        return carparkName -> new MicrometerCarparkMetrics(meterRegistry, carparkName);
+    }
+}
@@ -0,0 +1,129 @@
+package com.ubitricity.carparkubi.metrics;
+
+import com.ubitricity.carparkubi.services.CarparkMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Instrumentation of a carpark backed by Micrometer meters tagged with the carpark name. The meters are created
+ * upfront, recording only updates striped counters and fixed histogram buckets.
+ * <p>
+ * The timers of a carpark only publish their count, total and maximum, a histogram per carpark would multiply the
+ * series by the number of carparks. The latency distributions come from untagged timers shared by all the carparks.
+ */
+public class MicrometerCarparkMetrics implements CarparkMetrics {
+    static final String LOCK_WAIT = "carpark.lock.wait";
+    static final String LOCK_HOLD = "carpark.lock.hold";
+    static final String REDISTRIBUTION = "carpark.redistribution";
+    static final String EVENTS = "carpark.events";
+    static final String STALE_EVENTS = "carpark.events.stale";
+    static final String ALL_LOCK_WAIT = "carparks.lock.wait";
+    static final String ALL_LOCK_HOLD = "carparks.lock.hold";
+    static final String ALL_REDISTRIBUTION = "carparks.redistribution";
+    static final String QUEUE_DEPTH = "carpark.queue.depth";
+    static final String CARPARK_TAG = "carpark";
+
+    private final Timer lockWait;
+    private final Timer lockHold;
+    private final Timer redistribution;
+    private final Timer allLockWait;
+    private final Timer allLockHold;
+    private final Timer allRedistribution;
+    private final Counter connects;
+    private final Counter disconnects;
+    private final Counter stale;
+    private final AtomicInteger queueDepth;
+
+    /**
+     * @param registry    Registry where the meters are created
+     * @param carparkName Name of the instrumented carpark
+     */
+    public MicrometerCarparkMetrics(MeterRegistry registry, String carparkName) {
+        Tags tags = Tags.of(CARPARK_TAG, carparkName);
+        lockWait = timer(registry, LOCK_WAIT, "Time waiting for the carpark lock", tags);
+        lockHold = timer(registry, LOCK_HOLD, "Time holding the carpark lock", tags);
+        redistribution = timer(registry, REDISTRIBUTION, "Time redistributing the charge of the carpark", tags);
+        allLockWait = histogram(registry, ALL_LOCK_WAIT, "Time waiting for the lock of any carpark");
+        allLockHold = histogram(registry, ALL_LOCK_HOLD, "Time holding the lock of any carpark");
+        allRedistribution = histogram(registry, ALL_REDISTRIBUTION, "Time redistributing the charge of any carpark");
+        connects = Counter.builder(EVENTS)
+                .description("Charging points connected or disconnected")
+                .tags(tags)
+                .tag("type", "connect")
+                .register(registry);
+        disconnects = Counter.builder(EVENTS)
+                .description("Charging points connected or disconnected")
+                .tags(tags)
+                .tag("type", "disconnect")
+                .register(registry);
+        stale = Counter.builder(STALE_EVENTS)
+                .description("Events dropped because their sequence was not newer than the last one applied")
+                .tags(tags)
+                .register(registry);
+        queueDepth = registry.gauge(QUEUE_DEPTH, tags, new AtomicInteger());
+    }
+
+    @Override
+    public void recordLockWait(long nanos) {
+        lockWait.record(nanos, TimeUnit.NANOSECONDS);
+        allLockWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordLockHold(long nanos) {
+        lockHold.record(nanos, TimeUnit.NANOSECONDS);
+        allLockHold.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRedistribution(long nanos) {
+        redistribution.record(nanos, TimeUnit.NANOSECONDS);
+        allRedistribution.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordConnect() {
+        connects.increment();
+    }
+
+    @Override
+    public void recordDisconnect() {
+        disconnects.increment();
+    }
+
+    @Override
+    public void recordStale(int events) {
+        stale.increment(events);
+    }
+
+    @Override
+    public void recordQueueDepth(int connected) {
+        queueDepth.set(connected);
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String description, Tags tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Timer with a histogram covering from one microsecond to one second, the range of the carpark operations. The
+     * registry hands the same timer to every carpark.
+     */
+    private static Timer histogram(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Charging points whose current or connection changed with the version of a carpark. The version only follows the
+ * previous deltas within the same epoch, a delta of another epoch follows a reset of the whole carpark.
+ */
+@Value
+public class AllocationDelta {
+    long epoch;
+    long version;
+    List<ChargingPoint> chargingPoints;
+}
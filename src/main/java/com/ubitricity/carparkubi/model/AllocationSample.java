@@ -0,0 +1,14 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Allocation of a charging point from a point in time until the next sample, with the charge it delivered so far.
+ */
+@Value
+public class AllocationSample {
+    long timestamp;
+    int current;
+    boolean connected;
+    double ampHours;
+}
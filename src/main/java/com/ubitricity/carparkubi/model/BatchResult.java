@@ -0,0 +1,15 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Outcome of applying a batch of events to a carpark: the outcome of each event, in the order they were sent, and the
+ * state of the carpark once the whole batch was applied.
+ */
+@Value
+public class BatchResult {
+    List<EventOutcome> outcomes;
+    CarparkSnapshot snapshot;
+}
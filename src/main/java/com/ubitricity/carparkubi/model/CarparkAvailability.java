@@ -0,0 +1,19 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Free charging points and spare current of a carpark as of one of its versions. Fast charging points get more than
+ * their minimum current, whether a vehicle connected now would be one of them is told by the allocation policy of the
+ * carpark: with the default policy the most recent connections are fast charged, so it gets twice the minimum current
+ * as long as the power allows one fast charging point more than the connected ones.
+ */
+@Value
+public class CarparkAvailability {
+    long version;
+    int free;
+    int fast;
+    int slow;
+    long spareCurrent;
+    boolean fastChargeAvailable;
+}
@@ -0,0 +1,16 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Compact state of a carpark: the identifiers of its connected charging points from the oldest to the most recent
+ * connection, and the version of the carpark they belong to. The allocation of the charge is derived from it.
+ */
+@Value
+public class CarparkCheckpoint {
+    String carparkName;
+    long version;
+    List<String> connectedChargingPoints;
+}
@@ -0,0 +1,314 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+import lombok.experimental.NonFinal;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable state of all the charging points of a carpark after a given mutation.
+ * The version increases by one with every change applied to the carpark. Every charging point also keeps the version
+ * of its last change, so clients holding an older snapshot can fetch only what changed since then. Versions are only
+ * comparable within an epoch: the carpark starts a new one whenever its versions may repeat, e.g. on every start or
+ * when a follower starts over from a restarted primary.
+ * <p>
+ * The state is stored in primitive arrays split in chunks of {@value #CHUNK_SIZE} charging points, the occupancy of
+ * a chunk being a single <code>long</code> word. A new snapshot is derived with a {@link Builder}, which copies only
+ * the chunks it modifies and shares the others with the previous snapshot. {@link ChargingPoint} instances are only
+ * created when the points are read.
+ */
+@Value
+public class CarparkSnapshot {
+    public static final int CHUNK_SIZE = Long.SIZE;
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    long epoch;
+    long version;
+    @Getter(AccessLevel.NONE)
+    String[] identifiers;
+    @Getter(AccessLevel.NONE)
+    int[][] currents;
+    @Getter(AccessLevel.NONE)
+    long[] connected;
+    @Getter(AccessLevel.NONE)
+    long[][] chargingPointVersions;
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    int connectedCount;
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    long totalCurrent;
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    int fastCount;
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    boolean fastChargeAvailable;
+
+    /**
+     * Snapshot where every charging point is considered changed with the given version
+     *
+     * @param version        Version of the carpark
+     * @param chargingPoints State of all the charging points
+     */
+    public CarparkSnapshot(long version, List<ChargingPoint> chargingPoints) {
+        this(version, chargingPoints.stream().map(ChargingPoint::getIdentifier).toArray(String[]::new));
+        Builder builder = new Builder(this, this);
+        for (int i = 0; i < chargingPoints.size(); i++) {
+            ChargingPoint chargingPoint = chargingPoints.get(i);
+            builder.set(i, chargingPoint.getCurrent() == null ? 0 : chargingPoint.getCurrent(),
+                    Boolean.TRUE.equals(chargingPoint.getConnected()));
+        }
+    }
+
+    /**
+     * @param version               Version of the carpark
+     * @param chargingPoints        State of all the charging points
+     * @param chargingPointVersions Version of the last change of each charging point, same order as the points
+     */
+    public CarparkSnapshot(long version, List<ChargingPoint> chargingPoints, long[] chargingPointVersions) {
+        this(version, chargingPoints);
+        for (int i = 0; i < chargingPointVersions.length; i++) {
+            this.chargingPointVersions[i >>> CHUNK_SHIFT][i & CHUNK_MASK] = chargingPointVersions[i];
+        }
+    }
+
+    /**
+     * Snapshot of epoch 0 where every charging point is free and considered changed with the given version
+     *
+     * @param version     Version of the carpark
+     * @param identifiers Identifier of each charging point. The array is shared and must not be modified afterwards
+     */
+    public CarparkSnapshot(long version, String[] identifiers) {
+        this(0, version, identifiers);
+    }
+
+    /**
+     * Snapshot where every charging point is free and considered changed with the given version
+     *
+     * @param epoch       Epoch of the versions of the carpark
+     * @param version     Version of the carpark
+     * @param identifiers Identifier of each charging point. The array is shared and must not be modified afterwards
+     */
+    public CarparkSnapshot(long epoch, long version, String[] identifiers) {
+        this.epoch = epoch;
+        this.version = version;
+        this.identifiers = identifiers;
+        int chunks = (identifiers.length + CHUNK_MASK) >>> CHUNK_SHIFT;
+        this.currents = new int[chunks][];
+        this.connected = new long[chunks];
+        this.chargingPointVersions = new long[chunks][];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int size = Math.min(CHUNK_SIZE, identifiers.length - (chunk << CHUNK_SHIFT));
+            currents[chunk] = new int[size];
+            chargingPointVersions[chunk] = new long[size];
+            Arrays.fill(chargingPointVersions[chunk], version);
+        }
+    }
+
+    private CarparkSnapshot(long epoch, long version, String[] identifiers, int[][] currents, long[] connected,
+                            long[][] chargingPointVersions, int connectedCount, long totalCurrent, int fastCount,
+                            boolean fastChargeAvailable) {
+        this.epoch = epoch;
+        this.version = version;
+        this.identifiers = identifiers;
+        this.currents = currents;
+        this.connected = connected;
+        this.chargingPointVersions = chargingPointVersions;
+        this.connectedCount = connectedCount;
+        this.totalCurrent = totalCurrent;
+        this.fastCount = fastCount;
+        this.fastChargeAvailable = fastChargeAvailable;
+    }
+
+    /**
+     * @return State of all the charging points, ordered by index. The list is a view over the snapshot
+     */
+    public List<ChargingPoint> getChargingPoints() {
+        return new ChargingPoints();
+    }
+
+    /**
+     * @param index Position of the charging point in the snapshot
+     * @return State of the charging point
+     */
+    public ChargingPoint getChargingPoint(int index) {
+        return new ChargingPoint(identifiers[index], currentOf(index), isConnected(index));
+    }
+
+    /**
+     * @param index Position of the charging point in the snapshot
+     * @return Current assigned to the charging point
+     */
+    public int currentOf(int index) {
+        return currents[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * @param index Position of the charging point in the snapshot
+     * @return <code>true</code> if the charging point is connected
+     */
+    public boolean isConnected(int index) {
+        return (connected[index >>> CHUNK_SHIFT] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return Number of charging points
+     */
+    public int size() {
+        return identifiers.length;
+    }
+
+    /**
+     * @return Number of connected charging points, kept up to date by the builders
+     */
+    public int connectedCount() {
+        return connectedCount;
+    }
+
+    /**
+     * @return Current assigned to all the charging points, kept up to date by the builders
+     */
+    public long totalCurrent() {
+        return totalCurrent;
+    }
+
+    /**
+     * @return Number of connected charging points allocated more than their minimum current, as set by the allocation
+     * policy of the carpark
+     */
+    public int fastCount() {
+        return fastCount;
+    }
+
+    /**
+     * @return <code>true</code> if a vehicle connected now would get more than its minimum current, as told by the
+     * allocation policy of the carpark
+     */
+    public boolean fastChargeAvailable() {
+        return fastChargeAvailable;
+    }
+
+    /**
+     * @param since Version of the carpark already known by the client
+     * @return Charging points changed after the given version. All of them if the version is unknown to this
+     * snapshot, e.g. ahead of it after a restart of a carpark without persistent log
+     */
+    public List<ChargingPoint> changedSince(long since) {
+        if (since > version) {
+            return getChargingPoints();
+        }
+        List<ChargingPoint> changed = new ArrayList<>();
+        for (int i = 0; i < identifiers.length; i++) {
+            if (chargingPointVersions[i >>> CHUNK_SHIFT][i & CHUNK_MASK] > since) {
+                changed.add(getChargingPoint(i));
+            }
+        }
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @param version Version of the new snapshot, the changed charging points are tagged with it
+     * @return Builder of a new snapshot of the same epoch starting from the state of this one
+     */
+    public Builder toBuilder(long version) {
+        return toBuilder(epoch, version);
+    }
+
+    /**
+     * @param epoch   Epoch of the new snapshot
+     * @param version Version of the new snapshot, the changed charging points are tagged with it
+     * @return Builder of a new snapshot starting from the state of this one
+     */
+    public Builder toBuilder(long epoch, long version) {
+        return new Builder(this, new CarparkSnapshot(epoch, version, identifiers, currents.clone(), connected.clone(),
+                chargingPointVersions.clone(), connectedCount, totalCurrent, fastCount, fastChargeAvailable));
+    }
+
+    /**
+     * Copy-on-write derivation of a snapshot. The first change of a chunk copies it, the chunks left untouched are
+     * shared with the original snapshot, which is never modified. The counters of the snapshot are adjusted by every
+     * change, so they never need a pass over the charging points. Not thread safe.
+     */
+    public static final class Builder {
+        private final CarparkSnapshot original;
+        private final CarparkSnapshot snapshot;
+
+        /**
+         * @param original Snapshot the new one derives from
+         * @param snapshot Snapshot being built, the original itself while it is under construction
+         */
+        private Builder(CarparkSnapshot original, CarparkSnapshot snapshot) {
+            this.original = original;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * @param index     Position of the charging point
+         * @param current   Current assigned to the charging point
+         * @param connected <code>true</code> if the charging point is connected
+         * @return <code>true</code> if the state of the charging point changed
+         */
+        public boolean set(int index, int current, boolean connected) {
+            int chunk = index >>> CHUNK_SHIFT;
+            int offset = index & CHUNK_MASK;
+            if (snapshot.currents[chunk][offset] == current && snapshot.isConnected(index) == connected) {
+                return false;
+            }
+            if (snapshot != original && snapshot.currents[chunk] == original.currents[chunk]) {
+                snapshot.currents[chunk] = original.currents[chunk].clone();
+                snapshot.chargingPointVersions[chunk] = original.chargingPointVersions[chunk].clone();
+            }
+            snapshot.totalCurrent += current - snapshot.currents[chunk][offset];
+            if (connected != snapshot.isConnected(index)) {
+                snapshot.connectedCount += connected ? 1 : -1;
+            }
+            snapshot.currents[chunk][offset] = current;
+            snapshot.chargingPointVersions[chunk][offset] = snapshot.version;
+            if (connected) {
+                snapshot.connected[chunk] |= 1L << index;
+            } else {
+                snapshot.connected[chunk] &= ~(1L << index);
+            }
+            return true;
+        }
+
+        /**
+         * Sets the counters only the allocation policy knows, they are kept from the original snapshot otherwise
+         *
+         * @param fastCount           Number of connected charging points allocated more than their minimum current
+         * @param fastChargeAvailable Whether a vehicle connected now would get more than its minimum current
+         */
+        public void setAllocation(int fastCount, boolean fastChargeAvailable) {
+            snapshot.fastCount = fastCount;
+            snapshot.fastChargeAvailable = fastChargeAvailable;
+        }
+
+        /**
+         * @return The new snapshot, the builder must not be used afterwards
+         */
+        public CarparkSnapshot build() {
+            return snapshot;
+        }
+    }
+
+    private final class ChargingPoints extends AbstractList<ChargingPoint> implements RandomAccess {
+        @Override
+        public ChargingPoint get(int index) {
+            return getChargingPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return identifiers.length;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Occupancy and load of a carpark as of one of its snapshots.
+ */
+@Value
+public class CarparkSummary {
+    String name;
+    int chargingPoints;
+    int free;
+    int occupied;
+    int fast;
+    int slow;
+    long current;
+}
@@ -1,15 +1,13 @@
 package com.ubitricity.carparkubi.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Value;
 
-@Data
-@AllArgsConstructor
+@Value
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class ChargingPoint {
     @EqualsAndHashCode.Include
-    private String identifier;
-    private Integer current;
-    private Boolean connected;
-}
\ No newline at end of file
+    String identifier;
+    Integer current;
+    Boolean connected;
+}
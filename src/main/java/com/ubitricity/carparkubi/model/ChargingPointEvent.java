@@ -0,0 +1,24 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * Plug or unplug notification sent by a charging point. The sender can number the notifications of every charging
+ * point with an increasing sequence, <code>0</code> meaning not numbered.
+ */
+@Value
+@AllArgsConstructor
+public class ChargingPointEvent {
+    String identifier;
+    boolean connected;
+    int sequence;
+
+    /**
+     * @param identifier Identifier of the charging point
+     * @param connected  Whether the charging point was connected or disconnected
+     */
+    public ChargingPointEvent(String identifier, boolean connected) {
+        this(identifier, connected, 0);
+    }
+}
@@ -0,0 +1,18 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Charge delivered by a charging point over a time range, and by its last session as of the end of the range.
+ * The range starts at the oldest sample kept if the requested start is older.
+ */
+@Value
+public class EnergyReport {
+    long from;
+    long to;
+    double ampHours;
+    double totalAmpHours;
+    boolean connected;
+    long sessionStart;
+    double sessionAmpHours;
+}
@@ -0,0 +1,12 @@
+package com.ubitricity.carparkubi.model;
+
+/**
+ * Result of applying a single {@link ChargingPointEvent} to a carpark.
+ */
+public enum EventOutcome {
+    CONNECTED,
+    DISCONNECTED,
+    UNCHANGED,
+    NOT_FOUND,
+    STALE
+}
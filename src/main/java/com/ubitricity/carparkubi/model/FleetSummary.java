@@ -0,0 +1,35 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Summaries of the carparks matching a fleet report, ordered by name, and their totals.
+ */
+@Value
+public class FleetSummary {
+    FleetTotals totals;
+    List<CarparkSummary> carparks;
+
+    /**
+     * @param cursor Name of the last carpark of the previous page, <code>null</code> for the first page
+     * @return Position of the first carpark named after the cursor
+     */
+    public int indexAfter(String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = carparks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (carparks.get(middle).getName().compareTo(cursor) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
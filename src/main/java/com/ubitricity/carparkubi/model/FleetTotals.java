@@ -0,0 +1,26 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Occupancy and load added up over several carparks.
+ */
+@Value
+public class FleetTotals {
+    int carparks;
+    long chargingPoints;
+    long free;
+    long occupied;
+    long fast;
+    long slow;
+    long current;
+
+    /**
+     * @param other Totals of other carparks
+     * @return Totals of the carparks of both
+     */
+    public FleetTotals plus(FleetTotals other) {
+        return new FleetTotals(carparks + other.carparks, chargingPoints + other.chargingPoints, free + other.free,
+                occupied + other.occupied, fast + other.fast, slow + other.slow, current + other.current);
+    }
+}
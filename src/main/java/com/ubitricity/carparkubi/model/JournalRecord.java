@@ -0,0 +1,31 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * State change of a carpark as written to the journal: the events that changed the carpark and the version of the
+ * carpark once they were applied.
+ * <p>
+ * A reset record replaces the whole state of the carpark and starts a new history, its version can be lower than the
+ * ones of the records before it. Its events disconnect every connected charging point and connect the new ones.
+ */
+@Value
+@AllArgsConstructor
+public class JournalRecord {
+    String carparkName;
+    long version;
+    List<ChargingPointEvent> events;
+    boolean reset;
+
+    /**
+     * @param carparkName Carpark changed
+     * @param version     Version of the carpark once the events were applied
+     * @param events      Events that changed the carpark
+     */
+    public JournalRecord(String carparkName, long version, List<ChargingPointEvent> events) {
+        this(carparkName, version, events, false);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ubitricity.carparkubi.model;
+
+import lombok.Value;
+
+/**
+ * Carpark found by a nearest carpark query, with the availability it was selected on.
+ */
+@Value
+public class NearbyCarpark {
+    String name;
+    double latitude;
+    double longitude;
+    double distance;
+    CarparkAvailability availability;
+}
@@ -0,0 +1,98 @@
+package com.ubitricity.carparkubi.persistence;
+
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file holding the checkpoint of all the carparks and the position of the event log it covers.
+ * <p>
+ * Layout: magic (int), log position (long), number of carparks (int) and for each carpark its name, version (long),
+ * number of connected charging points (int) and their identifiers from the oldest to the most recent connection.
+ * Strings are written in modified UTF-8 preceded by their length.
+ */
+final class CheckpointFile {
+    static final String SUFFIX = ".checkpoint";
+    private static final int MAGIC = 0x43504b31;
+
+    private CheckpointFile() {
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file, forces it to disk and moves it atomically to its final name, so a
+     * checkpoint file is either complete or missing.
+     *
+     * @param directory   Directory of the event log
+     * @param position    Position of the event log covered by the checkpoint
+     * @param checkpoints Checkpoint of every carpark
+     * @return Path of the checkpoint file
+     * @throws IOException if the checkpoint can't be written
+     */
+    static Path write(Path directory, long position, List<CarparkCheckpoint> checkpoints) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", position, SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(temporary.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+            output.writeInt(MAGIC);
+            output.writeLong(position);
+            output.writeInt(checkpoints.size());
+            for (CarparkCheckpoint checkpoint : checkpoints) {
+                output.writeUTF(checkpoint.getCarparkName());
+                output.writeLong(checkpoint.getVersion());
+                output.writeInt(checkpoint.getConnectedChargingPoints().size());
+                for (String id : checkpoint.getConnectedChargingPoints()) {
+                    output.writeUTF(id);
+                }
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        return Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file Checkpoint file
+     * @return Checkpoint of every carpark stored in the file
+     * @throws IOException if the checkpoint can't be read
+     */
+    static List<CarparkCheckpoint> read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Invalid checkpoint file " + file);
+            }
+            input.readLong();
+            int carparks = input.readInt();
+            List<CarparkCheckpoint> checkpoints = new ArrayList<>(carparks);
+            for (int i = 0; i < carparks; i++) {
+                String name = input.readUTF();
+                long version = input.readLong();
+                int connected = input.readInt();
+                List<String> ids = new ArrayList<>(connected);
+                for (int j = 0; j < connected; j++) {
+                    ids.add(input.readUTF());
+                }
+                checkpoints.add(new CarparkCheckpoint(name, version, ids));
+            }
+            return checkpoints;
+        }
+    }
+
+    /**
+     * @param file Checkpoint file
+     * @return Position of the event log covered by the checkpoint, taken from the file name
+     */
+    static long positionOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,29 @@
+package com.ubitricity.carparkubi.persistence;
+
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically stores a checkpoint of all the carparks and compacts the event log behind it, keeping the restart
+ * time independent of the history of the carparks.
+ */
+@Component
+@ConditionalOnProperty(prefix = "carparks.log", name = "enabled", havingValue = "true")
+public class CheckpointJob {
+    private final EventJournal journal;
+    private final CarparkRegistry carparkRegistry;
+
+    public CheckpointJob(EventJournal journal, CarparkRegistry carparkRegistry) {
+        this.journal = journal;
+        this.carparkRegistry = carparkRegistry;
+    }
+
+    @Scheduled(initialDelayString = "${carparks.log.checkpoint-interval:PT5M}",
+            fixedDelayString = "${carparks.log.checkpoint-interval:PT5M}")
+    public void checkpoint() {
+        journal.checkpoint(carparkRegistry::checkpoints);
+    }
+}
@@ -0,0 +1,424 @@
+package com.ubitricity.carparkubi.persistence;
+
+import com.ubitricity.carparkubi.config.CarparksProperties.Durability;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.JournalRecord;
+import com.ubitricity.carparkubi.services.EventJournal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the carparks state changes stored in memory-mapped segment files.
+ * Checkpoints of all the carparks are stored next to the segments, the segments covered by the latest checkpoint are
+ * deleted so the restart time doesn't grow with the history of the carparks.
+ * <p>
+ * Appending only copies the record into the mapped segment under a short lock. A dedicated flusher thread forces the
+ * segment to disk, so a single fsync covers every record appended since the previous one (group commit). With
+ * {@link Durability#SYNC} the callers wait for the flush covering their record in {@link #awaitDurable(long)}, which
+ * runs outside the carpark lock.
+ * <p>
+ * Record layout: payload length (int), CRC32 of the payload (int) and the payload. A zero length marks the end of
+ * the records of a segment. The payload holds the carpark name, the version (long), the number of events (int) and
+ * for each event the charging point identifier and the connected flag (byte), then the reset flag (byte). Records
+ * written before the reset flag existed end after their events and are read as regular changes. Strings are written
+ * as their length (short) followed by their UTF-8 bytes.
+ */
+public class EventLog implements EventJournal, Closeable {
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushRequested = flushLock.newCondition();
+    private final Condition flushed = flushLock.newCondition();
+    private final Thread flusher;
+    private final Queue<Segment> retiredSegments = new ConcurrentLinkedQueue<>();
+    private boolean flushPending;
+    private volatile Segment segment;
+    private volatile long appendedPosition;
+    private volatile long durablePosition;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the log stored in the given directory, creating it if needed. New records are appended after the last
+     * valid record, a record partially written before a crash fails its checksum and is overwritten.
+     *
+     * @param directory     Directory of the segment files
+     * @param segmentSize   Size in bytes of every segment file
+     * @param durability    Whether callers wait for their records to be flushed
+     * @param flushInterval Maximum time between two flushes
+     * @throws IOException if the log can't be opened
+     */
+    public EventLog(Path directory, int segmentSize, Durability durability, Duration flushInterval) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.durability = durability;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        Files.createDirectories(directory);
+        List<Path> segmentFiles = segmentFiles();
+        if (segmentFiles.isEmpty()) {
+            segment = Segment.create(directory, 0, segmentSize);
+        } else {
+            Path last = segmentFiles.get(segmentFiles.size() - 1);
+            segment = Segment.open(last, baseOf(last));
+            segment.buffer.position(scan(segment.buffer.duplicate(), null));
+        }
+        appendedPosition = segment.base + segment.buffer.position();
+        durablePosition = appendedPosition;
+        flusher = new Thread(this::flushLoop, "event-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public long append(JournalRecord record) {
+        byte[] carparkName = record.getCarparkName().getBytes(StandardCharsets.UTF_8);
+        List<ChargingPointEvent> events = record.getEvents();
+        byte[][] identifiers = new byte[events.size()][];
+        int payloadSize = Short.BYTES + carparkName.length + Long.BYTES + Integer.BYTES + Byte.BYTES;
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = events.get(i).getIdentifier().getBytes(StandardCharsets.UTF_8);
+            payloadSize += Short.BYTES + identifiers[i].length + Byte.BYTES;
+        }
+        int recordSize = HEADER_SIZE + payloadSize;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Record of " + recordSize + " bytes doesn't fit in a segment");
+        }
+        appendLock.lock();
+        try {
+            if (segment.buffer.remaining() < recordSize) {
+                roll();
+            }
+            ByteBuffer buffer = segment.buffer;
+            int start = buffer.position();
+            buffer.position(start + HEADER_SIZE);
+            putString(buffer, carparkName);
+            buffer.putLong(record.getVersion());
+            buffer.putInt(identifiers.length);
+            for (int i = 0; i < identifiers.length; i++) {
+                putString(buffer, identifiers[i]);
+                buffer.put((byte) (events.get(i).isConnected() ? 1 : 0));
+            }
+            buffer.put((byte) (record.isReset() ? 1 : 0));
+            crc.reset();
+            crc.update(buffer.duplicate().position(start + HEADER_SIZE).limit(buffer.position()));
+            buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+            buffer.putInt(start, payloadSize);
+            appendedPosition = segment.base + buffer.position();
+            return appendedPosition;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+        if (durability == Durability.ASYNC || durablePosition >= position) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            while (durablePosition < position) {
+                if (!running) {
+                    throw new IllegalStateException("Event log is closed");
+                }
+                flushPending = true;
+                flushRequested.signal();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void replay(Consumer<CarparkCheckpoint> checkpointConsumer, Consumer<JournalRecord> recordConsumer) {
+        try {
+            long checkpointPosition = 0;
+            Optional<Path> checkpoint = latestCheckpoint();
+            if (checkpoint.isPresent()) {
+                checkpointPosition = CheckpointFile.positionOf(checkpoint.get());
+                CheckpointFile.read(checkpoint.get()).forEach(checkpointConsumer);
+            }
+            List<Path> segmentFiles = segmentFiles();
+            for (int i = 0; i < segmentFiles.size(); i++) {
+                if (i + 1 < segmentFiles.size() && baseOf(segmentFiles.get(i + 1)) <= checkpointPosition) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(segmentFiles.get(i), StandardOpenOption.READ)) {
+                    scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), recordConsumer);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rolls the log to a new segment, writes the checkpoint and deletes the segments and checkpoints older than it.
+     * Every record of the deleted segments was appended before the checkpoints were taken, so they are covered by them.
+     *
+     * @param checkpoints Supplier of the checkpoints of all the carparks
+     */
+    @Override
+    public void checkpoint(Supplier<List<CarparkCheckpoint>> checkpoints) {
+        long position;
+        appendLock.lock();
+        try {
+            if (segment.buffer.position() > 0) {
+                roll();
+            }
+            position = segment.base;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            CheckpointFile.write(directory, position, checkpoints.get());
+            for (Path file : segmentFiles()) {
+                if (baseOf(file) < position) {
+                    Files.delete(file);
+                }
+            }
+            for (Path file : checkpointFiles()) {
+                if (CheckpointFile.positionOf(file) < position) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Position of the log right after the last appended record
+     */
+    public long position() {
+        return appendedPosition;
+    }
+
+    /**
+     * @return Position up to which the log is persisted
+     */
+    public long durablePosition() {
+        return durablePosition;
+    }
+
+    @Override
+    public void close() {
+        flushLock.lock();
+        try {
+            running = false;
+            flushRequested.signal();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.close();
+    }
+
+    /**
+     * Moves to a new segment starting at the current position. The previous segment is retired before the new one is
+     * published, the flusher forces and closes it outside the append lock. Must be called holding the append lock.
+     */
+    private void roll() {
+        Segment previous = segment;
+        Segment next;
+        try {
+            next = Segment.create(directory, previous.base + previous.buffer.position(), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        retiredSegments.add(previous);
+        segment = next;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            flushLock.lock();
+            try {
+                long remaining = flushIntervalNanos;
+                while (running && !flushPending && remaining > 0) {
+                    remaining = flushRequested.awaitNanos(remaining);
+                }
+                flushPending = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+            flush();
+        }
+        flush();
+    }
+
+    /**
+     * Forces the log to disk and wakes up the callers waiting for any of the records covered by the flush.
+     * The appended position is read before the segment and the retired segments after it: a segment rolled since the
+     * position was read is retired before its successor is published, so every segment holding records up to that
+     * position is forced.
+     */
+    private void flush() {
+        long target = appendedPosition;
+        Segment current = segment;
+        if (target > durablePosition) {
+            current.buffer.force();
+        }
+        for (Segment retired = retiredSegments.poll(); retired != null; retired = retiredSegments.poll()) {
+            retired.buffer.force();
+            retired.close();
+        }
+        flushLock.lock();
+        try {
+            durablePosition = Math.max(durablePosition, target);
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        return files(SEGMENT_SUFFIX);
+    }
+
+    private List<Path> checkpointFiles() throws IOException {
+        return files(CheckpointFile.SUFFIX);
+    }
+
+    private Optional<Path> latestCheckpoint() throws IOException {
+        List<Path> checkpoints = checkpointFiles();
+        return checkpoints.isEmpty() ? Optional.empty() : Optional.of(checkpoints.get(checkpoints.size() - 1));
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads the valid records of a segment from its beginning.
+     *
+     * @param buffer   Content of the segment
+     * @param consumer Consumer of the records, <code>null</code> to only look for the end of the segment
+     * @return Offset right after the last valid record
+     */
+    private static int scan(ByteBuffer buffer, Consumer<JournalRecord> consumer) {
+        CRC32 checksum = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int payloadSize = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (payloadSize <= 0 || payloadSize > buffer.remaining()) {
+                return start;
+            }
+            ByteBuffer payload = buffer.slice().limit(payloadSize);
+            checksum.reset();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != expectedCrc) {
+                return start;
+            }
+            if (consumer != null) {
+                consumer.accept(decode(payload));
+            }
+            buffer.position(buffer.position() + payloadSize);
+        }
+        return buffer.position();
+    }
+
+    private static JournalRecord decode(ByteBuffer payload) {
+        String carparkName = getString(payload);
+        long version = payload.getLong();
+        int count = payload.getInt();
+        List<ChargingPointEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new ChargingPointEvent(getString(payload), payload.get() == 1));
+        }
+        return new JournalRecord(carparkName, version, events, payload.hasRemaining() && payload.get() == 1);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static long baseOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Segment file mapped in memory, named after the log position of its first byte
+     */
+    private static final class Segment {
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        private Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long base, int size) throws IOException {
+            Path file = directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(base, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        static Segment open(Path file, long base) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(base, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ubitricity.carparkubi.persistence;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.io.IOException;
+
+@Configuration
+@EnableScheduling
+public class PersistenceConfiguration {
+
+    /**
+     * @param properties Carparks configuration
+     * @return Event log configured under <code>carparks.log</code>, or a journal that doesn't persist anything if the
+     * log is disabled
+     * @throws IOException if the event log can't be opened
+     */
+    @Bean
+    public EventJournal eventJournal(CarparksProperties properties) throws IOException {
+        CarparksProperties.Log log = properties.getLog();
+        if (!log.isEnabled()) {
+            return EventJournal.NONE;
+        }
+        return new EventLog(log.getDirectory(), log.getSegmentSize(), log.getDurability(), log.getFlushInterval());
+    }
+}
@@ -0,0 +1,35 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.ubitricity.carparkubi.controllers.CarparksController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects the notifications sent to a follower, its carparks only change by replication. Clients send their writes to
+ * the primary and read their own writes from a follower by asking for the version the primary returned.
+ */
+public class ReadReplicaFilter extends OncePerRequestFilter {
+    private static final String PREFIX = "/" + CarparksController.CARPARKS + "/";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().substring(request.getContextPath().length()).startsWith(PREFIX)
+                || HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod())
+                || HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        response.setHeader(HttpHeaders.ALLOW, "GET, HEAD, OPTIONS");
+        response.sendError(HttpStatus.METHOD_NOT_ALLOWED.value(), "Read replica, send the notifications to the primary");
+    }
+}
@@ -0,0 +1,195 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.controllers.CheckpointDTO;
+import com.ubitricity.carparkubi.controllers.ReplicatedRecordDTO;
+import com.ubitricity.carparkubi.controllers.ReplicationBatchDTO;
+import com.ubitricity.carparkubi.controllers.ReplicationController;
+import com.ubitricity.carparkubi.controllers.ReplicationStatusDTO;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.JournalRecord;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Follower of a primary: polls the changes of its carparks in order and applies them to the local carparks, which
+ * then serve the reports like the primary does.
+ * <p>
+ * A single thread applies the changes, so the carparks of the follower go through the same versions as the ones of
+ * the primary. Only the last applied sequence is kept, after a restart or a new run of the primary the follower
+ * starts over from the checkpoints of the carparks.
+ */
+@Slf4j
+public class ReplicaFollower implements SmartLifecycle {
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final CarparkRegistry carparkRegistry;
+    private final ObjectMapper objectMapper;
+    private final URI primaryUri;
+    private final Duration pollTimeout;
+    private final HttpClient client;
+    private volatile Thread thread;
+    private volatile boolean connected;
+    private volatile long epoch;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long appliedTimestamp;
+
+    /**
+     * @param carparkRegistry Local carparks
+     * @param objectMapper    JSON configuration of the API
+     * @param properties      Configuration of the replication
+     */
+    public ReplicaFollower(CarparkRegistry carparkRegistry, ObjectMapper objectMapper,
+                           CarparksProperties.Replication properties) {
+        if (properties.getPrimaryUri() == null) {
+            throw new IllegalStateException("carparks.replication.primary-uri is required by the followers");
+        }
+        this.carparkRegistry = carparkRegistry;
+        this.objectMapper = objectMapper;
+        this.primaryUri = properties.getPrimaryUri();
+        this.pollTimeout = properties.getPollTimeout();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(RETRY_DELAY)
+                .build();
+    }
+
+    @Override
+    public void start() {
+        thread = new Thread(this::follow, "replica-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread follower = thread;
+        thread = null;
+        follower.interrupt();
+        try {
+            follower.join(RETRY_DELAY.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * @return Position of this follower behind the primary, as of the last answer of the primary
+     */
+    public ReplicationStatusDTO status() {
+        long lagRecords = Math.max(0, primarySequence - appliedSequence);
+        long lagMillis = lagRecords == 0 || appliedTimestamp == 0 ? 0
+                : Math.max(0, System.currentTimeMillis() - appliedTimestamp);
+        return new ReplicationStatusDTO(primaryUri.toString(), connected, appliedSequence, primarySequence,
+                lagRecords, lagMillis);
+    }
+
+    private void follow() {
+        while (thread != null) {
+            try {
+                poll();
+                connected = true;
+            } catch (IOException e) {
+                if (connected) {
+                    log.warn("Lost the primary {}: {}", primaryUri, e.toString());
+                }
+                connected = false;
+                sleep();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Can't apply the changes of the primary {}", primaryUri, e);
+                connected = false;
+                sleep();
+            }
+        }
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        URI uri = primaryUri.resolve("/" + ReplicationController.REPLICATION + ReplicationController.RECORDS
+                + "?epoch=" + epoch + "&after=" + appliedSequence);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(pollTimeout.plus(pollTimeout))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Unexpected status " + response.statusCode());
+        }
+        apply(objectMapper.readValue(response.body(), ReplicationBatchDTO.class));
+    }
+
+    private void apply(ReplicationBatchDTO batch) {
+        if (batch.getCheckpoints() != null) {
+            boolean newHistory = batch.getEpoch() != epoch;
+            log.info("Following the primary {} from the checkpoints at sequence {}", primaryUri, batch.getSequence());
+            batch.getCheckpoints().forEach(checkpoint -> adopt(checkpoint, newHistory));
+            epoch = batch.getEpoch();
+            appliedSequence = batch.getSequence();
+        }
+        for (ReplicatedRecordDTO record : batch.getRecords()) {
+            find(record.getCarparkName()).ifPresent(carpark -> carpark.replicate(new JournalRecord(
+                    record.getCarparkName(), record.getVersion(), record.getEvents().stream()
+                    .map(event -> new ChargingPointEvent(event.getId(), event.getConnected()))
+                    .collect(Collectors.toList()))));
+            appliedSequence = record.getSequence();
+            appliedTimestamp = record.getTimestamp();
+        }
+        primarySequence = batch.getSequence();
+    }
+
+    /**
+     * The versions of a new epoch of the primary can't be compared with the ones applied so far, e.g. a primary
+     * restarted without its journal starts over from version 0, so the checkpoints of a new epoch always replace the
+     * local state. Within an epoch a carpark already ahead of its checkpoint keeps its state.
+     */
+    private void adopt(CheckpointDTO checkpoint, boolean newHistory) {
+        find(checkpoint.getCarparkName()).ifPresent(carpark -> {
+            CarparkCheckpoint state = new CarparkCheckpoint(checkpoint.getCarparkName(), checkpoint.getVersion(),
+                    checkpoint.getConnectedChargingPoints());
+            if (newHistory) {
+                carpark.reset(state);
+            } else if (!carpark.adopt(state) && carpark.snapshot().getVersion() > checkpoint.getVersion()) {
+                log.warn("Carpark {} is at version {}, ahead of the primary at {}", carpark.getName(),
+                        carpark.snapshot().getVersion(), checkpoint.getVersion());
+            }
+        });
+    }
+
+    private Optional<CarparkUbi> find(String carparkName) {
+        try {
+            return Optional.of(carparkRegistry.find(carparkName));
+        } catch (CarparkNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(RETRY_DELAY.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            thread = null;
+        }
+    }
+}
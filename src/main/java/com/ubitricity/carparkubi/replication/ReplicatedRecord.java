@@ -0,0 +1,15 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.ubitricity.carparkubi.model.JournalRecord;
+import lombok.Value;
+
+/**
+ * Change of a carpark as streamed to the followers, numbered in the order the primary applied the changes of all its
+ * carparks.
+ */
+@Value
+public class ReplicatedRecord {
+    long sequence;
+    long timestamp;
+    JournalRecord record;
+}
@@ -0,0 +1,58 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventJournal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class ReplicationConfiguration {
+
+    @Configuration
+    @ConditionalOnProperty(name = "carparks.replication.role", havingValue = "PRIMARY")
+    public static class PrimaryConfiguration {
+
+        /**
+         * @return Journal of the carparks keeping their latest changes for the followers in front of the configured one
+         */
+        @Bean
+        @Primary
+        public ReplicationLog replicationLog(@Qualifier("eventJournal") EventJournal eventJournal,
+                                             CarparksProperties properties) {
+            return new ReplicationLog(eventJournal, properties.getReplication().getRetainedRecords());
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "carparks.replication.role", havingValue = "FOLLOWER")
+    public static class FollowerConfiguration {
+
+        @Bean
+        public ReplicaFollower replicaFollower(CarparkRegistry carparkRegistry, ObjectMapper objectMapper,
+                                               CarparksProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+            ReplicaFollower follower = new ReplicaFollower(carparkRegistry, objectMapper, properties.getReplication());
+            meterRegistry.ifAvailable(registry -> {
+                Gauge.builder("carpark.replication.lag.records", follower, f -> f.status().getLagRecords())
+                        .description("Changes of the primary not applied by this follower yet")
+                        .register(registry);
+                Gauge.builder("carpark.replication.lag.seconds", follower, f -> f.status().getLagMillis() / 1000.0)
+                        .description("Age of the last change applied by this follower while it is behind")
+                        .register(registry);
+            });
+            return follower;
+        }
+
+        @Bean
+        public ReadReplicaFilter readReplicaFilter() {
+            return new ReadReplicaFilter();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.JournalRecord;
+import com.ubitricity.carparkubi.services.EventJournal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Journal of the primary keeping the latest changes of all its carparks in memory for the followers, in front of the
+ * journal persisting them.
+ * <p>
+ * Every appended record claims the next sequence number with an atomic increment and is published in its slot of a
+ * fixed ring, replacing the oldest one, so the carparks don't share any lock: under its own lock a carpark pays the
+ * increment, the wrapper of the record and a compare-and-set of the slot, which never replaces a newer record stored
+ * by a writer that lapped it. The followers waiting for a change park their thread, an append only wakes them up
+ * when there are some.
+ * <p>
+ * Carparks publish concurrently, so a slot may still hold an older record while the following ones are published:
+ * followers read the ring from the sequence they applied last up to the first record not published yet. A follower
+ * asking for a sequence the ring doesn't hold anymore, or for one of a previous run of the primary (see
+ * {@link #epoch()}), must start over from the checkpoints of the carparks.
+ */
+public class ReplicationLog implements EventJournal {
+    private final EventJournal journal;
+    private final AtomicReferenceArray<ReplicatedRecord> records;
+    private final AtomicLong head = new AtomicLong();
+    private final Queue<Thread> waiting = new ConcurrentLinkedQueue<>();
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    /**
+     * @param journal  Journal persisting the changes
+     * @param capacity Number of changes kept in memory
+     */
+    public ReplicationLog(EventJournal journal, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The replication log must keep at least one record");
+        }
+        this.journal = journal;
+        this.records = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public long append(JournalRecord record) {
+        long position = journal.append(record);
+        long sequence = head.incrementAndGet();
+        ReplicatedRecord replicated = new ReplicatedRecord(sequence, System.currentTimeMillis(), record);
+        int slot = slotOf(sequence);
+        for (ReplicatedRecord previous = records.get(slot);
+             (previous == null || previous.getSequence() < sequence) && !records.compareAndSet(slot, previous, replicated);
+             previous = records.get(slot)) {
+            Thread.onSpinWait();
+        }
+        if (!waiting.isEmpty()) {
+            waiting.forEach(LockSupport::unpark);
+        }
+        return position;
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+        journal.awaitDurable(position);
+    }
+
+    @Override
+    public void replay(Consumer<CarparkCheckpoint> checkpointConsumer, Consumer<JournalRecord> recordConsumer) {
+        journal.replay(checkpointConsumer, recordConsumer);
+    }
+
+    @Override
+    public void checkpoint(Supplier<List<CarparkCheckpoint>> checkpoints) {
+        journal.checkpoint(checkpoints);
+    }
+
+    /**
+     * Reads the changes following a sequence, waiting for the first one if the follower is up to date
+     *
+     * @param after   Sequence of the last change applied by the follower
+     * @param max     Largest number of changes returned
+     * @param timeout Longest time to wait for a change, in milliseconds
+     * @return Following changes in order, empty if none came in time, <code>null</code> if the changes right after the
+     * sequence are not kept anymore
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public List<ReplicatedRecord> read(long after, int max, long timeout) throws InterruptedException {
+        List<ReplicatedRecord> read = readPublished(after, max);
+        if (read == null || !read.isEmpty() || timeout <= 0) {
+            return read;
+        }
+        Thread thread = Thread.currentThread();
+        waiting.add(thread);
+        try {
+            // Registered before reading again, an append published after that read sees the waiter and unparks it
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            for (long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+                 (read = readPublished(after, max)) != null && read.isEmpty() && remaining > 0;
+                 remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiting.remove(thread);
+        }
+        return read;
+    }
+
+    /**
+     * @return Sequence of the last change appended, it may still be being published
+     */
+    public long head() {
+        return head.get();
+    }
+
+    /**
+     * @return Identifier of this run of the primary, the sequences of different runs are unrelated
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @return Published changes following the sequence in order, <code>null</code> if the first one is not kept
+     * anymore
+     */
+    private List<ReplicatedRecord> readPublished(long after, int max) {
+        long last = head.get();
+        if (after > last || after < last - records.length()) {
+            return null;
+        }
+        List<ReplicatedRecord> read = new ArrayList<>((int) Math.min(max, last - after));
+        for (long sequence = after + 1; read.size() < max; sequence++) {
+            ReplicatedRecord record = records.get(slotOf(sequence));
+            if (record == null || record.getSequence() < sequence) {
+                break;
+            }
+            if (record.getSequence() > sequence) {
+                return read.isEmpty() ? null : read;
+            }
+            read.add(record);
+        }
+        return read;
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % records.length());
+    }
+}
@@ -0,0 +1,241 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Fans out the allocation changes of one carpark to its subscribers.
+ * <p>
+ * The writer only enqueues the delta, the fan-out and the delivery run on a shared executor. The queue of the fan-out
+ * and the buffer of every subscriber are bounded: when the fan-out falls a whole queue behind every subscriber is sent
+ * the full snapshot of the carpark instead of the dropped deltas, and so is a subscriber whose buffer overflows. A
+ * subscriber overflowing again while a delivery to it is still running since the previous overflow doesn't read at
+ * all, it is disconnected and its buffer released. Deliveries are run as managed blocks, a delivery blocked on a
+ * slow client makes a {@link ForkJoinPool} start a spare thread rather than hold back the other subscribers. A slow
+ * subscriber therefore never stalls the writers nor the other subscribers.
+ * <p>
+ * A delta of another epoch than the last snapshot sent means the carpark was reset, possibly to a lower version: the
+ * subscriber is sent the new snapshot rather than deltas it could not order.
+ * <p>
+ * The feed stops listening to the carpark once closed, it is notified as idle whenever its last subscription ends.
+ */
+public class AllocationFeed implements CarparkListener {
+    private final CarparkUbi carpark;
+    private final Executor executor;
+    private final int bufferSize;
+    private final Consumer<AllocationFeed> onIdle;
+    private final Queue<AllocationDelta> pending;
+    private final AtomicBoolean fanOutScheduled = new AtomicBoolean();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile boolean overflowed;
+
+    /**
+     * @param carpark    Carpark whose changes are streamed
+     * @param executor   Executor running the fan-out and the delivery to the subscribers
+     * @param bufferSize Maximum number of deltas queued for the fan-out and buffered per subscriber
+     */
+    public AllocationFeed(CarparkUbi carpark, Executor executor, int bufferSize) {
+        this(carpark, executor, bufferSize, feed -> {
+        });
+    }
+
+    /**
+     * @param carpark    Carpark whose changes are streamed
+     * @param executor   Executor running the fan-out and the delivery to the subscribers
+     * @param bufferSize Maximum number of deltas queued for the fan-out and buffered per subscriber
+     * @param onIdle     Called with this feed every time its last subscription ends
+     */
+    public AllocationFeed(CarparkUbi carpark, Executor executor, int bufferSize, Consumer<AllocationFeed> onIdle) {
+        this.carpark = carpark;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.onIdle = onIdle;
+        this.pending = new ArrayBlockingQueue<>(bufferSize);
+        carpark.addListener(this);
+    }
+
+    @Override
+    public void onChange(AllocationDelta delta) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        if (!pending.offer(delta)) {
+            overflowed = true;
+            pending.clear();
+        }
+        if (fanOutScheduled.compareAndSet(false, true)) {
+            executor.execute(this::fanOut);
+        }
+    }
+
+    /**
+     * Registers a subscriber, it receives the current snapshot of the carpark followed by every change.
+     *
+     * @param subscriber Receiver of the changes
+     * @return Subscription to be cancelled once the subscriber is gone
+     */
+    public Subscription subscribe(AllocationSubscriber subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.schedule();
+        return subscription;
+    }
+
+    /**
+     * @return Number of active subscriptions
+     */
+    public int subscriptions() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return Name of the carpark whose changes are streamed
+     */
+    public String getCarparkName() {
+        return carpark.getName();
+    }
+
+    /**
+     * Stops listening to the carpark, the feed must have no subscription left
+     */
+    public void close() {
+        carpark.removeListener(this);
+    }
+
+    private void fanOut() {
+        do {
+            if (overflowed) {
+                overflowed = false;
+                subscriptions.forEach(Subscription::resynchronize);
+            }
+            for (AllocationDelta delta = pending.poll(); delta != null; delta = pending.poll()) {
+                for (Subscription subscription : subscriptions) {
+                    subscription.offer(delta);
+                }
+            }
+            fanOutScheduled.set(false);
+        } while ((overflowed || !pending.isEmpty()) && fanOutScheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Subscription of a single subscriber. Deliveries are serialized by the <code>scheduled</code> flag, the buffer is
+     * only overflowed by the fan-out, itself serialized.
+     */
+    public final class Subscription {
+        private static final long IDLE = 0;
+
+        private final AllocationSubscriber subscriber;
+        private final Queue<AllocationDelta> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean resync = true;
+        private volatile boolean cancelled;
+        private volatile boolean disconnected;
+        private volatile long runningDelivery = IDLE;
+        private long deliveries;
+        private long overflowedDelivery = IDLE;
+        private long lastEpoch;
+        private long lastVersion = -1;
+
+        private Subscription(AllocationSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Stops the delivery of changes to the subscriber
+         */
+        public void cancel() {
+            cancelled = true;
+            buffer.clear();
+            if (subscriptions.remove(this) && subscriptions.isEmpty()) {
+                onIdle.accept(AllocationFeed.this);
+            }
+        }
+
+        private void offer(AllocationDelta delta) {
+            if (!buffer.offer(delta)) {
+                long running = runningDelivery;
+                if (running != IDLE && running == overflowedDelivery) {
+                    disconnected = true;
+                    cancel();
+                    return;
+                }
+                overflowedDelivery = running;
+                resynchronize();
+            }
+            schedule();
+        }
+
+        private void resynchronize() {
+            resync = true;
+            buffer.clear();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            runningDelivery = ++deliveries;
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean done;
+
+                    @Override
+                    public boolean block() {
+                        deliverBuffered();
+                        done = true;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return done;
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            } catch (RuntimeException e) {
+                cancel();
+            } finally {
+                runningDelivery = IDLE;
+                scheduled.set(false);
+            }
+            if (disconnected) {
+                subscriber.onDisconnect();
+            } else if (resync || !buffer.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void deliverBuffered() {
+            if (resync) {
+                resync = false;
+                CarparkSnapshot snapshot = carpark.snapshot();
+                subscriber.onSnapshot(snapshot);
+                lastEpoch = snapshot.getEpoch();
+                lastVersion = snapshot.getVersion();
+            }
+            for (AllocationDelta delta = buffer.poll(); delta != null && !resync && !cancelled; delta = buffer.poll()) {
+                if (delta.getEpoch() != lastEpoch) {
+                    resync = true;
+                } else if (delta.getVersion() > lastVersion) {
+                    subscriber.onDelta(delta);
+                    lastVersion = delta.getVersion();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationSample;
+import com.ubitricity.carparkubi.model.EnergyReport;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocation history of the charging points of a carpark, kept off-heap in a fixed ring of samples per charging point.
+ * <p>
+ * Every change of the current or the connection of a charging point appends a sample holding the charge delivered
+ * by the charging point since the carpark started and the start of its last session. The charge is integrated when
+ * the sample is appended from the previous one, so the charge delivered between any two instants kept by the ring is
+ * the difference of two samples found by binary search, however long the range is. The heap use doesn't depend on
+ * the history: the samples live in a single direct buffer allocated with the carpark and the oldest ones are
+ * overwritten.
+ * <p>
+ * Samples are appended by the carpark holding its lock and read by any thread without locking. A reader checks the
+ * count of samples of the charging point again after reading and starts over if the writer may have overwritten the
+ * samples read meanwhile, the oldest slot of a ring is never read as it is the next one overwritten. Charges are kept
+ * in ampere-milliseconds.
+ */
+public class AllocationHistory {
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int TIMESTAMP = 0;
+    private static final int CHARGE = 8;
+    private static final int SESSION_START = 16;
+    private static final int SESSION_CHARGE = 24;
+    private static final int CURRENT = 32;
+    private static final int CONNECTED = 36;
+    private static final int SAMPLE_BYTES = 40;
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+
+    private final ByteBuffer samples;
+    private final long[] counts;
+    private final int capacity;
+
+    /**
+     * @param chargingPoints Number of charging points of the carpark
+     * @param capacity       Number of samples kept per charging point, the oldest one is kept only until the next
+     *                       change
+     */
+    public AllocationHistory(int chargingPoints, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("The history must keep at least two samples per charging point");
+        }
+        long bytes = (long) chargingPoints * capacity * SAMPLE_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The history of " + chargingPoints + " charging points can't keep "
+                    + capacity + " samples each");
+        }
+        this.samples = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        this.counts = new long[chargingPoints];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends the allocation of a charging point if it changed. Must be called by a single thread at a time, the
+     * carpark calls it holding its lock.
+     *
+     * @param index     Charging point
+     * @param current   Current allocated to the charging point
+     * @param connected Whether a vehicle is connected to the charging point
+     * @param timestamp Time of the change in milliseconds since the epoch, an earlier time than the last sample is
+     *                  taken as the time of the last sample
+     * @return <code>false</code> if the allocation of the charging point didn't change
+     */
+    public boolean record(int index, int current, boolean connected, long timestamp) {
+        long count = counts[index];
+        long charge = 0;
+        long sessionStart = 0;
+        long sessionCharge = 0;
+        boolean wasConnected = false;
+        if (count > 0) {
+            int last = offset(index, count - 1);
+            wasConnected = samples.getInt(last + CONNECTED) != 0;
+            int lastCurrent = samples.getInt(last + CURRENT);
+            if (lastCurrent == current && wasConnected == connected) {
+                return false;
+            }
+            long lastTimestamp = samples.getLong(last + TIMESTAMP);
+            timestamp = Math.max(timestamp, lastTimestamp);
+            charge = samples.getLong(last + CHARGE) + lastCurrent * (timestamp - lastTimestamp);
+            sessionStart = samples.getLong(last + SESSION_START);
+            sessionCharge = samples.getLong(last + SESSION_CHARGE);
+        }
+        if (connected && !wasConnected) {
+            sessionStart = timestamp;
+            sessionCharge = charge;
+        }
+        int offset = offset(index, count);
+        samples.putLong(offset + TIMESTAMP, timestamp);
+        samples.putLong(offset + CHARGE, charge);
+        samples.putLong(offset + SESSION_START, sessionStart);
+        samples.putLong(offset + SESSION_CHARGE, sessionCharge);
+        samples.putInt(offset + CURRENT, current);
+        samples.putInt(offset + CONNECTED, connected ? 1 : 0);
+        COUNTS.setRelease(counts, index, count + 1);
+        return true;
+    }
+
+    /**
+     * @param index Charging point
+     * @param from  Start of the range in milliseconds since the epoch
+     * @param to    End of the range in milliseconds since the epoch
+     * @return Samples in effect during the range from the oldest one kept, in chronological order
+     */
+    public List<AllocationSample> samples(int index, long from, long to) {
+        while (true) {
+            long count = (long) COUNTS.getAcquire(counts, index);
+            long oldest = oldest(count);
+            List<AllocationSample> read = new ArrayList<>();
+            for (long sequence = Math.max(oldest, find(index, oldest, count, from)); sequence < count; sequence++) {
+                int offset = offset(index, sequence);
+                long timestamp = samples.getLong(offset + TIMESTAMP);
+                if (timestamp > to) {
+                    break;
+                }
+                read.add(new AllocationSample(timestamp, samples.getInt(offset + CURRENT),
+                        samples.getInt(offset + CONNECTED) != 0, toAmpHours(samples.getLong(offset + CHARGE))));
+            }
+            if (isIntact(index, oldest)) {
+                return read;
+            }
+        }
+    }
+
+    /**
+     * @param index Charging point
+     * @param from  Start of the range in milliseconds since the epoch
+     * @param to    End of the range in milliseconds since the epoch, the current allocation is extrapolated beyond
+     *              the last sample
+     * @return Charge delivered during the range and by the session in progress or last ended at its end
+     */
+    public EnergyReport energy(int index, long from, long to) {
+        while (true) {
+            long count = (long) COUNTS.getAcquire(counts, index);
+            if (count == 0) {
+                return new EnergyReport(from, Math.max(from, to), 0, 0, false, 0, 0);
+            }
+            long oldest = oldest(count);
+            long start = Math.max(from, samples.getLong(offset(index, oldest) + TIMESTAMP));
+            long end = Math.max(start, to);
+            long chargeFrom = chargeAt(index, find(index, oldest, count, start), start);
+            long sequence = find(index, oldest, count, end);
+            long chargeTo = chargeAt(index, sequence, end);
+            int last = offset(index, sequence);
+            boolean connected = samples.getInt(last + CONNECTED) != 0;
+            long sessionStart = samples.getLong(last + SESSION_START);
+            long sessionCharge = samples.getLong(last + SESSION_CHARGE);
+            if (isIntact(index, oldest)) {
+                return new EnergyReport(start, end, toAmpHours(chargeTo - chargeFrom), toAmpHours(chargeTo), connected,
+                        sessionStart, sessionStart == 0 ? 0 : toAmpHours(chargeTo - sessionCharge));
+            }
+        }
+    }
+
+    /**
+     * @return Sequence of the oldest sample that can be read, the one before it may be overwritten at any time
+     */
+    private long oldest(long count) {
+        return Math.max(0, count - capacity + 1);
+    }
+
+    /**
+     * Binary search of the sample in effect at an instant
+     *
+     * @return Sequence of the last sample not later than the instant, <code>oldest - 1</code> if there is none
+     */
+    private long find(int index, long oldest, long count, long timestamp) {
+        long low = oldest;
+        long high = count - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            if (samples.getLong(offset(index, middle) + TIMESTAMP) <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return Charge delivered since the carpark started up to an instant covered by a sample
+     */
+    private long chargeAt(int index, long sequence, long timestamp) {
+        int offset = offset(index, sequence);
+        return samples.getLong(offset + CHARGE)
+                + samples.getInt(offset + CURRENT) * (timestamp - samples.getLong(offset + TIMESTAMP));
+    }
+
+    /**
+     * @return <code>true</code> if the samples from the oldest one were not overwritten while they were read
+     */
+    private boolean isIntact(int index, long oldest) {
+        VarHandle.acquireFence();
+        return oldest > (long) COUNTS.getAcquire(counts, index) - capacity;
+    }
+
+    private int offset(int index, long sequence) {
+        return (index * capacity + (int) (sequence % capacity)) * SAMPLE_BYTES;
+    }
+
+    private static double toAmpHours(long ampereMillis) {
+        return ampereMillis / MILLIS_PER_HOUR;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.Arrays;
+
+/**
+ * Current limits and priority tier of every charging point of a carpark, read by its {@link AllocationPolicy}.
+ * <p>
+ * A connected charging point always gets its minimum current and never more than its maximum. The policies ranking
+ * the connections serve the points of a higher tier before the others. The default limits are the ones of a charging
+ * point without specific configuration, they tell whether a vehicle connected now would be fast charged.
+ */
+public final class AllocationLimits {
+    public static final int DEFAULT_TIER = 0;
+
+    private final int defaultMinCurrent;
+    private final int defaultMaxCurrent;
+    private final int[] minCurrents;
+    private final int[] maxCurrents;
+    private final int[] tiers;
+
+    /**
+     * @param defaultMinCurrent Minimum current of a charging point without specific configuration
+     * @param defaultMaxCurrent Maximum current of a charging point without specific configuration
+     * @param minCurrents       Minimum current of every charging point, indexed like the snapshots
+     * @param maxCurrents       Maximum current of every charging point
+     * @param tiers             Priority tier of every charging point, {@link #DEFAULT_TIER} unless configured
+     */
+    public AllocationLimits(int defaultMinCurrent, int defaultMaxCurrent, int[] minCurrents, int[] maxCurrents,
+                            int[] tiers) {
+        if (minCurrents.length != maxCurrents.length || minCurrents.length != tiers.length) {
+            throw new IllegalArgumentException("Every charging point must have limits and a tier");
+        }
+        checkLimits(defaultMinCurrent, defaultMaxCurrent);
+        for (int i = 0; i < minCurrents.length; i++) {
+            checkLimits(minCurrents[i], maxCurrents[i]);
+        }
+        this.defaultMinCurrent = defaultMinCurrent;
+        this.defaultMaxCurrent = defaultMaxCurrent;
+        this.minCurrents = minCurrents.clone();
+        this.maxCurrents = maxCurrents.clone();
+        this.tiers = tiers.clone();
+    }
+
+    /**
+     * @param chargingPoints Number of charging points of the carpark
+     * @param minCurrent     Minimum current of every charging point
+     * @param maxCurrent     Maximum current of every charging point
+     * @return Same limits for every charging point, all in the default tier
+     */
+    public static AllocationLimits uniform(int chargingPoints, int minCurrent, int maxCurrent) {
+        int[] minCurrents = new int[chargingPoints];
+        int[] maxCurrents = new int[chargingPoints];
+        Arrays.fill(minCurrents, minCurrent);
+        Arrays.fill(maxCurrents, maxCurrent);
+        return new AllocationLimits(minCurrent, maxCurrent, minCurrents, maxCurrents, new int[chargingPoints]);
+    }
+
+    /**
+     * @return Number of charging points
+     */
+    public int size() {
+        return minCurrents.length;
+    }
+
+    /**
+     * @param index Charging point
+     * @return Current the charging point gets at least when connected
+     */
+    public int minCurrent(int index) {
+        return minCurrents[index];
+    }
+
+    /**
+     * @param index Charging point
+     * @return Current the charging point gets at most
+     */
+    public int maxCurrent(int index) {
+        return maxCurrents[index];
+    }
+
+    /**
+     * @param index Charging point
+     * @return Priority tier of the charging point, higher tiers are served first
+     */
+    public int tier(int index) {
+        return tiers[index];
+    }
+
+    /**
+     * @return Minimum current of a charging point without specific configuration
+     */
+    public int defaultMinCurrent() {
+        return defaultMinCurrent;
+    }
+
+    /**
+     * @return Maximum current of a charging point without specific configuration
+     */
+    public int defaultMaxCurrent() {
+        return defaultMaxCurrent;
+    }
+
+    /**
+     * @return Current needed when every charging point is connected
+     */
+    public long minimumTotal() {
+        long total = 0;
+        for (int minCurrent : minCurrents) {
+            total += minCurrent;
+        }
+        return total;
+    }
+
+    private static void checkLimits(int minCurrent, int maxCurrent) {
+        if (minCurrent < 0 || maxCurrent < minCurrent) {
+            throw new IllegalArgumentException("Invalid current limits " + minCurrent + ".." + maxCurrent);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ubitricity.carparkubi.services;
+
+/**
+ * Allocation policies a carpark can be configured with.
+ */
+public enum AllocationPolicies implements AllocationPolicy.Factory {
+    /**
+     * Every connected point gets its minimum current and the spare current tops up the newest connections to their
+     * maximum first. The tiers of the charging points are ignored.
+     */
+    NEWEST_FIRST {
+        @Override
+        public AllocationPolicy create(int totalPower, AllocationLimits limits) {
+            return new RankedAllocation(totalPower, limits, false);
+        }
+    },
+    /**
+     * Like {@link #NEWEST_FIRST} but the charging points of a higher tier, e.g. the bays of a fleet, are topped up
+     * before any point of a lower tier
+     */
+    PRIORITY_TIERS {
+        @Override
+        public AllocationPolicy create(int totalPower, AllocationLimits limits) {
+            return new RankedAllocation(totalPower, limits, true);
+        }
+    },
+    /**
+     * The current is shared equally among the connected charging points within their limits
+     */
+    PROPORTIONAL_SHARE {
+        @Override
+        public AllocationPolicy create(int totalPower, AllocationLimits limits) {
+            return new ProportionalAllocation(totalPower, limits);
+        }
+    }
+}
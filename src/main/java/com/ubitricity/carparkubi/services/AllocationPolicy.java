@@ -0,0 +1,63 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Allocation of the current of one carpark among its connected charging points.
+ * <p>
+ * The carpark tells the policy about every connection and disconnection, then asks it once to redistribute after a
+ * whole batch of them. Implementations keep their allocation up to date incrementally and report only the charging
+ * points whose current changed, so the cost of a change must not grow with the size of the carpark beyond the points
+ * it actually moves. Not thread safe, the carpark calls it holding its lock.
+ */
+public interface AllocationPolicy {
+    /**
+     * A vehicle was connected to the charging point. Its current is settled by the next redistribution.
+     *
+     * @param index Disconnected charging point
+     */
+    void connect(int index);
+
+    /**
+     * @param index Connected charging point
+     */
+    void disconnect(int index);
+
+    /**
+     * Moves the allocation to the one of the policy for the connected charging points, never exceeding the power of
+     * the carpark
+     *
+     * @param changed Consumer of the charging points whose current changed, other than the ones connected or
+     *                disconnected since the last redistribution
+     */
+    void redistribute(IntConsumer changed);
+
+    /**
+     * @param index Charging point
+     * @return Current allocated to the charging point, <code>0</code> if it is not connected
+     */
+    int currentOf(int index);
+
+    /**
+     * @return Number of connected charging points allocated more than their minimum current
+     */
+    int fastCount();
+
+    /**
+     * @return <code>true</code> if a vehicle connected now to a free charging point with the default limits would get
+     * more than its minimum current
+     */
+    boolean fastChargeAvailable();
+
+    /**
+     * Creates the policy of each carpark
+     */
+    interface Factory {
+        /**
+         * @param totalPower Overall current input of the carpark
+         * @param limits     Limits and tiers of the charging points of the carpark
+         * @return Policy of the carpark, with no charging point connected
+         */
+        AllocationPolicy create(int totalPower, AllocationLimits limits);
+    }
+}
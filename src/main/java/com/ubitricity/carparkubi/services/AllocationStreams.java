@@ -0,0 +1,74 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams of allocation changes of the carparks. The feed of a carpark is created with its first subscriber and
+ * dropped with its last one, all the feeds share a pool of delivery threads. The pool keeps
+ * <code>carparks.stream.threads</code> threads running and starts spare ones while deliveries are blocked on slow
+ * clients.
+ */
+@Service
+public class AllocationStreams {
+    private final Map<String, AllocationFeed> feeds = new ConcurrentHashMap<>();
+    private final ForkJoinPool executor;
+    private final int bufferSize;
+
+    public AllocationStreams(CarparksProperties properties) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ForkJoinPool(properties.getStream().getThreads(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("allocation-stream-" + threads.incrementAndGet());
+            return thread;
+        }, null, true);
+        this.bufferSize = properties.getStream().getBufferSize();
+    }
+
+    /**
+     * @param carpark    Carpark whose changes are streamed
+     * @param subscriber Receiver of the changes
+     * @return Subscription to be cancelled once the subscriber is gone
+     */
+    public AllocationFeed.Subscription subscribe(CarparkUbi carpark, AllocationSubscriber subscriber) {
+        AllocationFeed.Subscription[] subscription = new AllocationFeed.Subscription[1];
+        feeds.compute(carpark.getName(), (name, feed) -> {
+            AllocationFeed active = feed != null ? feed : new AllocationFeed(carpark, executor, bufferSize, this::idle);
+            subscription[0] = active.subscribe(subscriber);
+            return active;
+        });
+        return subscription[0];
+    }
+
+    /**
+     * @return Number of carparks streamed to at least one subscriber
+     */
+    public int feeds() {
+        return feeds.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Drops the feed unless a subscriber came meanwhile
+     */
+    private void idle(AllocationFeed feed) {
+        feeds.computeIfPresent(feed.getCarparkName(), (name, active) -> {
+            if (active != feed || feed.subscriptions() > 0) {
+                return active;
+            }
+            feed.close();
+            return null;
+        });
+    }
+}
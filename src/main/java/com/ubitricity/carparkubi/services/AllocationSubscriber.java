@@ -0,0 +1,28 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+
+/**
+ * Receiver of the allocation changes of a carpark. Calls are never concurrent for the same subscriber, throwing an
+ * exception cancels the subscription.
+ */
+public interface AllocationSubscriber {
+    /**
+     * Called first, and again whenever the subscriber fell too far behind and missed changes.
+     *
+     * @param snapshot Full state of the carpark
+     */
+    void onSnapshot(CarparkSnapshot snapshot);
+
+    /**
+     * @param delta Charging points changed after the last snapshot or delta received
+     */
+    void onDelta(AllocationDelta delta);
+
+    /**
+     * Called once the subscription was cancelled because the subscriber stopped reading its changes, it should close
+     * its stream so the client reconnects. Not called when the subscription is cancelled by its owner.
+     */
+    void onDisconnect();
+}
@@ -0,0 +1,159 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Single writer of a carpark.
+ * <p>
+ * Request threads only enqueue their notification in a bounded ring buffer. The writer runs on a shared executor, at
+ * most one task per carpark at a time, drains the buffer and applies the pending notifications as one batch with a
+ * single redistribution of the charge. The future of every notification is completed with the state of its charging
+ * point after the batch.
+ * <p>
+ * Batches received as a whole, e.g. a <code>PATCH</code> or an event frame, go through the same buffer and are applied
+ * by the writer in their turn, on their own, so the writer is the only thread changing the carpark.
+ */
+public class CarparkActor {
+    private final CarparkUbi carpark;
+    private final Executor executor;
+    private final int batchSize;
+    private final CommandRing<Command> commands;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param carpark   Carpark owned by the writer
+     * @param executor  Executor running the writer
+     * @param ringSize  Maximum number of pending notifications, must be a power of two
+     * @param batchSize Maximum number of notifications applied with one redistribution
+     */
+    public CarparkActor(CarparkUbi carpark, Executor executor, int ringSize, int batchSize) {
+        this.carpark = carpark;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.commands = new CommandRing<>(ringSize);
+    }
+
+    /**
+     * @param event Connect/disconnect notification
+     * @return Future completed with the charging point once the notification is applied. It fails with
+     * {@link ChargingPointNotFoundException} for unknown charging points and with {@link CarparkBusyException} if the
+     * buffer of the carpark is full
+     */
+    public CompletableFuture<ChargingPoint> submit(ChargingPointEvent event) {
+        EventCommand command = new EventCommand(event);
+        offer(command, command.future);
+        return command.future;
+    }
+
+    /**
+     * @param batch Batch of notifications applied to the carpark, e.g. with {@link CarparkUbi#apply(List)}
+     * @param <T>   Result of the batch
+     * @return Future completed with the result of the batch once applied. It fails with {@link CarparkBusyException}
+     * if the buffer of the carpark is full and with the exception thrown by the batch if any
+     */
+    public <T> CompletableFuture<T> submit(Function<CarparkUbi, T> batch) {
+        BatchCommand<T> command = new BatchCommand<>(batch);
+        offer(command, command.future);
+        return command.future;
+    }
+
+    private void offer(Command command, CompletableFuture<?> future) {
+        if (!commands.offer(command)) {
+            future.completeExceptionally(new CarparkBusyException());
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<EventCommand> batch = new ArrayList<>(batchSize);
+            int drained = 0;
+            for (Command command = commands.poll(); command != null; command = ++drained < batchSize ? commands.poll() : null) {
+                if (command instanceof EventCommand) {
+                    batch.add((EventCommand) command);
+                } else {
+                    apply(batch);
+                    batch.clear();
+                    ((BatchCommand<?>) command).run(carpark);
+                }
+            }
+            apply(batch);
+        } finally {
+            scheduled.set(false);
+        }
+        if (!commands.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void apply(List<EventCommand> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ChargingPointEvent> events = new ArrayList<>(batch.size());
+        batch.forEach(command -> events.add(command.event));
+        BatchResult result;
+        try {
+            result = carpark.apply(events);
+        } catch (RuntimeException e) {
+            batch.forEach(command -> command.future.completeExceptionally(e));
+            return;
+        }
+        CarparkSnapshot snapshot = result.getSnapshot();
+        for (int i = 0; i < batch.size(); i++) {
+            EventCommand command = batch.get(i);
+            if (result.getOutcomes().get(i) == EventOutcome.NOT_FOUND) {
+                command.future.completeExceptionally(new ChargingPointNotFoundException());
+            } else {
+                command.future.complete(snapshot.getChargingPoint(carpark.indexOf(command.event.getIdentifier())));
+            }
+        }
+    }
+
+    private interface Command {
+    }
+
+    private static final class EventCommand implements Command {
+        private final ChargingPointEvent event;
+        private final CompletableFuture<ChargingPoint> future = new CompletableFuture<>();
+
+        private EventCommand(ChargingPointEvent event) {
+            this.event = event;
+        }
+    }
+
+    private static final class BatchCommand<T> implements Command {
+        private final Function<CarparkUbi, T> batch;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private BatchCommand(Function<CarparkUbi, T> batch) {
+            this.batch = batch;
+        }
+
+        private void run(CarparkUbi carpark) {
+            try {
+                future.complete(batch.apply(carpark));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
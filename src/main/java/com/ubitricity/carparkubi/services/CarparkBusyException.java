@@ -0,0 +1,7 @@
+package com.ubitricity.carparkubi.services;
+
+/**
+ * The carpark can't accept more notifications until its writer catches up
+ */
+public class CarparkBusyException extends RuntimeException {
+}
@@ -0,0 +1,196 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Applies the connect/disconnect notifications according to the configured execution mode. In <code>MONITOR</code>
+ * mode the calling thread applies the notification holding the carpark lock, in <code>ACTOR</code> mode it is handed
+ * to the {@link CarparkActor} of the carpark. Batches are handed to the actor as well, so in <code>ACTOR</code> mode
+ * the actor is the only writer of its carpark whatever the path the notifications came from.
+ */
+@Service
+public class CarparkDispatcher {
+    private final CarparksProperties.Execution execution;
+    private final Map<String, CarparkActor> actors = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public CarparkDispatcher(CarparksProperties properties) {
+        this.execution = properties.getExecution();
+        if (execution.getMode() == CarparksProperties.ExecutionMode.ACTOR) {
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(execution.getThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "carpark-writer-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Applies a notification and waits for its result
+     *
+     * @param carpark         Carpark of the charging point
+     * @param chargingPointId Identifier of the charging point
+     * @param connected       Whether the charging point was connected or disconnected
+     * @return Charging point after the notification
+     * @throws ChargingPointNotFoundException if the charging point doesn't belong to the carpark
+     * @throws CarparkBusyException           if the carpark can't accept more notifications
+     */
+    public ChargingPoint update(CarparkUbi carpark, String chargingPointId, boolean connected) {
+        return update(carpark, chargingPointId, connected, EventBatch.NO_SEQUENCE);
+    }
+
+    /**
+     * Applies a numbered notification and waits for its result, a stale one is dropped
+     *
+     * @param carpark         Carpark of the charging point
+     * @param chargingPointId Identifier of the charging point
+     * @param connected       Whether the charging point was connected or disconnected
+     * @param sequence        Sequence of the notification, {@link EventBatch#NO_SEQUENCE} if not numbered
+     * @return Charging point after the notification, unchanged if it was stale
+     * @throws ChargingPointNotFoundException if the charging point doesn't belong to the carpark
+     * @throws CarparkBusyException           if the carpark can't accept more notifications
+     */
+    public ChargingPoint update(CarparkUbi carpark, String chargingPointId, boolean connected, int sequence) {
+        if (executor != null) {
+            return join(submit(carpark, chargingPointId, connected, sequence));
+        }
+        if (sequence == EventBatch.NO_SEQUENCE) {
+            return connected ? carpark.connect(chargingPointId) : carpark.disconnect(chargingPointId);
+        }
+        BatchResult result = carpark.apply(List.of(new ChargingPointEvent(chargingPointId, connected, sequence)));
+        if (result.getOutcomes().get(0) == EventOutcome.NOT_FOUND) {
+            throw new ChargingPointNotFoundException();
+        }
+        return result.getSnapshot().getChargingPoint(carpark.indexOf(chargingPointId));
+    }
+
+    /**
+     * Applies a batch of notifications with a single redistribution and waits for its result
+     *
+     * @param carpark Carpark of the charging points
+     * @param events  Notifications in the order they happened
+     * @return Outcome of every notification and snapshot after the batch
+     * @throws CarparkBusyException if the carpark can't accept more notifications
+     */
+    public BatchResult apply(CarparkUbi carpark, List<ChargingPointEvent> events) {
+        return executor == null ? carpark.apply(events) : join(submit(carpark, events));
+    }
+
+    /**
+     * Applies the events of a frame and waits for them, the batch can be reused once this method returns
+     *
+     * @param carpark Carpark of the charging points
+     * @param batch   Decoded events, their outcomes are written back into it
+     * @return Snapshot after the batch
+     * @throws CarparkBusyException if the carpark can't accept more notifications
+     */
+    public CarparkSnapshot apply(CarparkUbi carpark, EventBatch batch) {
+        return executor == null ? carpark.apply(batch) : join(execute(carpark, c -> c.apply(batch)));
+    }
+
+    /**
+     * Applies a batch of notifications without waiting for its result in <code>ACTOR</code> mode
+     *
+     * @param carpark Carpark of the charging points
+     * @param events  Notifications in the order they happened
+     * @return Future completed with the outcome of every notification and the snapshot after the batch
+     */
+    public CompletableFuture<BatchResult> submit(CarparkUbi carpark, List<ChargingPointEvent> events) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(carpark.apply(events));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return execute(carpark, c -> c.apply(events));
+    }
+
+    /**
+     * Applies a notification without waiting for its result in <code>ACTOR</code> mode
+     *
+     * @param carpark         Carpark of the charging point
+     * @param chargingPointId Identifier of the charging point
+     * @param connected       Whether the charging point was connected or disconnected
+     * @return Future completed with the charging point after the notification
+     */
+    public CompletableFuture<ChargingPoint> submit(CarparkUbi carpark, String chargingPointId, boolean connected) {
+        return submit(carpark, chargingPointId, connected, EventBatch.NO_SEQUENCE);
+    }
+
+    /**
+     * Applies a numbered notification without waiting for its result in <code>ACTOR</code> mode
+     *
+     * @param carpark         Carpark of the charging point
+     * @param chargingPointId Identifier of the charging point
+     * @param connected       Whether the charging point was connected or disconnected
+     * @param sequence        Sequence of the notification, {@link EventBatch#NO_SEQUENCE} if not numbered
+     * @return Future completed with the charging point after the notification
+     */
+    public CompletableFuture<ChargingPoint> submit(CarparkUbi carpark, String chargingPointId, boolean connected,
+                                                   int sequence) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(update(carpark, chargingPointId, connected, sequence));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return actor(carpark).submit(new ChargingPointEvent(chargingPointId, connected, sequence));
+    }
+
+    /**
+     * @return <code>true</code> if {@link #submit(CarparkUbi, String, boolean)} returns without waiting for the
+     * carpark lock
+     */
+    public boolean isAsynchronous() {
+        return executor != null;
+    }
+
+    private <T> CompletableFuture<T> execute(CarparkUbi carpark, Function<CarparkUbi, T> batch) {
+        return actor(carpark).submit(batch);
+    }
+
+    private CarparkActor actor(CarparkUbi carpark) {
+        return actors.computeIfAbsent(carpark.getName(),
+                name -> new CarparkActor(carpark, executor, execution.getRingSize(), execution.getBatchSize()));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
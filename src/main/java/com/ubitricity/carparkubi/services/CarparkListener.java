@@ -0,0 +1,16 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+
+/**
+ * Listener of the changes applied to a carpark.
+ */
+public interface CarparkListener {
+    /**
+     * Called after every change of the carpark, in version order, while holding the carpark lock.
+     * Implementations must return quickly and never block.
+     *
+     * @param delta Charging points changed by the new version of the carpark
+     */
+    void onChange(AllocationDelta delta);
+}
@@ -0,0 +1,68 @@
+package com.ubitricity.carparkubi.services;
+
+/**
+ * Instrumentation of the hot path of a carpark. The methods are called on every notification, some of them while
+ * holding the carpark lock, so implementations must be lock free and must not allocate.
+ */
+public interface CarparkMetrics {
+    /**
+     * Instrumentation that doesn't record anything
+     */
+    CarparkMetrics NONE = new CarparkMetrics() {
+    };
+
+    /**
+     * @param nanos Time spent waiting for the carpark lock
+     */
+    default void recordLockWait(long nanos) {
+    }
+
+    /**
+     * @param nanos Time the carpark lock was held
+     */
+    default void recordLockHold(long nanos) {
+    }
+
+    /**
+     * @param nanos Time spent redistributing the charge among the connected charging points
+     */
+    default void recordRedistribution(long nanos) {
+    }
+
+    /**
+     * A charging point was connected
+     */
+    default void recordConnect() {
+    }
+
+    /**
+     * A charging point was disconnected
+     */
+    default void recordDisconnect() {
+    }
+
+    /**
+     * @param events Number of events dropped because their sequence was stale or duplicated
+     */
+    default void recordStale(int events) {
+    }
+
+    /**
+     * @param connected Number of connected charging points after a change
+     */
+    default void recordQueueDepth(int connected) {
+    }
+
+    /**
+     * Creates the instrumentation of every carpark
+     */
+    interface Factory {
+        Factory NONE = carparkName -> CarparkMetrics.NONE;
+
+        /**
+         * @param carparkName Name of the instrumented carpark
+         * @return Instrumentation of the carpark
+         */
+        CarparkMetrics create(String carparkName);
+    }
+}
@@ -0,0 +1,4 @@
+package com.ubitricity.carparkubi.services;
+
+public class CarparkNotFoundException extends RuntimeException {
+}
@@ -0,0 +1,158 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of all the carparks hosted by the application.
+ * Lookups are lock free and every carpark guards its own state, so notifications for different carparks never
+ * contend with each other.
+ */
+@Slf4j
+@Service
+public class CarparkRegistry {
+    private final Map<String, CarparkUbi> carparks = new ConcurrentHashMap<>();
+    private final NavigableMap<String, CarparkUbi> carparksByName = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers the configured carparks and rebuilds their state from the latest checkpoint and the journal.
+     *
+     * @param properties Configuration of the carparks
+     * @param journal    Journal where the carparks append their state changes
+     */
+    public CarparkRegistry(CarparksProperties properties, EventJournal journal) {
+        this(properties, journal, CarparkMetrics.Factory.NONE);
+    }
+
+    /**
+     * Registers the configured carparks and rebuilds their state from the latest checkpoint and the journal.
+     *
+     * @param properties     Configuration of the carparks
+     * @param journal        Journal where the carparks append their state changes
+     * @param metricsFactory Factory of the instrumentation of each carpark
+     */
+    @Autowired
+    public CarparkRegistry(CarparksProperties properties, EventJournal journal, CarparkMetrics.Factory metricsFactory) {
+        properties.getSites()
+                .forEach((name, site) -> register(new CarparkUbi(name, site.getTotalPower(), limits(name, site),
+                        site.getPolicy(), journal, metricsFactory.create(name), properties.getHistory().getCapacity())));
+        journal.replay(checkpoint -> {
+            CarparkUbi carpark = carparks.get(checkpoint.getCarparkName());
+            if (carpark == null) {
+                log.warn("Skipping checkpoint of unknown carpark {}", checkpoint.getCarparkName());
+                return;
+            }
+            carpark.restore(checkpoint);
+        }, record -> {
+            CarparkUbi carpark = carparks.get(record.getCarparkName());
+            if (carpark == null) {
+                log.warn("Skipping journal record of unknown carpark {}", record.getCarparkName());
+                return;
+            }
+            carpark.restore(record);
+        });
+        carparks.values().forEach(CarparkUbi::completeRestore);
+    }
+
+    /**
+     * @param name Name of the carpark
+     * @param site Configuration of the carpark
+     * @return Limits of the charging points of the carpark, the ones of the carpark unless configured per point
+     * @throws IllegalArgumentException if a configured charging point doesn't belong to the carpark
+     */
+    private static AllocationLimits limits(String name, CarparksProperties.Site site) {
+        int chargingPoints = Math.max(0, site.getChargingPoints());
+        int minCurrent = site.getMinCurrent() != null ? site.getMinCurrent()
+                : chargingPoints > 0 ? site.getTotalPower() / chargingPoints : 0;
+        int maxCurrent = site.getMaxCurrent() != null ? site.getMaxCurrent() : 2 * minCurrent;
+        int[] minCurrents = new int[chargingPoints];
+        int[] maxCurrents = new int[chargingPoints];
+        int[] tiers = new int[chargingPoints];
+        Arrays.fill(minCurrents, minCurrent);
+        Arrays.fill(maxCurrents, maxCurrent);
+        ChargingPointIds ids = new ChargingPointIds(chargingPoints);
+        site.getPoints().forEach((id, point) -> {
+            int index = ids.indexOf(id);
+            if (index < 0) {
+                throw new IllegalArgumentException("Carpark " + name + " has no charging point " + id);
+            }
+            if (point.getMinCurrent() != null) {
+                minCurrents[index] = point.getMinCurrent();
+            }
+            if (point.getMaxCurrent() != null) {
+                maxCurrents[index] = point.getMaxCurrent();
+            }
+            tiers[index] = point.getTier();
+        });
+        return new AllocationLimits(minCurrent, maxCurrent, minCurrents, maxCurrents, tiers);
+    }
+
+    /**
+     * Adds a carpark to the registry.
+     *
+     * @param carpark Carpark to be registered
+     * @throws IllegalStateException if a carpark with the same name is already registered
+     */
+    public void register(CarparkUbi carpark) {
+        if (carparks.putIfAbsent(carpark.getName(), carpark) != null) {
+            throw new IllegalStateException("Carpark " + carpark.getName() + " is already registered");
+        }
+        carparksByName.put(carpark.getName(), carpark);
+    }
+
+    /**
+     * @param carparkName Name of the carpark
+     * @return Carpark registered with the given name
+     * @throws CarparkNotFoundException if there is no carpark with the given name
+     */
+    public CarparkUbi find(String carparkName) {
+        CarparkUbi carpark = carparks.get(carparkName);
+        if (carpark == null) {
+            throw new CarparkNotFoundException();
+        }
+        return carpark;
+    }
+
+    /**
+     * @return Checkpoint of every registered carpark
+     */
+    public List<CarparkCheckpoint> checkpoints() {
+        return carparks.values()
+                .stream()
+                .map(CarparkUbi::checkpoint)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return All the registered carparks
+     */
+    public Collection<CarparkUbi> carparks() {
+        return Collections.unmodifiableCollection(carparks.values());
+    }
+
+    /**
+     * The lookups by name don't go through this ordered index, it only serves the reports over many carparks.
+     *
+     * @param prefix Start of the names of the carparks, empty for all of them
+     * @return Registered carparks whose name starts with the prefix, ordered by name
+     */
+    public List<CarparkUbi> carparksByName(String prefix) {
+        if (prefix.isEmpty()) {
+            return List.copyOf(carparksByName.values());
+        }
+        return List.copyOf(carparksByName.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+    }
+}
@@ -1,28 +1,128 @@
 package com.ubitricity.carparkubi.services;
 
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.CarparkSummary;
 import com.ubitricity.carparkubi.model.ChargingPoint;
-import org.springframework.stereotype.Service;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import com.ubitricity.carparkubi.model.JournalRecord;
 
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Business logic to handle the Carpark-Ubi
+ * Business logic to handle the Carpark-Ubi.
+ * Every instance represents one carpark and guards its own state, so carparks never contend with each other.
+ * Charging points are addressed by dense indices and their state is kept in primitive arrays and bitsets, the
+ * {@link ChargingPoint} objects are only built by the readers of the published snapshots. The current is allocated by
+ * the {@link AllocationPolicy} of the carpark, by default {@link AllocationPolicies#NEWEST_FIRST} with the minimum
+ * assignable charge for every point and twice as much for the fast ones.
+ * <p>
+ * Events numbered by their sender are applied only if their sequence is newer than the last one applied to their
+ * charging point, so retried and reordered notifications can't undo a more recent state.
  */
-@Service
 public class CarparkUbi {
     public static final int NUM_CHARGE_POINTS = 10;
     public static final int TOTAL_POWER = 100;
     public static final int MIN_ASSIGNABLE_CHARGE = TOTAL_POWER / NUM_CHARGE_POINTS;
     public static final String NAME = "ubi";
-    private final List<ChargingPoint> chargingQueue = new LinkedList<>();
-    private final Set<String> chargingPointIds;
+    public static final int HISTORY_CAPACITY = 128;
+    private final String name;
+    private final int totalPower;
+    private final AllocationPolicy allocationPolicy;
+    private final EventJournal journal;
+    private final CarparkMetrics metrics;
+    private final AllocationHistory history;
+    private final ChargingPointIds chargingPointIds;
+    private final ChargingQueue chargingQueue;
+    private final BitSet changedPoints;
+    /**
+     * Last sequence applied to every charging point by this process. They are neither journaled nor part of the
+     * checkpoints, so they start over on restart and don't follow a replaced state
+     */
+    private final int[] lastSequences;
+    private final List<CarparkListener> listeners = new CopyOnWriteArrayList<>();
+    private long epoch = newEpoch();
+    private long version;
+    private volatile CarparkSnapshot snapshot;
 
     public CarparkUbi() {
-        chargingPointIds = fixedChargePointIds();
+        this(NAME, NUM_CHARGE_POINTS, TOTAL_POWER, EventJournal.NONE);
+    }
+
+    /**
+     * @param name            Name of the carpark
+     * @param numChargePoints Number of charging points installed in the carpark
+     * @param totalPower      Overall current input of the carpark
+     * @param journal         Journal where every state change is appended
+     */
+    public CarparkUbi(String name, int numChargePoints, int totalPower, EventJournal journal) {
+        this(name, numChargePoints, totalPower, journal, CarparkMetrics.NONE);
+    }
+
+    /**
+     * @param name            Name of the carpark
+     * @param numChargePoints Number of charging points installed in the carpark
+     * @param totalPower      Overall current input of the carpark
+     * @param journal         Journal where every state change is appended
+     * @param metrics         Instrumentation of the carpark
+     */
+    public CarparkUbi(String name, int numChargePoints, int totalPower, EventJournal journal, CarparkMetrics metrics) {
+        this(name, numChargePoints, totalPower, journal, metrics, HISTORY_CAPACITY);
+    }
+
+    /**
+     * @param name            Name of the carpark
+     * @param numChargePoints Number of charging points installed in the carpark
+     * @param totalPower      Overall current input of the carpark
+     * @param journal         Journal where every state change is appended
+     * @param metrics         Instrumentation of the carpark
+     * @param historyCapacity Number of allocation changes kept per charging point
+     */
+    public CarparkUbi(String name, int numChargePoints, int totalPower, EventJournal journal, CarparkMetrics metrics,
+                      int historyCapacity) {
+        this(name, totalPower, defaultLimits(numChargePoints, totalPower), AllocationPolicies.NEWEST_FIRST, journal,
+                metrics, historyCapacity);
+    }
+
+    /**
+     * @param name            Name of the carpark
+     * @param totalPower      Overall current input of the carpark
+     * @param limits          Limits and tiers of the charging points installed in the carpark
+     * @param policy          Allocation of the current among the connected charging points
+     * @param journal         Journal where every state change is appended
+     * @param metrics         Instrumentation of the carpark
+     * @param historyCapacity Number of allocation changes kept per charging point
+     */
+    public CarparkUbi(String name, int totalPower, AllocationLimits limits, AllocationPolicy.Factory policy,
+                      EventJournal journal, CarparkMetrics metrics, int historyCapacity) {
+        int numChargePoints = limits.size();
+        if (numChargePoints <= 0 || totalPower < numChargePoints || limits.minimumTotal() > totalPower) {
+            throw new IllegalArgumentException("Carpark " + name + " can't supply its charging points");
+        }
+        this.name = name;
+        this.totalPower = totalPower;
+        this.allocationPolicy = policy.create(totalPower, limits);
+        this.journal = journal;
+        this.metrics = metrics;
+        this.history = new AllocationHistory(numChargePoints, historyCapacity);
+        chargingPointIds = new ChargingPointIds(numChargePoints);
+        chargingQueue = new ChargingQueue(numChargePoints);
+        changedPoints = new BitSet(numChargePoints);
+        lastSequences = new int[numChargePoints];
+        publishFullSnapshot();
     }
 
     /**
@@ -31,19 +131,25 @@ public class CarparkUbi {
      * @param chargingPointId Identifier of the charging point to be connected
      * @return Connected charging point with its charge value updated
      */
-    public synchronized ChargingPoint connect(String chargingPointId) {
-        if (!chargingPointIds.contains(chargingPointId)) {
-            throw new ChargingPointNotFoundException();
+    public ChargingPoint connect(String chargingPointId) {
+        ChargingPoint chargingPoint;
+        long position;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                int index = indexOf(chargingPointId);
+                if (!link(index)) {
+                    return snapshot.getChargingPoint(index);
+                }
+                position = commit(List.of(new ChargingPointEvent(chargingPointId, true)));
+                chargingPoint = snapshot.getChargingPoint(index);
+            } finally {
+                lockReleased(acquired);
+            }
         }
-        return chargingQueue.stream()
-                .filter(cp -> cp.getIdentifier().equals(chargingPointId))
-                .findFirst()
-                .orElseGet(() -> {
-                    ChargingPoint chargingPoint = new ChargingPoint(chargingPointId, 0, true);
-                    chargingQueue.add(0, chargingPoint);
-                    redistributeCharge();
-                    return chargingPoint;
-                });
+        journal.awaitDurable(position);
+        return chargingPoint;
     }
 
     /**
@@ -52,55 +158,654 @@ public class CarparkUbi {
      * @param chargingPointId Identifier of the charging point to be disconnected
      * @return Disconnected charging point with its disconnected values
      */
-    public synchronized ChargingPoint disconnect(String chargingPointId) {
-        if (!chargingPointIds.contains(chargingPointId)) {
-            throw new ChargingPointNotFoundException();
-        }
-        ChargingPoint chargingPoint = new ChargingPoint(chargingPointId, 0, false);
-        if (chargingQueue.stream().map(ChargingPoint::getIdentifier).anyMatch(id -> id.equals(chargingPointId))) {
-            chargingQueue.remove(chargingPoint);
-            redistributeCharge();
+    public ChargingPoint disconnect(String chargingPointId) {
+        ChargingPoint chargingPoint;
+        long position;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                int index = indexOf(chargingPointId);
+                if (!unlink(index)) {
+                    return snapshot.getChargingPoint(index);
+                }
+                position = commit(List.of(new ChargingPointEvent(chargingPointId, false)));
+                chargingPoint = snapshot.getChargingPoint(index);
+            } finally {
+                lockReleased(acquired);
+            }
         }
+        journal.awaitDurable(position);
         return chargingPoint;
     }
 
     /**
-     * Check the connected Charging Points and re-distribute the charge between them accordingly
+     * Apply an ordered list of connect/disconnect events atomically. The charge is redistributed once after the whole
+     * batch, so the intermediate allocations are never published. Numbered events with a stale sequence are dropped
+     * with {@link EventOutcome#STALE}, like by {@link #apply(EventBatch)}.
+     *
+     * @param events Events to be applied in the given order
+     * @return Outcome of each event and the state of the carpark after the batch
+     */
+    public BatchResult apply(List<ChargingPointEvent> events) {
+        List<EventOutcome> outcomes = new ArrayList<>(events.size());
+        BatchResult result;
+        long position = 0;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                List<ChargingPointEvent> applied = new ArrayList<>(events.size());
+                int stale = 0;
+                for (ChargingPointEvent event : events) {
+                    int index = chargingPointIds.indexOf(event.getIdentifier());
+                    if (index < 0) {
+                        outcomes.add(EventOutcome.NOT_FOUND);
+                    } else if (!acceptSequence(index, event.getSequence())) {
+                        outcomes.add(EventOutcome.STALE);
+                        stale++;
+                    } else if (event.isConnected() ? link(index) : unlink(index)) {
+                        outcomes.add(event.isConnected() ? EventOutcome.CONNECTED : EventOutcome.DISCONNECTED);
+                        applied.add(event);
+                    } else {
+                        outcomes.add(EventOutcome.UNCHANGED);
+                    }
+                }
+                if (stale > 0) {
+                    metrics.recordStale(stale);
+                }
+                if (!applied.isEmpty()) {
+                    position = commit(applied);
+                }
+                result = new BatchResult(outcomes, snapshot);
+            } finally {
+                lockReleased(acquired);
+            }
+        }
+        journal.awaitDurable(position);
+        return result;
+    }
+
+    /**
+     * Apply a batch of events addressed by charging point index, like {@link #apply(List)}. The outcome of every
+     * event is written back into the batch and no object is created per event, the applied events are only
+     * materialised if the journal reads them. Events with a stale sequence are dropped with
+     * {@link EventOutcome#STALE}, a batch made only of those doesn't take the carpark lock.
+     *
+     * @param batch Events to be applied in the given order
+     * @return State of the carpark after the batch
+     */
+    public CarparkSnapshot apply(EventBatch batch) {
+        if (dropStale(batch)) {
+            return snapshot;
+        }
+        CarparkSnapshot result;
+        long position = 0;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                int applied = 0;
+                int stale = 0;
+                for (int event = 0; event < batch.size(); event++) {
+                    int index = batch.index(event);
+                    boolean connected = batch.isConnected(event);
+                    if (index < 0 || index >= chargingPointIds.size()) {
+                        batch.setOutcome(event, EventOutcome.NOT_FOUND);
+                    } else if (!acceptSequence(index, batch.sequence(event))) {
+                        batch.setOutcome(event, EventOutcome.STALE);
+                        stale++;
+                    } else if (connected ? link(index) : unlink(index)) {
+                        batch.setOutcome(event, connected ? EventOutcome.CONNECTED : EventOutcome.DISCONNECTED);
+                        applied++;
+                    } else {
+                        batch.setOutcome(event, EventOutcome.UNCHANGED);
+                    }
+                }
+                if (stale > 0) {
+                    metrics.recordStale(stale);
+                }
+                if (applied > 0) {
+                    position = commit(new AppliedEvents(batch, applied));
+                }
+                result = snapshot;
+            } finally {
+                lockReleased(acquired);
+            }
+        }
+        journal.awaitDurable(position);
+        return result;
+    }
+
+    /**
+     * @return Connection order and version of the carpark, consistent with the records appended to the journal so far
+     */
+    public synchronized CarparkCheckpoint checkpoint() {
+        List<String> connected = new ArrayList<>(chargingQueue.size());
+        chargingQueue.forEachOldestFirst(index -> connected.add(chargingPointIds.identifier(index)));
+        return new CarparkCheckpoint(name, version, connected);
+    }
+
+    /**
+     * Replaces the state of the carpark by the one of a checkpoint taken on another node, e.g. when the ownership of
+     * the carpark moves within a cluster. The change is journaled as the disconnection of every connected charging
+     * point followed by the connections of the checkpoint from the oldest, so a replay rebuilds the same order, and it
+     * is published as a single change with the version of the checkpoint. The last sequences of the charging points are
+     * kept, the checkpoint doesn't carry the ones of the other node.
+     *
+     * @param checkpoint State of this carpark taken on another node
+     * @return <code>false</code> if the carpark is already at the version of the checkpoint or ahead of it
+     */
+    public boolean adopt(CarparkCheckpoint checkpoint) {
+        return replace(checkpoint, false, false);
+    }
+
+    /**
+     * Replaces the state of the carpark by the one of a checkpoint whatever the version of the carpark, e.g. when a
+     * follower starts over from the checkpoints of a primary that restarted with a new history. The carpark takes the
+     * version of the checkpoint even if it moves back; the change is journaled and published like
+     * {@link #adopt(CarparkCheckpoint)} does.
+     *
+     * @param checkpoint State of this carpark taken on another node
+     */
+    public void reset(CarparkCheckpoint checkpoint) {
+        replace(checkpoint, true, false);
+    }
+
+    /**
+     * Replaces the state of the carpark by the one handed over by its previous owner within a cluster, whatever the
+     * version of the carpark: the previous owner served the carpark last, even if this node went through more versions
+     * when it owned it before. The version never moves back, so the journal of this node still replays in order.
+     *
+     * @param checkpoint State of this carpark taken on its previous owner
+     */
+    public void takeOver(CarparkCheckpoint checkpoint) {
+        replace(checkpoint, true, true);
+    }
+
+    private boolean replace(CarparkCheckpoint checkpoint, boolean force, boolean keepIncreasing) {
+        long position;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                if (!force && checkpoint.getVersion() <= version) {
+                    return false;
+                }
+                List<ChargingPointEvent> events = new ArrayList<>();
+                chargingQueue.forEachOldestFirst(index -> events.add(new ChargingPointEvent(
+                        chargingPointIds.identifier(index), false)));
+                events.forEach(event -> unlink(chargingPointIds.indexOf(event.getIdentifier())));
+                checkpoint.getConnectedChargingPoints().forEach(id -> {
+                    int index = chargingPointIds.indexOf(id);
+                    if (index >= 0 && link(index)) {
+                        events.add(new ChargingPointEvent(id, true));
+                    }
+                });
+                long next = keepIncreasing ? Math.max(checkpoint.getVersion(), version + 1) : checkpoint.getVersion();
+                boolean newHistory = next <= version;
+                if (newHistory) {
+                    epoch = newEpoch();
+                }
+                version = next - 1;
+                position = commit(events, newHistory);
+            } finally {
+                lockReleased(acquired);
+            }
+        }
+        journal.awaitDurable(position);
+        return true;
+    }
+
+    /**
+     * Applies a change streamed by the primary of a replicated carpark. The record is applied as a single change
+     * keeping its version, redistributed, journaled and published like a local change, so the report and the streams
+     * of a follower behave like the ones of the primary. Records the carpark already reached are ignored.
+     *
+     * @param record Change of this carpark applied by the primary
+     * @return <code>false</code> if the carpark is already at the version of the record or ahead of it
+     */
+    public boolean replicate(JournalRecord record) {
+        long position;
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long acquired = lockAcquired(requested);
+            try {
+                if (record.getVersion() <= version) {
+                    return false;
+                }
+                record.getEvents().forEach(event -> {
+                    int index = chargingPointIds.indexOf(event.getIdentifier());
+                    if (index >= 0) {
+                        if (event.isConnected()) {
+                            link(index);
+                        } else {
+                            unlink(index);
+                        }
+                    }
+                });
+                version = record.getVersion() - 1;
+                position = commit(record.getEvents());
+            } finally {
+                lockReleased(acquired);
+            }
+        }
+        journal.awaitDurable(position);
+        return true;
+    }
+
+    /**
+     * Waits until the carpark reaches a version, e.g. a follower catching up with a write acknowledged by the
+     * primary. Readers already satisfied by the published snapshot don't take the carpark lock.
+     *
+     * @param minVersion Version the caller wants to read at least
+     * @param timeout    Longest time to wait
+     * @return Latest snapshot, older than the requested version if the timeout elapsed first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public CarparkSnapshot awaitVersion(long minVersion, Duration timeout) throws InterruptedException {
+        CarparkSnapshot current = snapshot;
+        if (current.getVersion() >= minVersion) {
+            return current;
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            for (long remaining = timeout.toNanos(); snapshot.getVersion() < minVersion && remaining > 0;
+                 remaining = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Rebuilds the connection order stored in a checkpoint. Like {@link #restore(JournalRecord)} the snapshot is not
+     * published until {@link #completeRestore()} is called.
+     *
+     * @param checkpoint Checkpoint previously taken from this carpark
+     */
+    synchronized void restore(CarparkCheckpoint checkpoint) {
+        checkpoint.getConnectedChargingPoints().forEach(id -> {
+            int index = chargingPointIds.indexOf(id);
+            if (index >= 0 && !chargingQueue.isConnected(index)) {
+                chargingQueue.addFirst(index);
+                allocationPolicy.connect(index);
+            }
+        });
+        version = checkpoint.getVersion();
+    }
+
+    /**
+     * Applies a record read from the journal without appending it again. Records already covered by the restored
+     * checkpoint are skipped, except a reset: it starts over from the state it carries, and the records following it
+     * are replayed from its version. The charge is not redistributed and the snapshot is not published until
+     * {@link #completeRestore()} is called, so a long history is replayed in linear time.
+     *
+     * @param record Record previously appended by this carpark
+     */
+    synchronized void restore(JournalRecord record) {
+        if (record.isReset()) {
+            chargingQueue.forEachOldestFirst(changedPoints::set);
+            for (int index = changedPoints.nextSetBit(0); index >= 0; index = changedPoints.nextSetBit(index + 1)) {
+                chargingQueue.remove(index);
+                allocationPolicy.disconnect(index);
+            }
+            changedPoints.clear();
+        } else if (record.getVersion() <= version) {
+            return;
+        }
+        record.getEvents().forEach(event -> {
+            int index = chargingPointIds.indexOf(event.getIdentifier());
+            if (index >= 0 && chargingQueue.isConnected(index) != event.isConnected()) {
+                if (event.isConnected()) {
+                    chargingQueue.addFirst(index);
+                    allocationPolicy.connect(index);
+                } else {
+                    chargingQueue.remove(index);
+                    allocationPolicy.disconnect(index);
+                }
+            }
+        });
+        version = record.getVersion();
+    }
+
+    /**
+     * Redistributes the charge and publishes the state rebuilt by {@link #restore(JournalRecord)}
+     */
+    synchronized void completeRestore() {
+        redistributeCharge();
+        changedPoints.clear();
+        publishFullSnapshot();
+    }
+
+    /**
+     * Records the time spent waiting for the carpark lock. Must be called right after acquiring it.
+     *
+     * @param requested Time the lock was requested
+     * @return Time the lock was acquired
+     */
+    private long lockAcquired(long requested) {
+        long acquired = System.nanoTime();
+        metrics.recordLockWait(acquired - requested);
+        return acquired;
+    }
+
+    /**
+     * Records the time the carpark lock was held. Must be called right before releasing it.
+     *
+     * @param acquired Time the lock was acquired
+     */
+    private void lockReleased(long acquired) {
+        metrics.recordLockHold(System.nanoTime() - acquired);
+    }
+
+    /**
+     * Drops a batch whose events all have a stale sequence, typically a frame sent again by its gateway, without
+     * taking the carpark lock. The last sequences are read without synchronization: any value seen was applied at some
+     * point and the sequences of a charging point only move forward, so an event stale against it is stale against
+     * the latest one too. A batch that can't be dropped as a whole is checked again under the lock.
+     *
+     * @param batch Events to be applied
+     * @return <code>true</code> if every event was dropped with {@link EventOutcome#STALE}
+     */
+    private boolean dropStale(EventBatch batch) {
+        if (batch.size() == 0) {
+            return false;
+        }
+        for (int event = 0; event < batch.size(); event++) {
+            int index = batch.index(event);
+            if (index < 0 || index >= lastSequences.length
+                    || isNewer(batch.sequence(event), lastSequences[index])) {
+                return false;
+            }
+        }
+        for (int event = 0; event < batch.size(); event++) {
+            batch.setOutcome(event, EventOutcome.STALE);
+        }
+        metrics.recordStale(batch.size());
+        return true;
+    }
+
+    /**
+     * Records the sequence of an event about to be applied. Must be called holding the carpark lock.
+     *
+     * @param index    Charging point of the event
+     * @param sequence Sequence of the event
+     * @return <code>false</code> if the event is stale and must be dropped
+     */
+    private boolean acceptSequence(int index, int sequence) {
+        if (sequence == EventBatch.NO_SEQUENCE) {
+            return true;
+        }
+        if (!isNewer(sequence, lastSequences[index])) {
+            return false;
+        }
+        lastSequences[index] = sequence;
+        return true;
+    }
+
+    /**
+     * Compares sequences in serial number arithmetic, so they can wrap around as long as two events of a charging
+     * point in flight are less than 2^31 apart
+     *
+     * @param sequence Sequence of an event
+     * @param last     Last sequence applied to its charging point
+     * @return <code>true</code> if the event must be applied
+     */
+    private static boolean isNewer(int sequence, int last) {
+        return sequence == EventBatch.NO_SEQUENCE || last == EventBatch.NO_SEQUENCE || sequence - last > 0;
+    }
+
+    /**
+     * Adds the charging point to the charging queue as the most recent connection
+     *
+     * @param index Charging point to be connected
+     * @return <code>true</code> if the charging point wasn't connected already
+     */
+    private boolean link(int index) {
+        if (chargingQueue.isConnected(index)) {
+            return false;
+        }
+        chargingQueue.addFirst(index);
+        allocationPolicy.connect(index);
+        changedPoints.set(index);
+        metrics.recordConnect();
+        return true;
+    }
+
+    /**
+     * Removes the charging point from the charging queue
+     *
+     * @param index Charging point to be disconnected
+     * @return <code>true</code> if the charging point was connected
+     */
+    private boolean unlink(int index) {
+        if (!chargingQueue.isConnected(index)) {
+            return false;
+        }
+        chargingQueue.remove(index);
+        allocationPolicy.disconnect(index);
+        changedPoints.set(index);
+        metrics.recordDisconnect();
+        return true;
+    }
+
+    /**
+     * Lets the allocation policy move the charging points affected by the connections and disconnections applied since
+     * the last redistribution, it only reports the points whose current changed.
      */
     private void redistributeCharge() {
-        int rest = (NUM_CHARGE_POINTS - chargingQueue.size()) * MIN_ASSIGNABLE_CHARGE;
-        for (ChargingPoint cp : chargingQueue) {
-            var additionalCharge = 0;
-            if (rest > 0) {
-                additionalCharge = MIN_ASSIGNABLE_CHARGE;
+        long start = System.nanoTime();
+        allocationPolicy.redistribute(changedPoints::set);
+        metrics.recordRedistribution(System.nanoTime() - start);
+        metrics.recordQueueDepth(chargingQueue.size());
+    }
+
+    /**
+     * Completes a state change: redistributes the charge, appends the applied events to the journal and publishes the
+     * new snapshot. Must be called holding the carpark lock.
+     *
+     * @param events Events that changed the state of the carpark
+     * @return Position of the journal to wait for before acknowledging the change
+     */
+    private long commit(List<ChargingPointEvent> events) {
+        return commit(events, false);
+    }
+
+    /**
+     * @param reset <code>true</code> if the events replace the whole state of the carpark with a version that may not
+     *              be higher than the previous one, the record is then replayed whatever the version restored so far
+     */
+    private long commit(List<ChargingPointEvent> events, boolean reset) {
+        redistributeCharge();
+        version++;
+        long position = journal.append(new JournalRecord(name, version, events, reset));
+        publishSnapshot();
+        return position;
+    }
+
+    /**
+     * Publishes a new immutable snapshot updating only the charging points changed by the last mutation, the chunks of
+     * the previous snapshot they don't belong to are shared. Readers holding the previous snapshot keep seeing a
+     * consistent allocation. Readers waiting in {@link #awaitVersion(long, Duration)} are woken up.
+     */
+    private void publishSnapshot() {
+        CarparkSnapshot.Builder builder = snapshot.toBuilder(epoch, version);
+        List<ChargingPoint> changed = listeners.isEmpty() ? null : new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+        for (int index = changedPoints.nextSetBit(0); index >= 0; index = changedPoints.nextSetBit(index + 1)) {
+            int current = currentOf(index);
+            boolean connected = chargingQueue.isConnected(index);
+            if (builder.set(index, current, connected)) {
+                history.record(index, current, connected, timestamp);
+                if (changed != null) {
+                    changed.add(new ChargingPoint(chargingPointIds.identifier(index), current, connected));
+                }
             }
-            rest -= MIN_ASSIGNABLE_CHARGE;
-            cp.setCurrent(MIN_ASSIGNABLE_CHARGE + additionalCharge);
+        }
+        changedPoints.clear();
+        builder.setAllocation(allocationPolicy.fastCount(), allocationPolicy.fastChargeAvailable());
+        snapshot = builder.build();
+        notifyAll();
+        if (changed != null) {
+            AllocationDelta delta = new AllocationDelta(snapshot.getEpoch(), version, Collections.unmodifiableList(changed));
+            listeners.forEach(listener -> listener.onChange(delta));
         }
     }
 
+    /**
+     * Publishes a new immutable snapshot built from the state of every charging point. All of them are considered
+     * changed with the current version, the history only records the ones whose allocation differs from its last
+     * sample.
+     */
+    private void publishFullSnapshot() {
+        CarparkSnapshot.Builder builder = new CarparkSnapshot(epoch, version, chargingPointIds.identifiers())
+                .toBuilder(epoch, version);
+        chargingQueue.forEachOldestFirst(index -> builder.set(index, currentOf(index), true));
+        builder.setAllocation(allocationPolicy.fastCount(), allocationPolicy.fastChargeAvailable());
+        snapshot = builder.build();
+        long timestamp = System.currentTimeMillis();
+        for (int index = 0; index < chargingPointIds.size(); index++) {
+            history.record(index, currentOf(index), chargingQueue.isConnected(index), timestamp);
+        }
+    }
+
+    /**
+     * Registers a listener notified after every change of the carpark
+     *
+     * @param listener Listener of the changes
+     */
+    public void addListener(CarparkListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener previously registered, no longer notified once this returns
+     */
+    public void removeListener(CarparkListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Name of the carpark
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Latest published state of the carpark. The call never blocks on writers.
+     *
+     * @return Versioned snapshot of all the charging points in this carpark station
+     */
+    public CarparkSnapshot snapshot() {
+        return snapshot;
+    }
+
     /**
      * @return List of all information for all Charging Points in this carpark station
      */
     public List<ChargingPoint> describe() {
-        return chargingPointIds.stream()
-                .map(id -> chargingQueue.stream()
-                        .filter(cp -> cp.getIdentifier().equals(id))
-                        .findFirst()
-                        .orElse(new ChargingPoint(id, 0, false))
-                ).collect(Collectors.toList());
+        return snapshot.getChargingPoints();
     }
 
     /**
-     * Creates a set of ids for the charging points available in the current Car-Park
+     * Answered in constant time from the counters of the published snapshot, without taking the carpark lock nor
+     * reading the state of any charging point
      *
-     * @return Set of fixed charging point ids to be used by the car-park
+     * @return Free charging points, fast/slow split, spare current of the carpark and whether a vehicle connected now
+     * is fast charged
      */
-    private Set<String> fixedChargePointIds() {
-        return IntStream.rangeClosed(1, NUM_CHARGE_POINTS)
-                .mapToObj(String::valueOf)
-                .map(n -> "CP" + n)
-                .collect(Collectors.toSet());
+    public CarparkAvailability availability() {
+        CarparkSnapshot current = snapshot;
+        int occupied = current.connectedCount();
+        int fast = current.fastCount();
+        int free = current.size() - occupied;
+        return new CarparkAvailability(current.getVersion(), free, fast, occupied - fast,
+                totalPower - current.totalCurrent(), free > 0 && current.fastChargeAvailable());
     }
 
+    /**
+     * Summarizes the published snapshot from its counters, like {@link #availability()}
+     *
+     * @return Occupancy and load of the carpark
+     */
+    public CarparkSummary summarize() {
+        CarparkSnapshot current = snapshot;
+        int occupied = current.connectedCount();
+        int fast = current.fastCount();
+        return new CarparkSummary(name, current.size(), current.size() - occupied, occupied, fast, occupied - fast,
+                current.totalCurrent());
+    }
+
+    /**
+     * @return Allocation history of the charging points, indexed like the snapshots
+     */
+    public AllocationHistory history() {
+        return history;
+    }
+
+    /**
+     * @param chargingPointId Identifier of a charging point of the carpark
+     * @return Position of the charging point in the snapshots of the carpark
+     */
+    public int indexOf(String chargingPointId) {
+        int index = chargingPointIds.indexOf(chargingPointId);
+        if (index < 0) {
+            throw new ChargingPointNotFoundException();
+        }
+        return index;
+    }
+
+    private int currentOf(int index) {
+        return allocationPolicy.currentOf(index);
+    }
+
+    /**
+     * @return Random epoch, different from the previous ones of the carpark in all likelihood
+     */
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return Same limits for every charging point: the total power shared equally as minimum current and twice as
+     * much as maximum
+     */
+    private static AllocationLimits defaultLimits(int numChargePoints, int totalPower) {
+        if (numChargePoints <= 0) {
+            return AllocationLimits.uniform(0, 0, 0);
+        }
+        int minAssignableCharge = totalPower / numChargePoints;
+        return AllocationLimits.uniform(numChargePoints, minAssignableCharge, 2 * minAssignableCharge);
+    }
+
+    /**
+     * Events of a batch that changed the carpark, as read by the journal. Only their indices are copied, the
+     * {@link ChargingPointEvent} instances are created on access.
+     */
+    private final class AppliedEvents extends AbstractList<ChargingPointEvent> implements RandomAccess {
+        private final int[] events;
+
+        private AppliedEvents(EventBatch batch, int applied) {
+            events = new int[applied];
+            int next = 0;
+            for (int event = 0; event < batch.size(); event++) {
+                EventOutcome outcome = batch.outcome(event);
+                if (outcome == EventOutcome.CONNECTED || outcome == EventOutcome.DISCONNECTED) {
+                    events[next++] = batch.index(event) << 1 | (outcome == EventOutcome.CONNECTED ? 1 : 0);
+                }
+            }
+        }
+
+        @Override
+        public ChargingPointEvent get(int i) {
+            return new ChargingPointEvent(chargingPointIds.identifier(events[i] >>> 1), (events[i] & 1) != 0);
+        }
+
+        @Override
+        public int size() {
+            return events.length;
+        }
+    }
 }
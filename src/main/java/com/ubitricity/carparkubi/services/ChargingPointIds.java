@@ -0,0 +1,68 @@
+package com.ubitricity.carparkubi.services;
+
+/**
+ * Identifiers of the charging points of a carpark interned to dense indices.
+ * <p>
+ * Charging points are named <code>CP1</code> to <code>CPn</code>, so the index of an identifier is read from its
+ * number without hashing, comparing or allocating strings. Every identifier is created once and shared by all the
+ * snapshots of the carpark.
+ */
+final class ChargingPointIds {
+    private static final String PREFIX = "CP";
+    private static final int MAX_DIGITS = 10;
+
+    private final String[] identifiers;
+
+    /**
+     * @param size Number of charging points installed in the carpark
+     */
+    ChargingPointIds(int size) {
+        identifiers = new String[size];
+        for (int i = 0; i < size; i++) {
+            identifiers[i] = PREFIX + (i + 1);
+        }
+    }
+
+    /**
+     * @param chargingPointId Identifier of the charging point
+     * @return Index of the charging point or <code>-1</code> if it doesn't belong to the carpark
+     */
+    int indexOf(String chargingPointId) {
+        int length = chargingPointId.length();
+        if (length <= PREFIX.length() || length > PREFIX.length() + MAX_DIGITS
+                || !chargingPointId.startsWith(PREFIX) || chargingPointId.charAt(PREFIX.length()) == '0') {
+            return -1;
+        }
+        long number = 0;
+        for (int i = PREFIX.length(); i < length; i++) {
+            char c = chargingPointId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number <= identifiers.length ? (int) number - 1 : -1;
+    }
+
+    /**
+     * @param index Index of a charging point
+     * @return Identifier of the charging point
+     */
+    String identifier(int index) {
+        return identifiers[index];
+    }
+
+    /**
+     * @return All the identifiers ordered by index. The array is shared and must not be modified
+     */
+    String[] identifiers() {
+        return identifiers;
+    }
+
+    /**
+     * @return Number of charging points
+     */
+    int size() {
+        return identifiers.length;
+    }
+}
@@ -0,0 +1,166 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Connection ordered queue of the charging points of a carpark.
+ * <p>
+ * Charging points are addressed by their dense index. Connected points are linked from the most recent (head) to the
+ * oldest (tail) connection through two preallocated <code>int</code> arrays, while occupancy and fast charging are
+ * kept in bitsets, so the queue allocates nothing after construction. The points marked as fast always form a prefix
+ * of the queue, so moving the fast/slow boundary only touches the point right at the boundary.
+ * All operations run in constant time. The class is not thread safe, callers must hold the carpark lock.
+ */
+class ChargingQueue {
+    static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final BitSet connected;
+    private final BitSet fast;
+    private int head = NONE;
+    private int tail = NONE;
+    private int lastFast = NONE;
+    private int size;
+    private int fastCount;
+
+    /**
+     * @param capacity Number of charging points of the carpark
+     */
+    ChargingQueue(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        Arrays.fill(prev, NONE);
+        Arrays.fill(next, NONE);
+        connected = new BitSet(capacity);
+        fast = new BitSet(capacity);
+    }
+
+    /**
+     * Links the point as the most recent connection. If there are fast points the new one joins the fast prefix,
+     * otherwise it is added as slow.
+     *
+     * @param index Disconnected charging point to be linked
+     */
+    void addFirst(int index) {
+        connected.set(index);
+        prev[index] = NONE;
+        next[index] = head;
+        if (head != NONE) {
+            prev[head] = index;
+        } else {
+            tail = index;
+        }
+        head = index;
+        size++;
+        if (fastCount > 0) {
+            fast.set(index);
+            fastCount++;
+        }
+    }
+
+    /**
+     * Unlinks a connected point from the queue keeping the fast prefix contiguous.
+     *
+     * @param index Connected charging point to be unlinked
+     */
+    void remove(int index) {
+        if (fast.get(index)) {
+            if (index == lastFast) {
+                lastFast = prev[index];
+            }
+            fastCount--;
+        }
+        if (prev[index] != NONE) {
+            next[prev[index]] = next[index];
+        } else {
+            head = next[index];
+        }
+        if (next[index] != NONE) {
+            prev[next[index]] = prev[index];
+        } else {
+            tail = prev[index];
+        }
+        prev[index] = NONE;
+        next[index] = NONE;
+        connected.clear(index);
+        fast.clear(index);
+        size--;
+    }
+
+    /**
+     * Extends the fast prefix by one point.
+     *
+     * @return The charging point switched to fast charging
+     */
+    int promote() {
+        int index = lastFast == NONE ? head : next[lastFast];
+        fast.set(index);
+        lastFast = index;
+        fastCount++;
+        return index;
+    }
+
+    /**
+     * @return The charging point {@link #promote()} would switch to fast charging, {@link #NONE} if all are fast
+     */
+    int nextSlow() {
+        return lastFast == NONE ? head : next[lastFast];
+    }
+
+    /**
+     * Shrinks the fast prefix by one point.
+     *
+     * @return The charging point switched to slow charging
+     */
+    int demote() {
+        int index = lastFast;
+        fast.clear(index);
+        lastFast = prev[index];
+        fastCount--;
+        return index;
+    }
+
+    /**
+     * Visits the connected points from the oldest to the most recent connection
+     *
+     * @param consumer Consumer of the connected charging points
+     */
+    void forEachOldestFirst(IntConsumer consumer) {
+        for (int index = tail; index != NONE; index = prev[index]) {
+            consumer.accept(index);
+        }
+    }
+
+    /**
+     * @param index Charging point
+     * @return <code>true</code> if the charging point is connected
+     */
+    boolean isConnected(int index) {
+        return connected.get(index);
+    }
+
+    /**
+     * @param index Charging point
+     * @return <code>true</code> if the charging point is connected on fast charge
+     */
+    boolean isFast(int index) {
+        return fast.get(index);
+    }
+
+    /**
+     * @return Number of connected charging points
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of connected charging points on fast charge
+     */
+    int fastCount() {
+        return fastCount;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with many producers and a single consumer.
+ * <p>
+ * Producers claim a sequence with a CAS on the tail and then publish their element in the slot of that sequence. The
+ * consumer reads the slot at the head, an empty slot means the buffer is empty or the producer didn't publish yet.
+ * Slots are cleared before the head moves forward, so a producer never overwrites an element not yet consumed.
+ *
+ * @param <E> Type of the elements
+ */
+final class CommandRing<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity Maximum number of elements, must be a power of two
+     */
+    CommandRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two but was " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Can be called by any thread
+     *
+     * @param element Element to be added
+     * @return <code>false</code> if the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.lazySet((int) sequence & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Must only be called by the consumer
+     *
+     * @return Oldest published element or <code>null</code> if there is none
+     */
+    E poll() {
+        long sequence = head.get();
+        int index = (int) sequence & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.lazySet(sequence + 1);
+        return element;
+    }
+
+    /**
+     * @return <code>true</code> if no element was claimed by a producer and not consumed yet
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
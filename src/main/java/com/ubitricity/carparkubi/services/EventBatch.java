@@ -0,0 +1,113 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.EventOutcome;
+
+import java.util.Arrays;
+
+/**
+ * Reusable batch of connect/disconnect events addressed by charging point index.
+ * <p>
+ * The events are stored column by column in primitive arrays, so decoders can fill a batch and the carpark can apply
+ * it without creating an object per event. A batch grows to the largest number of events it held and is meant to be
+ * cleared and reused by a single thread.
+ * <p>
+ * Events can carry a sequence number increasing per charging point. The carpark drops an event whose sequence is not
+ * newer than the last one applied to its charging point, {@link #NO_SEQUENCE} events are always applied.
+ */
+public final class EventBatch {
+    /**
+     * Sequence of the events not numbered by their sender
+     */
+    public static final int NO_SEQUENCE = 0;
+    private static final EventOutcome[] OUTCOMES = EventOutcome.values();
+
+    private int[] indices;
+    private int[] sequences;
+    private boolean[] connected;
+    private byte[] outcomes;
+    private int size;
+
+    public EventBatch() {
+        this(64);
+    }
+
+    /**
+     * @param capacity Initial number of events the batch can hold
+     */
+    public EventBatch(int capacity) {
+        indices = new int[capacity];
+        sequences = new int[capacity];
+        connected = new boolean[capacity];
+        outcomes = new byte[capacity];
+    }
+
+    /**
+     * Removes all the events, keeping the allocated capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param index     Index of the charging point, <code>CP1</code> being 0
+     * @param connected <code>true</code> for a connection, <code>false</code> for a disconnection
+     * @param sequence  Sequence number assigned to the event by its sender, wrapping around after
+     *                  {@link Integer#MAX_VALUE}, or {@link #NO_SEQUENCE}
+     */
+    public void add(int index, boolean connected, int sequence) {
+        if (size == indices.length) {
+            int capacity = Math.max(16, size * 2);
+            indices = Arrays.copyOf(indices, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            this.connected = Arrays.copyOf(this.connected, capacity);
+            outcomes = Arrays.copyOf(outcomes, capacity);
+        }
+        indices[size] = index;
+        sequences[size] = sequence;
+        this.connected[size] = connected;
+        size++;
+    }
+
+    /**
+     * @return Number of events in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param event Position of the event in the batch
+     * @return Index of the charging point of the event
+     */
+    public int index(int event) {
+        return indices[event];
+    }
+
+    /**
+     * @param event Position of the event in the batch
+     * @return <code>true</code> if the event is a connection
+     */
+    public boolean isConnected(int event) {
+        return connected[event];
+    }
+
+    /**
+     * @param event Position of the event in the batch
+     * @return Sequence number assigned to the event by its sender
+     */
+    public int sequence(int event) {
+        return sequences[event];
+    }
+
+    /**
+     * @param event Position of the event in the batch
+     * @return Outcome of the event, only meaningful once the batch was applied to a carpark
+     */
+    public EventOutcome outcome(int event) {
+        return OUTCOMES[outcomes[event]];
+    }
+
+    void setOutcome(int event, EventOutcome outcome) {
+        outcomes[event] = (byte) outcome.ordinal();
+    }
+}
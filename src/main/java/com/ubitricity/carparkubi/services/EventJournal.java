@@ -0,0 +1,69 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.JournalRecord;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Log of the state changes of the carparks, used to rebuild their state after a restart.
+ */
+public interface EventJournal {
+    /**
+     * Journal that doesn't persist anything
+     */
+    EventJournal NONE = new EventJournal() {
+        @Override
+        public long append(JournalRecord record) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long position) {
+        }
+
+        @Override
+        public void replay(Consumer<CarparkCheckpoint> checkpointConsumer, Consumer<JournalRecord> recordConsumer) {
+        }
+
+        @Override
+        public void checkpoint(Supplier<List<CarparkCheckpoint>> checkpoints) {
+        }
+    };
+
+    /**
+     * Appends a record to the journal. Callers must hold the lock of the carpark so records of a carpark are appended
+     * in the same order they were applied.
+     *
+     * @param record State change to be appended
+     * @return Position of the journal right after the record
+     */
+    long append(JournalRecord record);
+
+    /**
+     * Blocks until the journal is persisted up to the given position, if the configured durability requires it.
+     * Must be called without holding the lock of any carpark.
+     *
+     * @param position Position returned by {@link #append(JournalRecord)}
+     */
+    void awaitDurable(long position);
+
+    /**
+     * Reads the latest checkpoint of the carparks followed by the records appended to the journal after it, in the
+     * order they were written. Records older than the checkpoint may still be read, they can be recognised by their
+     * version.
+     *
+     * @param checkpointConsumer Consumer of the checkpoint of each carpark
+     * @param recordConsumer     Consumer of the journal records
+     */
+    void replay(Consumer<CarparkCheckpoint> checkpointConsumer, Consumer<JournalRecord> recordConsumer);
+
+    /**
+     * Stores a checkpoint of all the carparks and discards the part of the journal it covers.
+     *
+     * @param checkpoints Supplier of the checkpoints, called once the journal is ready to be compacted
+     */
+    void checkpoint(Supplier<List<CarparkCheckpoint>> checkpoints);
+}
@@ -0,0 +1,115 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.CarparkSummary;
+import com.ubitricity.carparkubi.model.FleetSummary;
+import com.ubitricity.carparkubi.model.FleetTotals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Summary of the occupancy and load of all the carparks.
+ * <p>
+ * The carparks are split in ranges summarized in parallel on the common fork-join pool, every leaf reads the published
+ * snapshot of its carparks without taking their locks and adds up their totals, which are merged while the ranges are
+ * joined. The summaries are consistent per carpark, not across carparks.
+ */
+@Service
+public class FleetReport {
+    static final int LEAF_SIZE = 64;
+
+    private final CarparkRegistry carparkRegistry;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public FleetReport(CarparkRegistry carparkRegistry) {
+        this(carparkRegistry, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param carparkRegistry Carparks to be summarized
+     * @param pool            Pool running the summaries
+     */
+    public FleetReport(CarparkRegistry carparkRegistry, ForkJoinPool pool) {
+        this.carparkRegistry = carparkRegistry;
+        this.pool = pool;
+    }
+
+    /**
+     * @param prefix  Start of the names of the carparks to be summarized, empty for all of them
+     * @param minFree Minimum number of free charging points of the carparks to be listed
+     * @return Summaries of the matching carparks ordered by name, with their totals
+     */
+    public FleetSummary summarize(String prefix, int minFree) {
+        List<CarparkUbi> carparks = carparkRegistry.carparksByName(prefix);
+        CarparkSummary[] summaries = new CarparkSummary[carparks.size()];
+        FleetTotals totals = pool.invoke(new SummaryTask(carparks, summaries, minFree, 0, carparks.size()));
+        List<CarparkSummary> matching = new ArrayList<>(totals.getCarparks());
+        for (CarparkSummary summary : summaries) {
+            if (summary != null) {
+                matching.add(summary);
+            }
+        }
+        return new FleetSummary(totals, matching);
+    }
+
+    /**
+     * Summarizes a range of carparks, leaving <code>null</code> in the slots of the ones filtered out
+     */
+    private static final class SummaryTask extends RecursiveTask<FleetTotals> {
+        private final List<CarparkUbi> carparks;
+        private final CarparkSummary[] summaries;
+        private final int minFree;
+        private final int from;
+        private final int to;
+
+        private SummaryTask(List<CarparkUbi> carparks, CarparkSummary[] summaries, int minFree, int from, int to) {
+            this.carparks = carparks;
+            this.summaries = summaries;
+            this.minFree = minFree;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected FleetTotals compute() {
+            if (to - from <= LEAF_SIZE) {
+                return summarizeRange();
+            }
+            int middle = (from + to) >>> 1;
+            SummaryTask left = new SummaryTask(carparks, summaries, minFree, from, middle);
+            left.fork();
+            FleetTotals right = new SummaryTask(carparks, summaries, minFree, middle, to).compute();
+            return left.join().plus(right);
+        }
+
+        private FleetTotals summarizeRange() {
+            int count = 0;
+            long chargingPoints = 0;
+            long free = 0;
+            long occupied = 0;
+            long fast = 0;
+            long slow = 0;
+            long current = 0;
+            for (int i = from; i < to; i++) {
+                CarparkSummary summary = carparks.get(i).summarize();
+                if (summary.getFree() < minFree) {
+                    continue;
+                }
+                summaries[i] = summary;
+                count++;
+                chargingPoints += summary.getChargingPoints();
+                free += summary.getFree();
+                occupied += summary.getOccupied();
+                fast += summary.getFast();
+                slow += summary.getSlow();
+                current += summary.getCurrent();
+            }
+            return new FleetTotals(count, chargingPoints, free, occupied, fast, slow, current);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.Comparator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Allocation sharing the current equally among the connected charging points: every point gets a common level
+ * clamped to its limits, the level being the highest one the carpark can supply.
+ * <p>
+ * The current needed at a level is the sum of the maximums of the points capped below it, of the minimums of the
+ * points raised above it and of the level for the others. The points are ranked once by minimum and by maximum and
+ * the connected ones are counted and summed in Fenwick trees over these ranks, so that sum is read in O(log n) and the
+ * level is found by a binary search over the currents. A change of the level moves the share of every point not held
+ * by its limits, those are the only ones reported; a connection or disconnection leaving the level unchanged touches
+ * nothing else.
+ */
+final class ProportionalAllocation implements AllocationPolicy {
+    private final int totalPower;
+    private final AllocationLimits limits;
+    private final int[] sortedMinimums;
+    private final int[] sortedMaximums;
+    private final int[] minimumRanks;
+    private final int[] maximumRanks;
+    private final long[] minimumCounts;
+    private final long[] minimumSums;
+    private final long[] maximumCounts;
+    private final long[] maximumSums;
+    private final int[] currents;
+    private final int[] members;
+    private final int[] memberSlots;
+    private final int highestLevel;
+    private long minimums;
+    private int size;
+    private int level;
+    private int fastCount;
+
+    /**
+     * @param totalPower Overall current input of the carpark
+     * @param limits     Limits of the charging points
+     */
+    ProportionalAllocation(int totalPower, AllocationLimits limits) {
+        this.totalPower = totalPower;
+        this.limits = limits;
+        int points = limits.size();
+        sortedMinimums = new int[points];
+        sortedMaximums = new int[points];
+        minimumRanks = rank(limits, Comparator.comparingInt(limits::minCurrent), sortedMinimums, true);
+        maximumRanks = rank(limits, Comparator.comparingInt(limits::maxCurrent), sortedMaximums, false);
+        minimumCounts = new long[points + 1];
+        minimumSums = new long[points + 1];
+        maximumCounts = new long[points + 1];
+        maximumSums = new long[points + 1];
+        currents = new int[points];
+        members = new int[points];
+        memberSlots = new int[points];
+        highestLevel = Math.max(limits.defaultMaxCurrent(), points == 0 ? 0 : sortedMaximums[points - 1]);
+        level = highestLevel;
+    }
+
+    @Override
+    public void connect(int index) {
+        int minimum = limits.minCurrent(index);
+        int maximum = limits.maxCurrent(index);
+        add(minimumCounts, minimumRanks[index], 1);
+        add(minimumSums, minimumRanks[index], minimum);
+        add(maximumCounts, maximumRanks[index], 1);
+        add(maximumSums, maximumRanks[index], maximum);
+        minimums += minimum;
+        memberSlots[index] = size;
+        members[size++] = index;
+        setCurrent(index, Math.max(minimum, Math.min(maximum, level)));
+    }
+
+    @Override
+    public void disconnect(int index) {
+        add(minimumCounts, minimumRanks[index], -1);
+        add(minimumSums, minimumRanks[index], -limits.minCurrent(index));
+        add(maximumCounts, maximumRanks[index], -1);
+        add(maximumSums, maximumRanks[index], -limits.maxCurrent(index));
+        minimums -= limits.minCurrent(index);
+        int last = members[--size];
+        members[memberSlots[index]] = last;
+        memberSlots[last] = memberSlots[index];
+        setCurrent(index, 0);
+    }
+
+    @Override
+    public void redistribute(IntConsumer changed) {
+        int next = levelFor(0, 0, false);
+        if (next == level) {
+            return;
+        }
+        level = next;
+        for (int member = 0; member < size; member++) {
+            int index = members[member];
+            if (setCurrent(index, Math.max(limits.minCurrent(index), Math.min(limits.maxCurrent(index), level)))) {
+                changed.accept(index);
+            }
+        }
+    }
+
+    @Override
+    public int currentOf(int index) {
+        return currents[index];
+    }
+
+    @Override
+    public int fastCount() {
+        return fastCount;
+    }
+
+    /**
+     * The level is searched again as if a point with the default limits were connected
+     */
+    @Override
+    public boolean fastChargeAvailable() {
+        if (minimums + limits.defaultMinCurrent() > totalPower) {
+            return false;
+        }
+        int share = levelFor(limits.defaultMinCurrent(), limits.defaultMaxCurrent(), true);
+        return Math.min(limits.defaultMaxCurrent(), share) > limits.defaultMinCurrent();
+    }
+
+    /**
+     * @return Highest level the carpark can supply to the connected points, and to an extra one if asked
+     */
+    private int levelFor(int extraMinimum, int extraMaximum, boolean extra) {
+        int low = 0;
+        int high = highestLevel;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            long demand = demand(middle)
+                    + (extra ? Math.max(extraMinimum, Math.min(extraMaximum, middle)) : 0);
+            if (demand <= totalPower) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Current needed by the connected points at a level
+     */
+    private long demand(int level) {
+        int capped = upperBound(sortedMaximums, level);
+        int raised = upperBound(sortedMinimums, level);
+        long cappedCount = sum(maximumCounts, capped);
+        long raisedCount = size - sum(minimumCounts, raised);
+        long raisedSum = minimums - sum(minimumSums, raised);
+        return sum(maximumSums, capped) + raisedSum + (long) level * (size - cappedCount - raisedCount);
+    }
+
+    private boolean setCurrent(int index, int current) {
+        int previous = currents[index];
+        if (previous == current) {
+            return false;
+        }
+        boolean wasFast = previous > limits.minCurrent(index);
+        boolean fast = current > limits.minCurrent(index);
+        fastCount += (fast ? 1 : 0) - (wasFast ? 1 : 0);
+        currents[index] = current;
+        return true;
+    }
+
+    /**
+     * @return Rank of every charging point when sorted by the given limit, the sorted limits are written in values
+     */
+    private static int[] rank(AllocationLimits limits, Comparator<Integer> order, int[] values, boolean minimum) {
+        int[] sorted = IntStream.range(0, limits.size()).boxed().sorted(order).mapToInt(Integer::intValue).toArray();
+        int[] ranks = new int[sorted.length];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[sorted[rank]] = rank;
+            values[rank] = minimum ? limits.minCurrent(sorted[rank]) : limits.maxCurrent(sorted[rank]);
+        }
+        return ranks;
+    }
+
+    /**
+     * @return Number of sorted values lower than or equal to the given one
+     */
+    private static int upperBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void add(long[] tree, int rank, long delta) {
+        for (int i = rank + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return Sum of the values of the ranks lower than the given one
+     */
+    private static long sum(long[] tree, int rank) {
+        long sum = 0;
+        for (int i = rank; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
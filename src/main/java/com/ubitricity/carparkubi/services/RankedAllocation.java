@@ -0,0 +1,182 @@
+package com.ubitricity.carparkubi.services;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Allocation serving the connections in rank order: every connected charging point gets its minimum current and the
+ * spare current tops the points up to their maximum, from the highest tier and the newest connection within a tier,
+ * as long as the whole top-up fits.
+ * <p>
+ * Every tier is a {@link ChargingQueue} whose fast prefix holds the points topped up, so these always form a prefix of
+ * the rank order and a change only moves its boundary. A redistribution touches the points switching between their
+ * minimum and maximum and looks at the head of every tier, it never walks the connected points. Tiers are meant to be
+ * a handful, e.g. fleet and public bays.
+ */
+final class RankedAllocation implements AllocationPolicy {
+    private final int totalPower;
+    private final AllocationLimits limits;
+    private final int[] tierValues;
+    private final int[] tierOf;
+    private final ChargingQueue[] tiers;
+    private final long[] fastHeadroom;
+    private long minimums;
+    private long allocated;
+    private int fastCount;
+
+    /**
+     * @param totalPower Overall current input of the carpark
+     * @param limits     Limits and tiers of the charging points
+     * @param tiered     <code>false</code> to rank all the charging points in a single tier
+     */
+    RankedAllocation(int totalPower, AllocationLimits limits, boolean tiered) {
+        this.totalPower = totalPower;
+        this.limits = limits;
+        int size = limits.size();
+        int[] ascending = tiered ? Arrays.stream(tiersOf(limits)).distinct().sorted().toArray()
+                : new int[]{AllocationLimits.DEFAULT_TIER};
+        tierValues = new int[ascending.length];
+        for (int tier = 0; tier < ascending.length; tier++) {
+            tierValues[tier] = ascending[ascending.length - 1 - tier];
+        }
+        tierOf = new int[size];
+        if (tiered) {
+            for (int index = 0; index < size; index++) {
+                tierOf[index] = ascending.length - 1 - Arrays.binarySearch(ascending, limits.tier(index));
+            }
+        }
+        tiers = new ChargingQueue[tierValues.length];
+        for (int tier = 0; tier < tiers.length; tier++) {
+            tiers[tier] = new ChargingQueue(size);
+        }
+        fastHeadroom = new long[tierValues.length];
+    }
+
+    @Override
+    public void connect(int index) {
+        ChargingQueue tier = tiers[tierOf[index]];
+        tier.addFirst(index);
+        minimums += limits.minCurrent(index);
+        allocated += limits.minCurrent(index);
+        if (tier.isFast(index)) {
+            topUp(index);
+        }
+    }
+
+    @Override
+    public void disconnect(int index) {
+        ChargingQueue tier = tiers[tierOf[index]];
+        if (tier.isFast(index)) {
+            release(index);
+        }
+        minimums -= limits.minCurrent(index);
+        allocated -= limits.minCurrent(index);
+        tier.remove(index);
+    }
+
+    /**
+     * Shrinks the topped up prefix while the carpark is over its power or a slow point ranks before a fast one, then
+     * extends it while the top-up of the next point fits
+     */
+    @Override
+    public void redistribute(IntConsumer changed) {
+        while (true) {
+            int slowTier = firstSlowTier();
+            int fastTier = lastFastTier();
+            if (fastTier >= 0 && (allocated > totalPower || slowTier >= 0 && slowTier < fastTier)) {
+                int index = tiers[fastTier].demote();
+                release(index);
+                changed.accept(index);
+            } else if (slowTier >= 0 && headroom(tiers[slowTier].nextSlow()) <= totalPower - allocated) {
+                int index = tiers[slowTier].promote();
+                topUp(index);
+                changed.accept(index);
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int currentOf(int index) {
+        ChargingQueue tier = tiers[tierOf[index]];
+        if (!tier.isConnected(index)) {
+            return 0;
+        }
+        return tier.isFast(index) ? limits.maxCurrent(index) : limits.minCurrent(index);
+    }
+
+    @Override
+    public int fastCount() {
+        return fastCount;
+    }
+
+    /**
+     * The new vehicle would rank first in the default tier, behind the higher tiers, which must all be topped up
+     */
+    @Override
+    public boolean fastChargeAvailable() {
+        long required = minimums + limits.defaultMaxCurrent();
+        for (int tier = 0; tier < tiers.length && tierValues[tier] > AllocationLimits.DEFAULT_TIER; tier++) {
+            if (tiers[tier].fastCount() < tiers[tier].size()) {
+                return false;
+            }
+            required += fastHeadroom[tier];
+        }
+        return limits.defaultMaxCurrent() > limits.defaultMinCurrent() && required <= totalPower;
+    }
+
+    private void topUp(int index) {
+        int headroom = headroom(index);
+        allocated += headroom;
+        fastHeadroom[tierOf[index]] += headroom;
+        if (headroom > 0) {
+            fastCount++;
+        }
+    }
+
+    private void release(int index) {
+        int headroom = headroom(index);
+        allocated -= headroom;
+        fastHeadroom[tierOf[index]] -= headroom;
+        if (headroom > 0) {
+            fastCount--;
+        }
+    }
+
+    private int headroom(int index) {
+        return limits.maxCurrent(index) - limits.minCurrent(index);
+    }
+
+    /**
+     * @return Highest tier with a connected point not topped up, <code>-1</code> if there is none
+     */
+    private int firstSlowTier() {
+        for (int tier = 0; tier < tiers.length; tier++) {
+            if (tiers[tier].fastCount() < tiers[tier].size()) {
+                return tier;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Lowest tier with a topped up point, <code>-1</code> if there is none
+     */
+    private int lastFastTier() {
+        for (int tier = tiers.length - 1; tier >= 0; tier--) {
+            if (tiers[tier].fastCount() > 0) {
+                return tier;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] tiersOf(AllocationLimits limits) {
+        int[] tiers = new int[limits.size()];
+        for (int index = 0; index < tiers.length; index++) {
+            tiers[index] = limits.tier(index);
+        }
+        return tiers;
+    }
+}
@@ -0,0 +1,320 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.NearbyCarpark;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Index of the carparks by location, answering the nearest carparks where a vehicle can be connected now.
+ * <p>
+ * The carparks are bucketed in a grid of cells of <code>carparks.spatial.cell-size</code> degrees, sorted by cell in
+ * flat arrays and the cells found by binary search, so a query allocates only its results. A query visits the rings
+ * of cells around its location from the nearest one and stops once the next ring can't hold anything closer than the
+ * k-th carpark found. When fewer than k carparks qualify nothing bounds the search but the bounding box of the
+ * carparks, so once the rings visited hold more cells than the grid has occupied ones the remaining carparks are
+ * visited through the occupied cells in a single pass, which at most doubles the work already done. The locations
+ * never change, only the availability does: it is read from the counters of every visited carpark, lock free and in
+ * constant time, so the index is never updated and the answers follow every change of the carparks. Longitudes don't
+ * wrap around the antimeridian.
+ */
+@Service
+public class SpatialIndex {
+    private static final double EARTH_RADIUS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+
+    private final double cellSize;
+    private final int maxResults;
+    private final long[] cellKeys;
+    private final int[] cellStarts;
+    private final CarparkUbi[] carparks;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] latitudeRadians;
+    private final double[] longitudeRadians;
+    private final double[] latitudeCosines;
+    private final int minRow;
+    private final int maxRow;
+    private final int minColumn;
+    private final int maxColumn;
+
+    /**
+     * Indexes the configured carparks having a location
+     *
+     * @param properties      Configuration of the carparks and of the grid
+     * @param carparkRegistry Registered carparks
+     */
+    public SpatialIndex(CarparksProperties properties, CarparkRegistry carparkRegistry) {
+        this.cellSize = properties.getSpatial().getCellSize();
+        this.maxResults = properties.getSpatial().getMaxResults();
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cells of the spatial index must have a positive size");
+        }
+        List<String> located = new ArrayList<>();
+        properties.getSites().forEach((name, site) -> {
+            if (site.getLatitude() != null && site.getLongitude() != null) {
+                checkLocation(site.getLatitude(), site.getLongitude());
+                located.add(name);
+            }
+        });
+        int size = located.size();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            CarparksProperties.Site site = properties.getSites().get(located.get(i));
+            keys[i] = cellKey(row(site.getLatitude()), column(site.getLongitude()));
+        }
+        int[] order = IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparingLong(i -> keys[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        carparks = new CarparkUbi[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        latitudeRadians = new double[size];
+        longitudeRadians = new double[size];
+        latitudeCosines = new double[size];
+        long[] distinctKeys = new long[size];
+        int[] starts = new int[size + 1];
+        int cells = 0;
+        int rowLow = Integer.MAX_VALUE;
+        int rowHigh = Integer.MIN_VALUE;
+        int columnLow = Integer.MAX_VALUE;
+        int columnHigh = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            String name = located.get(order[i]);
+            CarparksProperties.Site site = properties.getSites().get(name);
+            carparks[i] = carparkRegistry.find(name);
+            latitudes[i] = site.getLatitude();
+            longitudes[i] = site.getLongitude();
+            latitudeRadians[i] = Math.toRadians(latitudes[i]);
+            longitudeRadians[i] = Math.toRadians(longitudes[i]);
+            latitudeCosines[i] = Math.cos(latitudeRadians[i]);
+            if (cells == 0 || distinctKeys[cells - 1] != keys[order[i]]) {
+                distinctKeys[cells] = keys[order[i]];
+                starts[cells++] = i;
+            }
+            rowLow = Math.min(rowLow, row(latitudes[i]));
+            rowHigh = Math.max(rowHigh, row(latitudes[i]));
+            columnLow = Math.min(columnLow, column(longitudes[i]));
+            columnHigh = Math.max(columnHigh, column(longitudes[i]));
+        }
+        starts[cells] = size;
+        cellKeys = Arrays.copyOf(distinctKeys, cells);
+        cellStarts = Arrays.copyOf(starts, cells + 1);
+        minRow = rowLow;
+        maxRow = rowHigh;
+        minColumn = columnLow;
+        maxColumn = columnHigh;
+    }
+
+    /**
+     * @param latitude    Latitude of the vehicle in degrees
+     * @param longitude   Longitude of the vehicle in degrees
+     * @param k           Number of carparks wanted
+     * @param fastCharge  Whether only the carparks fast charging a vehicle connected now are wanted
+     * @param maxDistance Largest distance of the carparks wanted, in meters
+     * @return Up to k carparks with a free charging point, nearest first
+     */
+    public List<NearbyCarpark> nearest(double latitude, double longitude, int k, boolean fastCharge,
+                                       double maxDistance) {
+        checkLocation(latitude, longitude);
+        if (k <= 0 || k > maxResults) {
+            throw new IllegalArgumentException("The number of carparks must be between 1 and " + maxResults);
+        }
+        if (carparks.length == 0) {
+            return List.of();
+        }
+        Nearest nearest = new Nearest(k, latitude, longitude, fastCharge, maxDistance);
+        int row = row(latitude);
+        int column = column(longitude);
+        int rings = Math.max(Math.max(Math.abs(row - minRow), Math.abs(row - maxRow)),
+                Math.max(Math.abs(column - minColumn), Math.abs(column - maxColumn)));
+        for (int ring = 0; ring <= rings && minDistance(latitude, longitude, ring) <= nearest.bound(); ring++) {
+            if (ring == 0) {
+                visit(row, column, nearest);
+                continue;
+            }
+            if ((2L * ring - 1) * (2L * ring - 1) > cellKeys.length) {
+                visitOccupied(row, column, ring, nearest);
+                break;
+            }
+            for (int c = column - ring; c <= column + ring; c++) {
+                visit(row - ring, c, nearest);
+                visit(row + ring, c, nearest);
+            }
+            for (int r = row - ring + 1; r < row + ring; r++) {
+                visit(r, column - ring, nearest);
+                visit(r, column + ring, nearest);
+            }
+        }
+        return nearest.results();
+    }
+
+    private void visit(int row, int column, Nearest nearest) {
+        if (row < minRow || row > maxRow || column < minColumn || column > maxColumn) {
+            return;
+        }
+        int cell = Arrays.binarySearch(cellKeys, cellKey(row, column));
+        if (cell < 0) {
+            return;
+        }
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            nearest.offer(i);
+        }
+    }
+
+    /**
+     * Visits the occupied cells of the given ring and of the ones beyond it, in the order of the grid
+     */
+    private void visitOccupied(int row, int column, int firstRing, Nearest nearest) {
+        for (int cell = 0; cell < cellKeys.length; cell++) {
+            int cellRow = (int) (cellKeys[cell] >> Integer.SIZE);
+            int cellColumn = (int) cellKeys[cell];
+            if (Math.max(Math.abs(cellRow - row), Math.abs(cellColumn - column)) >= firstRing) {
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    nearest.offer(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lower bound of the distance to the carparks of a ring of cells: the rings before it and the distance from the
+     * query to the nearest side of its cell. A degree of longitude is the shortest at the latitude of the ring the
+     * furthest from the equator.
+     */
+    private double minDistance(double latitude, double longitude, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double latitudeOffset = latitude - Math.floor(latitude / cellSize) * cellSize;
+        double longitudeOffset = longitude - Math.floor(longitude / cellSize) * cellSize;
+        double latitudeEdge = Math.min(latitudeOffset, cellSize - latitudeOffset);
+        double longitudeEdge = Math.min(longitudeOffset, cellSize - longitudeOffset);
+        double furthestLatitude = Math.min(90, Math.abs(latitude) + ring * cellSize);
+        return Math.min((ring - 1) * cellSize + latitudeEdge,
+                ((ring - 1) * cellSize + longitudeEdge) * Math.cos(Math.toRadians(furthestLatitude)))
+                * METERS_PER_DEGREE;
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellSize);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / cellSize);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << Integer.SIZE) | (column & 0xFFFFFFFFL);
+    }
+
+    private static void checkLocation(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid location " + latitude + "," + longitude);
+        }
+    }
+
+    /**
+     * @param haversine Haversine of the central angle between two points
+     * @return Distance between the points in meters
+     */
+    private static double toMeters(double haversine) {
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(haversine)));
+    }
+
+    /**
+     * @param meters Distance between two points
+     * @return Haversine of the central angle between the points
+     */
+    private static double toHaversine(double meters) {
+        if (meters >= Math.PI * EARTH_RADIUS) {
+            return 1;
+        }
+        double sin = Math.sin(meters / EARTH_RADIUS / 2);
+        return sin * sin;
+    }
+
+    /**
+     * Nearest carparks found so far, kept sorted by distance in arrays of k slots. The candidates are ranked by the
+     * haversine of their central angle, which grows with the distance, so only the results are converted to meters.
+     * The latitude term alone is a lower bound of it and rejects most of the candidates with a single sine.
+     */
+    private final class Nearest {
+        private final double latitude;
+        private final double longitude;
+        private final double cosine;
+        private final boolean fastCharge;
+        private final double maxHaversine;
+        private final int[] indices;
+        private final double[] haversines;
+        private final CarparkAvailability[] availabilities;
+        private int size;
+
+        private Nearest(int k, double latitude, double longitude, boolean fastCharge, double maxDistance) {
+            this.latitude = Math.toRadians(latitude);
+            this.longitude = Math.toRadians(longitude);
+            this.cosine = Math.cos(this.latitude);
+            this.fastCharge = fastCharge;
+            this.maxHaversine = toHaversine(maxDistance);
+            this.indices = new int[k];
+            this.haversines = new double[k];
+            this.availabilities = new CarparkAvailability[k];
+        }
+
+        /**
+         * @return Distance in meters beyond which no carpark can make it in the results
+         */
+        private double bound() {
+            return toMeters(boundHaversine());
+        }
+
+        private double boundHaversine() {
+            return size == indices.length ? Math.min(haversines[size - 1], maxHaversine) : maxHaversine;
+        }
+
+        private void offer(int index) {
+            double bound = boundHaversine();
+            double latitudeSin = Math.sin((latitudeRadians[index] - latitude) / 2);
+            double haversine = latitudeSin * latitudeSin;
+            if (haversine > bound) {
+                return;
+            }
+            double longitudeSin = Math.sin((longitudeRadians[index] - longitude) / 2);
+            haversine += cosine * latitudeCosines[index] * longitudeSin * longitudeSin;
+            if (haversine > bound || size == indices.length && haversine >= haversines[size - 1]) {
+                return;
+            }
+            CarparkAvailability availability = carparks[index].availability();
+            if (availability.getFree() == 0 || fastCharge && !availability.isFastChargeAvailable()) {
+                return;
+            }
+            int slot = size < indices.length ? size++ : size - 1;
+            while (slot > 0 && haversines[slot - 1] > haversine) {
+                indices[slot] = indices[slot - 1];
+                haversines[slot] = haversines[slot - 1];
+                availabilities[slot] = availabilities[slot - 1];
+                slot--;
+            }
+            indices[slot] = index;
+            haversines[slot] = haversine;
+            availabilities[slot] = availability;
+        }
+
+        private List<NearbyCarpark> results() {
+            List<NearbyCarpark> results = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int index = indices[i];
+                results.add(new NearbyCarpark(carparks[index].getName(), latitudes[index], longitudes[index],
+                        toMeters(haversines[i]), availabilities[i]));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.ubitricity.carparkubi.cluster;
+
+import com.ubitricity.carparkubi.CarparkUbiApplication;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Two nodes of a cluster running in the same JVM on random ports
+ */
+class ClusterTest {
+    private static final int CARPARKS = 10;
+
+    @TempDir
+    Path directory;
+    private Path membersFile;
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        membersFile = directory.resolve("cluster.properties");
+        Files.writeString(membersFile, "a=http://localhost:1\n");
+        nodeA = start("a");
+        nodeB = start("b");
+        writeMembers(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void put_carparkOwnedByOtherNode_forwardedToOwner() throws Exception {
+        // given
+        String carpark = ownedBy("b");
+        // when
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(nodeA,
+                        "/carparks/" + carpark + "/chargingPoints/CP1"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        // then
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("\"current\":20");
+        assertThat(carpark(nodeB, carpark).isConnected(0)).isTrue();
+        assertThat(carpark(nodeA, carpark).isConnected(0)).isFalse();
+    }
+
+    @Test
+    public void refresh_ownerRemoved_stateHandedOverToNewOwner() throws Exception {
+        // given
+        String carpark = ownedBy("b");
+        client.send(HttpRequest.newBuilder(uri(nodeB, "/carparks/" + carpark + "/chargingPoints/CP3"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        // when
+        writeMembers(false);
+        // then
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!carpark(nodeA, carpark).isConnected(2) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(carpark(nodeA, carpark).isConnected(2)).isTrue();
+        assertThat(nodeA.getBean(ClusterMembership.class).isLocal(carpark)).isTrue();
+    }
+
+    @Test
+    public void put_newOwnerBeforeHandover_heldUntilStateHandedOver() throws Exception {
+        // given
+        String carpark = ownedBy("b");
+        client.send(HttpRequest.newBuilder(uri(nodeB, "/carparks/" + carpark + "/chargingPoints/CP3"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Files.writeString(membersFile, "a=" + uri(nodeA, "/") + "\n");
+        nodeA.getBean(ClusterMembership.class).refresh();
+        // when
+        CompletableFuture<HttpResponse<String>> write = client.sendAsync(HttpRequest.newBuilder(uri(nodeA,
+                        "/carparks/" + carpark + "/chargingPoints/CP1"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Thread.sleep(200);
+        boolean heldBeforeHandover = !write.isDone();
+        nodeB.getBean(ClusterMembership.class).refresh();
+        // then
+        assertThat(heldBeforeHandover).isTrue();
+        assertThat(write.get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+        assertThat(carpark(nodeA, carpark).isConnected(0)).isTrue();
+        assertThat(carpark(nodeA, carpark).isConnected(2)).isTrue();
+    }
+
+    @Test
+    public void put_racingOwnerChange_everyAcknowledgedWriteHandedOver() throws Exception {
+        // given
+        String carpark = ownedBy("b");
+        nodeA.getBean(ClusterHandoff.class).awaitTransfer(carpark);
+        nodeB.getBean(ClusterHandoff.class).awaitTransfer(carpark);
+        Files.writeString(membersFile, "a=" + uri(nodeA, "/") + "\n");
+        // when
+        List<CompletableFuture<HttpResponse<String>>> writes = IntStream.rangeClosed(1, 10)
+                .mapToObj(n -> client.sendAsync(HttpRequest.newBuilder(uri(nodeB,
+                                "/carparks/" + carpark + "/chargingPoints/CP" + n))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                        .build(), HttpResponse.BodyHandlers.ofString()))
+                .collect(Collectors.toList());
+        nodeB.getBean(ClusterMembership.class).refresh();
+        nodeA.getBean(ClusterMembership.class).refresh();
+        for (CompletableFuture<HttpResponse<String>> write : writes) {
+            write.get(5, TimeUnit.SECONDS);
+        }
+        nodeB.getBean(ClusterHandoff.class).awaitTransfer(carpark);
+        nodeA.getBean(ClusterHandoff.class).awaitTransfer(carpark);
+        // then
+        for (int n = 0; n < writes.size(); n++) {
+            assertThat(writes.get(n).get().statusCode()).isEqualTo(200);
+            assertThat(carpark(nodeA, carpark).isConnected(n)).isTrue();
+        }
+    }
+
+    private ConfigurableApplicationContext start(String nodeId) {
+        String[] args = IntStream.range(0, CARPARKS)
+                .mapToObj(n -> "--carparks.sites.carpark" + n + ".charging-points=10")
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(CarparkUbiApplication.class)
+                .run(Stream.concat(Stream.of("--server.port=0",
+                        "--carparks.cluster.enabled=true",
+                        "--carparks.cluster.node-id=" + nodeId,
+                        "--carparks.cluster.members-file=" + membersFile.toUri(),
+                        "--carparks.cluster.refresh-interval=PT1H"), Arrays.stream(args)).toArray(String[]::new));
+    }
+
+    /**
+     * @param withB Whether node b is a member
+     */
+    private void writeMembers(boolean withB) throws IOException {
+        Files.writeString(membersFile, "a=" + uri(nodeA, "/") + "\n"
+                + (withB ? "b=" + uri(nodeB, "/") + "\n" : ""));
+        nodeA.getBean(ClusterMembership.class).refresh();
+        nodeB.getBean(ClusterMembership.class).refresh();
+    }
+
+    private String ownedBy(String nodeId) {
+        ClusterMembership membership = nodeA.getBean(ClusterMembership.class);
+        return IntStream.range(0, CARPARKS).mapToObj(n -> "carpark" + n)
+                .filter(name -> membership.owner(name).getId().equals(nodeId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static com.ubitricity.carparkubi.model.CarparkSnapshot carpark(ConfigurableApplicationContext node,
+                                                                             String carparkName) {
+        return node.getBean(CarparkRegistry.class).find(carparkName).snapshot();
+    }
+
+    private static URI uri(ConfigurableApplicationContext node, String path) {
+        return URI.create("http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort() + path);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ubitricity.carparkubi.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class HashRingTest {
+    private static final ClusterMember A = new ClusterMember("a", URI.create("http://localhost:8081"));
+    private static final ClusterMember B = new ClusterMember("b", URI.create("http://localhost:8082"));
+    private static final ClusterMember C = new ClusterMember("c", URI.create("http://localhost:8083"));
+    private static final ClusterMember D = new ClusterMember("d", URI.create("http://localhost:8084"));
+
+    @Test
+    public void owner_membersInAnyOrder_sameOwner() {
+        // given
+        HashRing ring = new HashRing(List.of(A, B, C), 128);
+        HashRing shuffled = new HashRing(List.of(C, A, B), 128);
+        // when
+        // then
+        IntStream.range(0, 100).mapToObj(n -> "carpark" + n)
+                .forEach(name -> assertThat(shuffled.owner(name)).isEqualTo(ring.owner(name)));
+        assertThat(shuffled).isEqualTo(ring);
+    }
+
+    @Test
+    public void owner_memberAdded_onlyCarparksOfNewMemberMoved() {
+        // given
+        HashRing ring = new HashRing(List.of(A, B, C), 128);
+        // when
+        HashRing grown = new HashRing(List.of(A, B, C, D), 128);
+        // then
+        long moved = IntStream.range(0, 10_000).mapToObj(n -> "carpark" + n)
+                .filter(name -> !grown.owner(name).equals(ring.owner(name)))
+                .peek(name -> assertThat(grown.owner(name)).isEqualTo(D))
+                .count();
+        assertThat(moved).isGreaterThan(1_500L);
+        assertThat(moved).isLessThan(3_500L);
+    }
+
+    @Test
+    public void owner_severalMembers_carparksSpreadEvenly() {
+        // given
+        HashRing ring = new HashRing(List.of(A, B, C, D), 128);
+        // when
+        long[] owned = new long[4];
+        IntStream.range(0, 10_000).forEach(n -> owned[ring.getMembers().indexOf(ring.owner("carpark" + n))]++);
+        // then
+        for (long count : owned) {
+            assertThat(count).isGreaterThan(1_800L);
+            assertThat(count).isLessThan(3_200L);
+        }
+    }
+
+    @Test
+    public void owner_emptyRing_noOwner() {
+        // given
+        HashRing ring = new HashRing(List.of(), 128);
+        // when
+        // then
+        assertThat(ring.owner("ubi")).isNull();
+    }
+}
@@ -1,14 +1,31 @@
 package com.ubitricity.carparkubi.controllers;
 
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
 import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import com.ubitricity.carparkubi.services.AllocationHistory;
+import com.ubitricity.carparkubi.services.AllocationStreams;
+import com.ubitricity.carparkubi.services.AllocationFeed;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
 import com.ubitricity.carparkubi.services.CarparkUbi;
 import com.ubitricity.carparkubi.services.ChargingPointNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.restdocs.RestDocumentationContextProvider;
 import org.springframework.restdocs.RestDocumentationExtension;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
@@ -20,32 +37,58 @@ import org.springframework.web.context.WebApplicationContext;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.restdocs.headers.HeaderDocumentation.headerWithName;
+import static org.springframework.restdocs.headers.HeaderDocumentation.requestHeaders;
+import static org.springframework.restdocs.headers.HeaderDocumentation.responseHeaders;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.*;
 import static org.springframework.restdocs.payload.PayloadDocumentation.*;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith({RestDocumentationExtension.class, SpringExtension.class})
 @WebMvcTest(CarparksController.class)
+@EnableConfigurationProperties(CarparksProperties.class)
+@Import({CarparkDispatcher.class, ReportCache.class})
 class CarparksControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @MockBean
+    private CarparkRegistry carparkRegistry;
+
     @MockBean
     private CarparkUbi carparkUbi;
 
+    @MockBean
+    private AllocationStreams allocationStreams;
+
     @BeforeEach
     public void setUp(WebApplicationContext webApplicationContext,
                       RestDocumentationContextProvider restDocumentation) {
+        doThrow(new CarparkNotFoundException()).when(carparkRegistry).find(anyString());
+        doReturn(carparkUbi).when(carparkRegistry).find("ubi");
         this.mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
                 .apply(documentationConfiguration(restDocumentation))
                 .build();
@@ -80,11 +123,12 @@ class CarparksControllerTest {
                         preprocessRequest(prettyPrint()),
                         preprocessResponse(prettyPrint()),
                         pathParameters(
-                                parameterWithName("carparkName").description("Identifier of the carpark. For now only the value **'ubi'** is allowed"),
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**"),
                                 parameterWithName("chargingPointId").description("Identifier of the charging point to be connected/disconnected.")
                         ),
                         requestFields(
-                                fieldWithPath("connected").type("Boolean").description("The `true` value indicates the charging point should be connected")
+                                fieldWithPath("connected").type("Boolean").description("The `true` value indicates the charging point should be connected"),
+                                fieldWithPath("sequence").type("Number").optional().description("Optional sequence of the notification, increasing per charging point. A stale notification is dropped and answered with the current state of the charging point")
                         ),
                         responseFields(
                                 fieldWithPath("id").type("String").description("Identifier of the affected charging point"),
@@ -147,7 +191,7 @@ class CarparksControllerTest {
                         preprocessRequest(prettyPrint()),
                         preprocessResponse(prettyPrint()),
                         pathParameters(
-                                parameterWithName("carparkName").description("Identifier of the carpark. For now only the value **'ubi'** is allowed"),
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**"),
                                 parameterWithName("chargingPointId").description("Identifier of the charging point to be connected/disconnected.")
                         ),
                         requestFields(
@@ -180,6 +224,18 @@ class CarparksControllerTest {
         response.andExpect(status().isNotFound());
     }
 
+    @Test
+    public void updateChargingPoint_missingConnectedValue_badRequestResponse() throws Exception {
+        // when
+        ResultActions response = this.mockMvc.perform(put("/carparks/ubi/chargingPoints/CP3")
+                .content("{}")
+                .contentType("application/json")
+                .characterEncoding("utf-8"));
+        // then
+        response.andExpect(status().isBadRequest());
+        verifyNoInteractions(carparkUbi);
+    }
+
     @Test
     public void updateChargingPoint_nonExistentCarpark_notFoundErrorResponse() throws Exception {
         // given
@@ -202,6 +258,130 @@ class CarparksControllerTest {
                 );
     }
 
+    @Test
+    public void updateChargingPoints_batchOfEvents_successfulResponse() throws Exception {
+        // given
+        var patchBody = """
+                [
+                    {
+                        "id": "CP1",
+                        "connected": true,
+                        "sequence": 5
+                    },
+                    {
+                        "id": "CP2",
+                        "connected": true
+                    },
+                    {
+                        "id": "CP42",
+                        "connected": false
+                    }
+                ]
+                """;
+        List<ChargingPoint> chargingPoints = new ArrayList<>();
+        chargingPoints.add(new ChargingPoint("CP1", 20, true));
+        chargingPoints.add(new ChargingPoint("CP2", 20, true));
+        chargingPoints.add(new ChargingPoint("CP3", 0, false));
+        when(carparkUbi.apply(List.of(new ChargingPointEvent("CP1", true, 5),
+                new ChargingPointEvent("CP2", true),
+                new ChargingPointEvent("CP42", false))))
+                .thenReturn(new BatchResult(List.of(EventOutcome.CONNECTED, EventOutcome.CONNECTED, EventOutcome.NOT_FOUND),
+                        new CarparkSnapshot(7, chargingPoints)));
+        var expectedJson = """
+                {
+                    "version": 7,
+                    "results": [
+                        { "id": "CP1", "outcome": "CONNECTED" },
+                        { "id": "CP2", "outcome": "CONNECTED" },
+                        { "id": "CP42", "outcome": "NOT_FOUND" }
+                    ],
+                    "chargingPoints": [
+                        { "id": "CP1", "connected": true, "current": 20 },
+                        { "id": "CP2", "connected": true, "current": 20 },
+                        { "id": "CP3", "connected": false, "current": 0 }
+                    ]
+                }
+                """;
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.patch("/carparks/{carparkName}/chargingPoints", "ubi")
+                .content(patchBody)
+                .contentType("application/json")
+                .characterEncoding("utf-8"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json(expectedJson))
+                .andDo(document("update-charging-points",
+                        preprocessRequest(prettyPrint()),
+                        preprocessResponse(prettyPrint()),
+                        pathParameters(
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**")
+                        ),
+                        requestFields(
+                                fieldWithPath("[].id").type("String").description("Identifier of the charging point"),
+                                fieldWithPath("[].connected").type("Boolean").description("`true` to connect the charging point, `false` to disconnect it"),
+                                fieldWithPath("[].sequence").type("Number").optional().description("Sequence of the notification, increasing per charging point. A notification not newer than the last one applied to its charging point is dropped as `STALE`")
+                        ),
+                        responseFields(
+                                fieldWithPath("version").type("Number").description("Version of the carpark state after applying the whole batch"),
+                                fieldWithPath("results[].id").type("String").description("Identifier of the charging point of the event, in the order the events were sent"),
+                                fieldWithPath("results[].outcome").type("String").description("`CONNECTED`, `DISCONNECTED`, `UNCHANGED` if the charging point was already in the requested state, `NOT_FOUND` or `STALE`"),
+                                fieldWithPath("chargingPoints[].id").type("String").description("Identifier of the charging point"),
+                                fieldWithPath("chargingPoints[].current").type("Number").description("Current assigned to the charging point after the batch"),
+                                fieldWithPath("chargingPoints[].connected").type("Boolean").description("Indicates whether the charging point is connected or disconnected")
+                        ))
+                );
+    }
+
+    @Test
+    public void updateChargingPoints_missingConnectedValue_badRequestResponse() throws Exception {
+        // given
+        var patchBody = """
+                [
+                    {
+                        "id": "CP1"
+                    }
+                ]
+                """;
+        // when
+        ResultActions response = this.mockMvc.perform(patch("/carparks/ubi/chargingPoints")
+                .content(patchBody)
+                .contentType("application/json")
+                .characterEncoding("utf-8"));
+        // then
+        response.andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void updateChargingPoints_missingIdentifier_badRequestResponse() throws Exception {
+        // when
+        ResultActions response = this.mockMvc.perform(patch("/carparks/ubi/chargingPoints")
+                .content("[{\"id\": \"CP1\", \"connected\": true}, {\"connected\": false}]")
+                .contentType("application/json")
+                .characterEncoding("utf-8"));
+        // then
+        response.andExpect(status().isBadRequest());
+        verifyNoInteractions(carparkUbi);
+    }
+
+    @Test
+    public void updateChargingPoints_emptyOrOversizedBatch_badRequestResponse() throws Exception {
+        // given
+        String oversized = IntStream.rangeClosed(1, new CarparksProperties().getExecution().getMaxRequestEvents() + 1)
+                .mapToObj(n -> "{\"id\": \"CP" + n + "\", \"connected\": true}")
+                .collect(Collectors.joining(",", "[", "]"));
+        // when
+        ResultActions empty = this.mockMvc.perform(patch("/carparks/ubi/chargingPoints")
+                .content("[]")
+                .contentType("application/json"));
+        ResultActions tooLarge = this.mockMvc.perform(patch("/carparks/ubi/chargingPoints")
+                .content(oversized)
+                .contentType("application/json"));
+        // then
+        empty.andExpect(status().isBadRequest());
+        tooLarge.andExpect(status().isBadRequest());
+        verifyNoInteractions(carparkUbi);
+    }
+
     @Test
     public void getChargingPointsReport_regularRequest_successfulResponse() throws Exception {
         // given
@@ -209,8 +389,8 @@ class CarparksControllerTest {
         report.add(new ChargingPoint("CP1", 20, true));
         IntStream.rangeClosed(2, 10)
                 .forEach(n -> report.add(new ChargingPoint("CP" + n, 0, false)));
-        when(carparkUbi.describe())
-                .thenReturn(report);
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(1, report));
 
         var expectedJson = """
                 [
@@ -273,11 +453,17 @@ class CarparksControllerTest {
         // then
         response.andExpect(status().isOk())
                 .andExpect(content().json(expectedJson))
+                .andExpect(header().string(CarparksController.VERSION_HEADER, "1"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0-1\""))
                 .andDo(document("get-charging-points",
                         preprocessRequest(prettyPrint()),
                         preprocessResponse(prettyPrint()),
                         pathParameters(
-                                parameterWithName("carparkName").description("Identifier of the carpark. For now only the value **'ubi'** is allowed")
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**")
+                        ),
+                        responseHeaders(
+                                headerWithName(CarparksController.VERSION_HEADER).description("Version of the carpark state used to build the report. It increases with every change in the carpark"),
+                                headerWithName(HttpHeaders.ETAG).description("Epoch and version of the carpark state as entity tag, formatted as `<epoch>-<version>`. To be sent back in the `If-None-Match` header or as `since`")
                         ),
                         responseFields(
                                 fieldWithPath("[].id").type("String").description("Identifier of the charging point"),
@@ -287,6 +473,241 @@ class CarparksControllerTest {
                 );
     }
 
+    @Test
+    public void getChargingPointsReport_unchangedCarpark_notModifiedResponse() throws Exception {
+        // given
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(4, List.of(new ChargingPoint("CP1", 20, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints", "ubi")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0-4\""));
+        // then
+        response.andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0-4\""))
+                .andExpect(content().string(""))
+                .andDo(document("get-charging-points-not-modified",
+                        requestHeaders(
+                                headerWithName(HttpHeaders.IF_NONE_MATCH).description("Entity tag of the last report received by the client")
+                        )));
+    }
+
+    @Test
+    public void getChargingPointsReport_changedCarpark_fullReportResponse() throws Exception {
+        // given
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(5, List.of(new ChargingPoint("CP1", 20, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/carparks/ubi/chargingPoints")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0-4\""));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0-5\""))
+                .andExpect(content().json("[{\"id\": \"CP1\", \"current\": 20, \"connected\": true}]"));
+    }
+
+    @Test
+    public void getChargingPointsReport_sinceVersion_onlyChangedChargingPoints() throws Exception {
+        // given
+        List<ChargingPoint> chargingPoints = List.of(new ChargingPoint("CP1", 10, true),
+                new ChargingPoint("CP2", 0, false), new ChargingPoint("CP3", 20, true));
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(9, chargingPoints, new long[]{9, 2, 8}));
+        var expectedJson = """
+                [
+                    {
+                        "id": "CP1",
+                        "connected": true,
+                        "current": 10
+                    },
+                    {
+                        "id": "CP3",
+                        "connected": true,
+                        "current": 20
+                    }
+                ]
+                """;
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints?since={version}", "ubi", "0-7"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json(expectedJson, true))
+                .andExpect(header().string(CarparksController.VERSION_HEADER, "9"))
+                .andDo(document("get-charging-points-since",
+                        preprocessResponse(prettyPrint()),
+                        requestParameters(
+                                parameterWithName("since").description("Entity tag of the last report received by the client, with or without quotes. Only the charging points changed after it are listed, all of them if the carpark started a new epoch since")
+                        )));
+    }
+
+    @Test
+    public void getChargingPointsReport_sinceVersionOfAnotherEpoch_allChargingPoints() throws Exception {
+        // given
+        List<ChargingPoint> chargingPoints = List.of(new ChargingPoint("CP1", 10, true),
+                new ChargingPoint("CP2", 0, false));
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(3, chargingPoints, new long[]{3, 1}));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/carparks/ubi/chargingPoints?since=1f-2"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0-3\""))
+                .andExpect(content().json("[{\"id\": \"CP1\", \"current\": 10, \"connected\": true}, "
+                        + "{\"id\": \"CP2\", \"current\": 0, \"connected\": false}]", true));
+    }
+
+    @Test
+    public void getChargingPointsReport_malformedSince_badRequest() throws Exception {
+        // given
+        when(carparkUbi.snapshot())
+                .thenReturn(new CarparkSnapshot(3, List.of(new ChargingPoint("CP1", 10, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/carparks/ubi/chargingPoints?since=3"));
+        // then
+        response.andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getChargingPointsReport_minVersion_reportOnceReplicated() throws Exception {
+        // given
+        when(carparkUbi.awaitVersion(eq(6L), any()))
+                .thenReturn(new CarparkSnapshot(6, List.of(new ChargingPoint("CP1", 20, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints?minVersion={version}", "ubi", 6));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\": \"CP1\", \"current\": 20, \"connected\": true}]"))
+                .andExpect(header().string(CarparksController.VERSION_HEADER, "6"))
+                .andDo(document("get-charging-points-min-version",
+                        preprocessResponse(prettyPrint()),
+                        requestParameters(
+                                parameterWithName("minVersion").description("Version returned by the primary for a write of the client, a follower waits until it applied it")
+                        )));
+    }
+
+    @Test
+    public void getAvailability_regularRequest_countersOfCarpark() throws Exception {
+        // given
+        when(carparkUbi.availability()).thenReturn(new CarparkAvailability(12, 7, 3, 0, 40, true));
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/availability", "ubi"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("{\"version\": 12, \"free\": 7, \"fast\": 3, \"slow\": 0, \"spareCurrent\": 40, \"fastChargeAvailable\": true}", true))
+                .andDo(document("get-availability",
+                        preprocessResponse(prettyPrint()),
+                        responseFields(
+                                fieldWithPath("version").type("Number").description("Version of the carpark state the figures belong to"),
+                                fieldWithPath("free").type("Number").description("Charging points without connected vehicle"),
+                                fieldWithPath("fast").type("Number").description("Connected charging points assigned more than their minimum current"),
+                                fieldWithPath("slow").type("Number").description("Connected charging points assigned the minimum current"),
+                                fieldWithPath("spareCurrent").type("Number").description("Current of the carpark not assigned to any charging point"),
+                                fieldWithPath("fastChargeAvailable").type("Boolean").description("Indicates whether a vehicle connected now gets more than the minimum current")
+                        )));
+    }
+
+    @Test
+    public void getChargingPointHistory_timeRange_samplesInRange() throws Exception {
+        // given
+        AllocationHistory history = new AllocationHistory(10, 16);
+        history.record(0, 0, false, 1_600_000_000_000L);
+        history.record(0, 20, true, 1_600_000_060_000L);
+        history.record(0, 10, true, 1_600_003_660_000L);
+        doReturn(history).when(carparkUbi).history();
+        doReturn(0).when(carparkUbi).indexOf("CP1");
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints/{chargingPointId}/history?from={from}&to={to}",
+                "ubi", "CP1", 1_600_000_060_000L, 1_600_007_200_000L));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("[{\"timestamp\": 1600000060000, \"current\": 20, \"connected\": true, \"ampHours\": 0.0},"
+                        + "{\"timestamp\": 1600003660000, \"current\": 10, \"connected\": true, \"ampHours\": 20.0}]", true))
+                .andDo(document("get-charging-point-history",
+                        preprocessResponse(prettyPrint()),
+                        pathParameters(
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**"),
+                                parameterWithName("chargingPointId").description("Identifier of one of the charging points of the carpark, e.g. **'CP1'**")
+                        ),
+                        requestParameters(
+                                parameterWithName("from").description("Start of the range in milliseconds since the epoch, the change in effect at that time is included. Defaults to the oldest change kept"),
+                                parameterWithName("to").description("End of the range in milliseconds since the epoch. Defaults to the last change")
+                        ),
+                        responseFields(
+                                fieldWithPath("[].timestamp").type("Number").description("Time of the change in milliseconds since the epoch"),
+                                fieldWithPath("[].current").type("Number").description("Current assigned to the charging point from that time"),
+                                fieldWithPath("[].connected").type("Boolean").description("Indicates whether the charging point is connected from that time"),
+                                fieldWithPath("[].ampHours").type("Number").description("Charge delivered by the charging point up to that time, in amp-hours")
+                        )));
+    }
+
+    @Test
+    public void getChargingPointEnergy_timeRange_chargeDelivered() throws Exception {
+        // given
+        AllocationHistory history = new AllocationHistory(10, 16);
+        history.record(0, 0, false, 1_600_000_000_000L);
+        history.record(0, 20, true, 1_600_000_060_000L);
+        history.record(0, 10, true, 1_600_003_660_000L);
+        doReturn(history).when(carparkUbi).history();
+        doReturn(0).when(carparkUbi).indexOf("CP1");
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints/{chargingPointId}/energy?from={from}&to={to}",
+                "ubi", "CP1", 1_600_001_860_000L, 1_600_007_260_000L));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("{\"id\": \"CP1\", \"from\": 1600001860000, \"to\": 1600007260000, \"ampHours\": 20.0,"
+                        + " \"totalAmpHours\": 30.0, \"connected\": true, \"sessionStart\": 1600000060000, \"sessionAmpHours\": 30.0}", true))
+                .andDo(document("get-charging-point-energy",
+                        preprocessResponse(prettyPrint()),
+                        requestParameters(
+                                parameterWithName("from").description("Start of the range in milliseconds since the epoch. Defaults to the oldest change kept"),
+                                parameterWithName("to").description("End of the range in milliseconds since the epoch. Defaults to now")
+                        ),
+                        responseFields(
+                                fieldWithPath("id").type("String").description("Identifier of the charging point"),
+                                fieldWithPath("from").type("Number").description("Start of the range, the oldest change kept if the requested start is older"),
+                                fieldWithPath("to").type("Number").description("End of the range"),
+                                fieldWithPath("ampHours").type("Number").description("Charge delivered during the range, in amp-hours"),
+                                fieldWithPath("totalAmpHours").type("Number").description("Charge delivered since the carpark started up to the end of the range"),
+                                fieldWithPath("connected").type("Boolean").description("Indicates whether the charging point is connected at the end of the range"),
+                                fieldWithPath("sessionStart").type("Number").description("Connection time of the session in progress or last ended at the end of the range, `0` if none"),
+                                fieldWithPath("sessionAmpHours").type("Number").description("Charge delivered by that session, in amp-hours")
+                        )));
+    }
+
+    @Test
+    public void getChargingPointEnergy_nonExistentChargingPoint_notFoundResponse() throws Exception {
+        // given
+        doThrow(new ChargingPointNotFoundException()).when(carparkUbi).indexOf("CP42");
+        // when
+        ResultActions response = this.mockMvc.perform(get("/carparks/ubi/chargingPoints/CP42/energy"));
+        // then
+        response.andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void streamChargingPoints_subscription_snapshotAndDeltaEvents() throws Exception {
+        // given
+        List<ChargingPoint> chargingPoints = List.of(new ChargingPoint("CP1", 20, true), new ChargingPoint("CP2", 0, false));
+        when(carparkUbi.snapshot()).thenReturn(new CarparkSnapshot(3, chargingPoints));
+        AllocationFeed feed = new AllocationFeed(carparkUbi, Runnable::run, 16);
+        doAnswer(invocation -> {
+            AllocationFeed.Subscription subscription = feed.subscribe(invocation.getArgument(1));
+            feed.onChange(new AllocationDelta(0, 4, List.of(new ChargingPoint("CP2", 20, true))));
+            return subscription;
+        }).when(allocationStreams).subscribe(eq(carparkUbi), any());
+        // when
+        ResultActions response = this.mockMvc.perform(RestDocumentationRequestBuilders.get("/carparks/{carparkName}/chargingPoints", "ubi")
+                .accept(MediaType.TEXT_EVENT_STREAM));
+        // then
+        response.andExpect(request().asyncStarted())
+                .andDo(document("stream-charging-points",
+                        pathParameters(
+                                parameterWithName("carparkName").description("Identifier of one of the configured carparks, e.g. **'ubi'**")
+                        )));
+        String events = response.andReturn().getResponse().getContentAsString();
+        assertThat(events).contains("id:0-3\nevent:snapshot\ndata:{\"version\":3,\"chargingPoints\":[{\"id\":\"CP1\",\"current\":20,\"connected\":true},{\"id\":\"CP2\",\"current\":0,\"connected\":false}]}");
+        assertThat(events).contains("id:0-4\nevent:delta\ndata:{\"version\":4,\"chargingPoints\":[{\"id\":\"CP2\",\"current\":20,\"connected\":true}]}");
+    }
+
     @Test
     public void getChargingPointsReport_nonExistentCarpark_notFoundErrorResponse() throws Exception {
         // given
@@ -297,4 +718,16 @@ class CarparksControllerTest {
         // then
         response.andExpect(status().isNotFound());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getChargingPointsReport_minVersionNotReplicated_serviceUnavailableResponse() throws Exception {
+        // given
+        when(carparkUbi.awaitVersion(eq(6L), any()))
+                .thenReturn(new CarparkSnapshot(5, List.of(new ChargingPoint("CP1", 20, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/carparks/ubi/chargingPoints")
+                .param("minVersion", "6"));
+        // then
+        response.andExpect(status().isServiceUnavailable());
+    }
+}
@@ -0,0 +1,275 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.services.AllocationStreams;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class CarparksHandlerTest {
+    private CarparkDispatcher carparkDispatcher;
+    private AllocationStreams allocationStreams;
+
+    @AfterEach
+    public void tearDown() {
+        carparkDispatcher.shutdown();
+        allocationStreams.shutdown();
+    }
+
+    @Test
+    public void updateChargingPoint_monitorMode_connectedChargingPoint() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        WebTestClient.ResponseSpec response = client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": true}")
+                .exchange();
+        // then
+        response.expectStatus().isOk()
+                .expectBody().json("{\"id\": \"CP1\", \"current\": 20, \"connected\": true}");
+    }
+
+    @Test
+    public void updateChargingPoint_actorMode_connectedChargingPoint() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.ACTOR);
+        // when
+        WebTestClient.ResponseSpec response = client.put().uri("/carparks/ubi/chargingPoints/CP2")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": true}")
+                .exchange();
+        // then
+        response.expectStatus().isOk()
+                .expectBody().json("{\"id\": \"CP2\", \"current\": 20, \"connected\": true}");
+    }
+
+    @Test
+    public void updateChargingPoint_nonExistentChargingPoint_notFoundResponse() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.ACTOR);
+        // when
+        WebTestClient.ResponseSpec response = client.put().uri("/carparks/ubi/chargingPoints/CP42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": true}")
+                .exchange();
+        // then
+        response.expectStatus().isNotFound();
+    }
+
+    @Test
+    public void updateChargingPoint_retriedNumberedNotification_staleNotificationDropped() {
+        for (CarparksProperties.ExecutionMode mode : CarparksProperties.ExecutionMode.values()) {
+            // given
+            WebTestClient client = client(mode);
+            client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"connected\": false, \"sequence\": 8}")
+                    .exchange()
+                    .expectStatus().isOk();
+            // when
+            WebTestClient.ResponseSpec response = client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"connected\": true, \"sequence\": 7}")
+                    .exchange();
+            // then
+            response.expectStatus().isOk()
+                    .expectBody().json("{\"id\": \"CP1\", \"current\": 0, \"connected\": false}");
+            tearDown();
+        }
+    }
+
+    @Test
+    public void updateChargingPoint_missingConnectedValue_badRequestResponse() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        WebTestClient.ResponseSpec nullValue = client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": null}")
+                .exchange();
+        WebTestClient.ResponseSpec missingBody = client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .exchange();
+        // then
+        nullValue.expectStatus().isBadRequest();
+        missingBody.expectStatus().isBadRequest();
+        client.get().uri("/carparks/ubi/chargingPoints").exchange()
+                .expectHeader().valueEquals(CarparksController.VERSION_HEADER, "0");
+    }
+
+    @Test
+    public void updateChargingPoints_batch_outcomesAndAllocation() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        WebTestClient.ResponseSpec response = client.patch().uri("/carparks/ubi/chargingPoints")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"id\": \"CP1\", \"connected\": true}, {\"id\": \"CP42\", \"connected\": true}]")
+                .exchange();
+        // then
+        response.expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(1)
+                .jsonPath("$.results[0].outcome").isEqualTo("CONNECTED")
+                .jsonPath("$.results[1].outcome").isEqualTo("NOT_FOUND")
+                .jsonPath("$.chargingPoints.length()").isEqualTo(10);
+    }
+
+    @Test
+    public void updateChargingPoints_actorMode_batchAppliedByTheWriter() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.ACTOR);
+        // when
+        WebTestClient.ResponseSpec response = client.patch().uri("/carparks/ubi/chargingPoints")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"id\": \"CP1\", \"connected\": true}, {\"id\": \"CP2\", \"connected\": true}]")
+                .exchange();
+        // then
+        response.expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(1)
+                .jsonPath("$.results[1].outcome").isEqualTo("CONNECTED");
+    }
+
+    @Test
+    public void updateChargingPoints_invalidBatches_badRequestResponses() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        List<String> batches = List.of("[]", "[{\"connected\": true}]", "[{\"id\": \" \", \"connected\": true}]",
+                "[null]", "[{\"id\": \"CP1\", \"connected\": true}, {\"id\": \"CP2\", \"connected\": true}, "
+                        + "{\"id\": \"CP3\", \"connected\": true}, {\"id\": \"CP4\", \"connected\": true}, "
+                        + "{\"id\": \"CP5\", \"connected\": true}]");
+        for (String batch : batches) {
+            // when
+            WebTestClient.ResponseSpec response = client.patch().uri("/carparks/ubi/chargingPoints")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(batch)
+                    .exchange();
+            // then
+            response.expectStatus().isBadRequest();
+        }
+        client.get().uri("/carparks/ubi/chargingPoints").exchange()
+                .expectHeader().valueEquals(CarparksController.VERSION_HEADER, "0");
+    }
+
+    @Test
+    public void getChargingPointsReport_conditionalRequests_notModifiedAndChangesSince() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": true}")
+                .exchange()
+                .expectStatus().isOk();
+        // when
+        WebTestClient.ResponseSpec report = client.get().uri("/carparks/ubi/chargingPoints").exchange();
+        String eTag = report.returnResult(byte[].class).getResponseHeaders().getETag();
+        WebTestClient.ResponseSpec notModified = client.get().uri("/carparks/ubi/chargingPoints")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange();
+        WebTestClient.ResponseSpec changes = client.get().uri("/carparks/ubi/chargingPoints?since={since}",
+                eTag.replace("-1\"", "-0\"")).exchange();
+        // then
+        assertThat(eTag).matches("\"[0-9a-f]+-1\"");
+        report.expectStatus().isOk()
+                .expectHeader().valueEquals(CarparksController.VERSION_HEADER, "1");
+        notModified.expectStatus().isNotModified();
+        changes.expectStatus().isOk()
+                .expectBody().json("[{\"id\": \"CP1\", \"current\": 20, \"connected\": true}]");
+    }
+
+    @Test
+    public void getChargingPointsReport_nonExistentCarpark_notFoundResponse() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        WebTestClient.ResponseSpec response = client.get().uri("/carparks/other/chargingPoints").exchange();
+        // then
+        response.expectStatus().isNotFound();
+    }
+
+    @Test
+    public void streamChargingPoints_subscription_snapshotEventFirst() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        List<ServerSentEvent<AllocationDTO>> events = client.get().uri("/carparks/ubi/chargingPoints")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<AllocationDTO>>() {
+                })
+                .getResponseBody()
+                .take(1)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        // then
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).event()).isEqualTo("snapshot");
+        assertThat(events.get(0).data().getChargingPoints()).hasSize(10);
+    }
+
+    @Test
+    public void getChargingPointsReport_malformedSince_badRequestResponse() {
+        // given
+        WebTestClient client = client(CarparksProperties.ExecutionMode.MONITOR);
+        // when
+        WebTestClient.ResponseSpec response = client.get().uri("/carparks/ubi/chargingPoints?since=abc").exchange();
+        // then
+        response.expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void readOnlyRoutes_notifications_methodNotAllowedAndReportsServed() {
+        // given
+        WebTestClient client = WebTestClient.bindToRouterFunction(
+                handler(CarparksProperties.ExecutionMode.MONITOR).readOnlyRoutes()).build();
+        // when
+        WebTestClient.ResponseSpec put = client.put().uri("/carparks/ubi/chargingPoints/CP1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"connected\": true}")
+                .exchange();
+        WebTestClient.ResponseSpec patch = client.patch().uri("/carparks/ubi/chargingPoints")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"id\": \"CP1\", \"connected\": true}]")
+                .exchange();
+        WebTestClient.ResponseSpec report = client.get().uri("/carparks/ubi/chargingPoints")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange();
+        // then
+        put.expectStatus().isEqualTo(405).expectHeader().valueEquals(HttpHeaders.ALLOW, "GET, HEAD, OPTIONS");
+        patch.expectStatus().isEqualTo(405);
+        report.expectStatus().isOk()
+                .expectBody().jsonPath("$[0].connected").isEqualTo(false);
+    }
+
+    private WebTestClient client(CarparksProperties.ExecutionMode mode) {
+        return WebTestClient.bindToRouterFunction(handler(mode).routes()).build();
+    }
+
+    private CarparksHandler handler(CarparksProperties.ExecutionMode mode) {
+        CarparksProperties properties = new CarparksProperties();
+        properties.getSites().put("ubi", new CarparksProperties.Site());
+        properties.getExecution().setMode(mode);
+        properties.getExecution().setMaxRequestEvents(4);
+        carparkDispatcher = new CarparkDispatcher(properties);
+        allocationStreams = new AllocationStreams(properties);
+        return new CarparksHandler(new CarparkRegistry(properties, EventJournal.NONE),
+                carparkDispatcher, allocationStreams, new ReportCache(new ObjectMapper()),
+                properties.getStream().getBufferSize(), properties.getExecution().getMaxRequestEvents());
+    }
+}
@@ -0,0 +1,97 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.ingestion.EventFrames;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkNotFoundException;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventBatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(EventFramesController.class)
+@EnableConfigurationProperties(CarparksProperties.class)
+@Import(CarparkDispatcher.class)
+class EventFramesControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CarparkRegistry carparkRegistry;
+
+    private CarparkUbi carparkUbi;
+
+    @BeforeEach
+    public void setUp() {
+        carparkUbi = new CarparkUbi();
+        doThrow(new CarparkNotFoundException()).when(carparkRegistry).find(anyString());
+        doReturn(carparkUbi).when(carparkRegistry).find("ubi");
+    }
+
+    @Test
+    public void ingestEvents_validFrame_eventsAppliedAndAcknowledged() throws Exception {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, 1);
+        batch.add(1, true, 2);
+        batch.add(99, true, 3);
+        // when
+        MvcResult result = mockMvc.perform(post("/carparks/events")
+                .contentType(EventFrames.MEDIA_TYPE)
+                .accept(EventFrames.MEDIA_TYPE)
+                .content(EventFrames.encode("ubi", batch)))
+                .andExpect(status().isOk())
+                .andReturn();
+        // then
+        ByteBuffer acknowledgement = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        acknowledgement.position(3);
+        assertThat(acknowledgement.getLong()).isEqualTo(1);
+        assertThat(acknowledgement.getShort()).isEqualTo((short) 3);
+        assertThat(acknowledgement.get()).isEqualTo((byte) EventOutcome.CONNECTED.ordinal());
+        assertThat(acknowledgement.get()).isEqualTo((byte) EventOutcome.CONNECTED.ordinal());
+        assertThat(acknowledgement.get()).isEqualTo((byte) EventOutcome.NOT_FOUND.ordinal());
+        assertThat(carparkUbi.describe().get(1).getCurrent()).isEqualTo(20);
+    }
+
+    @Test
+    public void ingestEvents_unknownCarpark_notFoundResponse() throws Exception {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, 1);
+        // when
+        // then
+        mockMvc.perform(post("/carparks/events")
+                .contentType(EventFrames.MEDIA_TYPE)
+                .content(EventFrames.encode("other", batch)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void ingestEvents_malformedFrame_badRequestResponse() throws Exception {
+        // given
+        // when
+        // then
+        mockMvc.perform(post("/carparks/events")
+                .contentType(EventFrames.MEDIA_TYPE)
+                .content(new byte[]{0x43, 0x50, 1, 3, 'u'}))
+                .andExpect(status().isBadRequest());
+    }
+}
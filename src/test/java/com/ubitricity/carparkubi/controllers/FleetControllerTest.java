@@ -0,0 +1,119 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.CarparkSummary;
+import com.ubitricity.carparkubi.model.FleetSummary;
+import com.ubitricity.carparkubi.model.FleetTotals;
+import com.ubitricity.carparkubi.services.FleetReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.restdocs.RestDocumentationContextProvider;
+import org.springframework.restdocs.RestDocumentationExtension;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
+import static org.springframework.restdocs.operation.preprocess.Preprocessors.prettyPrint;
+import static org.springframework.restdocs.operation.preprocess.Preprocessors.preprocessResponse;
+import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
+import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith({RestDocumentationExtension.class, SpringExtension.class})
+@WebMvcTest(FleetController.class)
+class FleetControllerTest {
+    private MockMvc mockMvc;
+
+    @MockBean
+    private FleetReport fleetReport;
+
+    @BeforeEach
+    public void setUp(WebApplicationContext webApplicationContext,
+                      RestDocumentationContextProvider restDocumentation) {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .apply(documentationConfiguration(restDocumentation))
+                .build();
+        when(fleetReport.summarize("", 2)).thenReturn(new FleetSummary(new FleetTotals(3, 30, 18, 12, 8, 4, 200),
+                List.of(new CarparkSummary("central", 10, 10, 0, 0, 0, 0),
+                        new CarparkSummary("station", 10, 2, 8, 2, 6, 100),
+                        new CarparkSummary("ubi", 10, 6, 4, 4, 0, 80))));
+    }
+
+    @Test
+    public void getFleetReport_cursorAndLimit_pageOfCarparksAndTotals() throws Exception {
+        // given
+        var expectedJson = """
+                {
+                    "totals": {"carparks": 3, "chargingPoints": 30, "free": 18, "occupied": 12, "fast": 8, "slow": 4, "current": 200},
+                    "carparks": [
+                        {"name": "station", "chargingPoints": 10, "free": 2, "occupied": 8, "fast": 2, "slow": 6, "current": 100}
+                    ],
+                    "next": "station"
+                }
+                """;
+        // when
+        ResultActions response = this.mockMvc.perform(get("/fleet")
+                .param("minFree", "2")
+                .param("cursor", "central")
+                .param("limit", "1"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json(expectedJson, true))
+                .andDo(document("get-fleet",
+                        preprocessResponse(prettyPrint()),
+                        requestParameters(
+                                parameterWithName("prefix").optional().description("Start of the names of the carparks to be listed"),
+                                parameterWithName("minFree").optional().description("Minimum number of free charging points of the carparks to be listed"),
+                                parameterWithName("cursor").optional().description("`next` of the previous page, the first page is returned without it"),
+                                parameterWithName("limit").optional().description("Maximum number of carparks listed, 100 by default and at most 1000")
+                        ),
+                        responseFields(
+                                fieldWithPath("totals").description("Figures added up over every matching carpark, not only the listed ones"),
+                                fieldWithPath("totals.carparks").description("Number of matching carparks"),
+                                fieldWithPath("totals.*").ignored(),
+                                fieldWithPath("carparks[].name").description("Name of the carpark"),
+                                fieldWithPath("carparks[].chargingPoints").description("Number of charging points of the carpark"),
+                                fieldWithPath("carparks[].free").description("Charging points without connected vehicle"),
+                                fieldWithPath("carparks[].occupied").description("Charging points with a connected vehicle"),
+                                fieldWithPath("carparks[].fast").description("Connected charging points assigned more than their minimum current"),
+                                fieldWithPath("carparks[].slow").description("Connected charging points assigned the minimum current"),
+                                fieldWithPath("carparks[].current").description("Current assigned to all the charging points of the carpark"),
+                                fieldWithPath("next").description("Cursor of the next page, `null` on the last page")
+                        )));
+    }
+
+    @Test
+    public void getFleetReport_lastPage_noNextCursor() throws Exception {
+        // given
+        // when
+        ResultActions response = this.mockMvc.perform(get("/fleet")
+                .param("minFree", "2")
+                .param("cursor", "station"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("{\"carparks\": [{\"name\": \"ubi\"}], \"next\": null}"));
+    }
+
+    @Test
+    public void getFleetReport_limitTooLarge_badRequest() throws Exception {
+        // given
+        // when
+        ResultActions response = this.mockMvc.perform(get("/fleet")
+                .param("limit", String.valueOf(FleetController.MAX_LIMIT + 1)));
+        // then
+        response.andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,101 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.NearbyCarpark;
+import com.ubitricity.carparkubi.services.SpatialIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.restdocs.RestDocumentationContextProvider;
+import org.springframework.restdocs.RestDocumentationExtension;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
+import static org.springframework.restdocs.operation.preprocess.Preprocessors.prettyPrint;
+import static org.springframework.restdocs.operation.preprocess.Preprocessors.preprocessResponse;
+import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
+import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
+import static org.springframework.restdocs.payload.PayloadDocumentation.subsectionWithPath;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith({RestDocumentationExtension.class, SpringExtension.class})
+@WebMvcTest(NearestController.class)
+class NearestControllerTest {
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SpatialIndex spatialIndex;
+
+    @BeforeEach
+    public void setUp(WebApplicationContext webApplicationContext,
+                      RestDocumentationContextProvider restDocumentation) {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .apply(documentationConfiguration(restDocumentation))
+                .build();
+    }
+
+    @Test
+    public void getNearestCarparks_fastCharge_nearestFirst() throws Exception {
+        // given
+        when(spatialIndex.nearest(52.52, 13.405, 2, true, 5000)).thenReturn(List.of(
+                new NearbyCarpark("ubi", 52.5205, 13.4049, 55.6, new CarparkAvailability(42, 6, 4, 0, 20, true)),
+                new NearbyCarpark("station", 52.525, 13.369, 2497.2, new CarparkAvailability(7, 9, 1, 0, 80, true))));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/nearest")
+                .param("latitude", "52.52")
+                .param("longitude", "13.405")
+                .param("k", "2")
+                .param("fastCharge", "true")
+                .param("maxDistance", "5000"));
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().json("[{\"name\": \"ubi\", \"distance\": 56, \"availability\": {\"free\": 6}},"
+                        + " {\"name\": \"station\", \"distance\": 2497}]"))
+                .andDo(document("get-nearest",
+                        preprocessResponse(prettyPrint()),
+                        requestParameters(
+                                parameterWithName("latitude").description("Latitude of the vehicle in degrees"),
+                                parameterWithName("longitude").description("Longitude of the vehicle in degrees"),
+                                parameterWithName("k").optional().description("Number of carparks wanted, 5 by default and at most `carparks.spatial.max-results`"),
+                                parameterWithName("fastCharge").optional().description("Whether only carparks fast charging a vehicle connected now are wanted, `false` by default"),
+                                parameterWithName("maxDistance").optional().description("Largest distance of the carparks in meters, unlimited by default")
+                        ),
+                        responseFields(
+                                fieldWithPath("[].name").description("Name of the carpark"),
+                                fieldWithPath("[].latitude").description("Latitude of the carpark"),
+                                fieldWithPath("[].longitude").description("Longitude of the carpark"),
+                                fieldWithPath("[].distance").description("Distance to the carpark in meters"),
+                                subsectionWithPath("[].availability").description("Availability of the carpark, as answered by its availability endpoint")
+                        )));
+    }
+
+    @Test
+    public void getNearestCarparks_invalidLocation_badRequest() throws Exception {
+        // given
+        when(spatialIndex.nearest(anyDouble(), anyDouble(), anyInt(), anyBoolean(), anyDouble()))
+                .thenThrow(new IllegalArgumentException("Invalid location"));
+        // when
+        ResultActions response = this.mockMvc.perform(get("/nearest")
+                .param("latitude", "91")
+                .param("longitude", "13.405"));
+        // then
+        response.andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,38 @@
+package com.ubitricity.carparkubi.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class ReportCacheTest {
+
+    private final ReportCache reportCache = new ReportCache(new ObjectMapper());
+    private final CarparkUbi carparkUbi = new CarparkUbi();
+
+    @Test
+    public void report_unchangedCarpark_sameBytes() {
+        // given
+        byte[] first = reportCache.report(carparkUbi, carparkUbi.snapshot());
+        // when
+        byte[] second = reportCache.report(carparkUbi, carparkUbi.snapshot());
+        // then
+        assertThat(second).isSameInstanceAs(first);
+    }
+
+    @Test
+    public void report_changedCarpark_rebuiltReport() {
+        // given
+        byte[] first = reportCache.report(carparkUbi, carparkUbi.snapshot());
+        // when
+        carparkUbi.connect("CP1");
+        byte[] second = reportCache.report(carparkUbi, carparkUbi.snapshot());
+        // then
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(new String(second, StandardCharsets.UTF_8))
+                .startsWith("[{\"id\":\"CP1\",\"current\":20,\"connected\":true},");
+    }
+}
@@ -0,0 +1,76 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.services.EventBatch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventFramesTest {
+
+    @Test
+    public void decode_encodedFrame_sameEvents() {
+        // given
+        EventBatch sent = new EventBatch();
+        sent.add(0, true, 7);
+        sent.add(9, false, 8);
+        ByteBuffer frame = ByteBuffer.wrap(EventFrames.encode("ubi", sent));
+        EventBatch received = new EventBatch();
+        // when
+        String carpark = EventFrames.decode(frame, received);
+        // then
+        assertThat(carpark).isEqualTo("ubi");
+        assertThat(frame.hasRemaining()).isFalse();
+        assertThat(received.size()).isEqualTo(2);
+        assertThat(received.index(1)).isEqualTo(9);
+        assertThat(received.isConnected(1)).isFalse();
+        assertThat(received.sequence(1)).isEqualTo(8);
+        assertThat(frame.capacity()).isEqualTo(9 + 2 * EventFrames.EVENT_LENGTH);
+    }
+
+    @Test
+    public void decode_truncatedFrame_malformedFrameException() {
+        // given
+        EventBatch sent = new EventBatch();
+        sent.add(0, true, 1);
+        byte[] frame = EventFrames.encode("ubi", sent);
+        // when
+        // then
+        assertThrows(MalformedFrameException.class,
+                () -> EventFrames.decode(ByteBuffer.wrap(Arrays.copyOf(frame, frame.length - 1)), new EventBatch()));
+        assertThrows(MalformedFrameException.class,
+                () -> EventFrames.decode(ByteBuffer.wrap(new byte[]{1, 2, 3}), new EventBatch()));
+    }
+
+    @Test
+    public void carparkName_encodedFrame_nameWithoutConsumingFrame() {
+        // given
+        EventBatch sent = new EventBatch();
+        sent.add(3, true, 1);
+        ByteBuffer frame = ByteBuffer.wrap(EventFrames.encode("ubi-north", sent));
+        // when
+        String carpark = EventFrames.carparkName(frame);
+        // then
+        assertThat(carpark).isEqualTo("ubi-north");
+        assertThat(frame.position()).isEqualTo(0);
+        assertThrows(MalformedFrameException.class, () -> EventFrames.carparkName(ByteBuffer.wrap(new byte[]{1, 2})));
+    }
+
+    @Test
+    public void acknowledge_appliedBatch_versionAndOutcomes() {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(42, true, 1);
+        // when
+        ByteBuffer acknowledgement = ByteBuffer.wrap(EventFrames.acknowledge(5, batch));
+        // then
+        assertThat(acknowledgement.getShort()).isEqualTo(EventFrames.MAGIC);
+        assertThat(acknowledgement.get()).isEqualTo(EventFrames.VERSION);
+        assertThat(acknowledgement.getLong()).isEqualTo(5);
+        assertThat(acknowledgement.getShort()).isEqualTo((short) 1);
+        assertThat(acknowledgement.remaining()).isEqualTo(1);
+    }
+}
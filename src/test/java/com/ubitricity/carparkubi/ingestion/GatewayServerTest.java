@@ -0,0 +1,142 @@
+package com.ubitricity.carparkubi.ingestion;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import com.ubitricity.carparkubi.services.CarparkDispatcher;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.EventBatch;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class GatewayServerTest {
+    private CarparkRegistry carparkRegistry;
+    private CarparkDispatcher carparkDispatcher;
+    private GatewayServer gatewayServer;
+
+    @BeforeEach
+    public void setUp() {
+        CarparksProperties properties = new CarparksProperties();
+        properties.getSites().put("ubi", new CarparksProperties.Site());
+        properties.getGateway().setPort(0);
+        carparkRegistry = new CarparkRegistry(properties, EventJournal.NONE);
+        carparkDispatcher = new CarparkDispatcher(properties);
+        gatewayServer = new GatewayServer(carparkRegistry, carparkDispatcher, properties.getGateway());
+        gatewayServer.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gatewayServer.stop();
+        carparkDispatcher.shutdown();
+    }
+
+    @Test
+    public void frame_connectedChargingPoint_setpointsAndAcknowledgementReceived() throws IOException {
+        try (Charger charger = new Charger()) {
+            // given
+            EventBatch events = new EventBatch();
+            events.add(0, true, 1);
+            events.add(42, true, 2);
+            // when
+            charger.send(events);
+            ByteBuffer setpoints = charger.receive();
+            ByteBuffer acknowledgement = charger.receive();
+            // then
+            assertThat(setpoints.getShort()).isEqualTo(EventFrames.SETPOINTS_MAGIC);
+            setpoints.position(setpoints.position() + 1 + 1 + "ubi".length() + 8);
+            assertThat(setpoints.getShort()).isEqualTo((short) 1);
+            assertThat(setpoints.getInt()).isEqualTo(0);
+            assertThat(setpoints.getInt()).isEqualTo(20);
+            assertThat(setpoints.get()).isEqualTo((byte) 1);
+            assertThat(acknowledgement.getShort()).isEqualTo(EventFrames.MAGIC);
+            acknowledgement.get();
+            assertThat(acknowledgement.getLong()).isEqualTo(carparkRegistry.find("ubi").snapshot().getVersion());
+            assertThat(acknowledgement.getShort()).isEqualTo((short) 2);
+            assertThat(acknowledgement.get()).isEqualTo((byte) EventOutcome.CONNECTED.ordinal());
+            assertThat(acknowledgement.get()).isEqualTo((byte) EventOutcome.NOT_FOUND.ordinal());
+        }
+    }
+
+    @Test
+    public void frame_redistributionByOtherCharger_setpointsPushedToOwner() throws IOException {
+        try (Charger first = new Charger(); Charger second = new Charger()) {
+            // given
+            EventBatch events = new EventBatch();
+            for (int index = 0; index < 5; index++) {
+                events.add(index, true, index);
+            }
+            first.send(events);
+            first.receive();
+            first.receive();
+            events.clear();
+            events.add(5, true, 1);
+            // when
+            second.send(events);
+            ByteBuffer pushed = first.receive();
+            // then
+            assertThat(pushed.getShort()).isEqualTo(EventFrames.SETPOINTS_MAGIC);
+            pushed.position(pushed.position() + 1 + 1 + "ubi".length() + 8);
+            assertThat(pushed.getShort()).isEqualTo((short) 2);
+            assertThat(pushed.getInt()).isEqualTo(0);
+            assertThat(pushed.getInt()).isEqualTo(10);
+            assertThat(second.receive().getShort()).isEqualTo(EventFrames.SETPOINTS_MAGIC);
+        }
+    }
+
+    @Test
+    public void frame_unknownCarpark_connectionClosed() throws IOException {
+        try (Charger charger = new Charger()) {
+            // given
+            EventBatch events = new EventBatch();
+            events.add(0, true, 1);
+            // when
+            charger.output.writeInt(EventFrames.encode("other", events).length);
+            charger.output.write(EventFrames.encode("other", events));
+            // then
+            assertThat(charger.input.read()).isEqualTo(-1);
+        }
+    }
+
+    /**
+     * Blocking client speaking the length prefixed protocol of the gateway
+     */
+    private final class Charger implements AutoCloseable {
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+
+        private Charger() throws IOException {
+            socket = new Socket("localhost", gatewayServer.getPort());
+            socket.setSoTimeout(5000);
+            input = new DataInputStream(socket.getInputStream());
+            output = new DataOutputStream(socket.getOutputStream());
+        }
+
+        private void send(EventBatch events) throws IOException {
+            byte[] frame = EventFrames.encode("ubi", events);
+            output.writeInt(frame.length);
+            output.write(frame);
+        }
+
+        private ByteBuffer receive() throws IOException {
+            byte[] message = new byte[input.readInt()];
+            input.readFully(message);
+            return ByteBuffer.wrap(message);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
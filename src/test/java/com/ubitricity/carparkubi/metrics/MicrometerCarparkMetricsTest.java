@@ -0,0 +1,110 @@
+package com.ubitricity.carparkubi.metrics;
+
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import com.ubitricity.carparkubi.services.EventBatch;
+import com.ubitricity.carparkubi.services.EventJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class MicrometerCarparkMetricsTest {
+
+    @Test
+    public void connect_instrumentedCarpark_eventsAndTimingsRecorded() {
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CarparkUbi carparkUbi = new CarparkUbi("ubi", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "ubi"));
+        // when
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        carparkUbi.connect("CP2");
+        carparkUbi.disconnect("CP1");
+        // then
+        assertThat(registry.get(MicrometerCarparkMetrics.EVENTS).tag("type", "connect").counter().count()).isEqualTo(2.0);
+        assertThat(registry.get(MicrometerCarparkMetrics.EVENTS).tag("type", "disconnect").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get(MicrometerCarparkMetrics.LOCK_WAIT).timer().count()).isEqualTo(4);
+        assertThat(registry.get(MicrometerCarparkMetrics.LOCK_HOLD).timer().count()).isEqualTo(4);
+        assertThat(registry.get(MicrometerCarparkMetrics.REDISTRIBUTION).timer().count()).isEqualTo(3);
+        assertThat(registry.get(MicrometerCarparkMetrics.QUEUE_DEPTH).gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void apply_batchOfEvents_oneRedistributionRecorded() {
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CarparkUbi carparkUbi = new CarparkUbi("ubi", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "ubi"));
+        // when
+        carparkUbi.apply(List.of(new ChargingPointEvent("CP1", true), new ChargingPointEvent("CP2", true),
+                new ChargingPointEvent("CP3", true)));
+        // then
+        assertThat(registry.get(MicrometerCarparkMetrics.EVENTS).tag("type", "connect").counter().count()).isEqualTo(3.0);
+        assertThat(registry.get(MicrometerCarparkMetrics.REDISTRIBUTION).timer().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerCarparkMetrics.QUEUE_DEPTH).gauge().value()).isEqualTo(3.0);
+    }
+
+    @Test
+    public void applyEventBatch_staleEvents_droppedEventsCounted() {
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CarparkUbi carparkUbi = new CarparkUbi("ubi", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "ubi"));
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, 5);
+        batch.add(1, true, 5);
+        carparkUbi.apply(batch);
+        // when
+        carparkUbi.apply(batch);
+        batch.add(2, true, 1);
+        carparkUbi.apply(batch);
+        // then
+        assertThat(registry.get(MicrometerCarparkMetrics.STALE_EVENTS).counter().count()).isEqualTo(4.0);
+        assertThat(registry.get(MicrometerCarparkMetrics.EVENTS).tag("type", "connect").counter().count()).isEqualTo(3.0);
+    }
+
+    @Test
+    public void connect_severalCarparks_latencyHistogramsShared() {
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CarparkUbi ubi = new CarparkUbi("ubi", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "ubi"));
+        CarparkUbi other = new CarparkUbi("other", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "other"));
+        // when
+        ubi.connect("CP1");
+        other.connect("CP1");
+        other.connect("CP2");
+        // then
+        assertThat(registry.get(MicrometerCarparkMetrics.LOCK_WAIT).tag("carpark", "ubi").timer().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerCarparkMetrics.LOCK_WAIT).tag("carpark", "other").timer().count()).isEqualTo(2);
+        assertThat(registry.get(MicrometerCarparkMetrics.ALL_LOCK_WAIT).timers()).hasSize(1);
+        assertThat(registry.get(MicrometerCarparkMetrics.ALL_LOCK_WAIT).timer().count()).isEqualTo(3);
+        assertThat(registry.get(MicrometerCarparkMetrics.ALL_REDISTRIBUTION).timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    public void scrape_prometheusRegistry_carparkMetricsInTextFormat() {
+        // given
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        CarparkUbi carparkUbi = new CarparkUbi("ubi", 10, 100, EventJournal.NONE,
+                new MicrometerCarparkMetrics(registry, "ubi"));
+        carparkUbi.connect("CP1");
+        // when
+        String scrape = registry.scrape();
+        // then
+        assertThat(scrape).contains("carpark_events_total{carpark=\"ubi\",type=\"connect\",} 1.0");
+        assertThat(scrape).contains("carpark_lock_wait_seconds_count{carpark=\"ubi\",} 1.0");
+        assertThat(scrape).doesNotContain("carpark_lock_wait_seconds_bucket");
+        assertThat(scrape).contains("carparks_lock_wait_seconds_bucket{le=");
+        assertThat(scrape).contains("carpark_lock_hold_seconds_count{carpark=\"ubi\",} 1.0");
+        assertThat(scrape).contains("carpark_redistribution_seconds_count{carpark=\"ubi\",}");
+        assertThat(scrape).contains("carpark_queue_depth{carpark=\"ubi\",} 1.0");
+    }
+}
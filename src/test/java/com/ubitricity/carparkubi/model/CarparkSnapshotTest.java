@@ -0,0 +1,68 @@
+package com.ubitricity.carparkubi.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class CarparkSnapshotTest {
+
+    private final String[] identifiers = IntStream.rangeClosed(1, 130).mapToObj(n -> "CP" + n).toArray(String[]::new);
+
+    @Test
+    public void toBuilder_changedChargingPoints_previousSnapshotUnchanged() {
+        // given
+        CarparkSnapshot previous = new CarparkSnapshot(0, identifiers);
+        // when
+        CarparkSnapshot.Builder builder = previous.toBuilder(1);
+        builder.set(0, 10, true);
+        builder.set(129, 20, true);
+        CarparkSnapshot snapshot = builder.build();
+        // then
+        assertThat(previous.getChargingPoint(0)).isEqualTo(new ChargingPoint("CP1", 0, false));
+        assertThat(previous.isConnected(129)).isFalse();
+        assertThat(snapshot.getChargingPoint(0).getCurrent()).isEqualTo(10);
+        assertThat(snapshot.isConnected(0)).isTrue();
+        assertThat(snapshot.currentOf(129)).isEqualTo(20);
+        assertThat(snapshot.isConnected(129)).isTrue();
+        assertThat(snapshot.isConnected(65)).isFalse();
+        assertThat(snapshot.changedSince(0)).hasSize(2);
+    }
+
+    @Test
+    public void set_sameState_unchangedVersion() {
+        // given
+        CarparkSnapshot.Builder builder = new CarparkSnapshot(0, identifiers).toBuilder(1);
+        builder.set(70, 10, true);
+        CarparkSnapshot snapshot = builder.build();
+        // when
+        CarparkSnapshot.Builder next = snapshot.toBuilder(2);
+        boolean changed = next.set(70, 10, true);
+        // then
+        assertThat(changed).isFalse();
+        assertThat(next.build().changedSince(1)).isEmpty();
+        assertThat(next.build().getChargingPoints()).hasSize(130);
+    }
+
+    @Test
+    public void set_changedChargingPoints_countersFollowChanges() {
+        // given
+        CarparkSnapshot.Builder builder = new CarparkSnapshot(0, identifiers).toBuilder(1);
+        builder.set(0, 20, true);
+        builder.set(64, 10, true);
+        builder.set(129, 20, true);
+        CarparkSnapshot previous = builder.build();
+        // when
+        CarparkSnapshot.Builder next = previous.toBuilder(2);
+        next.set(0, 10, true);
+        next.set(64, 0, false);
+        CarparkSnapshot snapshot = next.build();
+        // then
+        assertThat(previous.connectedCount()).isEqualTo(3);
+        assertThat(previous.totalCurrent()).isEqualTo(50);
+        assertThat(snapshot.connectedCount()).isEqualTo(2);
+        assertThat(snapshot.totalCurrent()).isEqualTo(30);
+        assertThat(new CarparkSnapshot(3, snapshot.getChargingPoints()).totalCurrent()).isEqualTo(30);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ubitricity.carparkubi.persistence;
+
+import com.ubitricity.carparkubi.config.CarparksProperties.Durability;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class EventLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replay_appendedRecords_recordsReadInOrder() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 1024 * 1024);
+        JournalRecord first = new JournalRecord("ubi", 1, List.of(new ChargingPointEvent("CP1", true)));
+        JournalRecord second = new JournalRecord("other", 7, List.of(new ChargingPointEvent("CP2", false),
+                new ChargingPointEvent("CP10", true)));
+        eventLog.append(first);
+        eventLog.append(second);
+        eventLog.close();
+        // when
+        List<JournalRecord> records = replay(open(Durability.ASYNC, 1024 * 1024));
+        // then
+        assertThat(records).containsExactly(first, second).inOrder();
+    }
+
+    @Test
+    public void replay_recordWithMoreEventsThanAShort_recordReadBack() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 1024 * 1024);
+        JournalRecord large = new JournalRecord("large", 1, IntStream.rangeClosed(1, 40000)
+                .mapToObj(n -> new ChargingPointEvent("CP" + n, true))
+                .collect(Collectors.toList()));
+        eventLog.append(large);
+        eventLog.close();
+        // when
+        List<JournalRecord> records = replay(open(Durability.ASYNC, 1024 * 1024));
+        // then
+        assertThat(records).containsExactly(large);
+    }
+
+    @Test
+    public void append_reopenedLog_recordsAppendedAfterExistingOnes() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 1024 * 1024);
+        long position = eventLog.append(new JournalRecord("ubi", 1, List.of(new ChargingPointEvent("CP1", true))));
+        eventLog.close();
+        // when
+        EventLog reopened = open(Durability.ASYNC, 1024 * 1024);
+        long reopenedPosition = reopened.position();
+        reopened.append(new JournalRecord("ubi", 2, List.of(new ChargingPointEvent("CP1", false))));
+        // then
+        assertThat(reopenedPosition).isEqualTo(position);
+        assertThat(replay(reopened).stream().map(JournalRecord::getVersion).collect(Collectors.toList()))
+                .containsExactly(1L, 2L).inOrder();
+    }
+
+    @Test
+    public void append_segmentFull_newSegmentCreated() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 64);
+        // when
+        IntStream.rangeClosed(1, 20)
+                .forEach(n -> eventLog.append(new JournalRecord("ubi", n, List.of(new ChargingPointEvent("CP" + n, true)))));
+        eventLog.close();
+        // then
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isGreaterThan(1L);
+        }
+        assertThat(replay(open(Durability.ASYNC, 64)).stream().map(JournalRecord::getVersion).collect(Collectors.toList()))
+                .containsExactlyElementsIn(LongStream.rangeClosed(1, 20).boxed().collect(Collectors.toList())).inOrder();
+    }
+
+    @Test
+    public void append_tornRecordAtTheEnd_recordDiscarded() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 1024);
+        eventLog.append(new JournalRecord("ubi", 1, List.of(new ChargingPointEvent("CP1", true))));
+        long position = eventLog.append(new JournalRecord("ubi", 2, List.of(new ChargingPointEvent("CP2", true))));
+        eventLog.close();
+        try (FileChannel channel = FileChannel.open(Files.list(directory).findFirst().orElseThrow(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), position - 2);
+        }
+        // when
+        EventLog reopened = open(Durability.ASYNC, 1024);
+        reopened.append(new JournalRecord("ubi", 3, List.of(new ChargingPointEvent("CP3", true))));
+        // then
+        assertThat(replay(reopened).stream().map(JournalRecord::getVersion).collect(Collectors.toList()))
+                .containsExactly(1L, 3L).inOrder();
+    }
+
+    @Test
+    public void awaitDurable_syncDurabilityConcurrentWriters_allRecordsFlushed() throws Exception {
+        // given
+        EventLog eventLog = new EventLog(directory, 1024 * 1024, Durability.SYNC, Duration.ofSeconds(10));
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        List<Future<Long>> positions = new ArrayList<>();
+        // when
+        IntStream.range(0, 200)
+                .forEach(n -> positions.add(service.submit(() -> {
+                    long position = eventLog.append(new JournalRecord("ubi", n, List.of(new ChargingPointEvent("CP1", n % 2 == 0))));
+                    eventLog.awaitDurable(position);
+                    return position;
+                })));
+        // then
+        for (Future<Long> position : positions) {
+            long appended = position.get();
+            assertThat(eventLog.durablePosition()).isAtLeast(appended);
+        }
+        service.shutdown();
+        eventLog.close();
+    }
+
+    @Test
+    public void checkpoint_historyInSeveralSegments_onlyTailReplayedAfterCheckpoint() throws IOException {
+        // given
+        EventLog eventLog = open(Durability.ASYNC, 64);
+        IntStream.rangeClosed(1, 20)
+                .forEach(n -> eventLog.append(new JournalRecord("ubi", n, List.of(new ChargingPointEvent("CP1", n % 2 == 1)))));
+        CarparkCheckpoint checkpoint = new CarparkCheckpoint("ubi", 20, List.of("CP4", "CP2"));
+        // when
+        eventLog.checkpoint(() -> List.of(checkpoint));
+        eventLog.append(new JournalRecord("ubi", 21, List.of(new ChargingPointEvent("CP1", true))));
+        eventLog.close();
+        // then
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(2);
+        }
+        List<CarparkCheckpoint> checkpoints = new ArrayList<>();
+        List<JournalRecord> records = new ArrayList<>();
+        EventLog reopened = open(Durability.ASYNC, 64);
+        reopened.replay(checkpoints::add, records::add);
+        reopened.close();
+        assertThat(checkpoints).containsExactly(checkpoint);
+        assertThat(records.stream().map(JournalRecord::getVersion).collect(Collectors.toList())).containsExactly(21L);
+    }
+
+    private EventLog open(Durability durability, int segmentSize) throws IOException {
+        return new EventLog(directory, segmentSize, durability, Duration.ofMillis(5));
+    }
+
+    private List<JournalRecord> replay(EventLog eventLog) {
+        List<JournalRecord> records = new ArrayList<>();
+        eventLog.replay(checkpoint -> {
+        }, records::add);
+        eventLog.close();
+        return records;
+    }
+}
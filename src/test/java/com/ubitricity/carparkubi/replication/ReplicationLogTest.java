@@ -0,0 +1,97 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.JournalRecord;
+import com.ubitricity.carparkubi.services.EventJournal;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class ReplicationLogTest {
+    private final ReplicationLog replicationLog = new ReplicationLog(EventJournal.NONE, 4);
+
+    @Test
+    public void read_afterSequence_followingRecordsInOrder() throws Exception {
+        // given
+        for (int version = 1; version <= 3; version++) {
+            replicationLog.append(record(version));
+        }
+        // when
+        List<ReplicatedRecord> records = replicationLog.read(1, 10, 0);
+        // then
+        assertThat(records.stream().map(ReplicatedRecord::getSequence).collect(Collectors.toList()))
+                .containsExactly(2L, 3L).inOrder();
+        assertThat(records.get(1).getRecord()).isEqualTo(record(3));
+        assertThat(replicationLog.read(0, 2, 0)).hasSize(2);
+        assertThat(replicationLog.head()).isEqualTo(3);
+    }
+
+    @Test
+    public void read_upToDateFollower_wakesUpOnAppend() throws Exception {
+        // given
+        replicationLog.append(record(1));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // when
+        Future<List<ReplicatedRecord>> records = executor.submit(() -> replicationLog.read(1, 10, 5000));
+        replicationLog.append(record(2));
+        // then
+        assertThat(records.get(5, TimeUnit.SECONDS).get(0).getSequence()).isEqualTo(2);
+        assertThat(replicationLog.read(2, 10, 10)).isEmpty();
+        executor.shutdown();
+    }
+
+    @Test
+    public void read_evictedOrUnknownSequence_resyncRequired() throws Exception {
+        // given
+        for (int version = 1; version <= 6; version++) {
+            replicationLog.append(record(version));
+        }
+        // when
+        List<ReplicatedRecord> evicted = replicationLog.read(1, 10, 0);
+        List<ReplicatedRecord> unknown = replicationLog.read(7, 10, 0);
+        // then
+        assertThat(evicted).isNull();
+        assertThat(unknown).isNull();
+        assertThat(replicationLog.read(2, 10, 0)).hasSize(4);
+    }
+
+    @Test
+    public void read_concurrentAppends_everySequenceReadOnceInOrder() throws Exception {
+        // given
+        ReplicationLog log = new ReplicationLog(EventJournal.NONE, 4096);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int writer = 0; writer < 4; writer++) {
+            executor.execute(() -> {
+                for (int version = 1; version <= 500; version++) {
+                    log.append(record(version));
+                }
+            });
+        }
+        // when
+        List<Long> sequences = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (sequences.size() < 2000 && System.nanoTime() < deadline) {
+            long after = sequences.isEmpty() ? 0 : sequences.get(sequences.size() - 1);
+            List<ReplicatedRecord> records = log.read(after, 64, 100);
+            assertThat(records).isNotNull();
+            records.forEach(record -> sequences.add(record.getSequence()));
+        }
+        executor.shutdown();
+        // then
+        assertThat(sequences).containsExactlyElementsIn(LongStream.rangeClosed(1, 2000).boxed().collect(Collectors.toList()))
+                .inOrder();
+    }
+
+    private static JournalRecord record(long version) {
+        return new JournalRecord("ubi", version, List.of(new ChargingPointEvent("CP" + version, true)));
+    }
+}
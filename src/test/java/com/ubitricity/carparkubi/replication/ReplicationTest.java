@@ -0,0 +1,121 @@
+package com.ubitricity.carparkubi.replication;
+
+import com.ubitricity.carparkubi.CarparkUbiApplication;
+import com.ubitricity.carparkubi.controllers.CarparksController;
+import com.ubitricity.carparkubi.ingestion.GatewayServer;
+import com.ubitricity.carparkubi.services.CarparkRegistry;
+import com.ubitricity.carparkubi.services.CarparkUbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * A primary and a follower running in the same JVM on random ports
+ */
+class ReplicationTest {
+    private ConfigurableApplicationContext primary;
+    private ConfigurableApplicationContext follower;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() {
+        primary = startPrimary(0);
+        follower = new SpringApplicationBuilder(CarparkUbiApplication.class)
+                .run("--server.port=0", "--carparks.replication.role=FOLLOWER",
+                        "--carparks.replication.primary-uri=" + uri(primary, "/"),
+                        "--carparks.replication.read-timeout=5s", "--carparks.gateway.enabled=true",
+                        "--carparks.gateway.port=0");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        follower.close();
+        primary.close();
+    }
+
+    @Test
+    public void getReport_minVersionOfPrimaryWrite_followerReadsOwnWrite() throws Exception {
+        // given
+        HttpResponse<String> write = client.send(HttpRequest.newBuilder(uri(primary, "/carparks/ubi/chargingPoints/CP4"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        long version = primary.getBean(CarparkRegistry.class).find("ubi").snapshot().getVersion();
+        // when
+        HttpResponse<String> read = client.send(HttpRequest.newBuilder(uri(follower,
+                "/carparks/ubi/chargingPoints?minVersion=" + version)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        // then
+        assertThat(write.statusCode()).isEqualTo(200);
+        assertThat(read.statusCode()).isEqualTo(200);
+        assertThat(read.headers().firstValue(CarparksController.VERSION_HEADER).orElseThrow()).isEqualTo(String.valueOf(version));
+        assertThat(read.body()).contains("{\"id\":\"CP4\",\"current\":20,\"connected\":true}");
+        assertThat(follower.getBean(ReplicaFollower.class).status().isConnected()).isTrue();
+    }
+
+    @Test
+    public void put_follower_methodNotAllowedAndGatewayNotStarted() throws Exception {
+        // when
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(follower, "/carparks/ubi/chargingPoints/CP4"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        // then
+        assertThat(response.statusCode()).isEqualTo(405);
+        assertThat(follower.getBean(CarparkRegistry.class).find("ubi").snapshot().isConnected(3)).isFalse();
+        assertThat(follower.getBeansOfType(GatewayServer.class)).isEmpty();
+    }
+
+    @Test
+    public void getReport_primaryRestartedWithoutItsJournal_followerResetToNewPrimary() throws Exception {
+        // given
+        for (String id : new String[]{"CP4", "CP5", "CP6"}) {
+            put(primary, id, true);
+        }
+        CarparkUbi replica = follower.getBean(CarparkRegistry.class).find("ubi");
+        replica.awaitVersion(3, Duration.ofSeconds(5));
+        int port = ((WebServerApplicationContext) primary).getWebServer().getPort();
+        primary.close();
+        primary = startPrimary(port);
+        // when
+        put(primary, "CP1", true);
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (replica.snapshot().isConnected(3) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        replica.awaitVersion(1, Duration.ofSeconds(5));
+        // then
+        assertThat(replica.snapshot().getVersion()).isEqualTo(1);
+        assertThat(replica.snapshot().isConnected(0)).isTrue();
+        assertThat(replica.snapshot().isConnected(3)).isFalse();
+        assertThat(replica.snapshot().isConnected(5)).isFalse();
+    }
+
+    private static ConfigurableApplicationContext startPrimary(int port) {
+        return new SpringApplicationBuilder(CarparkUbiApplication.class)
+                .run("--server.port=" + port, "--carparks.replication.role=PRIMARY",
+                        "--carparks.replication.poll-timeout=1s");
+    }
+
+    private HttpResponse<String> put(ConfigurableApplicationContext node, String chargingPointId, boolean connected)
+            throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(node, "/carparks/ubi/chargingPoints/" + chargingPointId))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"connected\": " + connected + "}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(ConfigurableApplicationContext node, String path) {
+        return URI.create("http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort() + path);
+    }
+}
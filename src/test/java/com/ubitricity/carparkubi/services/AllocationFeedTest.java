@@ -0,0 +1,243 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class AllocationFeedTest {
+
+    @Test
+    public void subscribe_carparkChanges_snapshotFollowedByDeltas() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new AllocationFeed(carparkUbi, Runnable::run, 16).subscribe(subscriber);
+        // when
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        // then
+        assertThat(subscriber.snapshots).hasSize(1);
+        assertThat(subscriber.snapshots.get(0).getVersion()).isEqualTo(0);
+        assertThat(subscriber.deltas.stream().map(AllocationDelta::getVersion).collect(Collectors.toList()))
+                .containsExactly(1L, 2L).inOrder();
+        assertThat(subscriber.deltas.get(0).getChargingPoints()).containsExactly(new ChargingPoint("CP1", 20, true));
+        assertThat(subscriber.deltas.get(1).getChargingPoints()).containsExactly(new ChargingPoint("CP2", 20, true));
+    }
+
+    @Test
+    public void subscribe_unchangedCurrents_onlyChangedChargingPointsInDelta() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new AllocationFeed(carparkUbi, Runnable::run, 16).subscribe(subscriber);
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        carparkUbi.connect("CP3");
+        carparkUbi.connect("CP4");
+        carparkUbi.connect("CP5");
+        // when
+        carparkUbi.connect("CP6");
+        // then
+        AllocationDelta delta = subscriber.deltas.get(subscriber.deltas.size() - 1);
+        assertThat(delta.getVersion()).isEqualTo(6);
+        assertThat(delta.getChargingPoints())
+                .containsExactly(new ChargingPoint("CP1", 10, true), new ChargingPoint("CP2", 10, true),
+                        new ChargingPoint("CP6", 20, true));
+    }
+
+    @Test
+    public void subscribe_bufferOverflow_subscriberResynchronisedWithSnapshot() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new AllocationFeed(carparkUbi, executor, 2).subscribe(subscriber);
+        executor.runAll();
+        // when
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        carparkUbi.connect("CP3");
+        carparkUbi.connect("CP4");
+        executor.runAll();
+        // then
+        assertThat(subscriber.snapshots.stream().map(CarparkSnapshot::getVersion).collect(Collectors.toList()))
+                .containsExactly(0L, 4L).inOrder();
+        assertThat(subscriber.deltas).isEmpty();
+    }
+
+    @Test
+    public void subscribe_carparkResetToLowerVersion_subscriberResynchronisedWithSnapshot() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        CarparkCheckpoint older = carparkUbi.checkpoint();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new AllocationFeed(carparkUbi, Runnable::run, 16).subscribe(subscriber);
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        // when
+        carparkUbi.reset(older);
+        carparkUbi.connect("CP3");
+        // then
+        assertThat(subscriber.snapshots).hasSize(2);
+        CarparkSnapshot reset = subscriber.snapshots.get(1);
+        assertThat(reset.getEpoch()).isNotEqualTo(subscriber.snapshots.get(0).getEpoch());
+        assertThat(reset.getChargingPoints().get(0).getConnected()).isFalse();
+        AllocationDelta delta = subscriber.deltas.get(subscriber.deltas.size() - 1);
+        assertThat(delta.getEpoch()).isEqualTo(reset.getEpoch());
+        assertThat(delta.getVersion()).isEqualTo(reset.getVersion() + 1);
+        assertThat(delta.getChargingPoints()).contains(new ChargingPoint("CP3", 20, true));
+    }
+
+    @Test
+    public void subscribe_blockedSubscriber_connectNotBlocked() throws InterruptedException {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        AllocationFeed feed = new AllocationFeed(carparkUbi, executor, 4);
+        feed.subscribe(new RecordingSubscriber() {
+            @Override
+            public void onDelta(AllocationDelta delta) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        // when
+        for (int i = 0; i < 100; i++) {
+            carparkUbi.connect("CP1");
+            carparkUbi.disconnect("CP1");
+        }
+        // then
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(200);
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void subscribe_subscriberStuckInDelivery_disconnectedAndBufferReleased() throws InterruptedException {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AllocationFeed feed = new AllocationFeed(carparkUbi, executor, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onDelta(AllocationDelta delta) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        feed.subscribe(subscriber);
+        for (int i = 0; i < 500 && !blocked.await(10, TimeUnit.MILLISECONDS); i++) {
+            carparkUbi.connect("CP1");
+            carparkUbi.disconnect("CP1");
+        }
+        // when
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (feed.subscriptions() > 0 && System.nanoTime() < deadline) {
+            carparkUbi.connect("CP2");
+            carparkUbi.disconnect("CP2");
+            Thread.sleep(1);
+        }
+        release.countDown();
+        executor.shutdown();
+        // then
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(feed.subscriptions()).isEqualTo(0);
+        assertThat(subscriber.disconnected).isTrue();
+    }
+
+    @Test
+    public void cancel_lastSubscription_feedIdleAndNoLongerListening() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ManualExecutor executor = new ManualExecutor();
+        List<AllocationFeed> idle = new ArrayList<>();
+        AllocationFeed feed = new AllocationFeed(carparkUbi, executor, 16, idle::add);
+        AllocationFeed.Subscription subscription = feed.subscribe(new RecordingSubscriber());
+        executor.runAll();
+        // when
+        subscription.cancel();
+        feed.close();
+        carparkUbi.connect("CP1");
+        // then
+        assertThat(idle).containsExactly(feed);
+        assertThat(executor.tasks).isEmpty();
+    }
+
+    @Test
+    public void cancel_activeSubscription_noFurtherChangesDelivered() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        AllocationFeed feed = new AllocationFeed(carparkUbi, Runnable::run, 16);
+        AllocationFeed.Subscription subscription = feed.subscribe(subscriber);
+        carparkUbi.connect("CP1");
+        // when
+        subscription.cancel();
+        carparkUbi.connect("CP2");
+        // then
+        assertThat(feed.subscriptions()).isEqualTo(0);
+        assertThat(subscriber.deltas).hasSize(1);
+    }
+
+    private static class RecordingSubscriber implements AllocationSubscriber {
+        final List<CarparkSnapshot> snapshots = new ArrayList<>();
+        final List<AllocationDelta> deltas = new ArrayList<>();
+        volatile boolean disconnected;
+
+        @Override
+        public void onSnapshot(CarparkSnapshot snapshot) {
+            snapshots.add(snapshot);
+        }
+
+        @Override
+        public void onDelta(AllocationDelta delta) {
+            deltas.add(delta);
+        }
+
+        @Override
+        public void onDisconnect() {
+            disconnected = true;
+        }
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                task.run();
+            }
+        }
+    }
+}
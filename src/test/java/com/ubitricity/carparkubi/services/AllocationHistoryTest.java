@@ -0,0 +1,86 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.AllocationSample;
+import com.ubitricity.carparkubi.model.EnergyReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AllocationHistoryTest {
+    private static final long HOUR = 3_600_000;
+
+    private final AllocationHistory history = new AllocationHistory(2, 8);
+
+    @Test
+    public void record_unchangedAllocation_notAppended() {
+        // given
+        history.record(0, 0, false, 0);
+        history.record(0, 20, true, HOUR);
+        // when
+        boolean appended = history.record(0, 20, true, 2 * HOUR);
+        // then
+        assertThat(appended).isFalse();
+        assertThat(history.samples(0, 0, Long.MAX_VALUE)).containsExactly(
+                new AllocationSample(0, 0, false, 0), new AllocationSample(HOUR, 20, true, 0)).inOrder();
+        assertThat(history.samples(1, 0, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    public void energy_changingCurrent_chargeIntegratedOverRange() {
+        // given
+        history.record(0, 0, false, 0);
+        history.record(0, 20, true, HOUR);
+        history.record(0, 10, true, 3 * HOUR);
+        // when
+        EnergyReport report = history.energy(0, 2 * HOUR, 4 * HOUR);
+        // then
+        assertThat(report.getAmpHours()).isWithin(1e-9).of(20 + 10);
+        assertThat(report.getTotalAmpHours()).isWithin(1e-9).of(40 + 10);
+        assertThat(report.isConnected()).isTrue();
+        assertThat(report.getSessionStart()).isEqualTo(HOUR);
+        assertThat(report.getSessionAmpHours()).isWithin(1e-9).of(50);
+    }
+
+    @Test
+    public void energy_endedSession_sessionChargeUpToDisconnection() {
+        // given
+        history.record(0, 20, true, 0);
+        history.record(0, 0, false, HOUR / 2);
+        history.record(0, 10, true, HOUR);
+        history.record(0, 0, false, 2 * HOUR);
+        // when
+        EnergyReport report = history.energy(0, 0, 5 * HOUR);
+        // then
+        assertThat(report.getAmpHours()).isWithin(1e-9).of(10 + 10);
+        assertThat(report.isConnected()).isFalse();
+        assertThat(report.getSessionStart()).isEqualTo(HOUR);
+        assertThat(report.getSessionAmpHours()).isWithin(1e-9).of(10);
+    }
+
+    @Test
+    public void samples_overwrittenRing_latestSamplesInRange() {
+        // given
+        for (int change = 0; change < 20; change++) {
+            history.record(1, change % 2 == 0 ? 10 : 20, true, change * HOUR);
+        }
+        // when
+        List<AllocationSample> samples = history.samples(1, 15 * HOUR + 1, 17 * HOUR);
+        EnergyReport report = history.energy(1, 0, 20 * HOUR);
+        // then
+        assertThat(samples.stream().map(AllocationSample::getTimestamp).collect(Collectors.toList()))
+                .containsExactly(15 * HOUR, 16 * HOUR, 17 * HOUR).inOrder();
+        assertThat(history.samples(1, 0, Long.MAX_VALUE)).hasSize(7);
+        assertThat(report.getFrom()).isEqualTo(13 * HOUR);
+        assertThat(report.getAmpHours()).isWithin(1e-9).of(4 * 20 + 3 * 10);
+        assertThat(report.getSessionStart()).isEqualTo(0);
+    }
+
+    @Test
+    public void constructor_historyTooLarge_illegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new AllocationHistory(1_000_000, 1_000));
+    }
+}
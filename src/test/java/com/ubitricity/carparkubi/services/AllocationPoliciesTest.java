@@ -0,0 +1,192 @@
+package com.ubitricity.carparkubi.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class AllocationPoliciesTest {
+    private static final int CP1 = 0;
+    private static final int CP2 = 1;
+    private static final int CP3 = 2;
+    private static final int CP4 = 3;
+
+    @Test
+    public void newestFirst_uniformLimits_newestConnectionsToppedUp() {
+        // given
+        AllocationPolicy policy = AllocationPolicies.NEWEST_FIRST.create(50, AllocationLimits.uniform(4, 10, 20));
+        // when
+        connect(policy, CP1, CP2, CP3, CP4);
+        // then
+        assertThat(currents(policy, 4)).isEqualTo(new int[]{10, 10, 10, 20});
+        assertThat(policy.fastCount()).isEqualTo(1);
+        assertThat(policy.fastChargeAvailable()).isFalse();
+    }
+
+    @Test
+    public void priorityTiers_fleetPointConnectedFirst_fleetPointToppedUpBeforeNewerOnes() {
+        // given
+        AllocationLimits limits = new AllocationLimits(10, 20, new int[]{10, 10, 10, 10}, new int[]{32, 20, 20, 20},
+                new int[]{1, 0, 0, 0});
+        AllocationPolicy policy = AllocationPolicies.PRIORITY_TIERS.create(70, limits);
+        // when
+        connect(policy, CP1, CP2, CP3, CP4);
+        // then
+        assertThat(currents(policy, 4)).isEqualTo(new int[]{32, 10, 10, 10});
+        assertThat(policy.fastChargeAvailable()).isFalse();
+    }
+
+    @Test
+    public void proportionalShare_pointCappedBelowLevel_restSharedEqually() {
+        // given
+        AllocationLimits limits = new AllocationLimits(10, 40, new int[]{10, 10, 10, 10}, new int[]{16, 40, 40, 40},
+                new int[4]);
+        AllocationPolicy policy = AllocationPolicies.PROPORTIONAL_SHARE.create(100, limits);
+        // when
+        connect(policy, CP1, CP2, CP3, CP4);
+        // then
+        assertThat(currents(policy, 4)).isEqualTo(new int[]{16, 28, 28, 28});
+        assertThat(policy.fastCount()).isEqualTo(4);
+        assertThat(policy.fastChargeAvailable()).isTrue();
+    }
+
+    @Test
+    public void redistribute_randomEvents_sameAllocationAsFullRecomputation() {
+        Random random = new Random(42);
+        for (AllocationPolicies policies : AllocationPolicies.values()) {
+            for (int carpark = 0; carpark < 20; carpark++) {
+                // given
+                int size = 1 + random.nextInt(40);
+                int[] minCurrents = new int[size];
+                int[] maxCurrents = new int[size];
+                int[] tiers = new int[size];
+                for (int i = 0; i < size; i++) {
+                    minCurrents[i] = random.nextInt(12);
+                    maxCurrents[i] = minCurrents[i] + random.nextInt(24);
+                    tiers[i] = random.nextInt(3) - 1;
+                }
+                AllocationLimits limits = new AllocationLimits(6, 16, minCurrents, maxCurrents, tiers);
+                int totalPower = (int) limits.minimumTotal() + random.nextInt(20 * size);
+                AllocationPolicy policy = policies.create(totalPower, limits);
+                List<Integer> connected = new ArrayList<>();
+                int[] previous = new int[size];
+                for (int event = 0; event < 300; event++) {
+                    // when
+                    int index = random.nextInt(size);
+                    if (connected.remove((Integer) index)) {
+                        policy.disconnect(index);
+                    } else {
+                        connected.add(index);
+                        policy.connect(index);
+                    }
+                    BitSet changed = new BitSet();
+                    changed.set(index);
+                    policy.redistribute(changed::set);
+                    // then
+                    int[] expected = allocate(policies, totalPower, limits, connected, false);
+                    int[] currents = currents(policy, size);
+                    assertThat(currents).isEqualTo(expected);
+                    for (int i = 0; i < size; i++) {
+                        if (currents[i] != previous[i]) {
+                            assertThat(changed.get(i)).isTrue();
+                        }
+                    }
+                    previous = currents;
+                    int fast = 0;
+                    for (int i : connected) {
+                        fast += currents[i] > minCurrents[i] ? 1 : 0;
+                    }
+                    assertThat(policy.fastCount()).isEqualTo(fast);
+                    int[] withNewVehicle = allocate(policies, totalPower, limits, connected, true);
+                    assertThat(policy.fastChargeAvailable())
+                            .isEqualTo(withNewVehicle != null && withNewVehicle[size] > limits.defaultMinCurrent());
+                }
+            }
+        }
+    }
+
+    private static void connect(AllocationPolicy policy, int... indices) {
+        for (int index : indices) {
+            policy.connect(index);
+            policy.redistribute(changed -> {
+            });
+        }
+    }
+
+    private static int[] currents(AllocationPolicy policy, int size) {
+        int[] currents = new int[size];
+        for (int i = 0; i < size; i++) {
+            currents[i] = policy.currentOf(i);
+        }
+        return currents;
+    }
+
+    /**
+     * Allocation of the policy computed from scratch, with a new vehicle on a point with the default limits in last
+     * position if asked
+     *
+     * @return Current of every point, <code>null</code> if the carpark can't supply the new vehicle
+     */
+    private static int[] allocate(AllocationPolicies policy, int totalPower, AllocationLimits limits,
+                                  List<Integer> connected, boolean newVehicle) {
+        int size = limits.size() + (newVehicle ? 1 : 0);
+        int[] min = new int[size];
+        int[] max = new int[size];
+        int[] tier = new int[size];
+        List<Integer> order = new ArrayList<>(connected);
+        for (int i = 0; i < limits.size(); i++) {
+            min[i] = limits.minCurrent(i);
+            max[i] = limits.maxCurrent(i);
+            tier[i] = policy == AllocationPolicies.PRIORITY_TIERS ? limits.tier(i) : 0;
+        }
+        if (newVehicle) {
+            min[size - 1] = limits.defaultMinCurrent();
+            max[size - 1] = limits.defaultMaxCurrent();
+            tier[size - 1] = AllocationLimits.DEFAULT_TIER;
+            order.add(size - 1);
+        }
+        long spare = totalPower;
+        for (int i : order) {
+            spare -= min[i];
+        }
+        if (spare < 0) {
+            return null;
+        }
+        int[] currents = new int[size];
+        if (policy == AllocationPolicies.PROPORTIONAL_SHARE) {
+            int level = 0;
+            for (int candidate = 0; candidate <= 64; candidate++) {
+                long demand = 0;
+                for (int i : order) {
+                    demand += Math.max(min[i], Math.min(max[i], candidate));
+                }
+                if (demand <= totalPower) {
+                    level = candidate;
+                }
+            }
+            for (int i : order) {
+                currents[i] = Math.max(min[i], Math.min(max[i], level));
+            }
+            return currents;
+        }
+        List<Integer> ranked = new ArrayList<>();
+        for (int position = order.size() - 1; position >= 0; position--) {
+            ranked.add(order.get(position));
+        }
+        ranked.sort(Comparator.comparingInt(i -> -tier[i]));
+        boolean fits = true;
+        for (int i : ranked) {
+            fits = fits && max[i] - min[i] <= spare;
+            if (fits) {
+                spare -= max[i] - min[i];
+            }
+            currents[i] = fits ? max[i] : min[i];
+        }
+        return currents;
+    }
+}
@@ -0,0 +1,60 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.AllocationDelta;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class AllocationStreamsTest {
+    private final AllocationStreams allocationStreams = new AllocationStreams(new CarparksProperties());
+
+    @AfterEach
+    public void tearDown() {
+        allocationStreams.shutdown();
+    }
+
+    @Test
+    public void cancel_lastSubscriber_feedDropped() throws InterruptedException {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        AllocationFeed.Subscription first = allocationStreams.subscribe(carparkUbi, new LatchSubscriber());
+        AllocationFeed.Subscription second = allocationStreams.subscribe(carparkUbi, new LatchSubscriber());
+        // when
+        first.cancel();
+        int feedsWithSubscriber = allocationStreams.feeds();
+        second.cancel();
+        // then
+        assertThat(feedsWithSubscriber).isEqualTo(1);
+        assertThat(allocationStreams.feeds()).isEqualTo(0);
+        LatchSubscriber resubscribed = new LatchSubscriber();
+        allocationStreams.subscribe(carparkUbi, resubscribed);
+        for (int i = 0; i < 500 && !resubscribed.delta.await(10, TimeUnit.MILLISECONDS); i++) {
+            carparkUbi.connect("CP1");
+            carparkUbi.disconnect("CP1");
+        }
+        assertThat(resubscribed.delta.getCount()).isEqualTo(0);
+    }
+
+    private static class LatchSubscriber implements AllocationSubscriber {
+        final CountDownLatch delta = new CountDownLatch(1);
+
+        @Override
+        public void onSnapshot(CarparkSnapshot snapshot) {
+        }
+
+        @Override
+        public void onDelta(AllocationDelta delta) {
+            this.delta.countDown();
+        }
+
+        @Override
+        public void onDisconnect() {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CarparkActorTest {
+
+    @Test
+    public void submit_pendingNotifications_appliedAsOneBatch() throws Exception {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ManualExecutor executor = new ManualExecutor();
+        CarparkActor actor = new CarparkActor(carparkUbi, executor, 16, 16);
+        // when
+        CompletableFuture<ChargingPoint> first = actor.submit(new ChargingPointEvent("CP1", true));
+        CompletableFuture<ChargingPoint> second = actor.submit(new ChargingPointEvent("CP2", true));
+        CompletableFuture<ChargingPoint> third = actor.submit(new ChargingPointEvent("CP1", true));
+        executor.runAll();
+        // then
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(1);
+        assertThat(first.get()).isEqualTo(new ChargingPoint("CP1", 20, true));
+        assertThat(second.get().getConnected()).isTrue();
+        assertThat(third.get().getConnected()).isTrue();
+    }
+
+    @Test
+    public void submit_batchSizeReached_remainingNotificationsInNextBatch() {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ManualExecutor executor = new ManualExecutor();
+        CarparkActor actor = new CarparkActor(carparkUbi, executor, 16, 2);
+        // when
+        IntStream.rangeClosed(1, 5).forEach(n -> actor.submit(new ChargingPointEvent("CP" + n, true)));
+        executor.runAll();
+        // then
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(3);
+        assertThat(carparkUbi.describe().stream().filter(ChargingPoint::getConnected).count()).isEqualTo(5);
+    }
+
+    @Test
+    public void submitBatch_betweenNotifications_appliedInOrderByTheWriter() throws Exception {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ManualExecutor executor = new ManualExecutor();
+        CarparkActor actor = new CarparkActor(carparkUbi, executor, 16, 16);
+        // when
+        CompletableFuture<ChargingPoint> before = actor.submit(new ChargingPointEvent("CP1", true));
+        CompletableFuture<BatchResult> batch = actor.submit(carpark -> carpark.apply(
+                List.of(new ChargingPointEvent("CP1", false), new ChargingPointEvent("CP2", true))));
+        CompletableFuture<ChargingPoint> after = actor.submit(new ChargingPointEvent("CP3", true));
+        assertThat(batch.isDone()).isFalse();
+        executor.runAll();
+        // then
+        assertThat(before.get().getConnected()).isTrue();
+        assertThat(batch.get().getSnapshot().getVersion()).isEqualTo(2);
+        assertThat(batch.get().getOutcomes()).containsExactly(EventOutcome.DISCONNECTED, EventOutcome.CONNECTED);
+        assertThat(after.get().getConnected()).isTrue();
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(3);
+        assertThat(carparkUbi.describe().get(0).getConnected()).isFalse();
+    }
+
+    @Test
+    public void submit_unknownChargingPoint_futureFailed() {
+        // given
+        CarparkActor actor = new CarparkActor(new CarparkUbi(), Runnable::run, 16, 16);
+        // when
+        CompletableFuture<ChargingPoint> result = actor.submit(new ChargingPointEvent("CP42", true));
+        // then
+        ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+        assertThat(exception).hasCauseThat().isInstanceOf(ChargingPointNotFoundException.class);
+    }
+
+    @Test
+    public void submit_fullRing_futureFailedWithBusy() {
+        // given
+        ManualExecutor executor = new ManualExecutor();
+        CarparkActor actor = new CarparkActor(new CarparkUbi(), executor, 2, 16);
+        actor.submit(new ChargingPointEvent("CP1", true));
+        actor.submit(new ChargingPointEvent("CP2", true));
+        // when
+        CompletableFuture<ChargingPoint> result = actor.submit(new ChargingPointEvent("CP3", true));
+        // then
+        ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+        assertThat(exception).hasCauseThat().isInstanceOf(CarparkBusyException.class);
+    }
+
+    @Test
+    public void submit_concurrentRequestThreads_everyNotificationApplied() throws Exception {
+        // given
+        CarparkUbi carparkUbi = new CarparkUbi();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        CarparkActor actor = new CarparkActor(carparkUbi, writer, 1024, 64);
+        List<CompletableFuture<ChargingPoint>> results = new ArrayList<>();
+        // when
+        for (int n = 1; n <= CarparkUbi.NUM_CHARGE_POINTS; n++) {
+            String chargingPointId = "CP" + n;
+            results.add(CompletableFuture.supplyAsync(() -> actor.submit(new ChargingPointEvent(chargingPointId, true)), requests)
+                    .thenCompose(future -> future));
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        // then
+        assertThat(carparkUbi.describe().stream().allMatch(ChargingPoint::getConnected)).isTrue();
+        assertThat(carparkUbi.describe().stream().mapToInt(ChargingPoint::getCurrent).sum()).isAtMost(CarparkUbi.TOTAL_POWER);
+        requests.shutdown();
+        writer.shutdown();
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                task.run();
+            }
+        }
+    }
+}
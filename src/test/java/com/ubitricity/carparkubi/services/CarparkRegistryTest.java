@@ -0,0 +1,165 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.persistence.EventLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CarparkRegistryTest {
+
+    private CarparkRegistry carparkRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        CarparksProperties properties = new CarparksProperties();
+        properties.getSites().put("ubi", new CarparksProperties.Site());
+        CarparksProperties.Site large = new CarparksProperties.Site();
+        large.setChargingPoints(1000);
+        large.setTotalPower(15000);
+        properties.getSites().put("large", large);
+        carparkRegistry = new CarparkRegistry(properties, EventJournal.NONE);
+    }
+
+    @Test
+    public void find_configuredCarparks_carparksRegistered() {
+        // given
+        // when
+        CarparkUbi ubi = carparkRegistry.find("ubi");
+        CarparkUbi large = carparkRegistry.find("large");
+        // then
+        assertThat(ubi.getName()).isEqualTo("ubi");
+        assertThat(ubi.describe()).hasSize(CarparkUbi.NUM_CHARGE_POINTS);
+        assertThat(large.getName()).isEqualTo("large");
+        assertThat(large.describe()).hasSize(1000);
+        assertThat(carparkRegistry.carparks()).hasSize(2);
+    }
+
+    @Test
+    public void find_nonExistentCarpark_exception() {
+        // given
+        // when
+        // then
+        assertThrows(CarparkNotFoundException.class, () -> carparkRegistry.find("non_existent_carpark"));
+    }
+
+    @Test
+    public void register_duplicatedName_exception() {
+        // given
+        // when
+        // then
+        assertThrows(IllegalStateException.class, () -> carparkRegistry.register(new CarparkUbi()));
+    }
+
+    @Test
+    public void new_checkpointAndJournalTail_stateRebuilt(@TempDir Path directory) throws IOException {
+        // given
+        CarparksProperties properties = new CarparksProperties();
+        properties.getSites().put("ubi", new CarparksProperties.Site());
+        EventLog eventLog = new EventLog(directory, 1024 * 1024, CarparksProperties.Durability.SYNC, Duration.ofMillis(5));
+        CarparkUbi carpark = new CarparkRegistry(properties, eventLog).find("ubi");
+        List.of("CP4", "CP1", "CP7", "CP2", "CP9", "CP3").forEach(carpark::connect);
+        carpark.disconnect("CP7");
+        eventLog.checkpoint(() -> List.of(carpark.checkpoint()));
+        carpark.apply(List.of(new ChargingPointEvent("CP5", true), new ChargingPointEvent("CP1", false)));
+        CarparkSnapshot expected = carpark.snapshot();
+        eventLog.close();
+        // when
+        EventLog reopened = new EventLog(directory, 1024 * 1024, CarparksProperties.Durability.SYNC, Duration.ofMillis(5));
+        CarparkSnapshot recovered = new CarparkRegistry(properties, reopened).find("ubi").snapshot();
+        reopened.close();
+        // then
+        assertThat(recovered.getVersion()).isEqualTo(expected.getVersion());
+        for (int i = 0; i < CarparkUbi.NUM_CHARGE_POINTS; i++) {
+            ChargingPoint chargingPoint = recovered.getChargingPoints().get(i);
+            assertThat(chargingPoint.getConnected()).isEqualTo(expected.getChargingPoints().get(i).getConnected());
+            assertThat(chargingPoint.getCurrent()).isEqualTo(expected.getChargingPoints().get(i).getCurrent());
+        }
+    }
+
+    @Test
+    public void new_resetToOlderCheckpointInJournal_stateRebuiltFromReset(@TempDir Path directory) throws IOException {
+        // given
+        CarparksProperties properties = new CarparksProperties();
+        properties.getSites().put("ubi", new CarparksProperties.Site());
+        EventLog eventLog = new EventLog(directory, 1024 * 1024, CarparksProperties.Durability.SYNC, Duration.ofMillis(5));
+        CarparkUbi carpark = new CarparkRegistry(properties, eventLog).find("ubi");
+        carpark.connect("CP2");
+        CarparkCheckpoint older = carpark.checkpoint();
+        List.of("CP4", "CP1", "CP7", "CP9").forEach(carpark::connect);
+        carpark.reset(older);
+        carpark.connect("CP5");
+        CarparkSnapshot expected = carpark.snapshot();
+        eventLog.close();
+        // when
+        EventLog reopened = new EventLog(directory, 1024 * 1024, CarparksProperties.Durability.SYNC, Duration.ofMillis(5));
+        CarparkSnapshot recovered = new CarparkRegistry(properties, reopened).find("ubi").snapshot();
+        reopened.close();
+        // then
+        assertThat(recovered.getVersion()).isEqualTo(expected.getVersion());
+        for (int i = 0; i < CarparkUbi.NUM_CHARGE_POINTS; i++) {
+            ChargingPoint chargingPoint = recovered.getChargingPoints().get(i);
+            assertThat(chargingPoint.getConnected()).isEqualTo(expected.getChargingPoints().get(i).getConnected());
+            assertThat(chargingPoint.getCurrent()).isEqualTo(expected.getChargingPoints().get(i).getCurrent());
+        }
+    }
+
+    @Test
+    public void connect_differentCarparks_independentDistribution() {
+        // given
+        carparkRegistry.find("ubi").connect("CP1");
+        // when
+        ChargingPoint connected = carparkRegistry.find("large").connect("CP1");
+        // then
+        assertThat(connected.getCurrent()).isEqualTo(30);
+        assertThat(carparkRegistry.find("ubi").describe().get(0).getCurrent()).isEqualTo(20);
+        assertThat(carparkRegistry.find("ubi").snapshot().getVersion()).isEqualTo(1);
+        assertThat(carparkRegistry.find("large").snapshot().getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void find_configuredPolicyAndPointLimits_limitsAppliedToCarpark() {
+        // given
+        CarparksProperties properties = new CarparksProperties();
+        CarparksProperties.Site depot = new CarparksProperties.Site();
+        depot.setChargingPoints(4);
+        depot.setTotalPower(60);
+        depot.setPolicy(AllocationPolicies.PRIORITY_TIERS);
+        CarparksProperties.Point fleet = new CarparksProperties.Point();
+        fleet.setTier(1);
+        fleet.setMaxCurrent(32);
+        depot.getPoints().put("CP4", fleet);
+        properties.getSites().put("depot", depot);
+        CarparkUbi carpark = new CarparkRegistry(properties, EventJournal.NONE).find("depot");
+        carpark.connect("CP4");
+        // when
+        carpark.connect("CP1");
+        // then
+        assertThat(carpark.describe().get(3).getCurrent()).isEqualTo(32);
+        assertThat(carpark.describe().get(0).getCurrent()).isEqualTo(15);
+    }
+
+    @Test
+    public void new_limitsOfUnknownChargingPoint_exception() {
+        // given
+        CarparksProperties properties = new CarparksProperties();
+        CarparksProperties.Site site = new CarparksProperties.Site();
+        site.getPoints().put("CP11", new CarparksProperties.Point());
+        properties.getSites().put("ubi", site);
+        // when
+        // then
+        assertThrows(IllegalArgumentException.class, () -> new CarparkRegistry(properties, EventJournal.NONE));
+    }
+}
@@ -1,14 +1,30 @@
 package com.ubitricity.carparkubi.services;
 
+import com.ubitricity.carparkubi.model.AllocationSample;
+import com.ubitricity.carparkubi.model.BatchResult;
+import com.ubitricity.carparkubi.model.CarparkAvailability;
+import com.ubitricity.carparkubi.model.CarparkCheckpoint;
+import com.ubitricity.carparkubi.model.CarparkSnapshot;
+import com.ubitricity.carparkubi.model.CarparkSummary;
 import com.ubitricity.carparkubi.model.ChargingPoint;
+import com.ubitricity.carparkubi.model.ChargingPointEvent;
+import com.ubitricity.carparkubi.model.EventOutcome;
+import com.ubitricity.carparkubi.model.JournalRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static com.google.common.truth.Truth.assertThat;
@@ -140,8 +156,8 @@ class CarparkUbiTest {
         // then
         Field chargingQueueField = carparkUbi.getClass().getDeclaredField("chargingQueue");
         chargingQueueField.setAccessible(true);
-        List<ChargingPoint> chargingQueue = (List<ChargingPoint>) chargingQueueField.get(carparkUbi);
-        assertThat(chargingQueue).hasSize(1);
+        ChargingQueue chargingQueue = (ChargingQueue) chargingQueueField.get(carparkUbi);
+        assertThat(chargingQueue.size()).isEqualTo(1);
     }
 
     @Test
@@ -376,6 +392,426 @@ class CarparkUbiTest {
                 });
     }
 
+    @Test
+    public void snapshot_chargingPointsConnected_versionIncreasedPerChange() {
+        // given
+        connectChargingPoints(3);
+        // when
+        carparkUbi.connect("CP3");
+        carparkUbi.disconnect("CP1");
+        CarparkSnapshot snapshot = carparkUbi.snapshot();
+        // then
+        assertThat(snapshot.getVersion()).isEqualTo(3);
+        assertThat(snapshot.getChargingPoints()).hasSize(CarparkUbi.NUM_CHARGE_POINTS);
+    }
+
+    @Test
+    public void snapshot_previousSnapshotAfterMutation_previousStateKept() {
+        // given
+        connectChargingPoints(5);
+        CarparkSnapshot previous = carparkUbi.snapshot();
+        // when
+        carparkUbi.connect("CP7");
+        // then
+        assertThat(previous.getVersion()).isEqualTo(5);
+        previous.getChargingPoints()
+                .stream()
+                .filter(ChargingPoint::getConnected)
+                .forEach(cp -> assertThat(cp.getCurrent()).isEqualTo(20));
+        assertThat(carparkUbi.snapshot().getChargingPoints()
+                .stream()
+                .filter(cp -> cp.getCurrent() == 10)
+                .count()).isEqualTo(2);
+    }
+
+    @Test
+    public void changedSince_previousVersion_onlyChangedChargingPoints() {
+        // given
+        connectChargingPoints(5);
+        List<ChargingPoint> previous = carparkUbi.describe();
+        // when
+        carparkUbi.connect("CP7");
+        // then
+        List<ChargingPoint> changed = carparkUbi.snapshot().changedSince(5);
+        assertThat(changed).hasSize(3);
+        assertThat(changed).contains(new ChargingPoint("CP7", 20, true));
+        changed.forEach(cp -> assertThat(previous.get(carparkUbi.describe().indexOf(cp))).isNotSameInstanceAs(cp));
+        assertThat(carparkUbi.snapshot().changedSince(6)).isEmpty();
+    }
+
+    @Test
+    public void changedSince_versionAheadOfCarpark_allChargingPoints() {
+        // given
+        connectChargingPoints(2);
+        // when
+        List<ChargingPoint> changed = carparkUbi.snapshot().changedSince(40);
+        // then
+        assertThat(changed).hasSize(CarparkUbi.NUM_CHARGE_POINTS);
+    }
+
+    @Test
+    public void snapshot_concurrentWriters_consistentAllocationObserved() throws InterruptedException {
+        // given
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        IntStream.range(0, 4)
+                .forEach(writer -> service.submit(() -> IntStream.range(0, 2000)
+                        .forEach(n -> {
+                            String id = "CP" + (1 + (n + writer * 3) % CarparkUbi.NUM_CHARGE_POINTS);
+                            if (n % 3 == 0) {
+                                carparkUbi.disconnect(id);
+                            } else {
+                                carparkUbi.connect(id);
+                            }
+                        })));
+        service.shutdown();
+        // when
+        while (!service.isTerminated()) {
+            List<ChargingPoint> report = carparkUbi.describe();
+            // then
+            assertThat(report.stream().mapToInt(ChargingPoint::getCurrent).sum()).isAtMost(CarparkUbi.TOTAL_POWER);
+            report.stream()
+                    .filter(ChargingPoint::getConnected)
+                    .forEach(cp -> assertThat(cp.getCurrent()).isAtLeast(CarparkUbi.MIN_ASSIGNABLE_CHARGE));
+        }
+        assertThat(service.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void apply_mixedEvents_outcomePerEventAndSingleVersion() {
+        // given
+        connectChargingPoints(2);
+        List<ChargingPointEvent> events = List.of(
+                new ChargingPointEvent("CP1", true),
+                new ChargingPointEvent("CP3", true),
+                new ChargingPointEvent("CP5", false),
+                new ChargingPointEvent("CP42", true),
+                new ChargingPointEvent("CP7", false));
+        // when
+        BatchResult result = carparkUbi.apply(events);
+        // then
+        assertThat(result.getOutcomes()).containsExactly(EventOutcome.CONNECTED, EventOutcome.UNCHANGED,
+                EventOutcome.DISCONNECTED, EventOutcome.NOT_FOUND, EventOutcome.UNCHANGED).inOrder();
+        assertThat(result.getSnapshot().getVersion()).isEqualTo(3);
+        assertThat(result.getSnapshot()).isSameInstanceAs(carparkUbi.snapshot());
+        assertThat(result.getSnapshot().getChargingPoints()
+                .stream()
+                .filter(ChargingPoint::getConnected)
+                .map(ChargingPoint::getIdentifier)
+                .collect(Collectors.toList())).containsExactly("CP1", "CP3");
+    }
+
+    @Test
+    public void applyEventBatch_mixedEvents_outcomesWrittenToBatchAndJournaled() {
+        // given
+        List<JournalRecord> records = new ArrayList<>();
+        carparkUbi = new CarparkUbi(CarparkUbi.NAME, CarparkUbi.NUM_CHARGE_POINTS, CarparkUbi.TOTAL_POWER,
+                new RecordingJournal(records));
+        connectChargingPoints(2);
+        EventBatch batch = new EventBatch(2);
+        batch.add(0, true, 1);
+        batch.add(2, true, 2);
+        batch.add(4, false, 3);
+        batch.add(41, true, 4);
+        batch.add(-1, false, 5);
+        // when
+        CarparkSnapshot snapshot = carparkUbi.apply(batch);
+        // then
+        assertThat(IntStream.range(0, batch.size()).mapToObj(batch::outcome).collect(Collectors.toList()))
+                .containsExactly(EventOutcome.CONNECTED, EventOutcome.UNCHANGED, EventOutcome.DISCONNECTED,
+                        EventOutcome.NOT_FOUND, EventOutcome.NOT_FOUND).inOrder();
+        assertThat(snapshot.getVersion()).isEqualTo(3);
+        assertThat(snapshot.getChargingPoint(0)).isEqualTo(new ChargingPoint("CP1", 20, true));
+        assertThat(records.get(records.size() - 1).getEvents())
+                .containsExactly(new ChargingPointEvent("CP1", true), new ChargingPointEvent("CP5", false)).inOrder();
+    }
+
+    @Test
+    public void applyEventBatch_delayedConnectAfterNewerDisconnect_staleEventDropped() {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, 1);
+        batch.add(0, false, 3);
+        carparkUbi.apply(batch);
+        long version = carparkUbi.snapshot().getVersion();
+        batch.clear();
+        batch.add(0, true, 2);
+        batch.add(1, true, 1);
+        // when
+        CarparkSnapshot snapshot = carparkUbi.apply(batch);
+        // then
+        assertThat(batch.outcome(0)).isEqualTo(EventOutcome.STALE);
+        assertThat(batch.outcome(1)).isEqualTo(EventOutcome.CONNECTED);
+        assertThat(snapshot.getVersion()).isEqualTo(version + 1);
+        assertThat(snapshot.isConnected(0)).isFalse();
+    }
+
+    @Test
+    public void apply_retriedNumberedEvents_staleEventsDropped() {
+        // given
+        carparkUbi.apply(List.of(new ChargingPointEvent("CP1", true, 4), new ChargingPointEvent("CP1", false, 5)));
+        long version = carparkUbi.snapshot().getVersion();
+        // when
+        BatchResult result = carparkUbi.apply(List.of(new ChargingPointEvent("CP1", true, 4),
+                new ChargingPointEvent("CP2", true, 1), new ChargingPointEvent("CP3", true)));
+        // then
+        assertThat(result.getOutcomes())
+                .containsExactly(EventOutcome.STALE, EventOutcome.CONNECTED, EventOutcome.CONNECTED).inOrder();
+        assertThat(result.getSnapshot().getVersion()).isEqualTo(version + 1);
+        assertThat(result.getSnapshot().isConnected(0)).isFalse();
+    }
+
+    @Test
+    public void applyEventBatch_retriedBatch_allEventsDroppedWithoutNewVersion() {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, 7);
+        batch.add(1, true, 7);
+        carparkUbi.apply(batch);
+        long version = carparkUbi.snapshot().getVersion();
+        // when
+        CarparkSnapshot snapshot = carparkUbi.apply(batch);
+        // then
+        assertThat(batch.outcome(0)).isEqualTo(EventOutcome.STALE);
+        assertThat(batch.outcome(1)).isEqualTo(EventOutcome.STALE);
+        assertThat(snapshot.getVersion()).isEqualTo(version);
+    }
+
+    @Test
+    public void applyEventBatch_sequenceWrappedAround_newerEventApplied() {
+        // given
+        EventBatch batch = new EventBatch();
+        batch.add(0, true, Integer.MAX_VALUE);
+        carparkUbi.apply(batch);
+        batch.clear();
+        batch.add(0, false, Integer.MIN_VALUE);
+        batch.add(1, true, EventBatch.NO_SEQUENCE);
+        // when
+        CarparkSnapshot snapshot = carparkUbi.apply(batch);
+        // then
+        assertThat(batch.outcome(0)).isEqualTo(EventOutcome.DISCONNECTED);
+        assertThat(batch.outcome(1)).isEqualTo(EventOutcome.CONNECTED);
+        assertThat(snapshot.isConnected(0)).isFalse();
+    }
+
+    @Test
+    public void apply_allChargingPointsReconnected_sameAllocationAsSequentialConnections() {
+        // given
+        CarparkUbi sequential = new CarparkUbi();
+        List<String> ids = List.of("CP8", "CP6", "CP4", "CP1", "CP7", "CP2", "CP9", "CP10", "CP5", "CP3");
+        ids.forEach(sequential::connect);
+        connectChargingPoints(10);
+        // when
+        BatchResult result = carparkUbi.apply(ids.stream()
+                .map(id -> new ChargingPointEvent(id, id.equals("CP6") || id.equals("CP2")))
+                .collect(Collectors.toList()));
+        sequential.disconnect("CP8");
+        sequential.disconnect("CP4");
+        sequential.disconnect("CP1");
+        sequential.disconnect("CP7");
+        sequential.disconnect("CP9");
+        sequential.disconnect("CP10");
+        sequential.disconnect("CP5");
+        sequential.disconnect("CP3");
+        // then
+        assertThat(result.getSnapshot().getChargingPoints())
+                .containsExactlyElementsIn(sequential.describe());
+        for (int i = 0; i < CarparkUbi.NUM_CHARGE_POINTS; i++) {
+            assertThat(result.getSnapshot().getChargingPoints().get(i).getCurrent())
+                    .isEqualTo(sequential.describe().get(i).getCurrent());
+        }
+    }
+
+    @Test
+    public void apply_onlyUnchangedEvents_versionNotIncreased() {
+        // given
+        connectChargingPoints(1);
+        // when
+        BatchResult result = carparkUbi.apply(List.of(new ChargingPointEvent("CP3", true),
+                new ChargingPointEvent("CP4", false)));
+        // then
+        assertThat(result.getOutcomes()).containsExactly(EventOutcome.UNCHANGED, EventOutcome.UNCHANGED);
+        assertThat(result.getSnapshot().getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkpoint_chargingPointsConnected_connectionOrderFromOldest() {
+        // given
+        connectChargingPoints(4);
+        carparkUbi.disconnect("CP10");
+        // when
+        CarparkCheckpoint checkpoint = carparkUbi.checkpoint();
+        // then
+        assertThat(checkpoint.getCarparkName()).isEqualTo(CarparkUbi.NAME);
+        assertThat(checkpoint.getVersion()).isEqualTo(5);
+        assertThat(checkpoint.getConnectedChargingPoints()).containsExactly("CP9", "CP5", "CP3").inOrder();
+    }
+
+    @Test
+    public void adopt_newerCheckpointOfOtherNode_connectionOrderAndVersionReplaced() {
+        // given
+        List<JournalRecord> records = new ArrayList<>();
+        carparkUbi = new CarparkUbi(CarparkUbi.NAME, CarparkUbi.NUM_CHARGE_POINTS, CarparkUbi.TOTAL_POWER,
+                new RecordingJournal(records));
+        connectChargingPoints(7);
+        CarparkCheckpoint checkpoint = new CarparkCheckpoint(CarparkUbi.NAME, 42, List.of("CP2", "CP1", "CP3"));
+        // when
+        boolean adopted = carparkUbi.adopt(checkpoint);
+        // then
+        assertThat(adopted).isTrue();
+        assertThat(carparkUbi.checkpoint()).isEqualTo(checkpoint);
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(42);
+        assertThat(carparkUbi.snapshot().getChargingPoint(1)).isEqualTo(new ChargingPoint("CP2", 20, true));
+        assertThat(records.get(records.size() - 1).getVersion()).isEqualTo(42);
+        assertThat(carparkUbi.adopt(checkpoint)).isFalse();
+    }
+
+    @Test
+    public void reset_olderCheckpointOfRestartedPrimary_connectionOrderAndVersionReplaced() {
+        // given
+        connectChargingPoints(7);
+        CarparkCheckpoint checkpoint = new CarparkCheckpoint(CarparkUbi.NAME, 2, List.of("CP2", "CP1"));
+        // when
+        carparkUbi.reset(checkpoint);
+        // then
+        assertThat(carparkUbi.checkpoint()).isEqualTo(checkpoint);
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(2);
+        assertThat(carparkUbi.snapshot().isConnected(6)).isFalse();
+    }
+
+    @Test
+    public void replicate_recordsOfPrimary_sameAllocationAndVersion() {
+        // given
+        List<JournalRecord> records = new ArrayList<>();
+        CarparkUbi primary = new CarparkUbi(CarparkUbi.NAME, CarparkUbi.NUM_CHARGE_POINTS, CarparkUbi.TOTAL_POWER,
+                new RecordingJournal(records));
+        primary.connect("CP2");
+        primary.apply(List.of(new ChargingPointEvent("CP4", true), new ChargingPointEvent("CP5", true)));
+        primary.disconnect("CP2");
+        // when
+        records.forEach(carparkUbi::replicate);
+        boolean replayed = carparkUbi.replicate(records.get(0));
+        // then
+        assertThat(replayed).isFalse();
+        assertThat(carparkUbi.snapshot().getVersion()).isEqualTo(primary.snapshot().getVersion());
+        assertThat(carparkUbi.checkpoint()).isEqualTo(primary.checkpoint());
+        assertThat(carparkUbi.snapshot().getChargingPoints()).isEqualTo(primary.snapshot().getChargingPoints());
+    }
+
+    @Test
+    public void awaitVersion_reachedWhileWaiting_newSnapshotReturned() throws Exception {
+        // given
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // when
+        var snapshot = executor.submit(() -> carparkUbi.awaitVersion(2, Duration.ofSeconds(5)));
+        carparkUbi.connect("CP1");
+        carparkUbi.connect("CP2");
+        // then
+        assertThat(snapshot.get(5, TimeUnit.SECONDS).getVersion()).isEqualTo(2);
+        assertThat(carparkUbi.awaitVersion(3, Duration.ofMillis(10)).getVersion()).isEqualTo(2);
+        executor.shutdown();
+    }
+
+    @Test
+    public void history_redistribution_everyChangedPointRecorded() {
+        // given
+        connectChargingPoints(5);
+        // when
+        carparkUbi.connect("CP1");
+        // then
+        List<Boolean> connected = carparkUbi.history().samples(carparkUbi.indexOf("CP1"), 0, Long.MAX_VALUE).stream()
+                .map(AllocationSample::isConnected)
+                .collect(Collectors.toList());
+        assertThat(connected).containsExactly(false, true).inOrder();
+        assertThat(carparkUbi.history().samples(carparkUbi.indexOf("CP2"), 0, Long.MAX_VALUE).stream()
+                .map(AllocationSample::getCurrent)
+                .collect(Collectors.toList())).containsExactly(0, 20, 10).inOrder();
+    }
+
+    @Test
+    public void summarize_sixConnected_fastAndSlowFromCurrent() {
+        // given
+        connectChargingPoints(6);
+        // when
+        CarparkSummary summary = carparkUbi.summarize();
+        // then
+        assertThat(summary).isEqualTo(new CarparkSummary(CarparkUbi.NAME, 10, 4, 6, 4, 2, 100));
+    }
+
+    @Test
+    public void availability_sixConnected_freePointsAndSpareCurrent() {
+        // given
+        connectChargingPoints(6);
+        // when
+        CarparkAvailability availability = carparkUbi.availability();
+        // then
+        assertThat(availability).isEqualTo(new CarparkAvailability(6, 4, 4, 2, 0, true));
+    }
+
+    @Test
+    public void availability_randomEvents_countersMatchChargingPoints() {
+        // given
+        Random random = new Random(42);
+        for (int event = 0; event < 1000; event++) {
+            String chargingPointId = "CP" + (1 + random.nextInt(CarparkUbi.NUM_CHARGE_POINTS));
+            if (random.nextBoolean()) {
+                carparkUbi.connect(chargingPointId);
+            } else {
+                carparkUbi.disconnect(chargingPointId);
+            }
+            // when
+            CarparkAvailability availability = carparkUbi.availability();
+            // then
+            List<ChargingPoint> chargingPoints = carparkUbi.describe();
+            assertThat(availability.getFree()).isEqualTo(chargingPoints.stream().filter(cp -> !cp.getConnected()).count());
+            assertThat(availability.getFast()).isEqualTo(chargingPoints.stream().filter(cp -> cp.getCurrent() == 20).count());
+            assertThat(availability.getSlow()).isEqualTo(chargingPoints.stream().filter(cp -> cp.getCurrent() == 10).count());
+            assertThat(availability.getSpareCurrent()).isEqualTo(CarparkUbi.TOTAL_POWER
+                    - chargingPoints.stream().mapToInt(ChargingPoint::getCurrent).sum());
+            assertThat(availability.isFastChargeAvailable()).isEqualTo(availability.getFree() > 0
+                    && availability.getFast() + availability.getSlow() <= 8);
+        }
+    }
+
+    @Test
+    public void connect_priorityTiers_fleetPointKeepsFastChargeAgainstNewerConnections() {
+        // given
+        int[] tiers = new int[CarparkUbi.NUM_CHARGE_POINTS];
+        tiers[0] = 1;
+        int[] minCurrents = new int[CarparkUbi.NUM_CHARGE_POINTS];
+        int[] maxCurrents = new int[CarparkUbi.NUM_CHARGE_POINTS];
+        Arrays.fill(minCurrents, CarparkUbi.MIN_ASSIGNABLE_CHARGE);
+        Arrays.fill(maxCurrents, 2 * CarparkUbi.MIN_ASSIGNABLE_CHARGE);
+        AllocationLimits limits = new AllocationLimits(CarparkUbi.MIN_ASSIGNABLE_CHARGE,
+                2 * CarparkUbi.MIN_ASSIGNABLE_CHARGE, minCurrents, maxCurrents, tiers);
+        carparkUbi = new CarparkUbi(CarparkUbi.NAME, CarparkUbi.TOTAL_POWER, limits, AllocationPolicies.PRIORITY_TIERS,
+                EventJournal.NONE, CarparkMetrics.NONE, CarparkUbi.HISTORY_CAPACITY);
+        carparkUbi.connect("CP1");
+        // when
+        for (int n = 2; n <= 9; n++) {
+            carparkUbi.connect("CP" + n);
+        }
+        // then
+        List<ChargingPoint> report = carparkUbi.describe();
+        assertThat(report.get(0).getCurrent()).isEqualTo(20);
+        assertThat(report.subList(1, 9).stream().map(ChargingPoint::getCurrent).collect(Collectors.toList()))
+                .containsExactly(10, 10, 10, 10, 10, 10, 10, 10);
+        assertThat(carparkUbi.availability()).isEqualTo(new CarparkAvailability(9, 1, 1, 8, 0, false));
+    }
+
+    @Test
+    public void connect_proportionalShare_currentSharedEqually() {
+        // given
+        carparkUbi = new CarparkUbi(CarparkUbi.NAME, CarparkUbi.TOTAL_POWER,
+                AllocationLimits.uniform(CarparkUbi.NUM_CHARGE_POINTS, 10, 20), AllocationPolicies.PROPORTIONAL_SHARE,
+                EventJournal.NONE, CarparkMetrics.NONE, CarparkUbi.HISTORY_CAPACITY);
+        // when
+        connectChargingPoints(6);
+        // then
+        assertThat(carparkUbi.describe().stream().filter(ChargingPoint::getConnected).map(ChargingPoint::getCurrent)
+                .collect(Collectors.toList())).containsExactly(16, 16, 16, 16, 16, 16);
+        assertThat(carparkUbi.availability()).isEqualTo(new CarparkAvailability(6, 4, 6, 0, 4, true));
+    }
+
     /**
      * Connect as many charging points as instructed by the input parameter.
      * Order of connection from most recent to oldest: 3-5-10-9-2-7-1-4-6-8
@@ -409,4 +845,30 @@ class CarparkUbiTest {
                 throw new IllegalStateException("Unsupported number of connected charging points");
         }
     }
-}
\ No newline at end of file
+
+    private static final class RecordingJournal implements EventJournal {
+        private final List<JournalRecord> records;
+
+        private RecordingJournal(List<JournalRecord> records) {
+            this.records = records;
+        }
+
+        @Override
+        public long append(JournalRecord record) {
+            records.add(new JournalRecord(record.getCarparkName(), record.getVersion(), List.copyOf(record.getEvents())));
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long position) {
+        }
+
+        @Override
+        public void replay(Consumer<CarparkCheckpoint> checkpointConsumer, Consumer<JournalRecord> recordConsumer) {
+        }
+
+        @Override
+        public void checkpoint(Supplier<List<CarparkCheckpoint>> checkpoints) {
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ubitricity.carparkubi.services;
+
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class ChargingPointIdsTest {
+
+    private final ChargingPointIds chargingPointIds = new ChargingPointIds(12);
+
+    @Test
+    public void indexOf_installedChargingPoints_denseIndices() {
+        // given
+        // when
+        // then
+        assertThat(chargingPointIds.indexOf("CP1")).isEqualTo(0);
+        assertThat(chargingPointIds.indexOf("CP12")).isEqualTo(11);
+        assertThat(chargingPointIds.identifier(11)).isEqualTo("CP12");
+    }
+
+    @Test
+    public void indexOf_unknownIdentifiers_notFound() {
+        // given
+        // when
+        // then
+        assertThat(chargingPointIds.indexOf("CP0")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP13")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP01")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("cp1")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP1a")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP-1")).isEqualTo(-1);
+        assertThat(chargingPointIds.indexOf("CP99999999999")).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.ubitricity.carparkubi.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class ChargingQueueTest {
+    private static final int CP1 = 0;
+    private static final int CP2 = 1;
+    private static final int CP3 = 2;
+
+    private ChargingQueue chargingQueue;
+
+    @BeforeEach
+    public void setUp() {
+        chargingQueue = new ChargingQueue(4);
+    }
+
+    @Test
+    public void addFirst_emptyFastPrefix_nodeAddedAsSlow() {
+        // given
+        // when
+        chargingQueue.addFirst(CP1);
+        // then
+        assertThat(chargingQueue.size()).isEqualTo(1);
+        assertThat(chargingQueue.fastCount()).isEqualTo(0);
+        assertThat(chargingQueue.isConnected(CP1)).isTrue();
+        assertThat(chargingQueue.isFast(CP1)).isFalse();
+    }
+
+    @Test
+    public void addFirst_existingFastPrefix_nodeJoinsFastPrefix() {
+        // given
+        chargingQueue.addFirst(CP1);
+        chargingQueue.promote();
+        // when
+        chargingQueue.addFirst(CP2);
+        // then
+        assertThat(chargingQueue.fastCount()).isEqualTo(2);
+        assertThat(chargingQueue.isFast(CP2)).isTrue();
+    }
+
+    @Test
+    public void demote_fastPrefix_oldestFastNodeSwitchedToSlow() {
+        // given
+        chargingQueue.addFirst(CP1);
+        chargingQueue.promote();
+        chargingQueue.addFirst(CP2);
+        chargingQueue.addFirst(CP3);
+        // when
+        int demoted = chargingQueue.demote();
+        // then
+        assertThat(demoted).isEqualTo(CP1);
+        assertThat(chargingQueue.fastCount()).isEqualTo(2);
+        assertThat(chargingQueue.promote()).isEqualTo(CP1);
+    }
+
+    @Test
+    public void remove_lastFastNode_boundaryMovesToPreviousNode() {
+        // given
+        chargingQueue.addFirst(CP1);
+        chargingQueue.addFirst(CP2);
+        chargingQueue.addFirst(CP3);
+        chargingQueue.promote();
+        chargingQueue.promote();
+        // when
+        chargingQueue.remove(CP2);
+        // then
+        assertThat(chargingQueue.size()).isEqualTo(2);
+        assertThat(chargingQueue.fastCount()).isEqualTo(1);
+        assertThat(chargingQueue.isConnected(CP2)).isFalse();
+        assertThat(chargingQueue.demote()).isEqualTo(CP3);
+        assertThat(chargingQueue.promote()).isEqualTo(CP3);
+        assertThat(chargingQueue.promote()).isEqualTo(CP1);
+    }
+
+    @Test
+    public void remove_slowNode_fastPrefixUnchanged() {
+        // given
+        chargingQueue.addFirst(CP1);
+        chargingQueue.addFirst(CP2);
+        chargingQueue.promote();
+        // when
+        chargingQueue.remove(CP1);
+        // then
+        assertThat(chargingQueue.size()).isEqualTo(1);
+        assertThat(chargingQueue.fastCount()).isEqualTo(1);
+        assertThat(chargingQueue.isFast(CP2)).isTrue();
+    }
+
+    @Test
+    public void forEachOldestFirst_connectedNodes_connectionOrder() {
+        // given
+        chargingQueue.addFirst(CP2);
+        chargingQueue.addFirst(CP3);
+        chargingQueue.addFirst(CP1);
+        chargingQueue.remove(CP3);
+        List<Integer> visited = new ArrayList<>();
+        // when
+        chargingQueue.forEachOldestFirst(visited::add);
+        // then
+        assertThat(visited).containsExactly(CP2, CP1).inOrder();
+    }
+
+    @Test
+    public void nextSlow_fastPrefix_pointAfterBoundaryWithoutPromoting() {
+        // given
+        chargingQueue.addFirst(CP1);
+        chargingQueue.addFirst(CP2);
+        chargingQueue.promote();
+        // when
+        int nextSlow = chargingQueue.nextSlow();
+        // then
+        assertThat(nextSlow).isEqualTo(CP1);
+        assertThat(chargingQueue.fastCount()).isEqualTo(1);
+    }
+}
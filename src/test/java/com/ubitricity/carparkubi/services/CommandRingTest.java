@@ -0,0 +1,85 @@
+package com.ubitricity.carparkubi.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CommandRingTest {
+
+    @Test
+    public void poll_offeredElements_elementsInOfferOrder() {
+        // given
+        CommandRing<Integer> ring = new CommandRing<>(4);
+        // when
+        ring.offer(1);
+        ring.offer(2);
+        ring.offer(3);
+        // then
+        assertThat(ring.poll()).isEqualTo(1);
+        assertThat(ring.poll()).isEqualTo(2);
+        assertThat(ring.poll()).isEqualTo(3);
+        assertThat(ring.poll()).isNull();
+        assertThat(ring.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void offer_fullRing_elementRejectedUntilConsumed() {
+        // given
+        CommandRing<Integer> ring = new CommandRing<>(2);
+        ring.offer(1);
+        ring.offer(2);
+        // when
+        boolean rejected = !ring.offer(3);
+        ring.poll();
+        boolean accepted = ring.offer(3);
+        // then
+        assertThat(rejected).isTrue();
+        assertThat(accepted).isTrue();
+        assertThat(ring.poll()).isEqualTo(2);
+        assertThat(ring.poll()).isEqualTo(3);
+    }
+
+    @Test
+    public void constructor_capacityNotPowerOfTwo_exceptionThrown() {
+        assertThrows(IllegalArgumentException.class, () -> new CommandRing<>(3));
+    }
+
+    @Test
+    public void offer_concurrentProducers_everyElementConsumedOnce() throws InterruptedException {
+        // given
+        CommandRing<Integer> ring = new CommandRing<>(64);
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        int perProducer = 2_000;
+        // when
+        IntStream.range(0, 4).forEach(p -> producers.execute(() -> {
+            for (int i = 0; i < perProducer; i++) {
+                while (!ring.offer(p * perProducer + i)) {
+                    Thread.onSpinWait();
+                }
+            }
+        }));
+        List<Integer> consumed = new ArrayList<>();
+        while (consumed.size() < 4 * perProducer) {
+            Integer element = ring.poll();
+            if (element != null) {
+                consumed.add(element);
+            } else {
+                Thread.yield();
+            }
+        }
+        producers.shutdown();
+        assertThat(producers.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        // then
+        assertThat(consumed).containsExactlyElementsIn(IntStream.range(0, 4 * perProducer).boxed().collect(Collectors.toList()));
+        assertThat(ring.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.CarparkSummary;
+import com.ubitricity.carparkubi.model.FleetSummary;
+import com.ubitricity.carparkubi.model.FleetTotals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class FleetReportTest {
+    private static final int CARPARKS = 5 * FleetReport.LEAF_SIZE;
+
+    private CarparkRegistry carparkRegistry;
+    private FleetReport fleetReport;
+
+    @BeforeEach
+    public void setUp() {
+        CarparksProperties properties = new CarparksProperties();
+        IntStream.range(0, CARPARKS).forEach(n -> properties.getSites()
+                .put(String.format("site%03d", n), new CarparksProperties.Site()));
+        carparkRegistry = new CarparkRegistry(properties, EventJournal.NONE);
+        fleetReport = new FleetReport(carparkRegistry);
+    }
+
+    @Test
+    public void summarize_allCarparks_totalsOfEveryCarpark() {
+        // given
+        IntStream.range(0, CARPARKS).forEach(n -> IntStream.rangeClosed(1, n % 7)
+                .forEach(cp -> carparkRegistry.find(String.format("site%03d", n)).connect("CP" + cp)));
+        // when
+        FleetSummary summary = fleetReport.summarize("", 0);
+        // then
+        long occupied = IntStream.range(0, CARPARKS).map(n -> n % 7).sum();
+        long fast = IntStream.range(0, CARPARKS).map(n -> n % 7 <= 5 ? n % 7 : 4).sum();
+        assertThat(summary.getTotals()).isEqualTo(new FleetTotals(CARPARKS, CARPARKS * 10L,
+                CARPARKS * 10L - occupied, occupied, fast, occupied - fast, 10 * (occupied + fast)));
+        assertThat(summary.getCarparks().get(6)).isEqualTo(new CarparkSummary("site006", 10, 4, 6, 4, 2, 100));
+        assertThat(summary.getCarparks().stream().map(CarparkSummary::getName).collect(Collectors.toList()))
+                .isInStrictOrder();
+    }
+
+    @Test
+    public void summarize_prefixAndMinFree_onlyMatchingCarparks() {
+        // given
+        IntStream.rangeClosed(1, 5).forEach(cp -> carparkRegistry.find("site101").connect("CP" + cp));
+        // when
+        FleetSummary summary = fleetReport.summarize("site10", 6);
+        // then
+        assertThat(summary.getCarparks().stream().map(CarparkSummary::getName).collect(Collectors.toList()))
+                .containsExactly("site100", "site102", "site103", "site104", "site105", "site106", "site107",
+                        "site108", "site109").inOrder();
+        assertThat(summary.getTotals().getCarparks()).isEqualTo(9);
+        assertThat(summary.getTotals().getOccupied()).isEqualTo(0);
+        assertThat(summary.indexAfter("site103")).isEqualTo(3);
+        assertThat(summary.indexAfter("site101")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ubitricity.carparkubi.services;
+
+import com.ubitricity.carparkubi.config.CarparksProperties;
+import com.ubitricity.carparkubi.model.NearbyCarpark;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpatialIndexTest {
+    private static final int CARPARKS = 500;
+
+    private CarparksProperties properties;
+    private CarparkRegistry carparkRegistry;
+    private SpatialIndex spatialIndex;
+
+    @BeforeEach
+    public void setUp() {
+        properties = new CarparksProperties();
+        properties.getSpatial().setCellSize(0.02);
+        Random random = new Random(7);
+        IntStream.range(0, CARPARKS).forEach(n -> {
+            CarparksProperties.Site site = new CarparksProperties.Site();
+            site.setLatitude(52.3 + random.nextDouble() * 0.4);
+            site.setLongitude(13.1 + random.nextDouble() * 0.6);
+            properties.getSites().put("carpark" + n, site);
+        });
+        properties.getSites().put("unlocated", new CarparksProperties.Site());
+        carparkRegistry = new CarparkRegistry(properties, EventJournal.NONE);
+        spatialIndex = new SpatialIndex(properties, carparkRegistry);
+        IntStream.range(0, CARPARKS).filter(n -> n % 3 == 0).forEach(n -> IntStream.rangeClosed(1, 10)
+                .forEach(cp -> carparkRegistry.find("carpark" + n).connect("CP" + cp)));
+        IntStream.range(0, CARPARKS).filter(n -> n % 3 == 1).forEach(n -> IntStream.rangeClosed(1, 8)
+                .forEach(cp -> carparkRegistry.find("carpark" + n).connect("CP" + cp)));
+    }
+
+    @Test
+    public void nearest_randomLocations_sameAsExhaustiveSearch() {
+        // given
+        Random random = new Random(11);
+        for (int query = 0; query < 100; query++) {
+            double latitude = 52.2 + random.nextDouble() * 0.6;
+            double longitude = 13.0 + random.nextDouble() * 0.8;
+            boolean fastCharge = random.nextBoolean();
+            // when
+            List<NearbyCarpark> nearest = spatialIndex.nearest(latitude, longitude, 5, fastCharge,
+                    Double.POSITIVE_INFINITY);
+            // then
+            assertThat(nearest.stream().map(NearbyCarpark::getName).collect(Collectors.toList()))
+                    .containsExactlyElementsIn(exhaustive(latitude, longitude, 5, fastCharge)).inOrder();
+        }
+    }
+
+    @Test
+    public void nearest_availabilityChanged_fullCarparkSkipped() {
+        // given
+        NearbyCarpark first = spatialIndex.nearest(52.5, 13.4, 1, false, Double.POSITIVE_INFINITY).get(0);
+        // when
+        IntStream.rangeClosed(1, 10).forEach(cp -> carparkRegistry.find(first.getName()).connect("CP" + cp));
+        List<NearbyCarpark> nearest = spatialIndex.nearest(52.5, 13.4, 1, false, Double.POSITIVE_INFINITY);
+        // then
+        assertThat(nearest.get(0).getName()).isNotEqualTo(first.getName());
+        assertThat(nearest.get(0).getDistance()).isAtLeast(first.getDistance());
+    }
+
+    @Test
+    public void nearest_fewerCarparksAvailableThanWanted_allAvailableOnesNearestFirst() {
+        // given
+        IntStream.range(3, CARPARKS).forEach(n -> IntStream.rangeClosed(1, 10)
+                .forEach(cp -> carparkRegistry.find("carpark" + n).connect("CP" + cp)));
+        // when
+        List<NearbyCarpark> nearest = spatialIndex.nearest(52.5, 13.4, 5, false, Double.POSITIVE_INFINITY);
+        List<NearbyCarpark> farAway = spatialIndex.nearest(48.1, 11.6, 5, false, Double.POSITIVE_INFINITY);
+        // then
+        assertThat(nearest).hasSize(2);
+        assertThat(nearest.stream().map(NearbyCarpark::getName).collect(Collectors.toList()))
+                .containsExactlyElementsIn(exhaustive(52.5, 13.4, 5, false)).inOrder();
+        assertThat(farAway.stream().map(NearbyCarpark::getName).collect(Collectors.toList()))
+                .containsExactlyElementsIn(exhaustive(48.1, 11.6, 5, false)).inOrder();
+    }
+
+    @Test
+    public void nearest_maxDistance_onlyCarparksInRange() {
+        // given
+        // when
+        List<NearbyCarpark> nearest = spatialIndex.nearest(52.5, 13.4, 50, false, 3000);
+        List<NearbyCarpark> farAway = spatialIndex.nearest(48.1, 11.6, 5, false, 10_000);
+        // then
+        assertThat(nearest).isNotEmpty();
+        assertThat(nearest.stream().map(NearbyCarpark::getName).collect(Collectors.toList()))
+                .containsExactlyElementsIn(exhaustive(52.5, 13.4, CARPARKS, false).stream()
+                        .filter(name -> distance(52.5, 13.4, properties.getSites().get(name)) <= 3000)
+                        .limit(50)
+                        .collect(Collectors.toList())).inOrder();
+        assertThat(farAway).isEmpty();
+    }
+
+    @Test
+    public void nearest_invalidQuery_illegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> spatialIndex.nearest(52.5, 13.4, 51, false, 1000));
+        assertThrows(IllegalArgumentException.class, () -> spatialIndex.nearest(91, 13.4, 5, false, 1000));
+    }
+
+    private List<String> exhaustive(double latitude, double longitude, int k, boolean fastCharge) {
+        return properties.getSites().entrySet().stream()
+                .filter(entry -> entry.getValue().getLatitude() != null)
+                .filter(entry -> {
+                    var availability = carparkRegistry.find(entry.getKey()).availability();
+                    return availability.getFree() > 0 && (!fastCharge || availability.isFastChargeAvailable());
+                })
+                .sorted(Comparator.comparingDouble(entry -> distance(latitude, longitude, entry.getValue())))
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static double distance(double latitude, double longitude, CarparksProperties.Site site) {
+        double latitudeSin = Math.sin(Math.toRadians(site.getLatitude() - latitude) / 2);
+        double longitudeSin = Math.sin(Math.toRadians(site.getLongitude() - longitude) / 2);
+        double a = latitudeSin * latitudeSin + Math.cos(Math.toRadians(latitude))
+                * Math.cos(Math.toRadians(site.getLatitude())) * longitudeSin * longitudeSin;
+        return 2 * 6_371_000 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}